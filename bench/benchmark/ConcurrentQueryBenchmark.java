@@ -0,0 +1,105 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package benchmark;
+
+import indexer.DocumentWeightPair;
+import indexer.IndexerMain;
+import indexer.VectorSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Query throughput with many threads sharing one index.
+ * Run it with -t 1, 2, 4, ... to see how throughput scales with the number of cores.
+ * @author Jun
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(Threads.MAX)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConcurrentQueryBenchmark {
+	private static final int VOCABULARY_SIZE = 50000;
+	private static final int WORDS_PER_DOCUMENT = 300;
+	private static final int NUMBER_OF_QUERIES = 1024;
+	private static final int K = 5;
+
+	@Param({"10000"})
+	public int corpusSize;
+
+	@Param({"1.0"})
+	public double skew;
+
+	private File _corpusDirectory = null;
+	private IndexerMain _indexer = null;
+	private String[] _queries = null;
+
+	/**
+	 * every thread walks through the queries on its own
+	 */
+	@State(Scope.Thread)
+	public static class QueryCursor {
+		private int _next = 0;
+
+		int nextQuery() {
+			_next = (_next + 1) & (NUMBER_OF_QUERIES - 1);
+			return _next;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		CorpusGenerator generator = new CorpusGenerator(VOCABULARY_SIZE, skew, 42);
+		_corpusDirectory = generator.writeCorpus(corpusSize, WORDS_PER_DOCUMENT);
+		VectorSpace.getObject().trainByWtf(CorpusGenerator.listCorpus(_corpusDirectory));
+		_indexer = new IndexerMain(null);
+
+		CorpusGenerator queryGenerator = new CorpusGenerator(VOCABULARY_SIZE, skew, 7);
+		_queries = new String[NUMBER_OF_QUERIES];
+		for (int i = 0; i < NUMBER_OF_QUERIES; i++) {
+			_queries[i] = queryGenerator.nextWord() + " " + queryGenerator.nextWord();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		CorpusGenerator.delete(_corpusDirectory);
+	}
+
+	@Benchmark
+	public ArrayList<DocumentWeightPair> query(QueryCursor cursor) {
+		return _indexer.retrieveTopKDocuments(_queries[cursor.nextQuery()], K);
+	}
+
+	@Benchmark
+	public ArrayList<DocumentWeightPair> exactQuery(QueryCursor cursor) {
+		return _indexer.retrieveExactTopKDocuments(_queries[cursor.nextQuery()], K);
+	}
+}
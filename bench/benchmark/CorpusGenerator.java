@@ -0,0 +1,140 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes a synthetic corpus in the format the indexer reads: one file per document,
+ * the url on the first line and the text after it.
+ *
+ * Words are drawn from a Zipf distribution, so that the skew of the vocabulary
+ * (how much the most common terms dominate) can be varied between runs.
+ * @author Jun
+ *
+ */
+public class CorpusGenerator {
+	private static final String WORD_PREFIX = "zq";
+
+	private final String[] _vocabulary;
+	private final double[] _cumulativeProbabilities;
+	private final Random _random;
+
+	/**
+	 * @param vocabularySize number of distinct words
+	 * @param skew the Zipf exponent: 0 is uniform, around 1 is natural language
+	 * @param seed
+	 */
+	public CorpusGenerator(int vocabularySize, double skew, long seed) {
+		_vocabulary = new String[vocabularySize];
+		_cumulativeProbabilities = new double[vocabularySize];
+		_random = new Random(seed);
+
+		double total = 0.0;
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			_vocabulary[rank] = toWord(rank);
+			total += 1.0 / Math.pow(rank + 1, skew);
+			_cumulativeProbabilities[rank] = total;
+		}
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			_cumulativeProbabilities[rank] /= total;
+		}
+	}
+
+	/**
+	 * @param rank
+	 * @return a lower case alphabetic word that is not a stop word
+	 */
+	public static String toWord(int rank) {
+		StringBuilder word = new StringBuilder(WORD_PREFIX);
+		do {
+			word.append((char) ('a' + rank % 26));
+			rank /= 26;
+		} while (rank > 0);
+		return word.toString();
+	}
+
+	/**
+	 * @return a word, the lower its rank the more likely
+	 */
+	public String nextWord() {
+		int index = Arrays.binarySearch(_cumulativeProbabilities, _random.nextDouble());
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return _vocabulary[Math.min(index, _vocabulary.length - 1)];
+	}
+
+	/**
+	 * @param numberOfWords
+	 * @return words separated by spaces, with some punctuation and capitals for the tokenizer
+	 */
+	public String nextText(int numberOfWords) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < numberOfWords; i++) {
+			String word = nextWord();
+			if (i % 17 == 0) {
+				word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+			}
+			text.append(word);
+			text.append(i % 11 == 10 ? ". " : " ");
+			if (i % 23 == 22) {
+				text.append(System.lineSeparator());
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * write a corpus into a new temporary directory
+	 * @param numberOfDocuments
+	 * @param wordsPerDocument
+	 * @return the directory
+	 * @throws IOException
+	 */
+	public File writeCorpus(int numberOfDocuments, int wordsPerDocument) throws IOException {
+		File directory = Files.createTempDirectory("corpus").toFile();
+		for (int i = 0; i < numberOfDocuments; i++) {
+			File file = new File(directory, String.format("doc%07d.txt", i));
+			try (FileWriter fw = new FileWriter(file)) {
+				fw.write("http://www.example.com/page" + i + System.lineSeparator());
+				fw.write(nextText(wordsPerDocument));
+			}
+		}
+		return directory;
+	}
+
+	/**
+	 * @param directory
+	 * @return the files of the corpus in a stable order
+	 */
+	public static File[] listCorpus(File directory) {
+		File[] files = directory.listFiles();
+		Arrays.sort(files);
+		return files;
+	}
+
+	public static void delete(File directory) {
+		if (directory == null) {
+			return;
+		}
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package benchmark;
+
+import indexer.VectorSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to save and load the indexes, in the text and in the binary format
+ * @author Jun
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class IndexFileBenchmark {
+	private static final int VOCABULARY_SIZE = 50000;
+	private static final int WORDS_PER_DOCUMENT = 300;
+
+	@Param({"1000", "10000"})
+	public int corpusSize;
+
+	@Param({"0.8", "1.2"})
+	public double skew;
+
+	private File _corpusDirectory = null;
+	private File _indexDirectory = null;
+	private String _textIndexes = null;
+	private String _binaryIndexes = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		CorpusGenerator generator = new CorpusGenerator(VOCABULARY_SIZE, skew, 42);
+		_corpusDirectory = generator.writeCorpus(corpusSize, WORDS_PER_DOCUMENT);
+		_indexDirectory = Files.createTempDirectory("indexes").toFile();
+		_textIndexes = new File(_indexDirectory, "indexes.txt").getPath();
+		_binaryIndexes = new File(_indexDirectory, "indexes.bin").getPath();
+
+		VectorSpace.getObject().trainByWtf(CorpusGenerator.listCorpus(_corpusDirectory));
+		VectorSpace.getObject().saveTermDocumentMap(_textIndexes);
+		VectorSpace.getObject().saveTermDocumentMapBinary(_binaryIndexes);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		CorpusGenerator.delete(_corpusDirectory);
+		CorpusGenerator.delete(_indexDirectory);
+	}
+
+	@Benchmark
+	public void saveTermDocumentMap() {
+		VectorSpace.getObject().saveTermDocumentMap(_textIndexes);
+	}
+
+	@Benchmark
+	public VectorSpace trainByIndexesFile() {
+		VectorSpace.getObject().trainByIndexesFile(_textIndexes);
+		return VectorSpace.getObject();
+	}
+
+	@Benchmark
+	public VectorSpace trainByIndexesFileInParallel() {
+		VectorSpace.getObject().trainByIndexesFile(_textIndexes, Runtime.getRuntime().availableProcessors());
+		return VectorSpace.getObject();
+	}
+
+	@Benchmark
+	public VectorSpace trainByIndexesFileLazily() {
+		VectorSpace.getObject().trainByIndexesFileLazily(_textIndexes, Runtime.getRuntime().availableProcessors());
+		return VectorSpace.getObject();
+	}
+
+	@Benchmark
+	public void saveTermDocumentMapBinary() {
+		VectorSpace.getObject().saveTermDocumentMapBinary(_binaryIndexes);
+	}
+
+	@Benchmark
+	public VectorSpace trainByBinaryIndexFile() {
+		VectorSpace.getObject().trainByBinaryIndexFile(_binaryIndexes);
+		return VectorSpace.getObject();
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package benchmark;
+
+import indexer.VectorSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to train the VectorSpace over a whole corpus
+ * @author Jun
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class IndexingBenchmark {
+	private static final int VOCABULARY_SIZE = 50000;
+	private static final int WORDS_PER_DOCUMENT = 300;
+
+	@Param({"1000", "10000"})
+	public int corpusSize;
+
+	@Param({"0.8", "1.2"})
+	public double skew;
+
+	@Param({"4"})
+	public int numberOfThreads;
+
+	private File _corpusDirectory = null;
+	private File[] _files = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		CorpusGenerator generator = new CorpusGenerator(VOCABULARY_SIZE, skew, 42);
+		_corpusDirectory = generator.writeCorpus(corpusSize, WORDS_PER_DOCUMENT);
+		_files = CorpusGenerator.listCorpus(_corpusDirectory);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		CorpusGenerator.delete(_corpusDirectory);
+	}
+
+	@Benchmark
+	public VectorSpace trainByWtf() {
+		VectorSpace.getObject().trainByWtf(_files);
+		return VectorSpace.getObject();
+	}
+
+	@Benchmark
+	public VectorSpace trainByNtf() {
+		VectorSpace.getObject().trainByNtf(_files);
+		return VectorSpace.getObject();
+	}
+
+	@Benchmark
+	public VectorSpace trainByWtfParallel() {
+		VectorSpace.getObject().trainByWtf(_files, numberOfThreads);
+		return VectorSpace.getObject();
+	}
+
+	@Benchmark
+	public VectorSpace trainByNtfParallel() {
+		VectorSpace.getObject().trainByNtf(_files, numberOfThreads);
+		return VectorSpace.getObject();
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package benchmark;
+
+import indexer.PostingCursor;
+import indexer.PostingList;
+import indexer.VectorSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scanning and skipping through the postings of the most frequent terms,
+ * uncompressed (postingWeightBits = 0) and with the PostingCodec encodings.
+ * @author Jun
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PostingCursorBenchmark {
+	private static final int VOCABULARY_SIZE = 50000;
+	private static final int WORDS_PER_DOCUMENT = 300;
+	private static final int NUMBER_OF_TERMS = 16;
+	private static final int SKIP_DISTANCE = 500;
+
+	@Param({"10000"})
+	public int corpusSize;
+
+	@Param({"0", "8", "16", "64"})
+	public int postingWeightBits;
+
+	private File _corpusDirectory = null;
+	private PostingList[] _postingLists = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		CorpusGenerator generator = new CorpusGenerator(VOCABULARY_SIZE, 1.0, 42);
+		_corpusDirectory = generator.writeCorpus(corpusSize, WORDS_PER_DOCUMENT);
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.setPostingCompression(postingWeightBits);
+		vectorSpace.trainByWtf(CorpusGenerator.listCorpus(_corpusDirectory));
+
+		_postingLists = new PostingList[NUMBER_OF_TERMS];
+		for (int rank = 0; rank < NUMBER_OF_TERMS; rank++) {
+			_postingLists[rank] = vectorSpace.getPostingList(CorpusGenerator.toWord(rank));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		VectorSpace.getObject().setPostingCompression(0);
+		CorpusGenerator.delete(_corpusDirectory);
+	}
+
+	@Benchmark
+	public double scan() {
+		double sum = 0.0;
+		for (PostingList postings : _postingLists) {
+			PostingCursor cursor = postings.cursor();
+			while (cursor.nextDoc() != PostingCursor.NO_MORE_DOCS) {
+				sum += cursor.weight();
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double skip() {
+		double sum = 0.0;
+		for (PostingList postings : _postingLists) {
+			PostingCursor cursor = postings.cursor();
+			for (int target = 0; cursor.advance(target) != PostingCursor.NO_MORE_DOCS; target = cursor.docId() + SKIP_DISTANCE) {
+				sum += cursor.weight();
+			}
+		}
+		return sum;
+	}
+}
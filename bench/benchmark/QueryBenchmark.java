@@ -0,0 +1,133 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package benchmark;
+
+import indexer.DocumentWeightPair;
+import indexer.IndexerMain;
+import indexer.VectorSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of single and multi term queries through IndexerMain.
+ * The query terms are drawn from the same Zipf distribution as the corpus.
+ * @author Jun
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QueryBenchmark {
+	private static final int VOCABULARY_SIZE = 50000;
+	private static final int WORDS_PER_DOCUMENT = 300;
+	private static final int NUMBER_OF_QUERIES = 1024;
+	private static final int TERMS_PER_MULTI_TERM_QUERY = 4;
+	private static final int K = 5;
+
+	@Param({"1000", "10000"})
+	public int corpusSize;
+
+	@Param({"0.8", "1.2"})
+	public double skew;
+
+	private File _corpusDirectory = null;
+	private IndexerMain _indexer = null;
+	private IndexerMain _cachedIndexer = null;
+	private String[] _singleTermQueries = null;
+	private String[] _twoTermQueries = null;
+	private String[] _multiTermQueries = null;
+	private int _next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		CorpusGenerator generator = new CorpusGenerator(VOCABULARY_SIZE, skew, 42);
+		_corpusDirectory = generator.writeCorpus(corpusSize, WORDS_PER_DOCUMENT);
+		VectorSpace.getObject().trainByWtf(CorpusGenerator.listCorpus(_corpusDirectory));
+		_indexer = new IndexerMain(null);
+		_cachedIndexer = new IndexerMain();
+
+		CorpusGenerator queryGenerator = new CorpusGenerator(VOCABULARY_SIZE, skew, new Random(7).nextLong());
+		_singleTermQueries = new String[NUMBER_OF_QUERIES];
+		_twoTermQueries = new String[NUMBER_OF_QUERIES];
+		_multiTermQueries = new String[NUMBER_OF_QUERIES];
+		for (int i = 0; i < NUMBER_OF_QUERIES; i++) {
+			_singleTermQueries[i] = queryGenerator.nextWord();
+			_twoTermQueries[i] = queryGenerator.nextWord() + " " + queryGenerator.nextWord();
+			StringBuilder query = new StringBuilder();
+			for (int j = 0; j < TERMS_PER_MULTI_TERM_QUERY; j++) {
+				query.append(queryGenerator.nextWord()).append(' ');
+			}
+			_multiTermQueries[i] = query.toString();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		CorpusGenerator.delete(_corpusDirectory);
+	}
+
+	private int nextQuery() {
+		_next = (_next + 1) & (NUMBER_OF_QUERIES - 1);
+		return _next;
+	}
+
+	@Benchmark
+	public ArrayList<DocumentWeightPair> singleTermQuery() {
+		return _indexer.retrieveTopKDocuments(_singleTermQueries[nextQuery()], K);
+	}
+
+	@Benchmark
+	public ArrayList<DocumentWeightPair> multiTermQuery() {
+		return _indexer.retrieveTopKDocuments(_multiTermQueries[nextQuery()], K);
+	}
+
+	@Benchmark
+	public ArrayList<DocumentWeightPair> singleTermExactQuery() {
+		return _indexer.retrieveExactTopKDocuments(_singleTermQueries[nextQuery()], K);
+	}
+
+	/**
+	 * the most common query shape, read in impact order rather than by WAND
+	 */
+	@Benchmark
+	public ArrayList<DocumentWeightPair> twoTermExactQuery() {
+		return _indexer.retrieveExactTopKDocuments(_twoTermQueries[nextQuery()], K);
+	}
+
+	@Benchmark
+	public ArrayList<DocumentWeightPair> multiTermExactQuery() {
+		return _indexer.retrieveExactTopKDocuments(_multiTermQueries[nextQuery()], K);
+	}
+
+	@Benchmark
+	public ArrayList<DocumentWeightPair> multiTermCachedQuery() {
+		return _cachedIndexer.retrieveTopKDocuments(_multiTermQueries[nextQuery()], K);
+	}
+}
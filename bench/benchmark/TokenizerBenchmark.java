@@ -0,0 +1,97 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package benchmark;
+
+import indexer.TermFrequencyPerDocument;
+import indexer.Utilities;
+import indexer.WordFrequencyCounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per document cost of Utilities.tokenizeFile and WordFrequencyCounter.computeWordFrequencies
+ * @author Jun
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TokenizerBenchmark {
+	private static final int NUMBER_OF_DOCUMENTS = 200;
+	private static final int VOCABULARY_SIZE = 20000;
+
+	@Param({"100", "1000"})
+	public int wordsPerDocument;
+
+	@Param({"0.8", "1.2"})
+	public double skew;
+
+	private File _corpusDirectory = null;
+	private File[] _files = null;
+	private List<List<String>> _tokenizedDocuments = null;
+	private int _next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		CorpusGenerator generator = new CorpusGenerator(VOCABULARY_SIZE, skew, 42);
+		_corpusDirectory = generator.writeCorpus(NUMBER_OF_DOCUMENTS, wordsPerDocument);
+		_files = CorpusGenerator.listCorpus(_corpusDirectory);
+
+		_tokenizedDocuments = new ArrayList<List<String>>();
+		for (File file : _files) {
+			_tokenizedDocuments.add(Utilities.getObject().tokenizeFileWithoutStopWords(file));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		CorpusGenerator.delete(_corpusDirectory);
+	}
+
+	private int nextDocument() {
+		_next = (_next + 1) % NUMBER_OF_DOCUMENTS;
+		return _next;
+	}
+
+	@Benchmark
+	public ArrayList<String> tokenizeFile() {
+		return Utilities.getObject().tokenizeFile(_files[nextDocument()]);
+	}
+
+	@Benchmark
+	public ArrayList<String> tokenizeFileWithoutStopWords() {
+		return Utilities.getObject().tokenizeFileWithoutStopWords(_files[nextDocument()]);
+	}
+
+	@Benchmark
+	public List<TermFrequencyPerDocument> computeWordFrequencies() {
+		return WordFrequencyCounter.getObject().computeWordFrequencies(_tokenizedDocuments.get(nextDocument()));
+	}
+}
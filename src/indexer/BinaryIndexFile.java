@@ -0,0 +1,478 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Versioned binary on-disk format of the indexes, opened through a memory map.
+ *
+ * Layout (big endian):
+ *
+ * header:          magic, version, document count, term count,
+ *                  offsets of the document table, term dictionary and postings
+ * document table:  docId, document name, url, length, norm, bytes of the terms,
+ *                  number of terms, (term, frequency)*
+ * term dictionary: offset of every entry, then (term, posting count, number of tiers,
+ *                  posting offset)* with the terms sorted so that a term can be binary searched
+ * postings:        the posting list of every term as PostingList.writeTo writes it,
+ *                  with its docId order and impact tiers, starting at a multiple of 8
+ *
+ * Strings are stored as a length followed by their UTF-8 bytes.
+ *
+ * Loading reads the names and urls of the documents and the terms, and nothing else:
+ * every posting list is a PostingList view of the mapped postings, and a document reads
+ * its term frequencies from the mapped document table when they are first needed. The
+ * mapping outlives the file, like the one of a DocumentStore. Version 1 files, whose
+ * postings had to be copied onto the heap, are not read any more; save the index again.
+ * @author Jun
+ *
+ */
+public class BinaryIndexFile {
+	public static final int MAGIC = 0x534D4958; // "SMIX"
+	public static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 4 * 4 + 4 * 8;
+	private static final int DICTIONARY_OFFSET_SIZE = 8;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final ByteBuffer _documentTable;
+	private final ByteBuffer _termDictionary;
+	private final ByteBuffer _postings;
+	private final int _documentCount;
+	private final int _termCount;
+
+	private BinaryIndexFile(ByteBuffer documentTable, ByteBuffer termDictionary, ByteBuffer postings,
+			int documentCount, int termCount) {
+		_documentTable = documentTable;
+		_termDictionary = termDictionary;
+		_postings = postings;
+		_documentCount = documentCount;
+		_termCount = termCount;
+	}
+
+	/**
+	 * map the index file and check its header. Nothing else is read until it is asked for.
+	 * @param filename
+	 * @return
+	 * @throws IOException if the file is not a binary index of a supported version
+	 */
+	public static BinaryIndexFile open(String filename) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+			 FileChannel channel = file.getChannel()) {
+			long fileLength = channel.size();
+			if (fileLength < HEADER_SIZE) {
+				throw new IOException(filename + " is too short to be a binary index");
+			}
+
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) {
+				throw new IOException(filename + " is not a binary index");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(filename + " has unsupported binary index version " + version);
+			}
+			int documentCount = header.getInt();
+			int termCount = header.getInt();
+			long documentTableOffset = header.getLong();
+			long termDictionaryOffset = header.getLong();
+			long postingsOffset = header.getLong();
+			long expectedLength = header.getLong();
+			if (expectedLength != fileLength) {
+				throw new IOException(filename + " is truncated: expected " + expectedLength
+						+ " bytes but found " + fileLength);
+			}
+
+			ByteBuffer documentTable = map(channel, documentTableOffset, termDictionaryOffset);
+			ByteBuffer termDictionary = map(channel, termDictionaryOffset, postingsOffset);
+			ByteBuffer postings = map(channel, postingsOffset, fileLength);
+			return new BinaryIndexFile(documentTable, termDictionary, postings, documentCount, termCount);
+		}
+	}
+
+	/**
+	 * A single mapping cannot exceed 2GB, so each section is mapped on its own.
+	 */
+	private static ByteBuffer map(FileChannel channel, long start, long end) throws IOException {
+		if (end - start > Integer.MAX_VALUE) {
+			throw new IOException("index section of " + (end - start) + " bytes is too large to map");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+	}
+
+	public int getDocumentCount() {
+		return _documentCount;
+	}
+
+	public int getTermCount() {
+		return _termCount;
+	}
+
+	/**
+	 * read the whole document table, in docId order.
+	 * @return
+	 */
+	public List<DocumentVector> readDocumentVectors() {
+		return readDocumentVectors(new TermDictionary());
+	}
+
+	/**
+	 * read the whole document table, in docId order.
+	 * @param termDictionary the dictionary the terms of the documents are added to
+	 * @return
+	 */
+	List<DocumentVector> readDocumentVectors(TermDictionary termDictionary) {
+		ByteBuffer buffer = _documentTable.duplicate();
+		List<DocumentVector> documentVectors = new ArrayList<DocumentVector>(_documentCount);
+		for (int i = 0; i < _documentCount; i++) {
+			int docId = buffer.getInt();
+			String documentName = readString(buffer);
+			String url = readString(buffer);
+			// the length, the norm and the bytes of the terms follow from the terms
+			buffer.position(buffer.position() + 4 + 8 + 4);
+			DocumentVector documentVector = new DocumentVector(documentName, url, readTermFrequencies(buffer),
+					termDictionary);
+			documentVector.setDocId(docId);
+			documentVectors.add(documentVector);
+		}
+		return documentVectors;
+	}
+
+	/**
+	 * read the document table without the term frequencies, in docId order. A document
+	 * reads them from the mapped table the first time they are needed, and leaves out
+	 * its terms that are not in the dictionary then.
+	 * @param termDictionary the dictionary of the index the documents belong to
+	 * @return
+	 */
+	List<DocumentVector> readDocuments(TermDictionary termDictionary) {
+		MappedDocuments documents = new MappedDocuments(_documentTable, termDictionary);
+		ByteBuffer buffer = _documentTable.duplicate();
+		List<DocumentVector> documentVectors = new ArrayList<DocumentVector>(_documentCount);
+		for (int i = 0; i < _documentCount; i++) {
+			int docId = buffer.getInt();
+			String documentName = readString(buffer);
+			String url = readString(buffer);
+			int length = buffer.getInt();
+			double norm = buffer.getDouble();
+			int termBytes = buffer.getInt();
+			int offset = buffer.position();
+			buffer.position(offset + termBytes);
+			documentVectors.add(new DocumentVector(documentName, url, docId, length, norm, documents, offset, termBytes));
+		}
+		return documentVectors;
+	}
+
+	private static List<TermFrequencyPerDocument> readTermFrequencies(ByteBuffer buffer) {
+		int termCount = buffer.getInt();
+		List<TermFrequencyPerDocument> termFrequencies = new ArrayList<TermFrequencyPerDocument>(termCount);
+		for (int j = 0; j < termCount; j++) {
+			String term = readString(buffer);
+			termFrequencies.add(new TermFrequencyPerDocument(term, buffer.getInt()));
+		}
+		return termFrequencies;
+	}
+
+	/**
+	 * The mapped document table that the documents of readDocuments read their terms from.
+	 */
+	private static final class MappedDocuments implements DocumentSource {
+		private final ByteBuffer _documentTable;
+		private final TermDictionary _termDictionary;
+
+		MappedDocuments(ByteBuffer documentTable, TermDictionary termDictionary) {
+			_documentTable = documentTable;
+			_termDictionary = termDictionary;
+		}
+
+		@Override
+		public TermDictionary getTermDictionary() {
+			return _termDictionary;
+		}
+
+		@Override
+		public List<TermFrequencyPerDocument> readTermFrequencies(long offset, int length) {
+			// a duplicate, since the position of a shared buffer is not thread safe
+			ByteBuffer buffer = _documentTable.duplicate();
+			buffer.position((int) offset);
+			return BinaryIndexFile.readTermFrequencies(buffer);
+		}
+	}
+
+	/**
+	 * @param termIndex between 0 and getTermCount() - 1, in sorted term order
+	 * @return
+	 */
+	public String getTerm(int termIndex) {
+		ByteBuffer buffer = _termDictionary.duplicate();
+		buffer.position(getDictionaryEntry(termIndex));
+		return readString(buffer);
+	}
+
+	/**
+	 * binary search the sorted term dictionary.
+	 * @param term
+	 * @return the index of the term, or -1 if it is not in the index
+	 */
+	public int findTerm(String term) {
+		int low = 0;
+		int high = _termCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = getTerm(mid).compareTo(term);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	public int getPostingCount(int termIndex) {
+		ByteBuffer buffer = _termDictionary.duplicate();
+		buffer.position(getDictionaryEntry(termIndex));
+		skipString(buffer);
+		return buffer.getInt();
+	}
+
+	/**
+	 * copy the postings of a term into the given arrays, which must hold getPostingCount(termIndex) entries.
+	 * @param termIndex
+	 * @param docIds
+	 * @param weights
+	 */
+	public void readPostings(int termIndex, int[] docIds, double[] weights) {
+		PostingList postings = getPostingList(termIndex);
+		for (int i = 0; i < postings.size(); i++) {
+			docIds[i] = postings.getDocId(i);
+			weights[i] = postings.getWeight(i);
+		}
+	}
+
+	/**
+	 * @param termIndex
+	 * @return a read only view of the postings of the term in the mapped file
+	 */
+	PostingList getPostingList(int termIndex) {
+		ByteBuffer buffer = _termDictionary.duplicate();
+		buffer.position(getDictionaryEntry(termIndex));
+		skipString(buffer);
+		int postingCount = buffer.getInt();
+		int numberOfTiers = buffer.getInt();
+		long postingOffset = buffer.getLong();
+		return new PostingList(_postings, (int) postingOffset, postingCount, numberOfTiers, null);
+	}
+
+	private int getDictionaryEntry(int termIndex) {
+		return (int) _termDictionary.getLong(termIndex * DICTIONARY_OFFSET_SIZE);
+	}
+
+	static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		buffer.position(buffer.position() + length);
+	}
+
+	/**
+	 * write the document vectors and the inverted index in the binary format.
+	 * @param filename
+	 * @param documentVectors
+	 * @param termDictionary
+	 * @param postingLists indexed by termId, null for a term without postings
+	 * @throws IOException
+	 */
+	public static void write(String filename, List<DocumentVector> documentVectors,
+			TermDictionary termDictionary, List<PostingList> postingLists) throws IOException {
+		TreeMap<String, PostingList> sortedTerms = new TreeMap<String, PostingList>();
+		for (int termId = 0; termId < postingLists.size(); termId++) {
+			if (postingLists.get(termId) != null) {
+				sortedTerms.put(termDictionary.getTerm(termId), withDocIdOrder(postingLists.get(termId)));
+			}
+		}
+
+		try (IndexFileWriter output = new IndexFileWriter(filename)) {
+			FileChannel channel = output.getChannel();
+			Writer writer = new Writer(channel);
+			writer.skip(HEADER_SIZE);
+
+			long documentTableOffset = writer.position();
+			for (DocumentVector documentVector : documentVectors) {
+				writer.putInt(documentVector.getDocId());
+				writer.putString(documentVector.getDocumentName());
+				writer.putString(documentVector.getUrl());
+				writer.putInt(documentVector.getLength());
+				writer.putDouble(documentVector.getNorm());
+				int termBytes = 4;
+				for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+					termBytes += 4 + utf8Length(documentVector.getTermDictionary().getTerm(documentVector.getTermIdAt(i))) + 4;
+				}
+				writer.putInt(termBytes);
+				writer.putInt(documentVector.getNumberOfTerms());
+				for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+					writer.putString(documentVector.getTermDictionary().getTerm(documentVector.getTermIdAt(i)));
+					writer.putInt(documentVector.getFrequencyAt(i));
+				}
+			}
+
+			long termDictionaryOffset = writer.position();
+			long entryOffset = (long) sortedTerms.size() * DICTIONARY_OFFSET_SIZE;
+			for (String term : sortedTerms.keySet()) {
+				writer.putLong(entryOffset);
+				entryOffset += 4 + utf8Length(term) + 4 + 4 + 8;
+			}
+			long postingOffset = 0;
+			for (Map.Entry<String, PostingList> termDocuments : sortedTerms.entrySet()) {
+				writer.putString(termDocuments.getKey());
+				writer.putInt(termDocuments.getValue().size());
+				writer.putInt(termDocuments.getValue().getTierCount());
+				writer.putLong(postingOffset);
+				postingOffset += termDocuments.getValue().getOffHeapSizeInBytes();
+			}
+
+			// the doubles of the postings stay aligned in the mapping
+			writer.putBytes(ByteBuffer.allocate((int) (-writer.position() & 7)));
+			long postingsOffset = writer.position();
+			for (PostingList postings : sortedTerms.values()) {
+				ByteBuffer bytes = ByteBuffer.allocate(postings.getOffHeapSizeInBytes());
+				postings.writeTo(bytes, 0);
+				writer.putBytes(bytes);
+			}
+			writer.flush();
+			long fileLength = writer.position();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(documentVectors.size());
+			header.putInt(sortedTerms.size());
+			header.putLong(documentTableOffset);
+			header.putLong(termDictionaryOffset);
+			header.putLong(postingsOffset);
+			header.putLong(fileLength);
+			header.flip();
+			channel.write(header, 0);
+			output.commit();
+		}
+	}
+
+	/**
+	 * @return the postings with a docId order that writeTo writes, i.e. not compressed
+	 */
+	private static PostingList withDocIdOrder(PostingList postings) {
+		if (!postings.isCompressed()) {
+			return postings;
+		}
+		int[] docIds = new int[postings.size()];
+		double[] weights = new double[postings.size()];
+		for (int i = 0; i < docIds.length; i++) {
+			docIds[i] = postings.getDocId(i);
+			weights[i] = postings.getWeight(i);
+		}
+		return new PostingList(docIds, weights);
+	}
+
+	private static int utf8Length(String text) {
+		return text.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	/**
+	 * Buffered sequential writer over a file channel that keeps track of the file position.
+	 * PositionalIndex writes its file through it too.
+	 */
+	static class Writer {
+		private final FileChannel _channel;
+		private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private long _flushed = 0;
+
+		Writer(FileChannel channel) {
+			_channel = channel;
+		}
+
+		long position() {
+			return _flushed + _buffer.position();
+		}
+
+		void skip(int length) throws IOException {
+			ensureCapacity(length);
+			_buffer.position(_buffer.position() + length);
+		}
+
+		void putInt(int value) throws IOException {
+			ensureCapacity(4);
+			_buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensureCapacity(8);
+			_buffer.putLong(value);
+		}
+
+		void putDouble(double value) throws IOException {
+			ensureCapacity(8);
+			_buffer.putDouble(value);
+		}
+
+		void putString(String text) throws IOException {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			int written = 0;
+			while (written < bytes.length) {
+				ensureCapacity(1);
+				int length = Math.min(_buffer.remaining(), bytes.length - written);
+				_buffer.put(bytes, written, length);
+				written += length;
+			}
+		}
+
+		void putBytes(ByteBuffer bytes) throws IOException {
+			ByteBuffer source = bytes.duplicate();
+			while (source.hasRemaining()) {
+				ensureCapacity(1);
+				int length = Math.min(_buffer.remaining(), source.remaining());
+				ByteBuffer slice = source.duplicate();
+				slice.limit(slice.position() + length);
+				_buffer.put(slice);
+				source.position(source.position() + length);
+			}
+		}
+
+		private void ensureCapacity(int length) throws IOException {
+			if (_buffer.remaining() < length) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			_buffer.flip();
+			while (_buffer.hasRemaining()) {
+				_flushed += _channel.write(_buffer, _flushed);
+			}
+			_buffer.clear();
+		}
+	}
+}
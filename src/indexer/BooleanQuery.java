@@ -0,0 +1,659 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A query with AND, OR, NOT and parentheses, like
+ * (apple OR banana) AND NOT cherry, or "green tea" AND cake.
+ *
+ * The operators are only recognized in upper case. Words next to each other without an
+ * operator must all match, and AND binds tighter than OR. A quoted phrase matches
+ * through the PositionalIndex when there is one, and like its words joined by AND
+ * otherwise.
+ *
+ * Matching runs over the postings in docId order: a conjunction leapfrogs from its
+ * shortest list, advancing the others to its candidates, so every list is skipped over
+ * by galloping or by its skip table rather than read, and a conjunction costs about as
+ * much as its rarest term. The matching documents are ranked by the words that are not
+ * under a NOT, with the weights of their postings or the score of a ScoringModel.
+ * @author Jun
+ *
+ */
+final class BooleanQuery {
+	private static final String AND = "AND";
+	private static final String OR = "OR";
+	private static final String NOT = "NOT";
+
+	private final Node _root;
+	private final List<String> _terms;
+	private final boolean _isDisjunctionOfTerms;
+
+	private BooleanQuery(Node root) {
+		_root = root;
+		List<String> terms = new ArrayList<String>();
+		root.addScoredTerms(terms);
+		_terms = Collections.unmodifiableList(terms);
+		boolean isDisjunctionOfTerms = root instanceof TermNode;
+		if (root instanceof OrNode) {
+			isDisjunctionOfTerms = true;
+			for (Node child : ((OrNode) root).children) {
+				isDisjunctionOfTerms &= child instanceof TermNode;
+			}
+		}
+		_isDisjunctionOfTerms = isDisjunctionOfTerms;
+	}
+
+	/**
+	 * @param query
+	 * @return null if the query has no operator or parenthesis, or if one is out of place
+	 * 		   like in "smiley :)" or a lone NOT, so that it is ranked like any other query
+	 */
+	static BooleanQuery parse(String query) {
+		List<String> tokens = split(query);
+		boolean isBoolean = false;
+		for (String token : tokens) {
+			isBoolean |= token.equals(AND) || token.equals(OR) || token.equals(NOT)
+					|| token.equals("(") || token.equals(")");
+		}
+		if (!isBoolean) {
+			return null;
+		}
+
+		Parser parser = new Parser(tokens);
+		Node root;
+		try {
+			root = parser.parseOr();
+			if (parser.hasNext()) {
+				throw new IllegalArgumentException("unexpected " + parser.peek() + " in the query");
+			}
+		} catch (IllegalArgumentException e) {
+			// plain text that happens to hold a parenthesis or an operator
+			return null;
+		}
+		return new BooleanQuery(root == null ? new OrNode(Collections.<Node>emptyList()) : root);
+	}
+
+	/**
+	 * @return the words, operators, parentheses and quoted phrases of the query
+	 */
+	private static List<String> split(String query) {
+		List<String> tokens = new ArrayList<String>();
+		int position = 0;
+		while (position < query.length()) {
+			char c = query.charAt(position);
+			if (Character.isWhitespace(c)) {
+				position++;
+			} else if (c == '(' || c == ')') {
+				tokens.add(String.valueOf(c));
+				position++;
+			} else if (c == '"') {
+				int close = query.indexOf('"', position + 1);
+				int end = close < 0 ? query.length() : close + 1;
+				// the distance of a proximity phrase belongs to it
+				while (end < query.length() && (query.charAt(end) == '~' || Character.isDigit(query.charAt(end)))) {
+					end++;
+				}
+				tokens.add(query.substring(position, end));
+				position = end;
+			} else {
+				int end = position;
+				while (end < query.length() && !Character.isWhitespace(query.charAt(end))
+						&& "()\"".indexOf(query.charAt(end)) < 0) {
+					end++;
+				}
+				tokens.add(query.substring(position, end));
+				position = end;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * @return the words that add to the score, in query order
+	 */
+	List<String> getScoredTerms() {
+		return _terms;
+	}
+
+	/**
+	 * @return whether the query is an OR of single words, whose top k the WAND engine
+	 * 		   finds without visiting every match
+	 */
+	boolean isDisjunctionOfTerms() {
+		return _isDisjunctionOfTerms;
+	}
+
+	/**
+	 * @param snapshot
+	 * @param positionalIndex null to match phrases like their words joined by AND
+	 * @return the live docIds that match the query, in ascending order
+	 */
+	int[] match(IndexSnapshot snapshot, PositionalIndex positionalIndex) {
+		DocIdIterator iterator = _root.iterator(snapshot, positionalIndex);
+		int[] docIds = new int[16];
+		int size = 0;
+		for (int docId = iterator.nextDoc(); docId != PostingCursor.NO_MORE_DOCS; docId = iterator.nextDoc()) {
+			if (size == docIds.length) {
+				docIds = Arrays.copyOf(docIds, 2 * size);
+			}
+			docIds[size++] = docId;
+		}
+		return Arrays.copyOf(docIds, size);
+	}
+
+	/**
+	 * @return the query with its implicit operators and grouping made explicit, which is
+	 * 		   also its cache key
+	 */
+	@Override
+	public String toString() {
+		return _root.toString();
+	}
+
+	/**
+	 * recursive descent over or := and (OR and)*, and := unary (AND? unary)*,
+	 * unary := NOT unary | ( or ) | word | phrase
+	 */
+	private static final class Parser {
+		private final List<String> _tokens;
+		private int _position = 0;
+
+		Parser(List<String> tokens) {
+			_tokens = tokens;
+		}
+
+		boolean hasNext() {
+			return _position < _tokens.size();
+		}
+
+		String peek() {
+			return _tokens.get(_position);
+		}
+
+		/**
+		 * @return null for a group without words, like the punctuation of "( - )"
+		 */
+		Node parseOr() {
+			List<Node> children = new ArrayList<Node>();
+			addIfMatching(children, parseAnd());
+			while (hasNext() && peek().equals(OR)) {
+				_position++;
+				addIfMatching(children, parseAnd());
+			}
+			if (children.isEmpty()) {
+				return null;
+			}
+			return children.size() == 1 ? children.get(0) : new OrNode(children);
+		}
+
+		Node parseAnd() {
+			List<Node> required = new ArrayList<Node>();
+			List<Node> excluded = new ArrayList<Node>();
+			boolean isFirst = true;
+			while (hasNext() && !peek().equals(OR) && !peek().equals(")")) {
+				if (!isFirst && peek().equals(AND)) {
+					_position++;
+				}
+				isFirst = false;
+				if (hasNext() && peek().equals(NOT)) {
+					_position++;
+					addIfMatching(excluded, parseUnary());
+				} else {
+					addIfMatching(required, parseUnary());
+				}
+			}
+			if (isFirst) {
+				throw new IllegalArgumentException(hasNext() ? "nothing before " + peek() : "the query ends with an operator");
+			}
+			if (required.size() == 1 && excluded.isEmpty()) {
+				return required.get(0);
+			} else if (required.isEmpty() && excluded.isEmpty()) {
+				return null;
+			}
+			return new AndNode(required, excluded);
+		}
+
+		Node parseUnary() {
+			if (!hasNext()) {
+				throw new IllegalArgumentException("the query ends with an operator");
+			}
+			String token = _tokens.get(_position++);
+			if (token.equals(NOT)) {
+				Node child = parseUnary();
+				return child == null ? null : new AndNode(Collections.<Node>emptyList(), Collections.singletonList(child));
+			} else if (token.equals("(")) {
+				Node group = parseOr();
+				if (!hasNext() || !peek().equals(")")) {
+					throw new IllegalArgumentException("a parenthesis is not closed");
+				}
+				_position++;
+				return group;
+			} else if (token.equals(")") || token.equals(AND) || token.equals(OR)) {
+				throw new IllegalArgumentException("unexpected " + token + " in the query");
+			} else if (token.startsWith("\"")) {
+				PositionalQuery phrase = PositionalQuery.parse(token);
+				if (phrase != null) {
+					return new PhraseNode(phrase);
+				}
+				token = token.replaceAll("\"(~\\d*)?", " ");
+			}
+
+			// the documents leave out stop words, so a required one would match nothing
+			List<String> words = Utilities.getObject().tokenizeStringWithoutStopWords(token);
+			if (words.isEmpty()) {
+				return null;
+			}
+			List<Node> terms = new ArrayList<Node>();
+			for (String word : words) {
+				terms.add(new TermNode(word));
+			}
+			return terms.size() == 1 ? terms.get(0) : new AndNode(terms, Collections.<Node>emptyList());
+		}
+
+		private static void addIfMatching(List<Node> nodes, Node node) {
+			if (node != null) {
+				nodes.add(node);
+			}
+		}
+	}
+
+	private abstract static class Node {
+		abstract DocIdIterator iterator(IndexSnapshot snapshot, PositionalIndex positionalIndex);
+
+		/**
+		 * add the words that are not under a NOT
+		 */
+		abstract void addScoredTerms(List<String> terms);
+	}
+
+	private static final class TermNode extends Node {
+		final String term;
+
+		TermNode(String term) {
+			this.term = term;
+		}
+
+		@Override
+		DocIdIterator iterator(IndexSnapshot snapshot, PositionalIndex positionalIndex) {
+			PostingCursor cursor = snapshot.cursor(term);
+			return cursor == null ? new ArrayIterator(new int[0]) : new TermIterator(cursor);
+		}
+
+		@Override
+		void addScoredTerms(List<String> terms) {
+			terms.add(term);
+		}
+
+		@Override
+		public String toString() {
+			return term;
+		}
+	}
+
+	private static final class PhraseNode extends Node {
+		final PositionalQuery phrase;
+
+		PhraseNode(PositionalQuery phrase) {
+			this.phrase = phrase;
+		}
+
+		@Override
+		DocIdIterator iterator(IndexSnapshot snapshot, PositionalIndex positionalIndex) {
+			if (positionalIndex != null) {
+				return new ArrayIterator(positionalIndex.match(snapshot, phrase.getClauses()));
+			}
+			List<DocIdIterator> required = new ArrayList<DocIdIterator>();
+			for (String term : phrase.getClauses().get(0).terms) {
+				required.add(new TermNode(term).iterator(snapshot, null));
+			}
+			return new ConjunctionIterator(required, Collections.<DocIdIterator>emptyList());
+		}
+
+		@Override
+		void addScoredTerms(List<String> terms) {
+			terms.addAll(Utilities.getObject().tokenizeStringWithoutStopWords(phrase.getText()));
+		}
+
+		@Override
+		public String toString() {
+			return phrase.toString();
+		}
+	}
+
+	private static final class AndNode extends Node {
+		final List<Node> required;
+		final List<Node> excluded;
+
+		AndNode(List<Node> required, List<Node> excluded) {
+			this.required = required;
+			this.excluded = excluded;
+		}
+
+		@Override
+		DocIdIterator iterator(IndexSnapshot snapshot, PositionalIndex positionalIndex) {
+			List<DocIdIterator> requiredIterators = new ArrayList<DocIdIterator>();
+			for (Node node : required) {
+				requiredIterators.add(node.iterator(snapshot, positionalIndex));
+			}
+			if (requiredIterators.isEmpty()) {
+				requiredIterators.add(new AllDocsIterator(snapshot));
+			}
+			List<DocIdIterator> excludedIterators = new ArrayList<DocIdIterator>();
+			for (Node node : excluded) {
+				excludedIterators.add(node.iterator(snapshot, positionalIndex));
+			}
+			return new ConjunctionIterator(requiredIterators, excludedIterators);
+		}
+
+		@Override
+		void addScoredTerms(List<String> terms) {
+			for (Node node : required) {
+				node.addScoredTerms(terms);
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder("(");
+			for (Node node : required) {
+				text.append(text.length() == 1 ? "" : " AND ").append(node);
+			}
+			for (Node node : excluded) {
+				text.append(text.length() == 1 ? "" : " AND ").append("NOT ").append(node);
+			}
+			return text.append(')').toString();
+		}
+	}
+
+	private static final class OrNode extends Node {
+		final List<Node> children;
+
+		OrNode(List<Node> children) {
+			this.children = children;
+		}
+
+		@Override
+		DocIdIterator iterator(IndexSnapshot snapshot, PositionalIndex positionalIndex) {
+			List<DocIdIterator> iterators = new ArrayList<DocIdIterator>();
+			for (Node node : children) {
+				iterators.add(node.iterator(snapshot, positionalIndex));
+			}
+			return new DisjunctionIterator(iterators);
+		}
+
+		@Override
+		void addScoredTerms(List<String> terms) {
+			for (Node node : children) {
+				node.addScoredTerms(terms);
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder("(");
+			for (Node node : children) {
+				text.append(text.length() == 1 ? "" : " OR ").append(node);
+			}
+			return text.append(')').toString();
+		}
+	}
+
+	/**
+	 * The matching docIds in ascending order, starting before the first one.
+	 */
+	private abstract static class DocIdIterator {
+		abstract int docId();
+
+		abstract int nextDoc();
+
+		/**
+		 * @param target greater than docId
+		 * @return the first match at or after the target
+		 */
+		abstract int advance(int target);
+
+		/**
+		 * @return about how many docIds the iterator visits, to lead a conjunction with
+		 * 		   the cheapest one
+		 */
+		abstract long cost();
+	}
+
+	private static final class TermIterator extends DocIdIterator {
+		private final PostingCursor _cursor;
+
+		TermIterator(PostingCursor cursor) {
+			_cursor = cursor;
+		}
+
+		@Override
+		int docId() {
+			return _cursor.docId();
+		}
+
+		@Override
+		int nextDoc() {
+			return _cursor.nextDoc();
+		}
+
+		@Override
+		int advance(int target) {
+			return _cursor.advance(target);
+		}
+
+		@Override
+		long cost() {
+			return _cursor.size();
+		}
+	}
+
+	private static final class ArrayIterator extends DocIdIterator {
+		private final int[] _docIds;
+		private int _index = -1;
+
+		ArrayIterator(int[] docIds) {
+			_docIds = docIds;
+		}
+
+		@Override
+		int docId() {
+			if (_index < 0) {
+				return -1;
+			}
+			return _index < _docIds.length ? _docIds[_index] : PostingCursor.NO_MORE_DOCS;
+		}
+
+		@Override
+		int nextDoc() {
+			_index = Math.min(_index + 1, _docIds.length);
+			return docId();
+		}
+
+		@Override
+		int advance(int target) {
+			int index = Arrays.binarySearch(_docIds, Math.max(_index + 1, 0), _docIds.length, target);
+			_index = index >= 0 ? index : -index - 1;
+			return docId();
+		}
+
+		@Override
+		long cost() {
+			return _docIds.length;
+		}
+	}
+
+	/**
+	 * the live documents, for a NOT without anything it is excluded from
+	 */
+	private static final class AllDocsIterator extends DocIdIterator {
+		private final IndexSnapshot _snapshot;
+		private final int _endDocId;
+		private int _docId = -1;
+
+		AllDocsIterator(IndexSnapshot snapshot) {
+			_snapshot = snapshot;
+			_endDocId = snapshot.getEndDocId();
+		}
+
+		@Override
+		int docId() {
+			return _docId;
+		}
+
+		@Override
+		int nextDoc() {
+			return advance(_docId + 1);
+		}
+
+		@Override
+		int advance(int target) {
+			int docId = target;
+			while (docId < _endDocId && !_snapshot.isLive(docId)) {
+				docId++;
+			}
+			_docId = docId < _endDocId ? docId : PostingCursor.NO_MORE_DOCS;
+			return _docId;
+		}
+
+		@Override
+		long cost() {
+			return _endDocId;
+		}
+	}
+
+	/**
+	 * The docIds of all the required iterators and none of the excluded ones. The
+	 * cheapest required iterator leads, and the others are only advanced to its
+	 * candidates; one that overshoots moves the lead on to where it stopped.
+	 */
+	private static final class ConjunctionIterator extends DocIdIterator {
+		private final DocIdIterator _lead;
+		private final DocIdIterator[] _others;
+		private final DocIdIterator[] _excluded;
+		private int _docId = -1;
+
+		ConjunctionIterator(List<DocIdIterator> required, List<DocIdIterator> excluded) {
+			DocIdIterator[] iterators = required.toArray(new DocIdIterator[required.size()]);
+			Arrays.sort(iterators, new Comparator<DocIdIterator>() {
+				@Override
+				public int compare(DocIdIterator iterator, DocIdIterator other) {
+					return Long.compare(iterator.cost(), other.cost());
+				}
+			});
+			_lead = iterators[0];
+			_others = Arrays.copyOfRange(iterators, 1, iterators.length);
+			_excluded = excluded.toArray(new DocIdIterator[excluded.size()]);
+		}
+
+		@Override
+		int docId() {
+			return _docId;
+		}
+
+		@Override
+		int nextDoc() {
+			return doNext(_lead.nextDoc());
+		}
+
+		@Override
+		int advance(int target) {
+			return doNext(_lead.docId() < target ? _lead.advance(target) : _lead.docId());
+		}
+
+		private int doNext(int candidate) {
+			candidates:
+			while (candidate != PostingCursor.NO_MORE_DOCS) {
+				for (DocIdIterator other : _others) {
+					int docId = other.docId() < candidate ? other.advance(candidate) : other.docId();
+					if (docId > candidate) {
+						candidate = _lead.advance(docId);
+						continue candidates;
+					}
+				}
+				for (DocIdIterator excluded : _excluded) {
+					int docId = excluded.docId() < candidate ? excluded.advance(candidate) : excluded.docId();
+					if (docId == candidate) {
+						candidate = _lead.nextDoc();
+						continue candidates;
+					}
+				}
+				break;
+			}
+			_docId = candidate;
+			return _docId;
+		}
+
+		@Override
+		long cost() {
+			return _lead.cost();
+		}
+	}
+
+	/**
+	 * The docIds of any of the iterators. Queries have a handful of clauses, so the next
+	 * docId is found by a scan rather than a heap.
+	 */
+	private static final class DisjunctionIterator extends DocIdIterator {
+		private final DocIdIterator[] _iterators;
+		private int _docId = -1;
+
+		DisjunctionIterator(List<DocIdIterator> iterators) {
+			_iterators = iterators.toArray(new DocIdIterator[iterators.size()]);
+		}
+
+		@Override
+		int docId() {
+			return _docId;
+		}
+
+		@Override
+		int nextDoc() {
+			for (DocIdIterator iterator : _iterators) {
+				if (iterator.docId() <= _docId) {
+					iterator.nextDoc();
+				}
+			}
+			return updateDocId();
+		}
+
+		@Override
+		int advance(int target) {
+			for (DocIdIterator iterator : _iterators) {
+				if (iterator.docId() < target) {
+					iterator.advance(target);
+				}
+			}
+			return updateDocId();
+		}
+
+		private int updateDocId() {
+			int docId = PostingCursor.NO_MORE_DOCS;
+			for (DocIdIterator iterator : _iterators) {
+				docId = Math.min(docId, iterator.docId());
+			}
+			_docId = docId;
+			return _docId;
+		}
+
+		@Override
+		long cost() {
+			long cost = 0;
+			for (DocIdIterator iterator : _iterators) {
+				cost += iterator.cost();
+			}
+			return cost;
+		}
+	}
+}
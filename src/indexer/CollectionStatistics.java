@@ -0,0 +1,174 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the scoring models need to know about the whole collection for a query: the
+ * corpus size calculateIdf divides by, the number and total length of the live
+ * documents, and the document frequency of every query term.
+ *
+ * A single index takes them from its IndexSnapshot. A sharded index adds up the
+ * statistics of its shards, and every shard scores with the sums, so its scores are
+ * the ones a single index of all the documents would give.
+ * @author Jun
+ *
+ */
+public final class CollectionStatistics {
+	private static final String SEPARATOR = ",";
+
+	private final int _corpusSize;
+	private final int _numberOfDocuments;
+	private final long _totalLength;
+
+	/**
+	 * the distinct query terms in query order
+	 */
+	private final LinkedHashMap<String, Integer> _documentFrequencies;
+
+	/**
+	 * @param corpusSize -1 if no index was trained yet
+	 * @param numberOfDocuments
+	 * @param totalLength
+	 * @param documentFrequencies of the distinct query terms in query order
+	 */
+	public CollectionStatistics(int corpusSize, int numberOfDocuments, long totalLength,
+			LinkedHashMap<String, Integer> documentFrequencies) {
+		_corpusSize = corpusSize;
+		_numberOfDocuments = numberOfDocuments;
+		_totalLength = totalLength;
+		_documentFrequencies = documentFrequencies;
+	}
+
+	/**
+	 * @param snapshot
+	 * @param terms the query terms, repeated or not
+	 * @return the statistics of the snapshot
+	 */
+	static CollectionStatistics of(IndexSnapshot snapshot, List<String> terms) {
+		LinkedHashMap<String, Integer> documentFrequencies = new LinkedHashMap<String, Integer>();
+		for (String term : terms) {
+			if (!documentFrequencies.containsKey(term)) {
+				documentFrequencies.put(term, snapshot.getDocumentFrequency(term));
+			}
+		}
+		return new CollectionStatistics(snapshot.getCorpusSize(), snapshot.getNumberOfDocuments(),
+				snapshot.getTotalLength(), documentFrequencies);
+	}
+
+	/**
+	 * @param shards the statistics of the shards for the same query
+	 * @return the statistics of all the shards together
+	 */
+	public static CollectionStatistics merge(List<CollectionStatistics> shards) {
+		int corpusSize = -1;
+		int numberOfDocuments = 0;
+		long totalLength = 0;
+		LinkedHashMap<String, Integer> documentFrequencies = new LinkedHashMap<String, Integer>();
+		for (CollectionStatistics shard : shards) {
+			if (shard._corpusSize >= 0) {
+				corpusSize = Math.max(0, corpusSize) + shard._corpusSize;
+			}
+			numberOfDocuments += shard._numberOfDocuments;
+			totalLength += shard._totalLength;
+			for (Map.Entry<String, Integer> termFrequency : shard._documentFrequencies.entrySet()) {
+				Integer documentFrequency = documentFrequencies.get(termFrequency.getKey());
+				documentFrequencies.put(termFrequency.getKey(), termFrequency.getValue().intValue()
+						+ (documentFrequency == null ? 0 : documentFrequency.intValue()));
+			}
+		}
+		return new CollectionStatistics(corpusSize, numberOfDocuments, totalLength, documentFrequencies);
+	}
+
+	public int getCorpusSize() {
+		return _corpusSize;
+	}
+
+	public int getNumberOfDocuments() {
+		return _numberOfDocuments;
+	}
+
+	public long getTotalLength() {
+		return _totalLength;
+	}
+
+	/**
+	 * @return the average length of the live documents, 0 for an empty collection
+	 */
+	public double getAverageDocumentLength() {
+		return _numberOfDocuments == 0 ? 0.0 : (_totalLength + 0.0) / (_numberOfDocuments + 0.0);
+	}
+
+	/**
+	 * @param term a query term
+	 * @return 0 for a term that is not in the query
+	 */
+	public int getDocumentFrequency(String term) {
+		Integer documentFrequency = _documentFrequencies.get(term);
+		return documentFrequency == null ? 0 : documentFrequency.intValue();
+	}
+
+	/**
+	 * the same as IndexSnapshot.calculateIdf, over the collection
+	 * @param term
+	 * @return
+	 */
+	public double calculateIdf(String term) {
+		if (_corpusSize == -1) {
+			return -1.0;
+		}
+
+		double idf = (_corpusSize + 0.0) / (getDocumentFrequency(term) + 0.0);
+		idf = Math.log(idf);
+		return idf;
+	}
+
+	/**
+	 * @return "corpusSize,documents,totalLength,df,df,..." with the document frequencies
+	 * 		   in query order, so that a query and its statistics fit in a url
+	 */
+	public String encode() {
+		StringBuilder text = new StringBuilder();
+		text.append(_corpusSize).append(SEPARATOR).append(_numberOfDocuments).append(SEPARATOR).append(_totalLength);
+		for (Integer documentFrequency : _documentFrequencies.values()) {
+			text.append(SEPARATOR).append(documentFrequency);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @param text written by encode
+	 * @param terms the query terms the statistics were computed for
+	 * @return
+	 * @throws IllegalArgumentException if the text does not fit the terms
+	 */
+	public static CollectionStatistics decode(String text, List<String> terms) {
+		List<String> distinctTerms = new ArrayList<String>(new LinkedHashSet<String>(terms));
+		String[] values = text.split(SEPARATOR, -1);
+		if (values.length != 3 + distinctTerms.size()) {
+			throw new IllegalArgumentException("expected the statistics of " + distinctTerms.size() + " terms: " + text);
+		}
+
+		try {
+			LinkedHashMap<String, Integer> documentFrequencies = new LinkedHashMap<String, Integer>();
+			for (int i = 0; i < distinctTerms.size(); i++) {
+				documentFrequencies.put(distinctTerms.get(i), Integer.valueOf(values[3 + i]));
+			}
+			return new CollectionStatistics(Integer.parseInt(values[0]), Integer.parseInt(values[1]),
+					Long.parseLong(values[2]), documentFrequencies);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("malformed statistics: " + text, e);
+		}
+	}
+}
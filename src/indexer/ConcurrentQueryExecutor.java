@@ -0,0 +1,86 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs queries through IndexerMain on a pool of threads.
+ *
+ * Queries only read the published IndexSnapshot, so they never wait for each other
+ * or for a VectorSpace that is being retrained.
+ * @author Jun
+ *
+ */
+public class ConcurrentQueryExecutor {
+	private final IndexerMain _indexer;
+	private final ExecutorService _executor;
+
+	/**
+	 * @param indexer
+	 * @param numberOfThreads
+	 */
+	public ConcurrentQueryExecutor(IndexerMain indexer, int numberOfThreads) {
+		_indexer = indexer;
+		_executor = Executors.newFixedThreadPool(Math.max(1, numberOfThreads));
+	}
+
+	/**
+	 * queue a query
+	 * @param query
+	 * @param k
+	 * @return the future result of IndexerMain.retrieveTopKDocuments
+	 */
+	public Future<ArrayList<DocumentWeightPair>> submit(final String query, final int k) {
+		return _executor.submit(new Callable<ArrayList<DocumentWeightPair>>() {
+			@Override
+			public ArrayList<DocumentWeightPair> call() {
+				return _indexer.retrieveTopKDocuments(query, k);
+			}
+		});
+	}
+
+	/**
+	 * run a batch of queries concurrently and wait for all of them
+	 * @param queries
+	 * @param k
+	 * @return the results, in the order of the queries
+	 * @throws InterruptedException
+	 */
+	public List<ArrayList<DocumentWeightPair>> retrieveTopKDocuments(List<String> queries, int k)
+			throws InterruptedException {
+		List<Future<ArrayList<DocumentWeightPair>>> futures = new ArrayList<Future<ArrayList<DocumentWeightPair>>>();
+		for (String query : queries) {
+			futures.add(submit(query, k));
+		}
+
+		List<ArrayList<DocumentWeightPair>> results = new ArrayList<ArrayList<DocumentWeightPair>>();
+		for (Future<ArrayList<DocumentWeightPair>> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("query failed", e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * stop accepting queries; the queued ones still run
+	 */
+	public void shutdown() {
+		_executor.shutdown();
+	}
+}
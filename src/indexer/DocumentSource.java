@@ -0,0 +1,32 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.List;
+
+/**
+ * Where a DocumentVector loaded without its term frequencies reads them back from:
+ * the lines of a text index, see DocumentStore, or the document table of a binary one,
+ * see BinaryIndexFile.
+ * @author Jun
+ *
+ */
+interface DocumentSource {
+	/**
+	 * @return the dictionary of the index the documents belong to
+	 */
+	TermDictionary getTermDictionary();
+
+	/**
+	 * @param offset where the document is in the index file
+	 * @param length the bytes of the document
+	 * @return the term frequencies of the document
+	 */
+	List<TermFrequencyPerDocument> readTermFrequencies(long offset, int length);
+}
@@ -0,0 +1,173 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The document vector section of a text index, left on disk.
+ *
+ * Loading a document only keeps its docId, name and url, the length and the norm the
+ * scoring models need, and where its line is in the file. The term frequencies are read
+ * back from the file the first time something asks the DocumentVector for them, which
+ * queries by the raw weights never do, so a serving index holds little more than its
+ * postings and urls.
+ *
+ * Once the section is read, it is memory mapped in chunks that start at a line, so a
+ * document is read back without a system call, and without a channel that an
+ * interrupted query thread could close. The mapping outlives the file: saving the index
+ * replaces the file by a rename, and the store keeps reading the one it was loaded from.
+ * Terms of a document that are not in the TermDictionary, i.e. have no postings, are
+ * left out when its line is read back.
+ * @author Jun
+ *
+ */
+final class DocumentStore implements DocumentSource {
+	private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+	private final Charset _charset;
+	private final TermDictionary _termDictionary;
+
+	/**
+	 * where every chunk starts in the file, and where the last one ends
+	 */
+	private long[] _chunkStarts = new long[2];
+	private int _numberOfChunks = 0;
+	private ByteBuffer[] _chunks = null;
+
+	/**
+	 * @param charset the charset of the index file
+	 * @param termDictionary the dictionary of the index the documents belong to
+	 */
+	DocumentStore(Charset charset, TermDictionary termDictionary) {
+		_charset = charset;
+		_termDictionary = termDictionary;
+	}
+
+	@Override
+	public TermDictionary getTermDictionary() {
+		return _termDictionary;
+	}
+
+	/**
+	 * @param line a line of the document vector section, see DocumentVector.toString
+	 * @param offset where the line starts in the file
+	 * @param lineLength the bytes of the line with its line break
+	 * @return the document without its term frequencies, or null for a malformed line
+	 */
+	DocumentVector readDocument(String line, long offset, int lineLength) {
+		addLine(offset, lineLength);
+		line = line.trim();
+		int nameStart = line.indexOf(DocumentVector.SEPARATOR);
+		int urlStart = nameStart < 0 ? -1 : line.indexOf(DocumentVector.SEPARATOR, nameStart + DocumentVector.SEPARATOR.length());
+		if (urlStart < 0) {
+			return null;
+		}
+		int urlEnd = line.indexOf(DocumentVector.SEPARATOR, urlStart + DocumentVector.SEPARATOR.length());
+		if (urlEnd < 0) {
+			urlEnd = line.length();
+		}
+		int docId = Integer.parseInt(line.substring(0, nameStart));
+		String documentName = line.substring(nameStart + DocumentVector.SEPARATOR.length(), urlStart);
+		String url = line.substring(urlStart + DocumentVector.SEPARATOR.length(), urlEnd);
+
+		// the length and the norm from the frequencies, without building the terms
+		int length = 0;
+		double squaredNorm = 0.0;
+		int termStart = urlEnd + DocumentVector.SEPARATOR.length();
+		while (termStart < line.length()) {
+			int termEnd = line.indexOf(DocumentVector.SEPARATOR, termStart);
+			if (termEnd < 0) {
+				termEnd = line.length();
+			}
+			// like readTermFrequencies, a term and its frequency are split by exactly one space
+			int space = line.indexOf(' ', termStart);
+			int secondSpace = space < 0 ? -1 : line.indexOf(' ', space + 1);
+			if (space >= 0 && space < termEnd && (secondSpace < 0 || secondSpace >= termEnd)) {
+				int frequency = parseFrequency(line, space + 1, termEnd);
+				if (frequency > 0) {
+					length += frequency;
+					double wtf = 1.0 + Math.log(frequency + 0.0);
+					squaredNorm += wtf * wtf;
+				}
+			}
+			termStart = termEnd + DocumentVector.SEPARATOR.length();
+		}
+		return new DocumentVector(documentName, url, docId, length, Math.sqrt(squaredNorm), this, offset, lineLength);
+	}
+
+	/**
+	 * start a new chunk at the line if the current one would get too large
+	 */
+	private void addLine(long offset, int lineLength) {
+		if (_numberOfChunks == 0 || offset + lineLength - _chunkStarts[_numberOfChunks - 1] > MAX_CHUNK_SIZE) {
+			if (_numberOfChunks + 1 >= _chunkStarts.length) {
+				_chunkStarts = Arrays.copyOf(_chunkStarts, 2 * _chunkStarts.length);
+			}
+			_chunkStarts[_numberOfChunks++] = offset;
+		}
+		_chunkStarts[_numberOfChunks] = offset + lineLength;
+	}
+
+	/**
+	 * map the lines added by readDocument, before any of their terms are read
+	 * @param channel the index file
+	 * @throws IOException
+	 */
+	void map(FileChannel channel) throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[_numberOfChunks];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, _chunkStarts[i], _chunkStarts[i + 1] - _chunkStarts[i]);
+		}
+		_chunks = chunks;
+	}
+
+	/**
+	 * @return the non negative integer between from and to, or -1 if there is none
+	 */
+	private static int parseFrequency(String line, int from, int to) {
+		if (from >= to) {
+			return -1;
+		}
+		int frequency = 0;
+		for (int i = from; i < to; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			frequency = frequency * 10 + (c - '0');
+		}
+		return frequency;
+	}
+
+	/**
+	 * @param offset
+	 * @param lineLength
+	 * @return the term frequencies of the document whose line is there
+	 */
+	@Override
+	public List<TermFrequencyPerDocument> readTermFrequencies(long offset, int lineLength) {
+		int chunk = Arrays.binarySearch(_chunkStarts, 0, _numberOfChunks, offset);
+		if (chunk < 0) {
+			chunk = -chunk - 2;
+		}
+		// a duplicate, since the position of a shared buffer is not thread safe
+		ByteBuffer buffer = _chunks[chunk].duplicate();
+		buffer.position((int) (offset - _chunkStarts[chunk]));
+		byte[] bytes = new byte[lineLength];
+		buffer.get(bytes);
+		String line = new String(bytes, _charset).trim();
+		return DocumentVector.readTermFrequencies(line.split(DocumentVector.SEPARATOR));
+	}
+}
@@ -8,6 +8,8 @@
 
 package indexer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,21 +25,49 @@ public class DocumentVector {
 	/**
 	 * The smoothing term used in ntf
 	 */
-	private static final double ALPHA = 0.4;
+	static final double ALPHA = 0.4;
 	
 	/**
-	 * Using a hashmap to save term frequency to increase efficiency
+	 * The term frequencies, keyed by the termIds of _termDictionary.
+	 * _termIds is sorted so that a term is found by binary search.
+	 *
+	 * A document of a DocumentSource reads them from the index file the first time they
+	 * are needed. _termIds is set after _frequencies, so whoever sees it sees both.
 	 */
-	private HashMap <String, Integer> _termFrequencyMap = null;
+	private TermDictionary _termDictionary = null;
+	private volatile int[] _termIds = null;
+	private int[] _frequencies = null;
+	private DocumentSource _documentSource = null;
+	private long _offset = 0;
+	private int _byteLength = 0;
+	
+	/**
+	 * Precomputed for the scoring models: the number of terms in the document counted with
+	 * their frequencies, and the euclidean norm of its wtf vector
+	 */
+	private int _length = 0;
+	private double _norm = 0.0;
 	
 	private String _documentName = null;
 	private String _url = null;
 	private int _docId = 0;
 	
-	private HashMap <String, Integer> _maxTermFrequencyInCorpus = null;
+	/**
+	 * the highest frequency of every termId in the corpus, shared by all the documents
+	 */
+	private int[] _maxTermFrequencyInCorpus = null;
 	
 	
 	public static DocumentVector readDocumentVectorLine(String line) {
+		return readDocumentVectorLine(line, new TermDictionary());
+	}
+	
+	/**
+	 * @param line
+	 * @param termDictionary the dictionary of the index the document belongs to
+	 * @return
+	 */
+	static DocumentVector readDocumentVectorLine(String line, TermDictionary termDictionary) {
 		if (line == null || line.isEmpty()) {
 			return null;
 		}
@@ -52,7 +82,17 @@ public class DocumentVector {
 		int docId = Integer.parseInt(tokens[0]);
 		String documentName = tokens[1];
 		String url = tokens[2];
-		HashMap <String, Integer> termFrequencyMap = new HashMap <String, Integer>();
+		DocumentVector documentVector = new DocumentVector(documentName, url, readTermFrequencies(tokens), termDictionary);
+		documentVector.setDocId(docId);
+		return documentVector;
+	}
+	
+	/**
+	 * @param tokens a document vector line split at SEPARATOR
+	 * @return the term frequencies after the docId, the name and the url
+	 */
+	static List <TermFrequencyPerDocument> readTermFrequencies(String[] tokens) {
+		List <TermFrequencyPerDocument> termFrequencies = new ArrayList <TermFrequencyPerDocument>();
 		for (int i = 3; i < tokens.length; i++) {
 			String[] termFreq = tokens[i].split(" ");
 			if (termFreq == null || termFreq.length != 2) {
@@ -60,30 +100,74 @@ public class DocumentVector {
 			}
 			String term = termFreq[0];
 			int freq = Integer.parseInt(termFreq[1]);
-			termFrequencyMap.put(term, freq);
+			termFrequencies.add(new TermFrequencyPerDocument(term, freq));
 		}
-		return new DocumentVector(docId, documentName, url, termFrequencyMap);
+		return termFrequencies;
 	}
 	
 	public DocumentVector(String documentName, 
 						  String url,
 						  List <TermFrequencyPerDocument> termFrequencies) {
-		initializeDocumentVector(documentName, url, termFrequencies);
+		this(documentName, url, termFrequencies, new TermDictionary());
 	}
 	
-	private DocumentVector(int docId,
-			  	           String documentName, 
-			  			   String url,
-			  		       HashMap <String, Integer> termFrequencyMap) {
-		setDocId(docId);
-		setDocumentName(documentName);
-		setUrl(url);
-		setTermFrequencyMap(termFrequencyMap);
-		
+	/**
+	 * @param documentName
+	 * @param url
+	 * @param termFrequencies
+	 * @param termDictionary the dictionary of the index the document belongs to.
+	 * 		  New terms are added to it in the order of termFrequencies
+	 */
+	DocumentVector(String documentName,
+				   String url,
+				   List <TermFrequencyPerDocument> termFrequencies,
+				   TermDictionary termDictionary) {
+		initializeDocumentVector(documentName, url, termFrequencies, termDictionary);
 	}
-	
-	private void setTermFrequencyMap(HashMap<String, Integer> termFrequencyMap) {
-		_termFrequencyMap = termFrequencyMap;
+
+	/**
+	 * a document whose term frequencies stay in the index file until they are needed
+	 * @param documentName
+	 * @param url
+	 * @param docId
+	 * @param length
+	 * @param norm
+	 * @param documentSource
+	 * @param offset where the document is in the file
+	 * @param byteLength the bytes of the document, see DocumentSource.readTermFrequencies
+	 */
+	DocumentVector(String documentName, String url, int docId, int length, double norm,
+			DocumentSource documentSource, long offset, int byteLength) {
+		_documentName = documentName;
+		_url = url;
+		_docId = docId;
+		_length = length;
+		_norm = norm;
+		_termDictionary = documentSource.getTermDictionary();
+		_documentSource = documentSource;
+		_offset = offset;
+		_byteLength = byteLength;
+	}
+
+	/**
+	 * the same document under another docId, sharing its term frequencies
+	 * @param documentVector
+	 * @param docId
+	 */
+	DocumentVector(DocumentVector documentVector, int docId) {
+		_termDictionary = documentVector._termDictionary;
+		_documentSource = documentVector._documentSource;
+		_offset = documentVector._offset;
+		_byteLength = documentVector._byteLength;
+		int[] termIds = documentVector._termIds;
+		_frequencies = documentVector._frequencies;
+		_termIds = termIds;
+		_length = documentVector._length;
+		_norm = documentVector._norm;
+		_documentName = documentVector._documentName;
+		_url = documentVector._url;
+		_maxTermFrequencyInCorpus = documentVector._maxTermFrequencyInCorpus;
+		_docId = docId;
 	}
 
 	private void setUrl(String url) {
@@ -95,11 +179,30 @@ public class DocumentVector {
 	}
 
 	public void setMaxTermFrequencyInCorpus(HashMap <String, Integer> maxTermFrequencyInCorpus) {
+		if (maxTermFrequencyInCorpus == null) {
+			_maxTermFrequencyInCorpus = null;
+			return;
+		}
+		
+		int[] maxTermFrequency = new int[_termDictionary.size()];
+		for (Map.Entry <String, Integer> termFrequency : maxTermFrequencyInCorpus.entrySet()) {
+			int termId = _termDictionary.getTermId(termFrequency.getKey());
+			if (termId >= 0) {
+				maxTermFrequency[termId] = termFrequency.getValue().intValue();
+			}
+		}
+		_maxTermFrequencyInCorpus = maxTermFrequency;
+	}
+	
+	/**
+	 * @param maxTermFrequencyInCorpus indexed by termId
+	 */
+	void setMaxTermFrequencies(int[] maxTermFrequencyInCorpus) {
 		_maxTermFrequencyInCorpus = maxTermFrequencyInCorpus;
 	}
 	
 	public boolean hasTerm(String term) {
-		return _termFrequencyMap.containsKey(term);
+		return indexOf(term) >= 0;
 	}
 
 	/**
@@ -112,13 +215,11 @@ public class DocumentVector {
 			return -1.0;
 		} 
 		
-		int tf = _termFrequencyMap.get(term).intValue();
-		int maxTf = _maxTermFrequencyInCorpus.get(term).intValue();
-		
-		double ntf = (tf + 0.0) / (maxTf + 0.0);
-		ntf = ntf * (1 - ALPHA);
-		ntf += ALPHA;
-		return ntf;
+		int index = indexOf(term);
+		if (index < 0) {
+			return 0.0;
+		}
+		return getNormalizedTermFrequencyAt(index);
 	}
 		
 	/**
@@ -127,14 +228,50 @@ public class DocumentVector {
 	 * @return
 	 */
 	public double getWeightedTermFrequency(String term) {
-		double ans = 0.0;
-		if (!_termFrequencyMap.containsKey(term)) {
-			return ans;
+		int index = indexOf(term);
+		if (index < 0) {
+			return 0.0;
 		}
+		return getWeightedTermFrequencyAt(index);
+	}
+	
+	/**
+	 * @param index between 0 and getNumberOfTerms() - 1
+	 * @return the ntf of the index-th term of the document
+	 */
+	double getNormalizedTermFrequencyAt(int index) {
+		int[] termIds = getTermIds();
+		int tf = _frequencies[index];
+		int maxTf = _maxTermFrequencyInCorpus[termIds[index]];
 		
-		int tf = _termFrequencyMap.get(term).intValue();
-		ans = 1.0 + Math.log(tf + 0.0);
-		return ans;
+		double ntf = (tf + 0.0) / (maxTf + 0.0);
+		ntf = ntf * (1 - ALPHA);
+		ntf += ALPHA;
+		return ntf;
+	}
+	
+	/**
+	 * @param index between 0 and getNumberOfTerms() - 1
+	 * @return the wtf of the index-th term of the document
+	 */
+	double getWeightedTermFrequencyAt(int index) {
+		getTermIds();
+		int tf = _frequencies[index];
+		return 1.0 + Math.log(tf + 0.0);
+	}
+	
+	/**
+	 * @return the number of terms in the document, a term counting once per occurrence
+	 */
+	public int getLength() {
+		return _length;
+	}
+	
+	/**
+	 * @return the length of the wtf vector of the document, for cosine normalization
+	 */
+	public double getNorm() {
+		return _norm;
 	}
 	
 	public String getDocumentName() {
@@ -151,21 +288,132 @@ public class DocumentVector {
 	 */
 	private void initializeDocumentVector(String documentName,
 			String url,
-			List<TermFrequencyPerDocument> termFrequencies) {
-		_documentName = documentName;
-		_url = url;
-		initializeTermFrequencyMap(termFrequencies);
+			List<TermFrequencyPerDocument> termFrequencies,
+			TermDictionary termDictionary) {
+		setDocumentName(documentName);
+		setUrl(url);
+		initializeTermFrequencies(termFrequencies, termDictionary);
 	}
 
 	/**
 	 * @param termFrequencies
+	 * @param termDictionary
+	 */
+	private void initializeTermFrequencies(
+			List<TermFrequencyPerDocument> termFrequencies,
+			TermDictionary termDictionary) {
+		_termDictionary = termDictionary;
+		setTermFrequencies(termFrequencies, true);
+		
+		double squaredNorm = 0.0;
+		for (int i = 0; i < _frequencies.length; i++) {
+			_length += _frequencies[i];
+			double wtf = getWeightedTermFrequencyAt(i);
+			squaredNorm += wtf * wtf;
+		}
+		_norm = Math.sqrt(squaredNorm);
+	}
+	
+	/**
+	 * @param termFrequencies
+	 * @param isAddingTerms whether terms missing from _termDictionary are added to it,
+	 * 		  otherwise they are left out
+	 */
+	private void setTermFrequencies(List<TermFrequencyPerDocument> termFrequencies, boolean isAddingTerms) {
+		// pack (termId, position) so that sorting by termId keeps the frequency at hand
+		long[] keys = new long[termFrequencies.size()];
+		int numberOfKeys = 0;
+		for (int i = 0; i < keys.length; i++) {
+			String term = termFrequencies.get(i).getText();
+			int termId = isAddingTerms ? _termDictionary.add(term) : _termDictionary.getTermId(term);
+			if (termId >= 0) {
+				keys[numberOfKeys++] = ((long) termId << 32) | i;
+			}
+		}
+		Arrays.sort(keys, 0, numberOfKeys);
+		
+		int size = 0;
+		int[] termIds = new int[numberOfKeys];
+		int[] frequencies = new int[numberOfKeys];
+		for (int k = 0; k < numberOfKeys; k++) {
+			int termId = (int) (keys[k] >>> 32);
+			int frequency = termFrequencies.get((int) keys[k]).getFrequency();
+			if (size > 0 && termIds[size - 1] == termId) {
+				// a repeated term, the last frequency wins as in a map
+				frequencies[size - 1] = frequency;
+				continue;
+			}
+			termIds[size] = termId;
+			frequencies[size] = frequency;
+			size++;
+		}
+		if (size < numberOfKeys) {
+			termIds = Arrays.copyOf(termIds, size);
+			frequencies = Arrays.copyOf(frequencies, size);
+		}
+		_frequencies = frequencies;
+		_termIds = termIds;
+	}
+	
+	/**
+	 * @return _termIds, read from the DocumentSource first if need be
+	 */
+	private int[] getTermIds() {
+		int[] termIds = _termIds;
+		if (termIds == null) {
+			// a race only reads the same document twice
+			setTermFrequencies(_documentSource.readTermFrequencies(_offset, _byteLength), false);
+			termIds = _termIds;
+		}
+		return termIds;
+	}
+	
+	/**
+	 * @return the position of the term in _termIds, or -1 if the document does not have it
 	 */
-	private void initializeTermFrequencyMap(
-			List<TermFrequencyPerDocument> termFrequencies) {
-		_termFrequencyMap = new HashMap<String, Integer>();
-		for (TermFrequencyPerDocument tf : termFrequencies) {
-			_termFrequencyMap.put(tf.getText(), tf.getFrequency());
+	private int indexOf(String term) {
+		int termId = _termDictionary.getTermId(term);
+		if (termId < 0) {
+			return -1;
 		}
+		int index = Arrays.binarySearch(getTermIds(), termId);
+		return index < 0 ? -1 : index;
+	}
+	
+	TermDictionary getTermDictionary() {
+		return _termDictionary;
+	}
+	
+	/**
+	 * @return the number of distinct terms in the document
+	 */
+	int getNumberOfTerms() {
+		return getTermIds().length;
+	}
+	
+	/**
+	 * @param index between 0 and getNumberOfTerms() - 1, in termId order
+	 * @return
+	 */
+	int getTermIdAt(int index) {
+		return getTermIds()[index];
+	}
+	
+	/**
+	 * @param index between 0 and getNumberOfTerms() - 1, in termId order
+	 * @return
+	 */
+	int getFrequencyAt(int index) {
+		getTermIds();
+		return _frequencies[index];
+	}
+
+	/**
+	 * @param termId
+	 * @return the index of the term for the get...At methods, negative if the document does not have it
+	 */
+	int indexOf(int termId) {
+		return Arrays.binarySearch(getTermIds(), termId);
 	}
 
 	public int getDocId() {
@@ -184,11 +432,12 @@ public class DocumentVector {
 		buffer.append(_documentName);
 		buffer.append(SEPARATOR);
 		buffer.append(_url);
-		for (Map.Entry<String, Integer> termFrequency : _termFrequencyMap.entrySet()) {
+		int[] termIds = getTermIds();
+		for (int i = 0; i < termIds.length; i++) {
 			buffer.append(SEPARATOR);
-			buffer.append(termFrequency.getKey());
+			buffer.append(_termDictionary.getTerm(termIds[i]));
 			buffer.append(" ");
-			buffer.append(termFrequency.getValue().intValue());
+			buffer.append(_frequencies[i]);
 		}
 		return buffer.toString();
 	}
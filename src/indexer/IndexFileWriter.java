@@ -0,0 +1,207 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes an index file so that a crash never leaves a half written index behind.
+ *
+ * The content goes to a temporary file next to the target. commit forces it to disk
+ * and renames it over the target in one step, then forces the directory so that the
+ * rename survives too. Until then the previous index stays in place, and closing an
+ * uncommitted writer deletes the temporary file.
+ *
+ * The text is appended like to a StringBuilder, which is reused, and encoded into a
+ * large direct buffer that is written to the channel when full, so no String is built
+ * per posting. BinaryIndexFile writes its own bytes through getChannel instead.
+ *
+ * Every committed file adds its size to the save.bytes counter and its time to the
+ * save.file histogram of Metrics, which report the save.bytes.per.second throughput.
+ * @author Jun
+ *
+ */
+final class IndexFileWriter implements Closeable {
+	private static final LongAdder SAVED_BYTES = Metrics.getObject().getCounter("save.bytes");
+	private static final LatencyHistogram SAVING = Metrics.getObject().getHistogram("save.file");
+	static {
+		Metrics.getObject().addThroughput("save.bytes.per.second", "save.bytes", "save.file");
+	}
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int MAX_PENDING_CHARS = 1 << 14;
+
+	private final Path _target;
+	private final Path _temporary;
+	private final FileChannel _channel;
+	private final CharsetEncoder _encoder;
+	private final StringBuilder _pending = new StringBuilder();
+	private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final long _startNanos = System.nanoTime();
+	private long _bytesWritten = 0;
+	private long _elapsedNanos = 0;
+	private boolean _isCommitted = false;
+
+	/**
+	 * @param filename the index file to replace once the writer commits
+	 * @throws IOException
+	 */
+	IndexFileWriter(String filename) throws IOException {
+		_target = Paths.get(filename).toAbsolutePath();
+		// unlike Files.createTempFile, this keeps the permissions an index file gets by default
+		_temporary = _target.resolveSibling(_target.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+		_channel = FileChannel.open(_temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		// the text index is read back with a FileReader, so it keeps the default charset
+		_encoder = Charset.defaultCharset().newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * @return the channel of the temporary file, for writers of binary content
+	 */
+	FileChannel getChannel() {
+		return _channel;
+	}
+
+	IndexFileWriter append(CharSequence text) throws IOException {
+		_pending.append(text);
+		return flushIfFull();
+	}
+
+	IndexFileWriter append(char c) throws IOException {
+		_pending.append(c);
+		return flushIfFull();
+	}
+
+	IndexFileWriter append(int value) throws IOException {
+		_pending.append(value);
+		return flushIfFull();
+	}
+
+	IndexFileWriter append(double value) throws IOException {
+		_pending.append(value);
+		return flushIfFull();
+	}
+
+	IndexFileWriter newLine() throws IOException {
+		return append(System.lineSeparator());
+	}
+
+	private IndexFileWriter flushIfFull() throws IOException {
+		if (_pending.length() >= MAX_PENDING_CHARS) {
+			encodePending();
+		}
+		return this;
+	}
+
+	private void encodePending() throws IOException {
+		CharBuffer chars = CharBuffer.wrap(_pending);
+		while (true) {
+			CoderResult result = _encoder.encode(chars, _buffer, false);
+			if (result.isOverflow()) {
+				writeBuffer();
+			} else {
+				break;
+			}
+		}
+		// a surrogate pair split at the end stays for the next call
+		_pending.delete(0, _pending.length() - chars.remaining());
+	}
+
+	private void writeBuffer() throws IOException {
+		_buffer.flip();
+		while (_buffer.hasRemaining()) {
+			_bytesWritten += _channel.write(_buffer);
+		}
+		_buffer.clear();
+	}
+
+	/**
+	 * write out the text, force the file to disk and move it over the target
+	 * @throws IOException
+	 */
+	void commit() throws IOException {
+		CharBuffer rest = CharBuffer.wrap(_pending);
+		while (_encoder.encode(rest, _buffer, true).isOverflow()) {
+			writeBuffer();
+		}
+		while (_encoder.flush(_buffer).isOverflow()) {
+			writeBuffer();
+		}
+		_pending.setLength(0);
+		writeBuffer();
+
+		_bytesWritten = Math.max(_bytesWritten, _channel.size());
+		_channel.force(true);
+		_channel.close();
+		try {
+			Files.move(_temporary, _target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(_temporary, _target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		_isCommitted = true;
+		forceDirectory(_target.getParent());
+		_elapsedNanos = System.nanoTime() - _startNanos;
+		SAVED_BYTES.add(_bytesWritten);
+		SAVING.record(_elapsedNanos);
+	}
+
+	/**
+	 * not every platform can open a directory, and the file is in place either way
+	 */
+	private static void forceDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			return;
+		}
+	}
+
+	/**
+	 * @return the size of the written file
+	 */
+	long getBytesWritten() {
+		return _bytesWritten;
+	}
+
+	/**
+	 * @return the time from opening the writer until the file was in place
+	 */
+	long getElapsedNanos() {
+		return _elapsedNanos;
+	}
+
+	/**
+	 * drop the temporary file unless the writer has committed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (_isCommitted) {
+			return;
+		}
+		_channel.close();
+		Files.deleteIfExists(_temporary);
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * An immutable part of an index: the document vectors of a contiguous range of docIds,
+ * starting at getBaseDocId, together with the postings of those documents.
+ *
+ * A training builds the index as one segment, and every incremental update adds a small
+ * one. Segments are ordered by docId, so the postings of a term in a later segment always
+ * come after the ones in an earlier segment. Only the terms that occur in the segment
+ * have postings, kept in termId order, either on the heap or in OffHeapPostings.
+ * @author Jun
+ *
+ */
+final class IndexSegment {
+	private final int _baseDocId;
+	private final List<DocumentVector> _documentVectors;
+	private final int[] _termIds;
+	/**
+	 * null when the postings are off the heap
+	 */
+	private final PostingList[] _postingLists;
+	private final OffHeapPostings _offHeapPostings;
+	/**
+	 * the sum of the lengths of all the documents, deleted or not
+	 */
+	private final long _totalLength;
+
+	/**
+	 * @param baseDocId the docId of the first document
+	 * @param documentVectors with the docIds from baseDocId on, in order
+	 * @param termIds increasing
+	 * @param postingLists the sorted postings of each of the termIds
+	 */
+	IndexSegment(int baseDocId, List<DocumentVector> documentVectors, int[] termIds, PostingList[] postingLists) {
+		this(baseDocId, documentVectors, termIds, postingLists, getTotalLength(documentVectors));
+	}
+
+	private IndexSegment(int baseDocId, List<DocumentVector> documentVectors, int[] termIds,
+			PostingList[] postingLists, long totalLength) {
+		this(baseDocId, documentVectors, termIds, postingLists, null, totalLength);
+	}
+
+	private IndexSegment(int baseDocId, List<DocumentVector> documentVectors, int[] termIds,
+			PostingList[] postingLists, OffHeapPostings offHeapPostings, long totalLength) {
+		_baseDocId = baseDocId;
+		_documentVectors = Collections.unmodifiableList(documentVectors);
+		_termIds = termIds;
+		_postingLists = postingLists;
+		_offHeapPostings = offHeapPostings;
+		_totalLength = totalLength;
+	}
+
+	private static long getTotalLength(List<DocumentVector> documentVectors) {
+		long totalLength = 0;
+		for (DocumentVector documentVector : documentVectors) {
+			totalLength += documentVector.getLength();
+		}
+		return totalLength;
+	}
+
+	/**
+	 * @param baseDocId
+	 * @param documentVectors
+	 * @param postingLists indexed by termId, null for the terms that are not in the segment
+	 * @return
+	 */
+	static IndexSegment create(int baseDocId, List<DocumentVector> documentVectors, List<PostingList> postingLists) {
+		int numberOfTerms = 0;
+		for (PostingList postings : postingLists) {
+			if (postings != null) {
+				numberOfTerms++;
+			}
+		}
+		int[] termIds = new int[numberOfTerms];
+		PostingList[] lists = new PostingList[numberOfTerms];
+		int index = 0;
+		for (int termId = 0; termId < postingLists.size(); termId++) {
+			if (postingLists.get(termId) != null) {
+				termIds[index] = termId;
+				lists[index] = postingLists.get(termId);
+				index++;
+			}
+		}
+		return new IndexSegment(baseDocId, documentVectors, termIds, lists);
+	}
+
+	/**
+	 * @param baseDocId
+	 * @param documentVectors
+	 * @param postingLists of the terms in the segment, keyed by termId
+	 * @return
+	 */
+	static IndexSegment create(int baseDocId, List<DocumentVector> documentVectors,
+			SortedMap<Integer, PostingList> postingLists) {
+		int[] termIds = new int[postingLists.size()];
+		PostingList[] lists = new PostingList[postingLists.size()];
+		int index = 0;
+		for (Map.Entry<Integer, PostingList> postings : postingLists.entrySet()) {
+			termIds[index] = postings.getKey().intValue();
+			lists[index] = postings.getValue();
+			index++;
+		}
+		return new IndexSegment(baseDocId, documentVectors, termIds, lists);
+	}
+
+	int getBaseDocId() {
+		return _baseDocId;
+	}
+
+	/**
+	 * @return one past the last docId of the segment
+	 */
+	int getEndDocId() {
+		return _baseDocId + _documentVectors.size();
+	}
+
+	int getNumberOfDocuments() {
+		return _documentVectors.size();
+	}
+
+	long getTotalLength() {
+		return _totalLength;
+	}
+
+	List<DocumentVector> getDocumentVectors() {
+		return _documentVectors;
+	}
+
+	DocumentVector getDocumentVector(int docId) {
+		return _documentVectors.get(docId - _baseDocId);
+	}
+
+	/**
+	 * @return the number of terms with postings in the segment
+	 */
+	int getNumberOfTerms() {
+		return _termIds.length;
+	}
+
+	/**
+	 * @param index between 0 and getNumberOfTerms() - 1, in termId order
+	 * @return
+	 */
+	int getTermIdAt(int index) {
+		return _termIds[index];
+	}
+
+	/**
+	 * @param index between 0 and getNumberOfTerms() - 1, in termId order
+	 * @return
+	 */
+	PostingList getPostingListAt(int index) {
+		return _offHeapPostings != null ? _offHeapPostings.get(index) : _postingLists[index];
+	}
+
+	/**
+	 * @param termId
+	 * @return the index of the term for getTermIdAt and getPostingListAt,
+	 * 		   negative if no document of the segment contains it
+	 */
+	int indexOf(int termId) {
+		return Arrays.binarySearch(_termIds, termId);
+	}
+
+	/**
+	 * @param termId
+	 * @return null if no document of the segment contains the term
+	 */
+	PostingList getPostingList(int termId) {
+		int index = indexOf(termId);
+		return index < 0 ? null : getPostingListAt(index);
+	}
+
+	boolean isOffHeap() {
+		return _offHeapPostings != null;
+	}
+
+	/**
+	 * @return a copy of the segment with its postings in OffHeapPostings, this segment if
+	 * 		   they already are
+	 */
+	IndexSegment toOffHeap() {
+		if (_offHeapPostings != null) {
+			return this;
+		}
+		return new IndexSegment(_baseDocId, _documentVectors, _termIds, null, OffHeapPostings.create(_postingLists),
+				_totalLength);
+	}
+
+	/**
+	 * @return the bytes of the postings that are off the heap
+	 */
+	long getOffHeapSizeInBytes() {
+		return _offHeapPostings == null ? 0 : _offHeapPostings.getSizeInBytes();
+	}
+
+	/**
+	 * @param replacements the new postings, indexed like getTermIdAt, null to keep the old ones
+	 * @return a copy of the segment with some of its posting lists replaced
+	 */
+	IndexSegment withPostingLists(PostingList[] replacements) {
+		PostingList[] postingLists = new PostingList[_termIds.length];
+		for (int i = 0; i < postingLists.length; i++) {
+			postingLists[i] = replacements[i] != null ? replacements[i] : getPostingListAt(i);
+		}
+		IndexSegment segment = new IndexSegment(_baseDocId, _documentVectors, _termIds, postingLists, _totalLength);
+		// the buffers are immutable, so the copy gets buffers of its own
+		return _offHeapPostings != null ? segment.toOffHeap() : segment;
+	}
+
+	/**
+	 * @return the documents of the segment as a list indexed by docId, for PostingList.sortByWeight
+	 */
+	List<DocumentVector> documentsByDocId() {
+		return new AbstractList<DocumentVector>() {
+			@Override
+			public DocumentVector get(int docId) {
+				return getDocumentVector(docId);
+			}
+
+			@Override
+			public int size() {
+				return getEndDocId();
+			}
+		};
+	}
+
+	/**
+	 * Merge consecutive segments into one, leaving out the deleted documents.
+	 * The documents that are kept get the docIds from baseDocId on, in their old order.
+	 * @param segments in docId order
+	 * @param liveDocs
+	 * @param baseDocId at most the base docId of the first segment
+	 * @param weightBits the PostingCodec weight bits of the new postings, 0 to not compress them
+	 * @return
+	 */
+	static IndexSegment merge(List<IndexSegment> segments, BitSet liveDocs, int baseDocId, int weightBits) {
+		return merge(segments, liveDocs, baseDocId, weightBits, null, null);
+	}
+
+	/**
+	 * @param segments in docId order
+	 * @param liveDocs
+	 * @param baseDocId at most the base docId of the first segment
+	 * @param weightBits the PostingCodec weight bits of the new postings, 0 to not compress them
+	 * @param throttle told about the postings as they are merged, null to merge at full speed
+	 * @param newDocIds null, or gets the new docId of every docId from the base docId of the
+	 * 		  first segment on, -1 for the ones left out
+	 * @return
+	 */
+	static IndexSegment merge(List<IndexSegment> segments, BitSet liveDocs, int baseDocId, int weightBits,
+			MergeThrottle throttle, int[] newDocIds) {
+		List<DocumentVector> documentVectors = new ArrayList<DocumentVector>();
+		int firstDocId = segments.isEmpty() ? baseDocId : segments.get(0).getBaseDocId();
+		if (newDocIds == null) {
+			int endDocId = segments.isEmpty() ? baseDocId : segments.get(segments.size() - 1).getEndDocId();
+			newDocIds = new int[endDocId - firstDocId];
+		}
+		Arrays.fill(newDocIds, -1);
+		for (IndexSegment segment : segments) {
+			for (int docId = segment.getBaseDocId(); docId < segment.getEndDocId(); docId++) {
+				if (!liveDocs.get(docId)) {
+					continue;
+				}
+				int newDocId = baseDocId + documentVectors.size();
+				newDocIds[docId - firstDocId] = newDocId;
+				documentVectors.add(new DocumentVector(segment.getDocumentVector(docId), newDocId));
+			}
+		}
+		IndexSegment merged = new IndexSegment(baseDocId, documentVectors, new int[0], new PostingList[0]);
+		List<DocumentVector> documentsByDocId = merged.documentsByDocId();
+
+		// walk the terms of all the segments in termId order at once
+		int[] positions = new int[segments.size()];
+		List<Integer> termIds = new ArrayList<Integer>();
+		List<PostingList> postingLists = new ArrayList<PostingList>();
+		while (true) {
+			int termId = Integer.MAX_VALUE;
+			for (int s = 0; s < segments.size(); s++) {
+				if (positions[s] < segments.get(s).getNumberOfTerms()) {
+					termId = Math.min(termId, segments.get(s).getTermIdAt(positions[s]));
+				}
+			}
+			if (termId == Integer.MAX_VALUE) {
+				break;
+			}
+
+			PostingList mergedPostings = new PostingList();
+			for (int s = 0; s < segments.size(); s++) {
+				IndexSegment segment = segments.get(s);
+				if (positions[s] >= segment.getNumberOfTerms() || segment.getTermIdAt(positions[s]) != termId) {
+					continue;
+				}
+				PostingList postings = segment.getPostingListAt(positions[s]);
+				for (int i = 0; i < postings.size(); i++) {
+					int newDocId = newDocIds[postings.getDocId(i) - firstDocId];
+					if (newDocId >= 0) {
+						mergedPostings.add(newDocId, postings.getWeight(i));
+					}
+				}
+				positions[s]++;
+				if (throttle != null) {
+					throttle.pause(postings.getDocIdOrderSizeInBytes());
+				}
+			}
+			if (mergedPostings.size() == 0) {
+				continue;
+			}
+			mergedPostings.sortByWeight(documentsByDocId);
+			if (weightBits != 0) {
+				mergedPostings.compress(weightBits);
+			}
+			termIds.add(termId);
+			postingLists.add(mergedPostings);
+		}
+
+		int[] termIdArray = new int[termIds.size()];
+		for (int i = 0; i < termIdArray.length; i++) {
+			termIdArray[i] = termIds.get(i).intValue();
+		}
+		return new IndexSegment(baseDocId, documentVectors, termIdArray,
+				postingLists.toArray(new PostingList[postingLists.size()]));
+	}
+}
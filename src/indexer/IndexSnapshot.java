@@ -0,0 +1,766 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An immutable view of a trained VectorSpace.
+ *
+ * VectorSpace builds a new snapshot every time it is trained, loaded or updated and publishes
+ * it through a volatile field. Nothing inside a published snapshot is modified afterwards,
+ * so any number of threads can query it without locking, and a query that keeps hold of
+ * one snapshot sees a consistent index even while a new one is being built.
+ *
+ * The one exception is the TermDictionary, which is shared by every snapshot of a
+ * VectorSpace and only grows: an update adds its new terms to it before the next snapshot
+ * is published. A snapshot keeps the number of terms it was built with and looks terms up
+ * through getTermId, so the terms added later stay unknown to it.
+ *
+ * The index is a list of IndexSegments in docId order: a training builds one, every
+ * incremental update appends one, and background merges replace runs of small ones by
+ * a larger one. Deleted documents stay in their segment until it is merged but are left
+ * out of liveDocs, and every query skips them.
+ * @author Jun
+ *
+ */
+public final class IndexSnapshot {
+	private final List<IndexSegment> _segments;
+	/**
+	 * the docIds that are not deleted
+	 */
+	private final BitSet _liveDocs;
+	private final int _numberOfLiveDocuments;
+	private final boolean _hasDeletions;
+	/**
+	 * for every segment, the number of its deleted documents that contain each termId, or
+	 * null if none is deleted. The live document frequency of a term in the segment is the
+	 * size of its postings less this count.
+	 */
+	private final List<Map<Integer, Integer>> _deletedDocumentFrequencies;
+	/**
+	 * the sum of the lengths of the live documents
+	 */
+	private final long _totalLength;
+	private final TermDictionary _termDictionary;
+	/**
+	 * the terms of _termDictionary with an id below this were added before the snapshot
+	 */
+	private final int _numberOfTerms;
+	private final int _corpusSize;
+	private final long _version;
+
+	/**
+	 * @param segments in docId order
+	 * @param liveDocs not modified afterwards
+	 * @param termDictionary
+	 * @param corpusSize
+	 * @param version
+	 */
+	IndexSnapshot(List<IndexSegment> segments, BitSet liveDocs, TermDictionary termDictionary,
+			int corpusSize, long version) {
+		this(segments, liveDocs, termDictionary, termDictionary.size(), corpusSize, version);
+	}
+
+	/**
+	 * counts the terms of every deleted document, see countDeletedDocuments
+	 * @param segments in docId order
+	 * @param liveDocs not modified afterwards
+	 * @param termDictionary
+	 * @param numberOfTerms of termDictionary that the snapshot knows
+	 * @param corpusSize
+	 * @param version
+	 */
+	IndexSnapshot(List<IndexSegment> segments, BitSet liveDocs, TermDictionary termDictionary,
+			int numberOfTerms, int corpusSize, long version) {
+		this(segments, liveDocs, termDictionary, numberOfTerms, corpusSize, version,
+				countDeletedDocuments(segments, liveDocs));
+	}
+
+	/**
+	 * @param segments in docId order
+	 * @param liveDocs not modified afterwards
+	 * @param termDictionary
+	 * @param numberOfTerms of termDictionary that the snapshot knows
+	 * @param corpusSize
+	 * @param version
+	 * @param deletedDocumentFrequencies of every segment, see withDeletedDocuments
+	 */
+	IndexSnapshot(List<IndexSegment> segments, BitSet liveDocs, TermDictionary termDictionary,
+			int numberOfTerms, int corpusSize, long version, List<Map<Integer, Integer>> deletedDocumentFrequencies) {
+		_segments = Collections.unmodifiableList(new ArrayList<IndexSegment>(segments));
+		_liveDocs = liveDocs;
+		_numberOfLiveDocuments = liveDocs.cardinality();
+		int numberOfDocuments = 0;
+		long totalLength = 0;
+		for (IndexSegment segment : segments) {
+			numberOfDocuments += segment.getNumberOfDocuments();
+			totalLength += segment.getTotalLength();
+		}
+		_hasDeletions = _numberOfLiveDocuments < numberOfDocuments;
+		if (_hasDeletions) {
+			for (IndexSegment segment : segments) {
+				for (int docId = liveDocs.nextClearBit(segment.getBaseDocId()); docId < segment.getEndDocId();
+						docId = liveDocs.nextClearBit(docId + 1)) {
+					totalLength -= segment.getDocumentVector(docId).getLength();
+				}
+			}
+		}
+		_totalLength = totalLength;
+		_deletedDocumentFrequencies = Collections.unmodifiableList(
+				new ArrayList<Map<Integer, Integer>>(deletedDocumentFrequencies));
+		_termDictionary = termDictionary;
+		_numberOfTerms = numberOfTerms;
+		_corpusSize = corpusSize;
+		_version = version;
+	}
+
+	/**
+	 * a snapshot of a single segment without deletions
+	 * @param documentVectors indexed by docId
+	 * @param termDictionary
+	 * @param postingLists indexed by termId
+	 * @param corpusSize
+	 * @param version
+	 * @return
+	 */
+	static IndexSnapshot create(List<DocumentVector> documentVectors, TermDictionary termDictionary,
+			List<PostingList> postingLists, int corpusSize, long version) {
+		BitSet liveDocs = new BitSet(documentVectors.size());
+		liveDocs.set(0, documentVectors.size());
+		IndexSegment segment = IndexSegment.create(0, documentVectors, postingLists);
+		return new IndexSnapshot(Collections.singletonList(segment), liveDocs, termDictionary, corpusSize, version);
+	}
+
+	/**
+	 * @return a number that grows every time the VectorSpace is trained, loaded or updated
+	 */
+	public long getVersion() {
+		return _version;
+	}
+
+	/**
+	 * @return the number of documents the index was trained on, -1 before any training
+	 */
+	public int getCorpusSize() {
+		return _corpusSize;
+	}
+
+	/**
+	 * @return the number of documents that are not deleted
+	 */
+	public int getNumberOfDocuments() {
+		return _numberOfLiveDocuments;
+	}
+
+	/**
+	 * @return the summed length of the live documents
+	 */
+	long getTotalLength() {
+		return _totalLength;
+	}
+
+	/**
+	 * @return the average length of the live documents, 0 for an empty index
+	 */
+	public double getAverageDocumentLength() {
+		return _numberOfLiveDocuments == 0 ? 0.0 : (_totalLength + 0.0) / (_numberOfLiveDocuments + 0.0);
+	}
+
+	/**
+	 * @return one past the highest docId in use, deleted or not
+	 */
+	public int getEndDocId() {
+		return _segments.isEmpty() ? 0 : _segments.get(_segments.size() - 1).getEndDocId();
+	}
+
+	/**
+	 * @param docId
+	 * @return whether the document is in the index and not deleted
+	 */
+	public boolean isLive(int docId) {
+		return docId >= 0 && _liveDocs.get(docId);
+	}
+
+	/**
+	 * @param docId
+	 * @return the document, even if it has been deleted since
+	 */
+	public DocumentVector getDocumentVector(int docId) {
+		return getSegmentOf(docId).getDocumentVector(docId);
+	}
+
+	/**
+	 * @return the dictionary shared with the later snapshots, which may hold terms added
+	 * 		   after this one, from termId getNumberOfTerms() on
+	 */
+	public TermDictionary getTermDictionary() {
+		return _termDictionary;
+	}
+
+	/**
+	 * @return the number of terms of the dictionary when the snapshot was built
+	 */
+	public int getNumberOfTerms() {
+		return _numberOfTerms;
+	}
+
+	/**
+	 * @param term
+	 * @return the termId of the term, or -1 if it was not in the dictionary when the
+	 * 		   snapshot was built
+	 */
+	public int getTermId(String term) {
+		int termId = _termDictionary.getTermId(term);
+		return termId < _numberOfTerms ? termId : -1;
+	}
+
+	List<IndexSegment> getSegments() {
+		return _segments;
+	}
+
+	public int getNumberOfSegments() {
+		return _segments.size();
+	}
+
+	/**
+	 * @param segment
+	 * @return the number of documents of the segment that are not deleted
+	 */
+	int getNumberOfLiveDocuments(IndexSegment segment) {
+		if (!_hasDeletions) {
+			return segment.getNumberOfDocuments();
+		}
+		return _liveDocs.get(segment.getBaseDocId(), segment.getEndDocId()).cardinality();
+	}
+
+	/**
+	 * @return the deleted document frequencies of every segment, null for one without deletions
+	 */
+	List<Map<Integer, Integer>> getDeletedDocumentFrequencies() {
+		return _deletedDocumentFrequencies;
+	}
+
+	/**
+	 * @param deletedDocuments live documents of this snapshot that the next one deletes
+	 * @return the deleted document frequencies of every segment for the next snapshot,
+	 * 		   which copies only those of the segments the documents are in
+	 */
+	List<Map<Integer, Integer>> withDeletedDocuments(List<DocumentVector> deletedDocuments) {
+		List<Map<Integer, Integer>> deletedDocumentFrequencies = new ArrayList<Map<Integer, Integer>>(_deletedDocumentFrequencies);
+		boolean[] isCopied = new boolean[_segments.size()];
+		for (DocumentVector documentVector : deletedDocuments) {
+			int segment = indexOfSegment(documentVector.getDocId());
+			if (!isCopied[segment]) {
+				Map<Integer, Integer> counts = deletedDocumentFrequencies.get(segment);
+				deletedDocumentFrequencies.set(segment,
+						counts == null ? new HashMap<Integer, Integer>() : new HashMap<Integer, Integer>(counts));
+				isCopied[segment] = true;
+			}
+			countTerms(documentVector, deletedDocumentFrequencies.get(segment));
+		}
+		return deletedDocumentFrequencies;
+	}
+
+	/**
+	 * @param segments
+	 * @param liveDocs
+	 * @return the deleted document frequencies of every segment, counted from its
+	 * 		   documents that are not in liveDocs
+	 */
+	static List<Map<Integer, Integer>> countDeletedDocuments(List<IndexSegment> segments, BitSet liveDocs) {
+		List<Map<Integer, Integer>> deletedDocumentFrequencies = new ArrayList<Map<Integer, Integer>>();
+		for (IndexSegment segment : segments) {
+			deletedDocumentFrequencies.add(countDeletedDocuments(segment, liveDocs));
+		}
+		return deletedDocumentFrequencies;
+	}
+
+	/**
+	 * @param segment
+	 * @param liveDocs
+	 * @return null if every document of the segment is live
+	 */
+	static Map<Integer, Integer> countDeletedDocuments(IndexSegment segment, BitSet liveDocs) {
+		Map<Integer, Integer> counts = null;
+		for (int docId = liveDocs.nextClearBit(segment.getBaseDocId()); docId < segment.getEndDocId();
+				docId = liveDocs.nextClearBit(docId + 1)) {
+			if (counts == null) {
+				counts = new HashMap<Integer, Integer>();
+			}
+			countTerms(segment.getDocumentVector(docId), counts);
+		}
+		return counts;
+	}
+
+	private static void countTerms(DocumentVector documentVector, Map<Integer, Integer> counts) {
+		for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+			Integer termId = Integer.valueOf(documentVector.getTermIdAt(i));
+			Integer count = counts.get(termId);
+			counts.put(termId, count == null ? 1 : count.intValue() + 1);
+		}
+	}
+
+	/**
+	 * @return a copy of the live docIds, for the next snapshot to modify
+	 */
+	BitSet copyLiveDocs() {
+		return (BitSet) _liveDocs.clone();
+	}
+
+	/**
+	 * @return whether the index is a single segment from docId 0 on without deleted documents
+	 */
+	boolean isCompact() {
+		return _segments.size() <= 1 && !_hasDeletions && getEndDocId() == _numberOfLiveDocuments;
+	}
+
+	/**
+	 * @return the same index with the postings of every segment in OffHeapPostings
+	 */
+	IndexSnapshot toOffHeap() {
+		List<IndexSegment> segments = new ArrayList<IndexSegment>();
+		for (IndexSegment segment : _segments) {
+			segments.add(segment.toOffHeap());
+		}
+		return new IndexSnapshot(segments, _liveDocs, _termDictionary, _numberOfTerms, _corpusSize, _version,
+				_deletedDocumentFrequencies);
+	}
+
+	/**
+	 * @return the bytes of the postings kept off the heap, 0 if they are all on it
+	 */
+	public long getOffHeapSizeInBytes() {
+		long bytes = 0;
+		for (IndexSegment segment : _segments) {
+			bytes += segment.getOffHeapSizeInBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return this snapshot if it is compact, otherwise the same index merged into one segment
+	 * 		   with the deleted documents left out and the others numbered from 0 again
+	 */
+	IndexSnapshot compact() {
+		if (isCompact()) {
+			return this;
+		}
+		IndexSegment segment = IndexSegment.merge(_segments, _liveDocs, 0, 0);
+		BitSet liveDocs = new BitSet(segment.getNumberOfDocuments());
+		liveDocs.set(0, segment.getNumberOfDocuments());
+		return new IndexSnapshot(Collections.singletonList(segment), liveDocs, _termDictionary, _numberOfTerms, _corpusSize, _version);
+	}
+
+	/**
+	 * @return the documents indexed by docId, only for a compact snapshot
+	 */
+	List<DocumentVector> getDocumentVectors() {
+		if (!isCompact()) {
+			throw new IllegalStateException("the index has to be compacted first");
+		}
+		return _segments.isEmpty() ? Collections.<DocumentVector>emptyList() : _segments.get(0).getDocumentVectors();
+	}
+
+	/**
+	 * @return the postings of every term, indexed by termId, only for a compact snapshot
+	 */
+	List<PostingList> getPostingLists() {
+		if (!isCompact()) {
+			throw new IllegalStateException("the index has to be compacted first");
+		}
+		List<PostingList> postingLists = new ArrayList<PostingList>();
+		for (int termId = 0; termId < _numberOfTerms; termId++) {
+			postingLists.add(getPostingList(termId));
+		}
+		return postingLists;
+	}
+
+	/**
+	 * the postings of a term, highest weight first
+	 * @param term
+	 * @return null if no document contains the term
+	 */
+	public PostingList getPostingList(String term) {
+		return getPostingList(getTermId(term));
+	}
+
+	/**
+	 * With more than one segment or with deleted documents the live postings of every
+	 * segment are merged into a new list, which costs a sort of the postings.
+	 * @param termId
+	 * @return null if no document contains the term
+	 */
+	public PostingList getPostingList(int termId) {
+		if (termId < 0) {
+			return null;
+		} else if (isCompact()) {
+			return _segments.isEmpty() ? null : _segments.get(0).getPostingList(termId);
+		}
+
+		PostingList merged = new PostingList();
+		for (IndexSegment segment : _segments) {
+			PostingList postings = segment.getPostingList(termId);
+			if (postings == null) {
+				continue;
+			}
+			for (int i = 0; i < postings.size(); i++) {
+				if (_liveDocs.get(postings.getDocId(i))) {
+					merged.add(postings.getDocId(i), postings.getWeight(i));
+				}
+			}
+		}
+		if (merged.size() == 0) {
+			return null;
+		}
+		merged.sortByWeight(documentsByDocId());
+		return merged;
+	}
+
+	/**
+	 * @param term
+	 * @return the number of live documents that contain the term
+	 */
+	public int getDocumentFrequency(String term) {
+		int termId = getTermId(term);
+		int documentFrequency = 0;
+		for (int s = 0; s < _segments.size(); s++) {
+			PostingList postings = termId < 0 ? null : _segments.get(s).getPostingList(termId);
+			if (postings == null) {
+				continue;
+			}
+			documentFrequency += postings.size();
+			Map<Integer, Integer> deletedDocumentFrequencies = _deletedDocumentFrequencies.get(s);
+			Integer deleted = deletedDocumentFrequencies == null ? null : deletedDocumentFrequencies.get(termId);
+			if (deleted != null) {
+				documentFrequency -= deleted.intValue();
+			}
+		}
+		return documentFrequency;
+	}
+
+	/**
+	 * The postings are ordered by a weight that grows with the frequency, so this only
+	 * reads the document of the first live posting of every segment.
+	 * @param termId
+	 * @return the highest frequency of the term in the live documents
+	 */
+	int getMaxTermFrequency(int termId) {
+		int max = 0;
+		for (IndexSegment segment : _segments) {
+			int index = getFirstLivePosting(segment, termId);
+			if (index < 0) {
+				continue;
+			}
+			DocumentVector documentVector = segment.getDocumentVector(segment.getPostingList(termId).getDocId(index));
+			max = Math.max(max, documentVector.getFrequencyAt(documentVector.indexOf(termId)));
+		}
+		return max;
+	}
+
+	/**
+	 * @param termId
+	 * @return the highest weight of the term in the live documents, 0 if it is in none
+	 */
+	double getMaxLiveWeight(int termId) {
+		double max = 0.0;
+		for (IndexSegment segment : _segments) {
+			int index = getFirstLivePosting(segment, termId);
+			if (index >= 0) {
+				max = Math.max(max, segment.getPostingList(termId).getWeight(index));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @param termId
+	 * @return whether cursors over the postings of the term see their weights unquantized
+	 */
+	boolean hasExactWeights(int termId) {
+		for (IndexSegment segment : _segments) {
+			PostingList postings = termId < 0 ? null : segment.getPostingList(termId);
+			if (postings != null && postings.isCompressed() && !postings.getDocIdOrderedPostings().hasExactWeights()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the index of the first live posting of the term in the segment in weight
+	 * 		   order, -1 if there is none
+	 */
+	private int getFirstLivePosting(IndexSegment segment, int termId) {
+		PostingList postings = termId < 0 ? null : segment.getPostingList(termId);
+		for (int i = 0; postings != null && i < postings.size(); i++) {
+			if (_liveDocs.get(postings.getDocId(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param term
+	 * @return a new cursor over the live postings of the term in docId order, null if there are none
+	 */
+	public PostingCursor cursor(String term) {
+		return cursor(getTermId(term));
+	}
+
+	/**
+	 * @param termId
+	 * @return a new cursor over the live postings of the term in docId order, null if there are none
+	 */
+	public PostingCursor cursor(int termId) {
+		if (termId < 0) {
+			return null;
+		}
+		List<PostingCursor> cursors = new ArrayList<PostingCursor>();
+		List<Integer> endDocIds = new ArrayList<Integer>();
+		for (IndexSegment segment : _segments) {
+			PostingList postings = segment.getPostingList(termId);
+			if (postings != null) {
+				cursors.add(postings.cursor());
+				endDocIds.add(segment.getEndDocId());
+			}
+		}
+		if (cursors.isEmpty()) {
+			return null;
+		} else if (cursors.size() == 1 && !_hasDeletions) {
+			return cursors.get(0);
+		}
+		int[] ends = new int[endDocIds.size()];
+		for (int i = 0; i < ends.length; i++) {
+			ends[i] = endDocIds.get(i).intValue();
+		}
+		return new SegmentedPostingCursor(cursors.toArray(new PostingCursor[cursors.size()]), ends,
+				_hasDeletions ? _liveDocs : null);
+	}
+
+	/**
+	 * get top k documents that contain the term ordered by term frequencies.. (either WTF or NTF)
+	 * @param term
+	 * @param k
+	 * @return
+	 */
+	public TreeSet<DocumentWeightPair> retrieveTopKDocuments(String term, int k) {
+		Comparator<DocumentWeightPair> comparator = new Utilities.SorterOfDocumentsByWeightedTermFrequency();
+
+		TreeSet<DocumentWeightPair> termDocumentWeight = new TreeSet<DocumentWeightPair>(comparator);
+		termDocumentWeight.addAll(getTopKDocuments(term, k));
+		return termDocumentWeight;
+	}
+
+	/**
+	 * The postings of a compact snapshot are already in the order of the result, so its
+	 * top k are copied from the first k of them without comparing anything.
+	 * @param term
+	 * @param k
+	 * @return the top k documents that contain the term, highest weight first
+	 */
+	public ArrayList<DocumentWeightPair> getTopKDocuments(String term, int k) {
+		int termId = getTermId(term);
+		if (termId < 0 || k <= 0) {
+			return new ArrayList<DocumentWeightPair>();
+		} else if (isCompact()) {
+			IndexSegment segment = _segments.get(0);
+			PostingList postings = segment.getPostingList(termId);
+			int size = postings == null ? 0 : Math.min(k, postings.size());
+			ArrayList<DocumentWeightPair> ans = new ArrayList<DocumentWeightPair>(size);
+			for (int i = 0; i < size; i++) {
+				DocumentWeightPair pair = new DocumentWeightPair();
+				pair.documentVector = segment.getDocumentVector(postings.getDocId(i));
+				pair.weight = postings.getWeight(i);
+				ans.add(pair);
+			}
+			return ans;
+		}
+
+		// the first k live postings of every segment hold the top k of the whole index
+		TopKCollector topK = new TopKCollector(k);
+		for (IndexSegment segment : _segments) {
+			PostingList postings = segment.getPostingList(termId);
+			if (postings == null) {
+				continue;
+			}
+			int added = 0;
+			for (int i = 0; i < postings.size() && added < k; i++) {
+				int docId = postings.getDocId(i);
+				if (!_liveDocs.get(docId)) {
+					continue;
+				}
+				topK.collect(segment.getDocumentVector(docId), postings.getWeight(i));
+				added++;
+			}
+		}
+		return topK.toList();
+	}
+
+	/**
+	 * calculating inverse document frequency
+	 * @param term
+	 * @return
+	 */
+	public double calculateIdf(String term) {
+		if (_corpusSize == -1) {
+			return -1.0;
+		}
+
+		double idf = (_corpusSize + 0.0) / (getDocumentFrequency(term) + 0.0);
+		idf = Math.log(idf);
+		return idf;
+	}
+
+	/**
+	 * @return all the documents as a list indexed by docId, for PostingList.sortByWeight
+	 */
+	List<DocumentVector> documentsByDocId() {
+		return new AbstractList<DocumentVector>() {
+			@Override
+			public DocumentVector get(int docId) {
+				return getDocumentVector(docId);
+			}
+
+			@Override
+			public int size() {
+				return getEndDocId();
+			}
+		};
+	}
+
+	private IndexSegment getSegmentOf(int docId) {
+		return _segments.get(indexOfSegment(docId));
+	}
+
+	/**
+	 * @return the index in _segments of the segment the docId is in
+	 */
+	private int indexOfSegment(int docId) {
+		int low = 0;
+		int high = _segments.size() - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (_segments.get(mid).getBaseDocId() <= docId) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		if (_segments.isEmpty() || docId < 0 || docId >= _segments.get(low).getEndDocId()) {
+			throw new IndexOutOfBoundsException("docId " + docId + " of " + getEndDocId());
+		}
+		return low;
+	}
+
+	/**
+	 * Chains the cursors of the segments that have the term, which are in docId order,
+	 * and skips the deleted documents. advance skips whole segments that end before the target.
+	 */
+	static class SegmentedPostingCursor implements PostingCursor {
+		private final PostingCursor[] _cursors;
+		private final int[] _endDocIds;
+		private final BitSet _liveDocs;
+		private final double _maxWeight;
+		private final int _size;
+		private int _segment = 0;
+		private int _docId = -1;
+
+		/**
+		 * @param cursors one per segment, in docId order
+		 * @param endDocIds the end docId of the segment of each cursor
+		 * @param liveDocs null if no document is deleted
+		 */
+		SegmentedPostingCursor(PostingCursor[] cursors, int[] endDocIds, BitSet liveDocs) {
+			_cursors = cursors;
+			_endDocIds = endDocIds;
+			_liveDocs = liveDocs;
+			double maxWeight = 0.0;
+			int size = 0;
+			for (PostingCursor cursor : cursors) {
+				maxWeight = Math.max(maxWeight, cursor.getMaxWeight());
+				size += cursor.size();
+			}
+			_maxWeight = maxWeight;
+			_size = size;
+		}
+
+		@Override
+		public int docId() {
+			return _docId;
+		}
+
+		@Override
+		public double weight() {
+			return _cursors[_segment].weight();
+		}
+
+		@Override
+		public int nextDoc() {
+			if (_docId == NO_MORE_DOCS) {
+				return NO_MORE_DOCS;
+			}
+			return skipDeleted(_cursors[_segment].nextDoc());
+		}
+
+		@Override
+		public int advance(int target) {
+			if (_docId == NO_MORE_DOCS) {
+				return NO_MORE_DOCS;
+			}
+			while (_segment < _cursors.length - 1 && _endDocIds[_segment] <= target) {
+				_segment++;
+			}
+			return skipDeleted(_cursors[_segment].advance(target));
+		}
+
+		/**
+		 * move on from docId to the first live posting, going to the next segments if needed
+		 */
+		private int skipDeleted(int docId) {
+			while (true) {
+				if (docId == NO_MORE_DOCS) {
+					if (_segment == _cursors.length - 1) {
+						_docId = NO_MORE_DOCS;
+						return _docId;
+					}
+					_segment++;
+					docId = _cursors[_segment].nextDoc();
+				} else if (_liveDocs == null || _liveDocs.get(docId)) {
+					_docId = docId;
+					return _docId;
+				} else {
+					docId = _cursors[_segment].nextDoc();
+				}
+			}
+		}
+
+		@Override
+		public double getMaxWeight() {
+			return _maxWeight;
+		}
+
+		/**
+		 * @return the number of postings, counting the ones of deleted documents
+		 */
+		@Override
+		public int size() {
+			return _size;
+		}
+	}
+}
@@ -9,28 +9,69 @@
 package indexer;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
-import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
 
-public class IndexerMain {
+public class IndexerMain implements Searcher {
 	private static final String DIR_DATA = "data/";
 	private static final String DIR_TEST_NORMAL = "test_normal/";
-	private static final int K = 5;
+	private static final String FILE_INDEXES = "indexes.txt";
+	private static final String FILE_INDEXES_BINARY = "indexes.bin";
+	private static final String FILE_INDEXES_SHARD = "indexes-shard";
+	private static final String FILE_POSITIONS = "positions.bin";
+	private static final int DEFAULT_K = 5;
+	private static final int QUERY_CACHE_SIZE = 10000;
+	
+	private static final LatencyHistogram QUERYING = Metrics.getObject().getHistogram("query.latency");
+	private static final LongAdder POSTINGS_SCANNED = Metrics.getObject().getCounter("query.postings");
+	private static final LongAdder CANDIDATES_MERGED = Metrics.getObject().getCounter("query.candidates");
 	
 	private VectorSpace _vectorSpace = null;
+	private WandQueryEngine _queryEngine = null;
+	private QueryCache _queryCache = null;
+	private volatile PositionalIndex _positionalIndex = null;
 	
 	public IndexerMain() {
+		this(new QueryCache(QUERY_CACHE_SIZE, false, true));
+	}
+	
+	/**
+	 * @param queryCache where to keep the results of repeated queries, null to compute every query
+	 */
+	public IndexerMain(QueryCache queryCache) {
 		_vectorSpace = VectorSpace.getObject();
+		_queryEngine = new WandQueryEngine(_vectorSpace);
+		_queryCache = queryCache;
+	}
+	
+	/**
+	 * @return null if results are not cached
+	 */
+	public QueryCache getQueryCache() {
+		return _queryCache;
 	}
 	
 	public void trainByIndexesFile(String filename) {
 		_vectorSpace.trainByIndexesFile(filename);
 	}
 	
+	public void trainByIndexesFile(String filename, int numberOfThreads) {
+		_vectorSpace.trainByIndexesFile(filename, numberOfThreads);
+	}
+	
+	public void trainByIndexesFileLazily(String filename, int numberOfThreads) {
+		_vectorSpace.trainByIndexesFileLazily(filename, numberOfThreads);
+	}
+	
+	public void trainByBinaryIndexesFile(String filename) {
+		_vectorSpace.trainByBinaryIndexFile(filename);
+	}
+	
 	public void trainIndexerByWtf(String dataDirectory) {
 		File dataDirectoryFile = new File(dataDirectory);
 		trainIndexerByWtf(dataDirectoryFile);
@@ -41,6 +82,11 @@ public class IndexerMain {
 		_vectorSpace.trainByWtf(files);
 	}
 	
+	public void trainIndexerByWtf(String dataDirectory, int numberOfThreads) {
+		File[] files = new File(dataDirectory).listFiles();
+		_vectorSpace.trainByWtf(files, numberOfThreads);
+	}
+	
 	public void trainIndexerByNtf(String dataDirectory) {
 		File dataDirectoryFile = new File(dataDirectory);
 		trainIndexerByNtf(dataDirectoryFile);
@@ -51,19 +97,67 @@ public class IndexerMain {
 		_vectorSpace.trainByNtf(files);
 	}
 	
+	public void trainIndexerByNtf(String dataDirectory, int numberOfThreads) {
+		File[] files = new File(dataDirectory).listFiles();
+		_vectorSpace.trainByNtf(files, numberOfThreads);
+	}
+	
 	public ArrayList <DocumentWeightPair> retrieveTopKDocuments(String query, int k) {
-		query = query.replaceAll("[^A-Za-z0-9 ]", "");
-		query = query.toLowerCase();
-		String[] tokens = query.split(" ");
-		
+		return retrieveTopKDocuments(query, k, ScoringModel.RAW);
+	}
+	
+	/**
+	 * RAW merges the top k postings of every term as before. The other models cannot be
+	 * merged from the per-term lists, so they always rank with the WAND engine, and so do
+	 * boolean queries and queries with phrases once there is a positional index.
+	 * @param query
+	 * @param k
+	 * @param scoringModel
+	 * @return
+	 */
+	@Override
+	public ArrayList <DocumentWeightPair> retrieveTopKDocuments(String query, int k, ScoringModel scoringModel) {
+		long startNanos = System.nanoTime();
+		BooleanQuery booleanQuery = BooleanQuery.parse(query);
+		PositionalQuery positionalQuery = booleanQuery == null ? parsePhrases(query) : null;
+		if (scoringModel != ScoringModel.RAW || booleanQuery != null || positionalQuery != null) {
+			ArrayList <DocumentWeightPair> ans = retrieveExactTopKDocuments(query, booleanQuery, positionalQuery, k,
+					scoringModel);
+			QUERYING.recordSince(startNanos);
+			return ans;
+		}
+		ArrayList <String> tokens = Utilities.getObject().tokenizeString(query);
+		IndexSnapshot snapshot = _vectorSpace.getSnapshot();
+		ArrayList <DocumentWeightPair> ans = null;
+		if (_queryCache == null) {
+			ans = retrieveTopKDocuments(snapshot, tokens, k);
+		} else {
+			String key = QueryCache.createKey(tokens, k, false);
+			ans = _queryCache.get(snapshot.getVersion(), key);
+			if (ans == null) {
+				ans = retrieveTopKDocuments(snapshot, tokens, k);
+				_queryCache.put(snapshot.getVersion(), key, ans);
+			}
+		}
+		QUERYING.recordSince(startNanos);
+		return ans;
+	}
+	
+	private ArrayList <DocumentWeightPair> retrieveTopKDocuments(IndexSnapshot snapshot, ArrayList <String> tokens, int k) {
+		if (tokens.size() == 1) {
+			// already ranked, nothing to merge
+			ArrayList <DocumentWeightPair> ans = snapshot.getTopKDocuments(tokens.get(0), k);
+			POSTINGS_SCANNED.add(ans.size());
+			CANDIDATES_MERGED.add(ans.size());
+			return ans;
+		}
 		ArrayList <DocumentWeightPair> documents = new ArrayList <DocumentWeightPair>();
 		HashMap <String, Integer> documentIndex = new HashMap <String, Integer>();
 		
+		int postingsScanned = 0;
 		for (String token : tokens) {
-			if (token.isEmpty()) {
-				continue;
-			}
-			TreeSet <DocumentWeightPair> termDocumentWeight = _vectorSpace.retrieveTopKDocuments(token, k);
+			ArrayList <DocumentWeightPair> termDocumentWeight = snapshot.getTopKDocuments(token, k);
+			postingsScanned += termDocumentWeight.size();
 			for (DocumentWeightPair dwp : termDocumentWeight) {
 				if (documentIndex.containsKey(dwp.documentVector.getUrl())) {
 					int index = documentIndex.get(dwp.documentVector.getUrl()).intValue();
@@ -76,50 +170,350 @@ public class IndexerMain {
 			
 		}
 		
-		Comparator <DocumentWeightPair> comparator = new Utilities.SorterOfDocumentsByWeightedTermFrequency();
-		Collections.sort(documents, comparator);
+		POSTINGS_SCANNED.add(postingsScanned);
+		CANDIDATES_MERGED.add(documents.size());
 		
-		ArrayList <DocumentWeightPair> ans = new ArrayList <DocumentWeightPair>();
-		for (int i = 0; i < Math.min(k, documents.size()); i++) {
-			ans.add(documents.get(i));
+		TopKCollector topK = new TopKCollector(Math.max(0, k));
+		for (DocumentWeightPair dwp : documents) {
+			topK.collect(dwp.documentVector, dwp.weight);
+		}
+		return topK.toList();
+	}
+	
+	/**
+	 * Unlike retrieveTopKDocuments, which only merges the top k postings of every term,
+	 * this returns the exact top k documents by the sum of their term weights.
+	 * @param query
+	 * @param k
+	 * @return
+	 */
+	public ArrayList <DocumentWeightPair> retrieveExactTopKDocuments(String query, int k) {
+		return retrieveExactTopKDocuments(query, k, ScoringModel.RAW);
+	}
+	
+	/**
+	 * @param query
+	 * @param k
+	 * @param scoringModel
+	 * @return the exact top k documents by the score of the model
+	 */
+	@Override
+	public ArrayList <DocumentWeightPair> retrieveExactTopKDocuments(String query, int k, ScoringModel scoringModel) {
+		long startNanos = System.nanoTime();
+		BooleanQuery booleanQuery = BooleanQuery.parse(query);
+		PositionalQuery positionalQuery = booleanQuery == null ? parsePhrases(query) : null;
+		ArrayList <DocumentWeightPair> ans = retrieveExactTopKDocuments(query, booleanQuery, positionalQuery, k,
+				scoringModel);
+		QUERYING.recordSince(startNanos);
+		return ans;
+	}
+	
+	/**
+	 * @param query
+	 * @param booleanQuery the query parsed by BooleanQuery.parse, null if it is not one
+	 * @param positionalQuery its phrases parsed by parsePhrases, null if there are none
+	 * @param k
+	 * @param scoringModel
+	 * @return the exact top k documents by the score of the model
+	 */
+	private ArrayList <DocumentWeightPair> retrieveExactTopKDocuments(String query, BooleanQuery booleanQuery,
+			PositionalQuery positionalQuery, int k, ScoringModel scoringModel) {
+		if (booleanQuery != null) {
+			return retrieveTopKDocuments(booleanQuery, k, scoringModel, null);
+		} else if (positionalQuery != null) {
+			return retrieveTopKDocuments(positionalQuery, k, scoringModel, null);
+		}
+		ArrayList <String> terms = Utilities.getObject().tokenizeString(query);
+		IndexSnapshot snapshot = _vectorSpace.getSnapshot();
+		ArrayList <DocumentWeightPair> ans = null;
+		if (_queryCache == null) {
+			ans = _queryEngine.retrieveTopKDocuments(snapshot, terms, k, scoringModel);
+		} else {
+			String key = QueryCache.createKey(terms, k, true, scoringModel);
+			ans = _queryCache.get(snapshot.getVersion(), key);
+			if (ans == null) {
+				ans = _queryEngine.retrieveTopKDocuments(snapshot, terms, k, scoringModel);
+				_queryCache.put(snapshot.getVersion(), key, ans);
+			}
 		}
 		return ans;
 	}
 	
+	/**
+	 * Rank the documents of this shard by the statistics of the whole collection, so that
+	 * the results of the shards can be merged. They are not cached, since the statistics
+	 * change with the other shards.
+	 * @param query
+	 * @param k
+	 * @param scoringModel
+	 * @param statistics
+	 * @return
+	 */
+	@Override
+	public ArrayList <DocumentWeightPair> retrieveExactTopKDocuments(String query, int k, ScoringModel scoringModel,
+			CollectionStatistics statistics) {
+		long startNanos = System.nanoTime();
+		BooleanQuery booleanQuery = BooleanQuery.parse(query);
+		PositionalQuery positionalQuery = booleanQuery == null ? parsePhrases(query) : null;
+		ArrayList <DocumentWeightPair> ans = null;
+		if (booleanQuery != null) {
+			ans = retrieveTopKDocuments(booleanQuery, k, scoringModel, statistics);
+		} else if (positionalQuery != null) {
+			ans = retrieveTopKDocuments(positionalQuery, k, scoringModel, statistics);
+		} else {
+			ArrayList <String> terms = Utilities.getObject().tokenizeString(query);
+			ans = _queryEngine.retrieveTopKDocuments(_vectorSpace.getSnapshot(), terms, k, scoringModel, statistics);
+		}
+		QUERYING.recordSince(startNanos);
+		return ans;
+	}
+	
+	/**
+	 * @param query
+	 * @return the phrases of the query, or null if it has none or there is no
+	 * 		   positional index to match them, and the quotes are ignored
+	 */
+	private PositionalQuery parsePhrases(String query) {
+		if (_positionalIndex == null || query.indexOf('"') < 0) {
+			return null;
+		}
+		return PositionalQuery.parse(query);
+	}
+	
+	/**
+	 * rank the documents that match the phrases by all the words of the query
+	 * @param positionalQuery
+	 * @param k
+	 * @param scoringModel
+	 * @param statistics null for the statistics of this index, which are cached
+	 * @return
+	 */
+	private ArrayList <DocumentWeightPair> retrieveTopKDocuments(PositionalQuery positionalQuery, int k,
+			ScoringModel scoringModel, CollectionStatistics statistics) {
+		ArrayList <String> terms = Utilities.getObject().tokenizeString(positionalQuery.getText());
+		IndexSnapshot snapshot = _vectorSpace.getSnapshot();
+		PositionalIndex positionalIndex = _positionalIndex;
+		String key = null;
+		if (_queryCache != null && statistics == null) {
+			key = QueryCache.createKey(terms, k, true, scoringModel) + " " + positionalQuery
+					+ " positions " + positionalIndex.getGeneration();
+			ArrayList <DocumentWeightPair> ans = _queryCache.get(snapshot.getVersion(), key);
+			if (ans != null) {
+				return ans;
+			}
+		}
+		
+		int[] docIds = positionalIndex.match(snapshot, positionalQuery.getClauses());
+		ArrayList <DocumentWeightPair> ans = _queryEngine.retrieveTopKDocuments(snapshot, terms, k, scoringModel,
+				statistics, docIds);
+		if (key != null) {
+			_queryCache.put(snapshot.getVersion(), key, ans);
+		}
+		return ans;
+	}
+	
+	/**
+	 * rank the documents that match the boolean query by its words that are not under a
+	 * NOT. An OR of words needs no matching first, so it is ranked by WAND like a plain
+	 * query.
+	 * @param booleanQuery
+	 * @param k
+	 * @param scoringModel
+	 * @param statistics null for the statistics of this index, which are cached
+	 * @return
+	 */
+	private ArrayList <DocumentWeightPair> retrieveTopKDocuments(BooleanQuery booleanQuery, int k,
+			ScoringModel scoringModel, CollectionStatistics statistics) {
+		List <String> terms = booleanQuery.getScoredTerms();
+		IndexSnapshot snapshot = _vectorSpace.getSnapshot();
+		PositionalIndex positionalIndex = _positionalIndex;
+		String key = null;
+		if (_queryCache != null && statistics == null) {
+			key = QueryCache.createKey(terms, k, true, scoringModel) + " " + booleanQuery
+					+ (positionalIndex == null ? "" : " positions " + positionalIndex.getGeneration());
+			ArrayList <DocumentWeightPair> ans = _queryCache.get(snapshot.getVersion(), key);
+			if (ans != null) {
+				return ans;
+			}
+		}
+		
+		ArrayList <DocumentWeightPair> ans = null;
+		if (booleanQuery.isDisjunctionOfTerms()) {
+			ans = _queryEngine.retrieveTopKDocuments(snapshot, terms, k, scoringModel, statistics);
+		} else {
+			int[] docIds = booleanQuery.match(snapshot, positionalIndex);
+			ans = _queryEngine.retrieveTopKDocuments(snapshot, terms, k, scoringModel, statistics, docIds);
+		}
+		if (key != null) {
+			_queryCache.put(snapshot.getVersion(), key, ans);
+		}
+		return ans;
+	}
+	
+	/**
+	 * Read the positions of the indexed documents from their files again, so that the
+	 * phrases of queries are matched. It has to be built again after the index changes
+	 * for added documents to match phrases.
+	 */
+	public void buildPositionalIndex() {
+		_positionalIndex = PositionalIndex.build(_vectorSpace.getSnapshot());
+	}
+	
+	/**
+	 * @param filename
+	 * @throws IOException if there is no positional index or it cannot be written
+	 */
+	public void savePositionalIndex(String filename) throws IOException {
+		if (_positionalIndex == null) {
+			throw new IOException("there is no positional index to save");
+		}
+		_positionalIndex.save(filename);
+	}
+	
+	/**
+	 * @param filename written by savePositionalIndex for the loaded index
+	 * @throws IOException
+	 */
+	public void loadPositionalIndex(String filename) throws IOException {
+		_positionalIndex = PositionalIndex.load(filename);
+	}
+	
+	/**
+	 * @return null until one is built or loaded
+	 */
+	public PositionalIndex getPositionalIndex() {
+		return _positionalIndex;
+	}
+	
+	@Override
+	public CollectionStatistics getCollectionStatistics(String query) {
+		ArrayList <String> terms = Utilities.getObject().tokenizeString(query);
+		return CollectionStatistics.of(_vectorSpace.getSnapshot(), terms);
+	}
+	
+	/**
+	 * @return the version of the index that queries currently run against
+	 */
+	@Override
+	public long getIndexVersion() {
+		return _vectorSpace.getSnapshot().getVersion();
+	}
+	
 	public void saveIndexes(String filename) {
 		_vectorSpace.saveTermDocumentMap(filename);
 	}
 	
+	public void saveIndexesBinary(String filename) {
+		_vectorSpace.saveTermDocumentMapBinary(filename);
+	}
+	
+	public static void convertIndexes(String textFilename, String binaryFilename) {
+		VectorSpace.convertIndexesFile(textFilename, binaryFilename);
+	}
+	
 	public void printIndexes() {
 		_vectorSpace.printTermDocumentMap();
 	}
 	
-	public static void main(String[] args) {
-		long startTime = System.currentTimeMillis();
-
-		IndexerMain indexer = new IndexerMain();
-		//indexer.trainIndexerByWtf(DIR_DATA);
-		//indexer.printIndexes();
+	/**
+	 * usage: IndexerMain [-k <k>] [-port <port>] [-index <file>] [-shards <url>,<url>...] [-split <n>]
+	 * 		  [-offheap true]
+	 * With -port the queries are served over HTTP by QueryServer instead of read from stdin.
+	 * -index loads that text index instead of the default one, e.g. the index of a shard.
+	 * -shards answers the queries with a ShardCoordinator over the QueryServers of the shards.
+	 * -split writes the indexes of n shards of the data directory, see ShardCoordinator.
+	 * -offheap true keeps the postings outside of the heap, see VectorSpace.setOffHeapPostings.
+	 * @param args
+	 * @throws IOException if the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		int k = DEFAULT_K;
+		int port = -1;
+		String indexFilename = null;
+		String shardUrls = null;
+		int numberOfShards = -1;
+		boolean isOffHeap = false;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-k")) {
+				k = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("-port")) {
+				port = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("-index")) {
+				indexFilename = args[i + 1];
+			} else if (args[i].equals("-shards")) {
+				shardUrls = args[i + 1];
+			} else if (args[i].equals("-split")) {
+				numberOfShards = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("-offheap")) {
+				isOffHeap = Boolean.parseBoolean(args[i + 1]);
+			} else {
+				throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
 		
-		//indexer.saveIndexes("indexes.txt");
-		indexer.trainByIndexesFile("indexes.txt");
+		if (numberOfShards > 0) {
+			ShardCoordinator.writeShardIndexes(new File(DIR_DATA).listFiles(), numberOfShards, FILE_INDEXES_SHARD);
+			return;
+		}
 		
-		long endTime = System.currentTimeMillis();
-		long totalTime = endTime - startTime;		
-		System.out.println("total time taken: " + totalTime);
+		Searcher searcher;
+		if (shardUrls != null) {
+			searcher = new ShardCoordinator(Arrays.asList(shardUrls.split(",")));
+		} else {
+			long startTime = System.currentTimeMillis();
+
+			VectorSpace.getObject().setOffHeapPostings(isOffHeap);
+			IndexerMain indexer = new IndexerMain();
+			//indexer.trainIndexerByWtf(DIR_DATA);
+			//indexer.printIndexes();
+			
+			//indexer.saveIndexes(FILE_INDEXES);
+			//convertIndexes(FILE_INDEXES, FILE_INDEXES_BINARY);
+			//indexer.buildPositionalIndex();
+			//indexer.savePositionalIndex(FILE_POSITIONS);
+			if (indexFilename != null) {
+				indexer.trainByIndexesFileLazily(indexFilename, Runtime.getRuntime().availableProcessors());
+			} else if (new File(FILE_INDEXES_BINARY).isFile()) {
+				indexer.trainByBinaryIndexesFile(FILE_INDEXES_BINARY);
+			} else {
+				indexer.trainByIndexesFileLazily(FILE_INDEXES, Runtime.getRuntime().availableProcessors());
+			}
+			if (indexFilename == null && new File(FILE_POSITIONS).isFile()) {
+				indexer.loadPositionalIndex(FILE_POSITIONS);
+			}
+			
+			long endTime = System.currentTimeMillis();
+			long totalTime = endTime - startTime;		
+			System.out.println("total time taken: " + totalTime);
+			searcher = indexer;
+		}
 		
-		startCLInterface(indexer);
+		if (port >= 0) {
+			QueryServer server = new QueryServer(searcher, port, k);
+			server.start();
+			System.out.println("serving queries on port " + server.getPort());
+		} else {
+			startCLInterface(searcher, k);
+		}
 		
 	}
 
 	/**
 	 * @param indexer
+	 * @param k
 	 */
-	private static void startCLInterface(IndexerMain indexer) {
+	private static void startCLInterface(Searcher indexer, int k) {
 		try (Scanner sc = new Scanner(System.in)) {
 			while (sc.hasNextLine()) {
 				String query = sc.nextLine();
-				ArrayList <DocumentWeightPair> ans = indexer.retrieveTopKDocuments(query, K);
+				ArrayList <DocumentWeightPair> ans;
+				try {
+					ans = indexer.retrieveTopKDocuments(query, k, ScoringModel.RAW);
+				} catch (RuntimeException e) {
+					// e.g. a shard that did not answer, the next query may still work
+					System.err.println("query failed: " + e.getMessage());
+					continue;
+				}
 				System.out.println(ans.size());
 				for (DocumentWeightPair dwp : ans) {
 					System.out.println(dwp.documentVector.getUrl());
@@ -0,0 +1,207 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Reads the JSON that QueryServer writes, for the ShardCoordinator. An object becomes a
+ * LinkedHashMap, an array an ArrayList, a number a Double, and true, false and null
+ * their Java values.
+ * @author Jun
+ *
+ */
+final class JsonReader {
+	private final String _text;
+	private int _position = 0;
+
+	private JsonReader(String text) {
+		_text = text;
+	}
+
+	/**
+	 * @param text
+	 * @return the value of the text
+	 * @throws IllegalArgumentException if the text is not JSON
+	 */
+	static Object read(String text) {
+		JsonReader reader = new JsonReader(text);
+		Object value = reader.readValue();
+		reader.skipWhitespace();
+		if (reader._position != text.length()) {
+			throw reader.error("trailing characters");
+		}
+		return value;
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+		if (_position >= _text.length()) {
+			throw error("unexpected end");
+		}
+		char c = _text.charAt(_position);
+		switch (c) {
+		case '{':
+			return readObject();
+		case '[':
+			return readArray();
+		case '"':
+			return readString();
+		case 't':
+			return readLiteral("true", Boolean.TRUE);
+		case 'f':
+			return readLiteral("false", Boolean.FALSE);
+		case 'n':
+			return readLiteral("null", null);
+		default:
+			return readNumber();
+		}
+	}
+
+	private LinkedHashMap<String, Object> readObject() {
+		LinkedHashMap<String, Object> object = new LinkedHashMap<String, Object>();
+		_position++;
+		skipWhitespace();
+		if (peek() == '}') {
+			_position++;
+			return object;
+		}
+		while (true) {
+			skipWhitespace();
+			if (peek() != '"') {
+				throw error("expected a name");
+			}
+			String name = readString();
+			skipWhitespace();
+			expect(':');
+			object.put(name, readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				_position++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+	}
+
+	private ArrayList<Object> readArray() {
+		ArrayList<Object> array = new ArrayList<Object>();
+		_position++;
+		skipWhitespace();
+		if (peek() == ']') {
+			_position++;
+			return array;
+		}
+		while (true) {
+			array.add(readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				_position++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+	}
+
+	private String readString() {
+		_position++;
+		StringBuilder value = new StringBuilder();
+		while (true) {
+			if (_position >= _text.length()) {
+				throw error("unterminated string");
+			}
+			char c = _text.charAt(_position++);
+			if (c == '"') {
+				return value.toString();
+			} else if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+			if (_position >= _text.length()) {
+				throw error("unterminated string");
+			}
+			char escaped = _text.charAt(_position++);
+			switch (escaped) {
+			case 'b':
+				value.append('\b');
+				break;
+			case 'f':
+				value.append('\f');
+				break;
+			case 'n':
+				value.append('\n');
+				break;
+			case 'r':
+				value.append('\r');
+				break;
+			case 't':
+				value.append('\t');
+				break;
+			case 'u':
+				if (_position + 4 > _text.length()) {
+					throw error("malformed escape");
+				}
+				try {
+					value.append((char) Integer.parseInt(_text.substring(_position, _position + 4), 16));
+				} catch (NumberFormatException e) {
+					throw error("malformed escape");
+				}
+				_position += 4;
+				break;
+			default:
+				// \" \\ and \/
+				value.append(escaped);
+			}
+		}
+	}
+
+	private Double readNumber() {
+		int start = _position;
+		while (_position < _text.length() && "+-0123456789.eE".indexOf(_text.charAt(_position)) >= 0) {
+			_position++;
+		}
+		try {
+			return Double.valueOf(_text.substring(start, _position));
+		} catch (NumberFormatException e) {
+			throw error("expected a value");
+		}
+	}
+
+	private Object readLiteral(String literal, Object value) {
+		if (!_text.startsWith(literal, _position)) {
+			throw error("expected " + literal);
+		}
+		_position += literal.length();
+		return value;
+	}
+
+	private void skipWhitespace() {
+		while (_position < _text.length() && Character.isWhitespace(_text.charAt(_position))) {
+			_position++;
+		}
+	}
+
+	private char peek() {
+		return _position < _text.length() ? _text.charAt(_position) : '\0';
+	}
+
+	private void expect(char c) {
+		if (peek() != c) {
+			throw error("expected '" + c + "'");
+		}
+		_position++;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at " + _position);
+	}
+}
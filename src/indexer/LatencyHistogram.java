@@ -0,0 +1,139 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds, with buckets laid out like HdrHistogram's:
+ * every power of two is split into SUB_BUCKETS linear buckets, so a percentile is off by
+ * less than 1% of its value, from a nanosecond up to centuries, in a fixed 57 KB.
+ *
+ * Recording is a few shifts and an atomic increment, without a lock or an allocation,
+ * so it can be called on every query. The percentiles are read from the live counts and
+ * are not a consistent snapshot while other threads keep recording.
+ * @author Jun
+ *
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUMBER_OF_BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(NUMBER_OF_BUCKETS);
+	private final LongAdder _count = new LongAdder();
+	private final LongAdder _sum = new LongAdder();
+	private final AtomicLong _max = new AtomicLong();
+
+	/**
+	 * @param nanos a duration, a negative one counts as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		_counts.incrementAndGet(getIndex(value));
+		_count.increment();
+		_sum.add(value);
+		for (long max = _max.get(); value > max && !_max.compareAndSet(max, value); max = _max.get()) {
+			// another thread raised the max in between
+		}
+	}
+
+	/**
+	 * record the time since a System.nanoTime()
+	 * @param startNanos
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	private static int getIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * @return the largest value that falls into the bucket
+	 */
+	private static long getHighestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long lowest = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	public long getCount() {
+		return _count.sum();
+	}
+
+	public long getSumNanos() {
+		return _sum.sum();
+	}
+
+	public long getMaxNanos() {
+		return _max.get();
+	}
+
+	public double getMeanNanos() {
+		long count = getCount();
+		return count == 0 ? 0.0 : (getSumNanos() + 0.0) / (count + 0.0);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the value that percentile of the recorded values are at or below, 0 if
+	 * 		   nothing was recorded
+	 */
+	public long getPercentileNanos(double percentile) {
+		if (percentile < 0.0 || percentile > 100.0) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+		}
+		long total = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			total += _counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			seen += _counts.get(i);
+			if (seen >= rank) {
+				return Math.min(getHighestValue(i), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+
+	/**
+	 * @param percentile
+	 * @return getPercentileNanos in milliseconds
+	 */
+	public double getPercentileMillis(double percentile) {
+		return getPercentileNanos(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	public void reset() {
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			_counts.set(i, 0);
+		}
+		_count.reset();
+		_sum.reset();
+		_max.set(0);
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Merges the segments of a VectorSpace on a background thread.
+ *
+ * VectorSpace asks for merges after every incremental update. The merge thread takes the
+ * published snapshot, lets the TieredMergePolicy pick the segments, and merges them
+ * without holding any lock, so neither queries nor updates wait for it. Only swapping
+ * the merged segment in goes through VectorSpace.commitMerge, which drops the merge if
+ * an update replaced the segments meanwhile; the policy then looks at the new snapshot.
+ * @author Jun
+ *
+ */
+final class MergeScheduler {
+	private final VectorSpace _vectorSpace;
+	private final ExecutorService _executor;
+
+	private TieredMergePolicy _mergePolicy = null;
+	private MergeThrottle _throttle = null;
+	private boolean _isMerging = false;
+	private boolean _isRequested = false;
+
+	MergeScheduler(VectorSpace vectorSpace) {
+		_vectorSpace = vectorSpace;
+		_executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "segment-merger");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @param mergePolicy null to stop merging
+	 * @param maxBytesPerSecond 0 to merge at full speed
+	 */
+	synchronized void setMergePolicy(TieredMergePolicy mergePolicy, long maxBytesPerSecond) {
+		_mergePolicy = mergePolicy;
+		_throttle = maxBytesPerSecond > 0 ? new MergeThrottle(maxBytesPerSecond) : null;
+	}
+
+	/**
+	 * look for merges on the merge thread, unless it is already busy and will look again
+	 */
+	synchronized void maybeMerge() {
+		if (_mergePolicy == null) {
+			return;
+		} else if (_isMerging) {
+			_isRequested = true;
+			return;
+		}
+		_isMerging = true;
+		_executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				do {
+					try {
+						mergeAll();
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				} while (isRequestedAgain());
+			}
+		});
+	}
+
+	/**
+	 * block until the merge thread has nothing left to merge
+	 * @throws InterruptedException
+	 */
+	synchronized void waitForMerges() throws InterruptedException {
+		while (_isMerging) {
+			wait();
+		}
+	}
+
+	private synchronized boolean isRequestedAgain() {
+		if (_isRequested) {
+			_isRequested = false;
+			return true;
+		}
+		_isMerging = false;
+		notifyAll();
+		return false;
+	}
+
+	/**
+	 * merge until the policy is satisfied with the published snapshot
+	 */
+	private void mergeAll() {
+		while (true) {
+			TieredMergePolicy mergePolicy;
+			MergeThrottle throttle;
+			synchronized (this) {
+				mergePolicy = _mergePolicy;
+				throttle = _throttle;
+			}
+			IndexSnapshot snapshot = _vectorSpace.getSnapshot();
+			int[] range = mergePolicy == null ? null : mergePolicy.findMerge(snapshot);
+			if (range == null) {
+				return;
+			}
+
+			List<IndexSegment> segments = snapshot.getSegments().subList(range[0], range[1]);
+			IndexSegment first = segments.get(0);
+			IndexSegment last = segments.get(segments.size() - 1);
+			BitSet liveDocs = snapshot.copyLiveDocs();
+			int[] newDocIds = new int[last.getEndDocId() - first.getBaseDocId()];
+			IndexSegment merged = IndexSegment.merge(segments, liveDocs, first.getBaseDocId(),
+					_vectorSpace.getPostingCompression(), throttle, newDocIds);
+			if (_vectorSpace.isOffHeapPostings()) {
+				merged = merged.toOffHeap();
+			}
+			_vectorSpace.commitMerge(segments, merged, newDocIds);
+		}
+	}
+}
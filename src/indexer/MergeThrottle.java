@@ -0,0 +1,54 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+/**
+ * Keeps a background merge below a number of bytes per second, so that it leaves memory
+ * bandwidth and CPU to the queries. The merge reports the bytes of the postings it has
+ * copied, and is put to sleep once it gets ahead of the rate.
+ * @author Jun
+ *
+ */
+final class MergeThrottle {
+	/**
+	 * shorter sleeps are added up instead, since a thread cannot sleep that precisely
+	 */
+	private static final long MIN_PAUSE_NANOS = 1000000L;
+
+	private final double _nanosPerByte;
+	private long _nextFreeNanos = System.nanoTime();
+
+	/**
+	 * @param maxBytesPerSecond
+	 */
+	MergeThrottle(long maxBytesPerSecond) {
+		if (maxBytesPerSecond < 1) {
+			throw new IllegalArgumentException("maxBytesPerSecond must be positive: " + maxBytesPerSecond);
+		}
+		_nanosPerByte = 1e9 / maxBytesPerSecond;
+	}
+
+	/**
+	 * @param bytes merged since the last call
+	 */
+	synchronized void pause(long bytes) {
+		long now = System.nanoTime();
+		_nextFreeNanos = Math.max(_nextFreeNanos, now) + (long) (bytes * _nanosPerByte);
+		long pause = _nextFreeNanos - now;
+		if (pause < MIN_PAUSE_NANOS) {
+			return;
+		}
+		try {
+			Thread.sleep(pause / 1000000L, (int) (pause % 1000000L));
+		} catch (InterruptedException e) {
+			// let the merge finish unthrottled, whoever interrupted it gets to see the flag
+			Thread.currentThread().interrupt();
+		}
+	}
+}
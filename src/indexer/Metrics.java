@@ -0,0 +1,206 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The counters and latency histograms of indexing and querying, for the whole process.
+ *
+ * A class looks its counters and histograms up once, into static fields, and then only
+ * adds to them: a LongAdder spreads concurrent adds over cells instead of contending on
+ * one value, and a LatencyHistogram records without a lock. The hot loops count into a
+ * local variable and add it once per document or query, never per posting.
+ *
+ * The singleton registers itself with the platform MBean server, so jconsole and any
+ * JMX agent see it as indexer:type=Metrics, and dump gives the same numbers as text in
+ * the Prometheus format, which QueryServer serves on /metrics.
+ * @author Jun
+ *
+ */
+public final class Metrics implements MetricsMXBean {
+	public static final String OBJECT_NAME = "indexer:type=Metrics";
+
+	private static final String PREFIX = "indexer_";
+	private static final double[] PERCENTILES = { 50.0, 90.0, 99.0 };
+
+	private static volatile Metrics _metrics = null;
+
+	private final ConcurrentMap<String, LongAdder> _counters = new ConcurrentHashMap<String, LongAdder>();
+	private final ConcurrentMap<String, LatencyHistogram> _histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	/**
+	 * the name of every throughput, with the counter and the histogram of the time it is over
+	 */
+	private final ConcurrentMap<String, String[]> _throughputs = new ConcurrentHashMap<String, String[]>();
+
+	private Metrics() {
+	}
+
+	public static Metrics getObject() {
+		if (_metrics == null) {
+			synchronized (Metrics.class) {
+				if (_metrics == null) {
+					Metrics metrics = new Metrics();
+					metrics.register();
+					_metrics = metrics;
+				}
+			}
+		}
+		return _metrics;
+	}
+
+	/**
+	 * a process without JMX, or one that registered the name already, still counts
+	 */
+	private void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (JMException | SecurityException e) {
+			System.err.println("metrics are not available over JMX: " + e);
+		}
+	}
+
+	/**
+	 * @param name like "query.postings", a dot separates words
+	 * @return the counter of that name, created at 0 the first time
+	 */
+	public LongAdder getCounter(String name) {
+		LongAdder counter = _counters.get(name);
+		if (counter == null) {
+			_counters.putIfAbsent(name, new LongAdder());
+			counter = _counters.get(name);
+		}
+		return counter;
+	}
+
+	/**
+	 * @param name like "query.latency"
+	 * @return the histogram of that name, created empty the first time
+	 */
+	public LatencyHistogram getHistogram(String name) {
+		LatencyHistogram histogram = _histograms.get(name);
+		if (histogram == null) {
+			_histograms.putIfAbsent(name, new LatencyHistogram());
+			histogram = _histograms.get(name);
+		}
+		return histogram;
+	}
+
+	/**
+	 * show the counter per second of the time recorded in the histogram, like the
+	 * documents indexed per second of training
+	 * @param name
+	 * @param counterName
+	 * @param histogramName
+	 */
+	public void addThroughput(String name, String counterName, String histogramName) {
+		_throughputs.put(name, new String[] { counterName, histogramName });
+	}
+
+	/**
+	 * @param name see addThroughput
+	 * @return 0 until some time was recorded
+	 */
+	public double getThroughput(String name) {
+		String[] names = _throughputs.get(name);
+		if (names == null) {
+			throw new IllegalArgumentException("no such throughput: " + name);
+		}
+		long nanos = getHistogram(names[1]).getSumNanos();
+		return nanos == 0 ? 0.0 : getCounter(names[0]).sum() * 1e9 / nanos;
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		TreeMap<String, Long> counters = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> counter : _counters.entrySet()) {
+			counters.put(counter.getKey(), counter.getValue().sum());
+		}
+		return counters;
+	}
+
+	@Override
+	public Map<String, Double> getLatencies() {
+		TreeMap<String, Double> latencies = new TreeMap<String, Double>();
+		for (Map.Entry<String, LatencyHistogram> entry : _histograms.entrySet()) {
+			String name = entry.getKey();
+			LatencyHistogram histogram = entry.getValue();
+			latencies.put(name + ".count", histogram.getCount() + 0.0);
+			latencies.put(name + ".mean", histogram.getMeanNanos() / 1e6);
+			for (double percentile : PERCENTILES) {
+				latencies.put(name + ".p" + (int) percentile, histogram.getPercentileMillis(percentile));
+			}
+			latencies.put(name + ".max", histogram.getMaxNanos() / 1e6);
+		}
+		return latencies;
+	}
+
+	@Override
+	public String getDump() {
+		return dump();
+	}
+
+	/**
+	 * @return every counter, histogram and throughput in the Prometheus text format,
+	 * 		   sorted by name, with the durations in seconds
+	 */
+	public String dump() {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+			String name = toMetricName(counter.getKey()) + "_total";
+			text.append("# TYPE ").append(name).append(" counter\n");
+			text.append(name).append(' ').append(counter.getValue()).append('\n');
+		}
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(_histograms).entrySet()) {
+			String name = toMetricName(entry.getKey()) + "_seconds";
+			LatencyHistogram histogram = entry.getValue();
+			text.append("# TYPE ").append(name).append(" summary\n");
+			for (double percentile : PERCENTILES) {
+				text.append(name).append("{quantile=\"").append(percentile / 100.0).append("\"} ")
+						.append(toSeconds(histogram.getPercentileNanos(percentile))).append('\n');
+			}
+			text.append(name).append("_sum ").append(toSeconds(histogram.getSumNanos())).append('\n');
+			text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+			text.append(name).append("_max ").append(toSeconds(histogram.getMaxNanos())).append('\n');
+		}
+		for (String throughput : new TreeMap<String, String[]>(_throughputs).keySet()) {
+			String name = toMetricName(throughput);
+			text.append("# TYPE ").append(name).append(" gauge\n");
+			text.append(name).append(' ').append(String.format(Locale.ROOT, "%.1f", getThroughput(throughput))).append('\n');
+		}
+		return text.toString();
+	}
+
+	private static String toMetricName(String name) {
+		return PREFIX + name.replace('.', '_').replace('-', '_');
+	}
+
+	private static String toSeconds(long nanos) {
+		return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder counter : _counters.values()) {
+			counter.reset();
+		}
+		for (LatencyHistogram histogram : _histograms.values()) {
+			histogram.reset();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.Map;
+
+/**
+ * What Metrics shows over JMX, under the name Metrics.OBJECT_NAME.
+ * @author Jun
+ *
+ */
+public interface MetricsMXBean {
+	/**
+	 * @return the value of every counter by name
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * @return the count, mean, 50th, 90th, 99th percentile and max in milliseconds of
+	 * 		   every histogram, by its name followed by ".count", ".mean", ".p50" and so on
+	 */
+	Map<String, Double> getLatencies();
+
+	/**
+	 * @return the same text as Metrics.dump
+	 */
+	String getDump();
+
+	/**
+	 * set every counter and histogram back to 0
+	 */
+	void reset();
+}
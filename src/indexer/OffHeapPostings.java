@@ -0,0 +1,129 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The posting lists of a segment written into direct buffers, outside of the heap.
+ *
+ * On the heap there are only the buffers and a directory of primitive arrays, whatever
+ * the number of terms, so the garbage collector has a handful of objects to trace instead
+ * of several arrays per term. A list is read through a PostingList view that get makes
+ * on demand. Compressed docId orders stay on the heap in their PostingCodec.
+ *
+ * The lists are packed into chunks of up to CHUNK_SIZE bytes; a bigger list gets a chunk
+ * of its own. The memory is given back when the buffers are collected, after the segment
+ * is replaced, and it counts against -XX:MaxDirectMemorySize.
+ * @author Jun
+ *
+ */
+final class OffHeapPostings {
+	private static final int CHUNK_SIZE = 1 << 28;
+
+	private final ByteBuffer[] _chunks;
+	/**
+	 * the chunk of every list in the high int and its offset in the low one
+	 */
+	private final long[] _locations;
+	private final int[] _sizes;
+	private final int[] _numberOfTiers;
+	/**
+	 * null if no list is compressed
+	 */
+	private final PostingCodec[] _docIdOrderedPostings;
+	private final long _sizeInBytes;
+
+	private OffHeapPostings(ByteBuffer[] chunks, long[] locations, int[] sizes, int[] numberOfTiers,
+			PostingCodec[] docIdOrderedPostings, long sizeInBytes) {
+		_chunks = chunks;
+		_locations = locations;
+		_sizes = sizes;
+		_numberOfTiers = numberOfTiers;
+		_docIdOrderedPostings = docIdOrderedPostings;
+		_sizeInBytes = sizeInBytes;
+	}
+
+	/**
+	 * @param postingLists sorted by weight
+	 * @return the same postings off the heap
+	 */
+	static OffHeapPostings create(PostingList[] postingLists) {
+		long[] locations = new long[postingLists.length];
+		int[] sizes = new int[postingLists.length];
+		int[] numberOfTiers = new int[postingLists.length];
+		PostingCodec[] docIdOrderedPostings = null;
+
+		// lay the lists out first, so that every chunk is allocated once at its size
+		int numberOfChunks = 0;
+		int[] chunkSizes = new int[4];
+		int chunkSize = 0;
+		long sizeInBytes = 0;
+		for (int i = 0; i < postingLists.length; i++) {
+			int bytes = postingLists[i].getOffHeapSizeInBytes();
+			if (numberOfChunks == 0 || chunkSize > 0 && (long) chunkSize + bytes > CHUNK_SIZE) {
+				if (numberOfChunks > 0) {
+					chunkSizes[numberOfChunks - 1] = chunkSize;
+				}
+				if (numberOfChunks == chunkSizes.length) {
+					chunkSizes = Arrays.copyOf(chunkSizes, 2 * numberOfChunks);
+				}
+				numberOfChunks++;
+				chunkSize = 0;
+			}
+			locations[i] = ((long) (numberOfChunks - 1) << 32) | chunkSize;
+			chunkSize += bytes;
+			sizeInBytes += bytes;
+
+			sizes[i] = postingLists[i].size();
+			numberOfTiers[i] = postingLists[i].getTierCount();
+			if (postingLists[i].isCompressed()) {
+				if (docIdOrderedPostings == null) {
+					docIdOrderedPostings = new PostingCodec[postingLists.length];
+				}
+				docIdOrderedPostings[i] = postingLists[i].getDocIdOrderedPostings();
+			}
+		}
+		if (numberOfChunks > 0) {
+			chunkSizes[numberOfChunks - 1] = chunkSize;
+		}
+
+		ByteBuffer[] chunks = new ByteBuffer[numberOfChunks];
+		for (int c = 0; c < numberOfChunks; c++) {
+			chunks[c] = ByteBuffer.allocateDirect(chunkSizes[c]).order(ByteOrder.nativeOrder());
+		}
+		for (int i = 0; i < postingLists.length; i++) {
+			postingLists[i].writeTo(chunks[(int) (locations[i] >>> 32)], (int) locations[i]);
+		}
+		return new OffHeapPostings(chunks, locations, sizes, numberOfTiers, docIdOrderedPostings, sizeInBytes);
+	}
+
+	int size() {
+		return _sizes.length;
+	}
+
+	/**
+	 * @param index
+	 * @return a new read only view of the list
+	 */
+	PostingList get(int index) {
+		long location = _locations[index];
+		return new PostingList(_chunks[(int) (location >>> 32)], (int) location, _sizes[index], _numberOfTiers[index],
+				_docIdOrderedPostings == null ? null : _docIdOrderedPostings[index]);
+	}
+
+	/**
+	 * @return the bytes taken off the heap
+	 */
+	long getSizeInBytes() {
+		return _sizeInBytes;
+	}
+}
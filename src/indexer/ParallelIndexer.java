@@ -0,0 +1,402 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The worker pool behind VectorSpace's parallel training.
+ *
+ * Files are tokenized and counted concurrently, but the results are always collected
+ * in file order, so docIds are assigned exactly as a sequential run assigns them.
+ * Each worker then builds a partial inverted index over a contiguous range of documents,
+ * and the partial indexes are merged in range order.
+ *
+ * Loading a text index splits its term section into byte ranges that end at line breaks,
+ * and the lines of every range are parsed concurrently and collected in file order.
+ * @author Jun
+ *
+ */
+class ParallelIndexer {
+	/**
+	 * number of files a worker reads before it picks up the next batch
+	 */
+	private static final int FILES_PER_TASK = 64;
+
+	/**
+	 * how a posting weight is computed from a document, i.e. WTF or NTF
+	 */
+	interface TermWeight {
+		/**
+		 * @param documentVector
+		 * @param index the position of the term in the document, see DocumentVector.getTermIdAt
+		 * @return
+		 */
+		double getWeight(DocumentVector documentVector, int index);
+	}
+
+	/**
+	 * A tokenized and counted document, before its terms are added to the TermDictionary.
+	 * The term frequencies are in the order WordFrequencyCounter returned them.
+	 */
+	static class ParsedDocument {
+		final String documentName;
+		final String url;
+		final List<TermFrequencyPerDocument> termFrequencies;
+
+		ParsedDocument(String documentName, String url, List<TermFrequencyPerDocument> termFrequencies) {
+			this.documentName = documentName;
+			this.url = url;
+			this.termFrequencies = termFrequencies;
+		}
+	}
+
+	/**
+	 * ranges per worker when a file is split, so that a slow range does not hold up the rest
+	 */
+	private static final int RANGES_PER_THREAD = 4;
+
+	/**
+	 * turns a line of a file into a result, null to skip the line
+	 */
+	interface LineParser<T> {
+		T parse(String line);
+	}
+
+	private final int _numberOfThreads;
+	private final ExecutorService _executor;
+
+	ParallelIndexer(int numberOfThreads) {
+		_numberOfThreads = Math.max(1, numberOfThreads);
+		_executor = Executors.newFixedThreadPool(_numberOfThreads);
+	}
+
+	void shutdown() {
+		_executor.shutdown();
+	}
+
+	/**
+	 * tokenize and count the files on the worker pool.
+	 * @param indexingFiles
+	 * @return the documents in file order, without the files that have no url
+	 */
+	List<ParsedDocument> readDocuments(final File[] indexingFiles) {
+		List<Callable<List<ParsedDocument>>> tasks = new ArrayList<Callable<List<ParsedDocument>>>();
+		for (int from = 0; from < indexingFiles.length; from += FILES_PER_TASK) {
+			final int start = from;
+			final int end = Math.min(indexingFiles.length, from + FILES_PER_TASK);
+			tasks.add(new Callable<List<ParsedDocument>>() {
+				@Override
+				public List<ParsedDocument> call() {
+					List<ParsedDocument> documents = new ArrayList<ParsedDocument>();
+					for (int i = start; i < end; i++) {
+						ParsedDocument document = VectorSpace.readDocument(indexingFiles[i]);
+						if (document != null) {
+							documents.add(document);
+						}
+					}
+					return documents;
+				}
+			});
+		}
+
+		List<ParsedDocument> documents = new ArrayList<ParsedDocument>(indexingFiles.length);
+		for (List<ParsedDocument> batch : invokeAll(tasks)) {
+			documents.addAll(batch);
+		}
+		return documents;
+	}
+
+	/**
+	 * the highest frequency of every term in the corpus, computed per worker and then merged
+	 * @param documentVectors
+	 * @param numberOfTerms the size of the TermDictionary of the documents
+	 * @return indexed by termId
+	 */
+	int[] computeMaxTermFrequencies(final List<DocumentVector> documentVectors, final int numberOfTerms) {
+		List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+		for (final int[] range : splitIntoRanges(documentVectors.size())) {
+			tasks.add(new Callable<int[]>() {
+				@Override
+				public int[] call() {
+					int[] maxTermFrequency = new int[numberOfTerms];
+					for (int i = range[0]; i < range[1]; i++) {
+						DocumentVector documentVector = documentVectors.get(i);
+						for (int j = 0; j < documentVector.getNumberOfTerms(); j++) {
+							int termId = documentVector.getTermIdAt(j);
+							maxTermFrequency[termId] = Math.max(maxTermFrequency[termId], documentVector.getFrequencyAt(j));
+						}
+					}
+					return maxTermFrequency;
+				}
+			});
+		}
+
+		int[] maxTermFrequency = new int[numberOfTerms];
+		for (int[] partial : invokeAll(tasks)) {
+			for (int termId = 0; termId < numberOfTerms; termId++) {
+				maxTermFrequency[termId] = Math.max(maxTermFrequency[termId], partial[termId]);
+			}
+		}
+		return maxTermFrequency;
+	}
+
+	/**
+	 * build one partial inverted index per worker over a contiguous range of documents.
+	 * @param documentVectors in docId order
+	 * @param numberOfTerms the size of the TermDictionary of the documents
+	 * @param termWeight
+	 * @return the partial indexes in document order, each indexed by termId with null for
+	 * 		   the terms that are not in its range. Each posting list is in docId order
+	 */
+	List<PostingList[]> buildPartialIndexes(final List<DocumentVector> documentVectors, final int numberOfTerms,
+			final TermWeight termWeight) {
+		List<Callable<PostingList[]>> tasks = new ArrayList<Callable<PostingList[]>>();
+		for (final int[] range : splitIntoRanges(documentVectors.size())) {
+			tasks.add(new Callable<PostingList[]>() {
+				@Override
+				public PostingList[] call() {
+					PostingList[] partialIndex = new PostingList[numberOfTerms];
+					for (int i = range[0]; i < range[1]; i++) {
+						DocumentVector documentVector = documentVectors.get(i);
+						for (int j = 0; j < documentVector.getNumberOfTerms(); j++) {
+							int termId = documentVector.getTermIdAt(j);
+							if (partialIndex[termId] == null) {
+								partialIndex[termId] = new PostingList();
+							}
+							partialIndex[termId].add(documentVector.getDocId(), termWeight.getWeight(documentVector, j));
+						}
+					}
+					return partialIndex;
+				}
+			});
+		}
+		return invokeAll(tasks);
+	}
+
+	/**
+	 * sort every posting list by weight on the worker pool
+	 * @param postingLists indexed by termId, may have nulls
+	 * @param documentVectors
+	 */
+	void sortByWeight(Collection<PostingList> postingLists, final List<DocumentVector> documentVectors) {
+		final List<PostingList> lists = new ArrayList<PostingList>(postingLists);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final int[] range : splitIntoRanges(lists.size())) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = range[0]; i < range[1]; i++) {
+						if (lists.get(i) != null) {
+							lists.get(i).sortByWeight(documentVectors);
+						}
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+	}
+
+	/**
+	 * parse the lines between two byte offsets of a file on the worker pool
+	 * @param channel the file, read with positional reads only
+	 * @param from the offset of the first line
+	 * @param to the end of the file, or the offset right after a line break
+	 * @param charset
+	 * @param parser
+	 * @return the results that are not null, in file order
+	 * @throws IOException
+	 */
+	<T> List<T> parseLines(final FileChannel channel, long from, long to, final Charset charset,
+			final LineParser<T> parser) throws IOException {
+		long[] boundaries = new long[_numberOfThreads * RANGES_PER_THREAD + 1];
+		boundaries[0] = from;
+		int numberOfRanges = 0;
+		for (int i = 1; i < boundaries.length && boundaries[numberOfRanges] < to; i++) {
+			long boundary = from + (to - from) * i / (boundaries.length - 1);
+			if (boundary <= boundaries[numberOfRanges]) {
+				continue;
+			}
+			// move the boundary past the next line break, unless a line starts right there
+			LineReader reader = new LineReader(channel, boundary - 1, to, charset);
+			reader.skipLine();
+			boundaries[++numberOfRanges] = reader.position();
+		}
+
+		List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>();
+		for (int i = 0; i < numberOfRanges; i++) {
+			final long start = boundaries[i];
+			final long end = boundaries[i + 1];
+			tasks.add(new Callable<List<T>>() {
+				@Override
+				public List<T> call() throws IOException {
+					List<T> results = new ArrayList<T>();
+					LineReader reader = new LineReader(channel, start, end, charset);
+					for (String line; (line = reader.readLine()) != null;) {
+						T result = parser.parse(line);
+						if (result != null) {
+							results.add(result);
+						}
+					}
+					return results;
+				}
+			});
+		}
+
+		List<T> results = new ArrayList<T>();
+		for (List<T> rangeResults : invokeAll(tasks)) {
+			results.addAll(rangeResults);
+		}
+		return results;
+	}
+
+	/**
+	 * Reads the lines of a part of a file through positional reads, so that several
+	 * readers can share one channel, and knows the offset of the next line.
+	 * Lines end at '\n', with an optional '\r' before it, like BufferedReader.readLine
+	 * reads them from a file in an ASCII compatible charset.
+	 */
+	static class LineReader {
+		private static final int BUFFER_SIZE = 1 << 16;
+
+		private final FileChannel _channel;
+		private final long _end;
+		private final Charset _charset;
+		private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private long _filePosition;
+		private byte[] _line = new byte[256];
+
+		/**
+		 * @param channel
+		 * @param from the offset to start reading at
+		 * @param to the offset to stop reading at
+		 * @param charset
+		 */
+		LineReader(FileChannel channel, long from, long to, Charset charset) {
+			_channel = channel;
+			_end = to;
+			_charset = charset;
+			_filePosition = from;
+			_buffer.limit(0);
+		}
+
+		/**
+		 * @return the offset of the first byte that has not been read
+		 */
+		long position() {
+			return _filePosition - _buffer.remaining();
+		}
+
+		/**
+		 * @return the next line without its line break, or null at the end
+		 * @throws IOException
+		 */
+		String readLine() throws IOException {
+			int length = 0;
+			boolean hasLine = false;
+			while (true) {
+				if (!_buffer.hasRemaining() && !fill()) {
+					if (!hasLine) {
+						return null;
+					}
+					break;
+				}
+				hasLine = true;
+				byte b = _buffer.get();
+				if (b == '\n') {
+					break;
+				}
+				if (length == _line.length) {
+					_line = Arrays.copyOf(_line, 2 * length);
+				}
+				_line[length++] = b;
+			}
+			if (length > 0 && _line[length - 1] == '\r') {
+				length--;
+			}
+			return new String(_line, 0, length, _charset);
+		}
+
+		/**
+		 * read past the next line break without decoding the line
+		 * @throws IOException
+		 */
+		void skipLine() throws IOException {
+			while (_buffer.hasRemaining() || fill()) {
+				if (_buffer.get() == '\n') {
+					return;
+				}
+			}
+		}
+
+		private boolean fill() throws IOException {
+			_buffer.clear();
+			_buffer.limit((int) Math.min(BUFFER_SIZE, _end - _filePosition));
+			if (!_buffer.hasRemaining()) {
+				_buffer.limit(0);
+				return false;
+			}
+			while (_buffer.hasRemaining()) {
+				int read = _channel.read(_buffer, _filePosition);
+				if (read < 0) {
+					break;
+				}
+				_filePosition += read;
+			}
+			_buffer.flip();
+			return _buffer.hasRemaining();
+		}
+	}
+
+	/**
+	 * @param size
+	 * @return one [from, to) range per worker
+	 */
+	private List<int[]> splitIntoRanges(int size) {
+		List<int[]> ranges = new ArrayList<int[]>();
+		int rangeSize = (size + _numberOfThreads - 1) / _numberOfThreads;
+		for (int from = 0; from < size; from += rangeSize) {
+			ranges.add(new int[] {from, Math.min(size, from + rangeSize)});
+		}
+		return ranges;
+	}
+
+	/**
+	 * run the tasks and collect their results in task order
+	 */
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for (Future<T> future : _executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("indexing was interrupted", e);
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		return results;
+	}
+}
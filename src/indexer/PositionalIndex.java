@@ -0,0 +1,608 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where every term occurs in every document, for phrase and proximity queries.
+ *
+ * It is kept apart from the postings, in a file of its own, so an index that is queried
+ * without phrases never reads or holds a position. The positions of a term are one block
+ * of variable byte integers, a document after the other in docId order:
+ * (docId gap, number of positions, bytes of the positions, position gaps*), so a
+ * PositionCursor steps over the positions of the documents it does not stop at without
+ * decoding them. Positions count the indexed terms of a document, see
+ * VectorSpace.readTerms, so stop words do not break a phrase.
+ *
+ * File layout (big endian):
+ *
+ * header:          magic, version, number of docIds, term count, offsets of the url
+ *                  table, term dictionary and positions, and the length of the file
+ * url table:       the url of every docId, empty for a document without positions
+ * term dictionary: (term, document count, offset, length)* of the blocks
+ * positions:       the blocks of the terms
+ *
+ * The index keeps the url of every document it was built from, and finds the documents
+ * of a later snapshot, whose merged segments may have renumbered them, by their urls,
+ * once per snapshot version. Deleted documents drop out, and documents added since never
+ * match a phrase until the index is built again.
+ * @author Jun
+ *
+ */
+public final class PositionalIndex {
+	public static final int MAGIC = 0x534D5053; // "SMPS"
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 4 * 4 + 4 * 8;
+	private static final AtomicLong GENERATIONS = new AtomicLong();
+
+	/**
+	 * the url of every docId, null for a document without positions
+	 */
+	private final String[] _urls;
+	/**
+	 * document count, offset and length of the block of every term
+	 */
+	private final HashMap<String, int[]> _blocks;
+	private final ByteBuffer _positions;
+	/**
+	 * the docIds of the documents in the last snapshot queried
+	 */
+	private volatile DocIdMap _docIdMap = null;
+	private final long _generation = GENERATIONS.incrementAndGet();
+
+	private PositionalIndex(String[] urls, HashMap<String, int[]> blocks, ByteBuffer positions) {
+		_urls = urls;
+		_blocks = blocks;
+		_positions = positions;
+	}
+
+	/**
+	 * @return different for every index built or loaded, so that results matched by an
+	 * 		   older one are told apart from its
+	 */
+	public long getGeneration() {
+		return _generation;
+	}
+
+	/**
+	 * read the positions of the live documents of the snapshot from their files again
+	 * @param snapshot
+	 * @return
+	 */
+	static PositionalIndex build(IndexSnapshot snapshot) {
+		String[] urls = new String[snapshot.getEndDocId()];
+		HashMap<String, BlockWriter> writers = new HashMap<String, BlockWriter>();
+		HashMap<String, int[]> documentPositions = new HashMap<String, int[]>();
+		for (int docId = 0; docId < urls.length; docId++) {
+			if (!snapshot.isLive(docId)) {
+				continue;
+			}
+			DocumentVector documentVector = snapshot.getDocumentVector(docId);
+			File file = new File(documentVector.getDocumentName());
+			if (!file.isFile()) {
+				continue;
+			}
+			urls[docId] = documentVector.getUrl();
+
+			// the positions of a term, with their number at index 0
+			documentPositions.clear();
+			List<String> terms = VectorSpace.readTerms(file);
+			for (int position = 0; position < terms.size(); position++) {
+				int[] positions = documentPositions.get(terms.get(position));
+				if (positions == null) {
+					positions = new int[4];
+				} else if (positions[0] + 1 == positions.length) {
+					positions = Arrays.copyOf(positions, 2 * positions.length);
+				}
+				positions[++positions[0]] = position;
+				documentPositions.put(terms.get(position), positions);
+			}
+			for (Map.Entry<String, int[]> termPositions : documentPositions.entrySet()) {
+				BlockWriter writer = writers.get(termPositions.getKey());
+				if (writer == null) {
+					writer = new BlockWriter();
+					writers.put(termPositions.getKey(), writer);
+				}
+				writer.add(docId, termPositions.getValue());
+			}
+		}
+
+		long size = 0;
+		for (BlockWriter writer : writers.values()) {
+			size += writer._size;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("the positions take " + size + " bytes, more than a buffer can hold");
+		}
+		ByteBuffer positions = ByteBuffer.allocate((int) size);
+		HashMap<String, int[]> blocks = new HashMap<String, int[]>();
+		for (Map.Entry<String, BlockWriter> termWriter : writers.entrySet()) {
+			BlockWriter writer = termWriter.getValue();
+			blocks.put(termWriter.getKey(), new int[] { writer._documentCount, positions.position(), writer._size });
+			positions.put(writer._data, 0, writer._size);
+		}
+		positions.flip();
+		return new PositionalIndex(urls, blocks, positions);
+	}
+
+	/**
+	 * map the positions of a file written by save, and read its urls and terms
+	 * @param filename
+	 * @return
+	 * @throws IOException if the file is not a positional index of a supported version
+	 */
+	public static PositionalIndex load(String filename) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+			 FileChannel channel = file.getChannel()) {
+			long fileLength = channel.size();
+			if (fileLength < HEADER_SIZE) {
+				throw new IOException(filename + " is too short to be a positional index");
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) {
+				throw new IOException(filename + " is not a positional index");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(filename + " has unsupported positional index version " + version);
+			}
+			int numberOfDocIds = header.getInt();
+			int termCount = header.getInt();
+			long urlTableOffset = header.getLong();
+			long termDictionaryOffset = header.getLong();
+			long positionsOffset = header.getLong();
+			long expectedLength = header.getLong();
+			if (expectedLength != fileLength || positionsOffset - urlTableOffset > Integer.MAX_VALUE
+					|| fileLength - positionsOffset > Integer.MAX_VALUE) {
+				throw new IOException(filename + " is truncated or too large: expected " + expectedLength
+						+ " bytes but found " + fileLength);
+			}
+
+			ByteBuffer urlTable = channel.map(FileChannel.MapMode.READ_ONLY, urlTableOffset,
+					termDictionaryOffset - urlTableOffset);
+			String[] urls = new String[numberOfDocIds];
+			for (int docId = 0; docId < numberOfDocIds; docId++) {
+				String url = BinaryIndexFile.readString(urlTable);
+				urls[docId] = url.isEmpty() ? null : url;
+			}
+
+			ByteBuffer termDictionary = channel.map(FileChannel.MapMode.READ_ONLY, termDictionaryOffset,
+					positionsOffset - termDictionaryOffset);
+			HashMap<String, int[]> blocks = new HashMap<String, int[]>(2 * termCount);
+			for (int i = 0; i < termCount; i++) {
+				String term = BinaryIndexFile.readString(termDictionary);
+				blocks.put(term, new int[] { termDictionary.getInt(), termDictionary.getInt(), termDictionary.getInt() });
+			}
+
+			ByteBuffer positions = channel.map(FileChannel.MapMode.READ_ONLY, positionsOffset, fileLength - positionsOffset);
+			return new PositionalIndex(urls, blocks, positions);
+		}
+	}
+
+	/**
+	 * write the index to the file, replacing it at once, see IndexFileWriter
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void save(String filename) throws IOException {
+		try (IndexFileWriter output = new IndexFileWriter(filename)) {
+			FileChannel channel = output.getChannel();
+			BinaryIndexFile.Writer writer = new BinaryIndexFile.Writer(channel);
+			writer.skip(HEADER_SIZE);
+
+			long urlTableOffset = writer.position();
+			for (String url : _urls) {
+				writer.putString(url == null ? "" : url);
+			}
+
+			long termDictionaryOffset = writer.position();
+			for (Map.Entry<String, int[]> block : _blocks.entrySet()) {
+				writer.putString(block.getKey());
+				writer.putInt(block.getValue()[0]);
+				writer.putInt(block.getValue()[1]);
+				writer.putInt(block.getValue()[2]);
+			}
+
+			long positionsOffset = writer.position();
+			ByteBuffer positions = _positions.duplicate();
+			positions.clear();
+			writer.putBytes(positions);
+			writer.flush();
+			long fileLength = writer.position();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(_urls.length);
+			header.putInt(_blocks.size());
+			header.putLong(urlTableOffset);
+			header.putLong(termDictionaryOffset);
+			header.putLong(positionsOffset);
+			header.putLong(fileLength);
+			header.flip();
+			channel.write(header, 0);
+			output.commit();
+		}
+	}
+
+	public int getNumberOfTerms() {
+		return _blocks.size();
+	}
+
+	/**
+	 * @return the bytes the positions take
+	 */
+	public long getSizeInBytes() {
+		return _positions.capacity();
+	}
+
+	/**
+	 * @param term
+	 * @return the documents of the term with their positions, null if the term is in none
+	 */
+	PositionCursor cursor(String term) {
+		int[] block = _blocks.get(term);
+		if (block == null) {
+			return null;
+		}
+		ByteBuffer positions = _positions.duplicate();
+		positions.limit(block[1] + block[2]);
+		positions.position(block[1]);
+		return new PositionCursor(positions, block[0]);
+	}
+
+	/**
+	 * @param snapshot the index being queried
+	 * @param clauses
+	 * @return the docIds of the live documents of the snapshot that match every clause,
+	 * 		   in ascending order
+	 */
+	int[] match(IndexSnapshot snapshot, List<PositionalQuery.Clause> clauses) {
+		int[] docIds = null;
+		for (PositionalQuery.Clause clause : clauses) {
+			int[] clauseDocIds = match(clause);
+			docIds = docIds == null ? clauseDocIds : intersect(docIds, clauseDocIds);
+		}
+		if (docIds == null) {
+			return new int[0];
+		}
+
+		int[] snapshotDocIds = getSnapshotDocIds(snapshot);
+		int size = 0;
+		boolean isSorted = true;
+		for (int docId : docIds) {
+			int snapshotDocId = snapshotDocIds[docId];
+			if (snapshotDocId >= 0) {
+				isSorted &= size == 0 || docIds[size - 1] < snapshotDocId;
+				docIds[size++] = snapshotDocId;
+			}
+		}
+		docIds = Arrays.copyOf(docIds, size);
+		if (!isSorted) {
+			Arrays.sort(docIds);
+		}
+		return docIds;
+	}
+
+	/**
+	 * @return the docId in the snapshot of every docId of this index, -1 for a document
+	 * 		   that is not live in it
+	 */
+	private int[] getSnapshotDocIds(IndexSnapshot snapshot) {
+		DocIdMap docIdMap = _docIdMap;
+		if (docIdMap != null && docIdMap.snapshot.get() == snapshot) {
+			return docIdMap.docIds;
+		}
+
+		HashMap<String, Integer> docIdsByUrl = new HashMap<String, Integer>(2 * _urls.length);
+		for (int docId = 0; docId < _urls.length; docId++) {
+			if (_urls[docId] != null) {
+				docIdsByUrl.put(_urls[docId], docId);
+			}
+		}
+		int[] docIds = new int[_urls.length];
+		Arrays.fill(docIds, -1);
+		for (int snapshotDocId = 0; snapshotDocId < snapshot.getEndDocId(); snapshotDocId++) {
+			if (snapshot.isLive(snapshotDocId)) {
+				Integer docId = docIdsByUrl.get(snapshot.getDocumentVector(snapshotDocId).getUrl());
+				if (docId != null) {
+					docIds[docId.intValue()] = snapshotDocId;
+				}
+			}
+		}
+		_docIdMap = new DocIdMap(snapshot, docIds);
+		return docIds;
+	}
+
+	/**
+	 * leapfrog over the documents of the terms, and only read the positions of the
+	 * documents that have all of them
+	 */
+	private int[] match(PositionalQuery.Clause clause) {
+		PositionCursor[] cursors = new PositionCursor[clause.terms.size()];
+		for (int i = 0; i < cursors.length; i++) {
+			cursors[i] = cursor(clause.terms.get(i));
+			if (cursors[i] == null) {
+				return new int[0];
+			}
+			cursors[i].nextDoc();
+		}
+
+		int[] docIds = new int[16];
+		int size = 0;
+		int[] pointers = new int[cursors.length];
+		while (true) {
+			int target = cursors[0].docId();
+			for (PositionCursor cursor : cursors) {
+				target = Math.max(target, cursor.docId());
+			}
+			if (target == PostingCursor.NO_MORE_DOCS) {
+				break;
+			}
+			boolean isCandidate = true;
+			for (PositionCursor cursor : cursors) {
+				if (cursor.advance(target) != target) {
+					isCandidate = false;
+				}
+			}
+			if (!isCandidate) {
+				continue;
+			}
+
+			boolean isMatch = clause.isPhrase()
+					? isPhrase(cursors, pointers)
+					: isWithin(cursors, pointers, clause.maxDistance);
+			if (isMatch) {
+				if (size == docIds.length) {
+					docIds = Arrays.copyOf(docIds, 2 * size);
+				}
+				docIds[size++] = target;
+			}
+			cursors[0].nextDoc();
+		}
+		return Arrays.copyOf(docIds, size);
+	}
+
+	/**
+	 * @return whether the terms of the cursors follow each other somewhere in the document
+	 */
+	private static boolean isPhrase(PositionCursor[] cursors, int[] pointers) {
+		Arrays.fill(pointers, 0);
+		int[] firstPositions = cursors[0].positions();
+		candidates:
+		for (int i = 0; i < cursors[0].count(); i++) {
+			int start = firstPositions[i];
+			for (int j = 1; j < cursors.length; j++) {
+				int[] positions = cursors[j].positions();
+				int count = cursors[j].count();
+				// the pointers only move forward, since the start only does
+				while (pointers[j] < count && positions[pointers[j]] < start + j) {
+					pointers[j]++;
+				}
+				if (pointers[j] == count) {
+					return false;
+				} else if (positions[pointers[j]] != start + j) {
+					continue candidates;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return whether an occurrence of every term lies within maxDistance positions of
+	 * 		   the first one, in any order
+	 */
+	private static boolean isWithin(PositionCursor[] cursors, int[] pointers, int maxDistance) {
+		Arrays.fill(pointers, 0);
+		while (true) {
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			int minIndex = -1;
+			for (int i = 0; i < cursors.length; i++) {
+				int position = cursors[i].positions()[pointers[i]];
+				if (position < min) {
+					min = position;
+					minIndex = i;
+				}
+				max = Math.max(max, position);
+			}
+			if (max - min <= maxDistance) {
+				return true;
+			}
+			// the window can only get smaller by moving its first position
+			if (++pointers[minIndex] == cursors[minIndex].count()) {
+				return false;
+			}
+		}
+	}
+
+	private static int[] intersect(int[] docIds, int[] otherDocIds) {
+		int[] ans = new int[Math.min(docIds.length, otherDocIds.length)];
+		int size = 0;
+		for (int i = 0, j = 0; i < docIds.length && j < otherDocIds.length;) {
+			if (docIds[i] < otherDocIds[j]) {
+				i++;
+			} else if (docIds[i] > otherDocIds[j]) {
+				j++;
+			} else {
+				ans[size++] = docIds[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(ans, size);
+	}
+
+	private static int readVByte(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	private static int getVByteLength(int value) {
+		int length = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * The documents of a term in docId order, with the positions of the current one,
+	 * which are only decoded when asked for.
+	 */
+	static final class PositionCursor {
+		private final ByteBuffer _block;
+		private int _remainingDocuments;
+		private int _docId = -1;
+		private int _count = 0;
+		private int _positionsStart = 0;
+		private int _positionsLength = 0;
+		private boolean _isDecoded = false;
+		private int[] _positions = new int[8];
+
+		PositionCursor(ByteBuffer block, int numberOfDocuments) {
+			_block = block;
+			_remainingDocuments = numberOfDocuments;
+			_positionsStart = block.position();
+		}
+
+		int docId() {
+			return _docId;
+		}
+
+		int nextDoc() {
+			if (_remainingDocuments == 0) {
+				_docId = PostingCursor.NO_MORE_DOCS;
+				return _docId;
+			}
+			_remainingDocuments--;
+			_block.position(_positionsStart + _positionsLength);
+			_docId += readVByte(_block);
+			_count = readVByte(_block);
+			_positionsLength = readVByte(_block);
+			_positionsStart = _block.position();
+			_isDecoded = false;
+			return _docId;
+		}
+
+		/**
+		 * @param target
+		 * @return the first docId at or after the target
+		 */
+		int advance(int target) {
+			while (_docId < target) {
+				nextDoc();
+			}
+			return _docId;
+		}
+
+		/**
+		 * @return the number of positions of the current document
+		 */
+		int count() {
+			return _count;
+		}
+
+		/**
+		 * @return the positions of the current document in ascending order, up to count
+		 */
+		int[] positions() {
+			if (!_isDecoded) {
+				if (_positions.length < _count) {
+					_positions = new int[Math.max(_count, 2 * _positions.length)];
+				}
+				_block.position(_positionsStart);
+				int position = 0;
+				for (int i = 0; i < _count; i++) {
+					position += readVByte(_block);
+					_positions[i] = position;
+				}
+				_isDecoded = true;
+			}
+			return _positions;
+		}
+	}
+
+	/**
+	 * Merges renumber the documents of a snapshot without changing its version, so the
+	 * map is kept for one snapshot, which it does not keep from being collected.
+	 */
+	private static final class DocIdMap {
+		final WeakReference<IndexSnapshot> snapshot;
+		final int[] docIds;
+
+		DocIdMap(IndexSnapshot snapshot, int[] docIds) {
+			this.snapshot = new WeakReference<IndexSnapshot>(snapshot);
+			this.docIds = docIds;
+		}
+	}
+
+	/**
+	 * the block of a term while the index is built
+	 */
+	private static final class BlockWriter {
+		private byte[] _data = new byte[16];
+		private int _size = 0;
+		private int _documentCount = 0;
+		private int _lastDocId = -1;
+
+		/**
+		 * @param docId greater than the last one added
+		 * @param positions the number of positions, then the positions in ascending order
+		 */
+		void add(int docId, int[] positions) {
+			int count = positions[0];
+			int positionsLength = 0;
+			int previous = 0;
+			for (int i = 1; i <= count; i++) {
+				positionsLength += getVByteLength(positions[i] - previous);
+				previous = positions[i];
+			}
+			ensureCapacity(3 * 5 + positionsLength);
+			_size = PostingCodec.writeVByte(_data, _size, docId - _lastDocId);
+			_size = PostingCodec.writeVByte(_data, _size, count);
+			_size = PostingCodec.writeVByte(_data, _size, positionsLength);
+			previous = 0;
+			for (int i = 1; i <= count; i++) {
+				_size = PostingCodec.writeVByte(_data, _size, positions[i] - previous);
+				previous = positions[i];
+			}
+			_lastDocId = docId;
+			_documentCount++;
+		}
+
+		private void ensureCapacity(int length) {
+			if (_size + length > _data.length) {
+				_data = Arrays.copyOf(_data, Math.max(_size + length, 2 * _data.length));
+			}
+		}
+	}
+}
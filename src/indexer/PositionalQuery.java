@@ -0,0 +1,136 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The phrases of a query, for a PositionalIndex.
+ *
+ * "new york" only matches documents where the words follow each other in that order,
+ * and "new york pizza"~5 documents where all of them occur, in any order, within a
+ * window of 5 words, i.e. the last is at most 5 positions after the first. Stop words
+ * are left out of a phrase the way they are left out of the documents. Every word of
+ * the query, quoted or not, still adds to the score; the phrases only decide which
+ * documents are ranked.
+ * @author Jun
+ *
+ */
+final class PositionalQuery {
+	/**
+	 * a phrase of the query
+	 */
+	static final class Clause {
+		/**
+		 * -1 for a phrase whose words must be next to each other in order
+		 */
+		final int maxDistance;
+		final List<String> terms;
+
+		Clause(List<String> terms, int maxDistance) {
+			this.terms = Collections.unmodifiableList(new ArrayList<String>(terms));
+			this.maxDistance = maxDistance;
+		}
+
+		boolean isPhrase() {
+			return maxDistance < 0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder("\"");
+			for (int i = 0; i < terms.size(); i++) {
+				text.append(i == 0 ? "" : " ").append(terms.get(i));
+			}
+			text.append('"');
+			if (!isPhrase()) {
+				text.append('~').append(maxDistance);
+			}
+			return text.toString();
+		}
+	}
+
+	private final List<Clause> _clauses;
+	private final String _text;
+
+	private PositionalQuery(List<Clause> clauses, String text) {
+		_clauses = clauses;
+		_text = text;
+	}
+
+	/**
+	 * @param query
+	 * @return the phrases of the query, or null if it has none, so that it is ranked like
+	 * 		   any other query. An unclosed quote is a phrase up to the end of the query
+	 */
+	static PositionalQuery parse(String query) {
+		List<Clause> clauses = new ArrayList<Clause>();
+		StringBuilder text = new StringBuilder();
+		int position = 0;
+		while (position < query.length()) {
+			int open = query.indexOf('"', position);
+			if (open < 0) {
+				text.append(query, position, query.length());
+				break;
+			}
+			text.append(query, position, open).append(' ');
+			int close = query.indexOf('"', open + 1);
+			if (close < 0) {
+				close = query.length();
+			}
+			String phrase = query.substring(open + 1, close);
+			text.append(phrase).append(' ');
+			position = Math.min(close + 1, query.length());
+
+			int maxDistance = -1;
+			if (position < query.length() && query.charAt(position) == '~') {
+				int end = position + 1;
+				while (end < query.length() && Character.isDigit(query.charAt(end)) && end - position <= 9) {
+					end++;
+				}
+				if (end > position + 1) {
+					maxDistance = Integer.parseInt(query.substring(position + 1, end));
+					position = end;
+				}
+			}
+
+			List<String> terms = Utilities.getObject().tokenizeStringWithoutStopWords(phrase);
+			// a single word matches wherever the word occurs
+			if (terms.size() > 1) {
+				clauses.add(new Clause(terms, maxDistance));
+			}
+		}
+		return clauses.isEmpty() ? null : new PositionalQuery(Collections.unmodifiableList(clauses), text.toString());
+	}
+
+	List<Clause> getClauses() {
+		return _clauses;
+	}
+
+	/**
+	 * @return the query without the quotes and distances, whose words are scored
+	 */
+	String getText() {
+		return _text;
+	}
+
+	/**
+	 * @return the phrases, for the cache key of the query
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (Clause clause : _clauses) {
+			text.append(text.length() == 0 ? "" : " ").append(clause);
+		}
+		return text.toString();
+	}
+}
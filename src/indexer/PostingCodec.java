@@ -0,0 +1,362 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.Arrays;
+
+/**
+ * Compressed encoding of docId ordered postings.
+ *
+ * The postings are cut into blocks of BLOCK_SIZE. Inside a block the docIds are stored
+ * as variable byte encoded gaps, the first one relative to the last docId of the previous
+ * block, and the weights follow as fixed width values: 8 or 16 bit levels between the
+ * lowest and the highest weight of the term, or the exact 64 bit doubles. A skip table
+ * keeps the last docId and the byte offset of every block, so a cursor can jump to
+ * the block holding a target docId without decoding the blocks in between.
+ * @author Jun
+ *
+ */
+final class PostingCodec {
+	static final int BLOCK_SIZE = 128;
+
+	/**
+	 * supported weightBits
+	 */
+	static final int WEIGHTS_8_BITS = 8;
+	static final int WEIGHTS_16_BITS = 16;
+	static final int WEIGHTS_EXACT = 64;
+
+	private final byte[] _data;
+	private final int[] _blockLastDocIds;
+	private final int[] _blockOffsets;
+	private final int _size;
+	private final int _weightBits;
+	private final double _minWeight;
+	private final double _weightStep;
+	private final double _maxWeight;
+
+	private PostingCodec(byte[] data, int[] blockLastDocIds, int[] blockOffsets, int size, int weightBits,
+			double minWeight, double weightStep, double maxWeight) {
+		_data = data;
+		_blockLastDocIds = blockLastDocIds;
+		_blockOffsets = blockOffsets;
+		_size = size;
+		_weightBits = weightBits;
+		_minWeight = minWeight;
+		_weightStep = weightStep;
+		_maxWeight = maxWeight;
+	}
+
+	/**
+	 * @param docIds in increasing order
+	 * @param weights
+	 * @param size the number of postings to encode
+	 * @param weightBits WEIGHTS_8_BITS, WEIGHTS_16_BITS or WEIGHTS_EXACT
+	 * @return
+	 */
+	static PostingCodec encode(int[] docIds, double[] weights, int size, int weightBits) {
+		if (weightBits != WEIGHTS_8_BITS && weightBits != WEIGHTS_16_BITS && weightBits != WEIGHTS_EXACT) {
+			throw new IllegalArgumentException("unsupported weight bits: " + weightBits);
+		}
+
+		double minWeight = Double.POSITIVE_INFINITY;
+		double maxWeight = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < size; i++) {
+			minWeight = Math.min(minWeight, weights[i]);
+			maxWeight = Math.max(maxWeight, weights[i]);
+		}
+		if (size == 0) {
+			minWeight = 0.0;
+			maxWeight = 0.0;
+		}
+		int levels = weightBits == WEIGHTS_EXACT ? 0 : (1 << weightBits) - 1;
+		double weightStep = levels == 0 ? 0.0 : (maxWeight - minWeight) / levels;
+
+		int numberOfBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int[] blockLastDocIds = new int[numberOfBlocks];
+		int[] blockOffsets = new int[numberOfBlocks];
+		byte[] data = new byte[Math.max(16, size * (1 + weightBits / 8))];
+		int position = 0;
+		int previousDocId = 0;
+		for (int block = 0; block < numberOfBlocks; block++) {
+			int from = block * BLOCK_SIZE;
+			int to = Math.min(size, from + BLOCK_SIZE);
+			blockOffsets[block] = position;
+
+			// at most 5 bytes per gap plus the weights
+			int needed = position + (to - from) * (5 + weightBits / 8);
+			if (needed > data.length) {
+				data = Arrays.copyOf(data, Math.max(needed, data.length * 2));
+			}
+			for (int i = from; i < to; i++) {
+				if (docIds[i] < previousDocId || i > 0 && docIds[i] == previousDocId) {
+					throw new IllegalArgumentException("docIds are not increasing at " + i);
+				}
+				position = writeVByte(data, position, docIds[i] - previousDocId);
+				previousDocId = docIds[i];
+			}
+			for (int i = from; i < to; i++) {
+				position = writeWeight(data, position, weights[i], weightBits, minWeight, weightStep);
+			}
+			blockLastDocIds[block] = previousDocId;
+		}
+
+		return new PostingCodec(Arrays.copyOf(data, position), blockLastDocIds, blockOffsets, size, weightBits,
+				minWeight, weightStep, maxWeight);
+	}
+
+	static int writeVByte(byte[] data, int position, int value) {
+		while ((value & ~0x7f) != 0) {
+			data[position++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		data[position++] = (byte) value;
+		return position;
+	}
+
+	private static int writeWeight(byte[] data, int position, double weight, int weightBits,
+			double minWeight, double weightStep) {
+		if (weightBits == WEIGHTS_EXACT) {
+			long bits = Double.doubleToLongBits(weight);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				data[position++] = (byte) (bits >>> shift);
+			}
+			return position;
+		}
+
+		int level = weightStep == 0.0 ? 0 : (int) Math.round((weight - minWeight) / weightStep);
+		if (weightBits == WEIGHTS_16_BITS) {
+			data[position++] = (byte) (level >>> 8);
+		}
+		data[position++] = (byte) level;
+		return position;
+	}
+
+	int size() {
+		return _size;
+	}
+
+	int getNumberOfBlocks() {
+		return _blockLastDocIds.length;
+	}
+
+	/**
+	 * @return the highest weight as it is decoded, which bounds every decoded weight
+	 */
+	double getMaxWeight() {
+		if (_size == 0) {
+			return 0.0;
+		} else if (_weightBits == WEIGHTS_EXACT) {
+			return _maxWeight;
+		}
+		return _minWeight + ((1 << _weightBits) - 1) * _weightStep;
+	}
+
+	/**
+	 * @return whether the weights are decoded as they were encoded, not quantized
+	 */
+	boolean hasExactWeights() {
+		return _weightBits == WEIGHTS_EXACT;
+	}
+
+	/**
+	 * @return the number of bytes of the encoded postings and the skip table
+	 */
+	long getSizeInBytes() {
+		return _data.length + 8L * _blockLastDocIds.length;
+	}
+
+	/**
+	 * @param block
+	 * @return the last docId in the block
+	 */
+	int getBlockLastDocId(int block) {
+		return _blockLastDocIds[block];
+	}
+
+	/**
+	 * decode one block into the buffers
+	 * @param block
+	 * @param docIds at least BLOCK_SIZE long
+	 * @param weights at least BLOCK_SIZE long
+	 * @return the number of postings in the block
+	 */
+	int decodeBlock(int block, int[] docIds, double[] weights) {
+		int count = Math.min(BLOCK_SIZE, _size - block * BLOCK_SIZE);
+		int position = _blockOffsets[block];
+		int docId = block == 0 ? 0 : _blockLastDocIds[block - 1];
+		byte[] data = _data;
+
+		for (int i = 0; i < count; i++) {
+			int b = data[position++];
+			int gap = b & 0x7f;
+			for (int shift = 7; b < 0; shift += 7) {
+				b = data[position++];
+				gap |= (b & 0x7f) << shift;
+			}
+			docId += gap;
+			docIds[i] = docId;
+		}
+
+		if (_weightBits == WEIGHTS_8_BITS) {
+			for (int i = 0; i < count; i++) {
+				weights[i] = _minWeight + (data[position++] & 0xff) * _weightStep;
+			}
+		} else if (_weightBits == WEIGHTS_16_BITS) {
+			for (int i = 0; i < count; i++) {
+				int level = ((data[position] & 0xff) << 8) | (data[position + 1] & 0xff);
+				position += 2;
+				weights[i] = _minWeight + level * _weightStep;
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				long bits = 0;
+				for (int j = 0; j < 8; j++) {
+					bits = (bits << 8) | (data[position++] & 0xff);
+				}
+				weights[i] = Double.longBitsToDouble(bits);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return a new cursor over the postings, positioned before the first one
+	 */
+	PostingCursor cursor() {
+		return new BlockPostingCursor(this);
+	}
+
+	/**
+	 * Decodes a block at a time into its buffers. advance first skips whole blocks
+	 * through the skip table, then searches the decoded block.
+	 */
+	static class BlockPostingCursor implements PostingCursor {
+		private final PostingCodec _postings;
+		private final double _maxWeight;
+		private final int[] _docIds = new int[BLOCK_SIZE];
+		private final double[] _weights = new double[BLOCK_SIZE];
+		private int _block = -1;
+		private int _count = 0;
+		private int _index = -1;
+		private int _docId = -1;
+
+		BlockPostingCursor(PostingCodec postings) {
+			_postings = postings;
+			_maxWeight = postings.getMaxWeight();
+		}
+
+		@Override
+		public int docId() {
+			return _docId;
+		}
+
+		@Override
+		public double weight() {
+			return _weights[_index];
+		}
+
+		@Override
+		public int nextDoc() {
+			if (_docId == NO_MORE_DOCS) {
+				return NO_MORE_DOCS;
+			}
+			_index++;
+			if (_index >= _count && !loadBlock(_block + 1)) {
+				return NO_MORE_DOCS;
+			}
+			_docId = _docIds[_index];
+			return _docId;
+		}
+
+		@Override
+		public int advance(int target) {
+			if (_docId == NO_MORE_DOCS) {
+				return NO_MORE_DOCS;
+			}
+
+			int index = _index + 1;
+			if (index >= _count || _docIds[_count - 1] < target) {
+				// the target is not in the decoded block, skip to the block that holds it
+				if (!loadBlock(findBlock(_block + 1, target))) {
+					return NO_MORE_DOCS;
+				}
+				index = 0;
+			}
+			// the last docId of the block is at least target
+			while (_docIds[index] < target) {
+				index++;
+			}
+			_index = index;
+			_docId = _docIds[index];
+			return _docId;
+		}
+
+		/**
+		 * gallop over the skip table
+		 * @return the first block from from on whose last docId is at least target,
+		 * 		   or the number of blocks if there is none
+		 */
+		private int findBlock(int from, int target) {
+			int numberOfBlocks = _postings.getNumberOfBlocks();
+			if (from >= numberOfBlocks || _postings.getBlockLastDocId(from) >= target) {
+				return from;
+			}
+
+			int low = from;
+			int step = 1;
+			int high = low + step;
+			while (high < numberOfBlocks && _postings.getBlockLastDocId(high) < target) {
+				low = high;
+				step <<= 1;
+				high = low + step;
+			}
+			high = Math.min(high, numberOfBlocks);
+
+			// the last docId of low is below target, the one of high is not if high is in range
+			while (high - low > 1) {
+				int mid = (low + high) >>> 1;
+				if (_postings.getBlockLastDocId(mid) < target) {
+					low = mid;
+				} else {
+					high = mid;
+				}
+			}
+			return high;
+		}
+
+		/**
+		 * decode the block and move to its first posting
+		 * @return false, with the cursor exhausted, if there is no such block
+		 */
+		private boolean loadBlock(int block) {
+			if (block >= _postings.getNumberOfBlocks()) {
+				_block = _postings.getNumberOfBlocks();
+				_count = 0;
+				_index = -1;
+				_docId = NO_MORE_DOCS;
+				return false;
+			}
+			_count = _postings.decodeBlock(block, _docIds, _weights);
+			_block = block;
+			_index = 0;
+			return true;
+		}
+
+		@Override
+		public double getMaxWeight() {
+			return _maxWeight;
+		}
+
+		@Override
+		public int size() {
+			return _postings.size();
+		}
+	}
+}
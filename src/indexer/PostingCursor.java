@@ -0,0 +1,55 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+/**
+ * Iterates the postings of a term in increasing docId order.
+ * A new cursor is positioned before its first posting.
+ * @author Jun
+ *
+ */
+public interface PostingCursor {
+	/**
+	 * returned once a cursor has run out of postings
+	 */
+	public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/**
+	 * @return the docId at the current position, -1 before the first call to nextDoc or advance
+	 */
+	public int docId();
+
+	/**
+	 * @return the weight of the term in the current document
+	 */
+	public double weight();
+
+	/**
+	 * move to the next posting
+	 * @return the new docId, or NO_MORE_DOCS
+	 */
+	public int nextDoc();
+
+	/**
+	 * move to the first posting whose docId is at least target
+	 * @param target
+	 * @return the new docId, or NO_MORE_DOCS
+	 */
+	public int advance(int target);
+
+	/**
+	 * @return the highest weight of the term in any document, an upper bound for weight()
+	 */
+	public double getMaxWeight();
+
+	/**
+	 * @return the number of postings
+	 */
+	public int size();
+}
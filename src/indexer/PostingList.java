@@ -0,0 +1,601 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The documents that contain a term, stored as parallel arrays of docIds and weights
+ * instead of one DocumentWeightPair per posting.
+ *
+ * Once sorted, the postings are ordered like SorterOfDocumentsByWeightedTermFrequency
+ * orders DocumentWeightPairs: highest weight first, ties broken by url. The top k of the
+ * term are then the first k postings, and they are split into impact tiers, runs of
+ * postings whose weights are within IMPACT_TIER_RATIO of the first weight of their run,
+ * which short queries read a tier at a time until no later posting can change their
+ * top k.
+ *
+ * A sorted list can also be written off the heap with writeTo, into a direct buffer of
+ * OffHeapPostings; a PostingList read back from there is a read only view that gets its
+ * postings from the buffer and holds no arrays of its own.
+ * @author Jun
+ *
+ */
+public class PostingList {
+	private static final int INITIAL_CAPACITY = 4;
+	/**
+	 * a tier ends before the first weight below this share of its highest weight
+	 */
+	static final double IMPACT_TIER_RATIO = 0.5;
+	private static final int[] NO_TIERS = new int[0];
+
+	private int[] _docIds = null;
+	private double[] _weights = null;
+	private int _size = 0;
+
+	/**
+	 * the end of every impact tier in weight order, the last one being _size
+	 */
+	private int[] _tierEnds = NO_TIERS;
+
+	/**
+	 * The same postings in increasing docId order, used by PostingCursor.
+	 * Once compressed they are only kept encoded in _docIdOrderedPostings.
+	 */
+	private int[] _docIdOrderedDocIds = null;
+	private double[] _docIdOrderedWeights = null;
+	private PostingCodec _docIdOrderedPostings = null;
+
+	/**
+	 * Where the postings of an off-heap view are in _buffer, see writeTo. The docId order
+	 * offsets are -1 when it is compressed, and the tier ends come last.
+	 */
+	private ByteBuffer _buffer = null;
+	private int _weightsOffset = 0;
+	private int _docIdOrderWeightsOffset = -1;
+	private int _docIdsOffset = 0;
+	private int _docIdOrderDocIdsOffset = -1;
+	private int _tierEndsOffset = 0;
+	private int _numberOfTiers = 0;
+
+	PostingList() {
+		_docIds = new int[INITIAL_CAPACITY];
+		_weights = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * wrap postings that are already sorted by weight
+	 * @param docIds
+	 * @param weights
+	 */
+	PostingList(int[] docIds, double[] weights) {
+		_docIds = docIds;
+		_weights = weights;
+		_size = docIds.length;
+		buildDocIdOrder();
+		buildImpactTiers();
+	}
+
+	/**
+	 * a view of postings written by writeTo
+	 * @param buffer
+	 * @param offset where they were written
+	 * @param size
+	 * @param numberOfTiers
+	 * @param docIdOrderedPostings the compressed docId order, null if it was written too
+	 */
+	PostingList(ByteBuffer buffer, int offset, int size, int numberOfTiers, PostingCodec docIdOrderedPostings) {
+		_buffer = buffer;
+		_size = size;
+		_numberOfTiers = numberOfTiers;
+		_docIdOrderedPostings = docIdOrderedPostings;
+		int position = offset;
+		_weightsOffset = position;
+		position += 8 * size;
+		if (docIdOrderedPostings == null) {
+			_docIdOrderWeightsOffset = position;
+			position += 8 * size;
+		}
+		_docIdsOffset = position;
+		position += 4 * size;
+		if (docIdOrderedPostings == null) {
+			_docIdOrderDocIdsOffset = position;
+			position += 4 * size;
+		}
+		_tierEndsOffset = position;
+	}
+
+	void add(int docId, double weight) {
+		checkOnHeap();
+		if (_size == _docIds.length) {
+			int capacity = _size * 2;
+			_docIds = Arrays.copyOf(_docIds, capacity);
+			_weights = Arrays.copyOf(_weights, capacity);
+		}
+		_docIds[_size] = docId;
+		_weights[_size] = weight;
+		_size++;
+	}
+
+	/**
+	 * append the postings of another unsorted list
+	 * @param postings
+	 */
+	void addAll(PostingList postings) {
+		for (int i = 0; i < postings._size; i++) {
+			add(postings.getDocId(i), postings.getWeight(i));
+		}
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public int getDocId(int index) {
+		if (_buffer != null) {
+			return _buffer.getInt(_docIdsOffset + 4 * index);
+		}
+		return _docIds[index];
+	}
+
+	public double getWeight(int index) {
+		if (_buffer != null) {
+			return _buffer.getDouble(_weightsOffset + 8 * index);
+		}
+		return _weights[index];
+	}
+
+	/**
+	 * @return the number of impact tiers, once the postings are sorted
+	 */
+	public int getTierCount() {
+		return _buffer != null ? _numberOfTiers : _tierEnds.length;
+	}
+
+	/**
+	 * @param tier
+	 * @return the index after the last posting of the tier, in weight order
+	 */
+	public int getTierEnd(int tier) {
+		if (_buffer != null) {
+			return _buffer.getInt(_tierEndsOffset + 4 * tier);
+		}
+		return _tierEnds[tier];
+	}
+
+	/**
+	 * @param tier
+	 * @return the highest weight of the tier, that of its first posting
+	 */
+	public double getTierMaxWeight(int tier) {
+		return getWeight(tier == 0 ? 0 : getTierEnd(tier - 1));
+	}
+
+	/**
+	 * @return whether the postings are a read only view of a buffer
+	 */
+	boolean isView() {
+		return _buffer != null;
+	}
+
+	/**
+	 * @return whether the docId ordered postings are only kept encoded, so that
+	 * 		   getWeightOf cannot look them up
+	 */
+	boolean isCompressed() {
+		return _docIdOrderedPostings != null;
+	}
+
+	/**
+	 * Look up the weight of a document by binary search over the docId ordered postings,
+	 * for scoring a document found in the postings of another term.
+	 * @param docId
+	 * @return NaN if the document does not contain the term
+	 * @throws IllegalStateException if the postings are compressed
+	 */
+	double getWeightOf(int docId) {
+		if (_docIdOrderedPostings != null) {
+			throw new IllegalStateException("the postings are compressed");
+		}
+		if (_buffer == null) {
+			int index = Arrays.binarySearch(_docIdOrderedDocIds, 0, _size, docId);
+			return index < 0 ? Double.NaN : _docIdOrderedWeights[index];
+		}
+		int low = 0;
+		int high = _size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midDocId = _buffer.getInt(_docIdOrderDocIdsOffset + 4 * mid);
+			if (midDocId < docId) {
+				low = mid + 1;
+			} else if (midDocId > docId) {
+				high = mid - 1;
+			} else {
+				return _buffer.getDouble(_docIdOrderWeightsOffset + 8 * mid);
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * the upper bound of the term's weight, known once the postings are sorted
+	 * @return
+	 */
+	public double getMaxWeight() {
+		return _size == 0 ? 0.0 : getWeight(0);
+	}
+
+	/**
+	 * @return a new cursor over the postings in docId order
+	 */
+	public PostingCursor cursor() {
+		if (_docIdOrderedPostings != null) {
+			return _docIdOrderedPostings.cursor();
+		} else if (_buffer != null) {
+			return new BufferPostingCursor(_buffer, _docIdOrderDocIdsOffset, _docIdOrderWeightsOffset, _size,
+					getMaxWeight());
+		}
+		return new ArrayPostingCursor(_docIdOrderedDocIds, _docIdOrderedWeights, getMaxWeight());
+	}
+
+	/**
+	 * Replace the docId ordered copy of the postings by its PostingCodec encoding.
+	 * Cursors then decode the postings a block at a time; with quantized weights they
+	 * see the decoded weights, and getMaxWeight of a cursor bounds those.
+	 * @param weightBits PostingCodec.WEIGHTS_8_BITS, WEIGHTS_16_BITS or WEIGHTS_EXACT
+	 */
+	void compress(int weightBits) {
+		checkOnHeap();
+		if (_docIdOrderedPostings == null) {
+			_docIdOrderedPostings = PostingCodec.encode(_docIdOrderedDocIds, _docIdOrderedWeights, _size, weightBits);
+			_docIdOrderedDocIds = null;
+			_docIdOrderedWeights = null;
+		}
+	}
+
+	/**
+	 * @return the bytes taken by the docId ordered postings, encoded or not
+	 */
+	long getDocIdOrderSizeInBytes() {
+		if (_docIdOrderedPostings != null) {
+			return _docIdOrderedPostings.getSizeInBytes();
+		}
+		return 12L * _size;
+	}
+
+	/**
+	 * @return the docId order compressed by compress, null if it is not
+	 */
+	PostingCodec getDocIdOrderedPostings() {
+		return _docIdOrderedPostings;
+	}
+
+	/**
+	 * @return the bytes writeTo writes, a multiple of 8 so that the doubles of the next
+	 * 		   list stay aligned
+	 */
+	int getOffHeapSizeInBytes() {
+		long bytes = (_docIdOrderedPostings == null ? 24L : 12L) * _size + 4L * getTierCount();
+		bytes = (bytes + 7) & ~7L;
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalStateException("too many postings for one buffer: " + _size);
+		}
+		return (int) bytes;
+	}
+
+	/**
+	 * Write the sorted postings at the offset: the weights, the weights in docId order, the
+	 * docIds, the docIds in docId order and the tier ends. A compressed docId order is not
+	 * written; the view keeps its PostingCodec.
+	 * @param buffer
+	 * @param offset
+	 */
+	void writeTo(ByteBuffer buffer, int offset) {
+		boolean hasDocIdOrder = _docIdOrderedPostings == null;
+		int position = offset;
+		for (int i = 0; i < _size; i++, position += 8) {
+			buffer.putDouble(position, getWeight(i));
+		}
+		PostingCursor cursor = hasDocIdOrder ? cursor() : null;
+		for (int i = 0; hasDocIdOrder && i < _size; i++, position += 8) {
+			cursor.nextDoc();
+			buffer.putDouble(position, cursor.weight());
+		}
+		for (int i = 0; i < _size; i++, position += 4) {
+			buffer.putInt(position, getDocId(i));
+		}
+		cursor = hasDocIdOrder ? cursor() : null;
+		for (int i = 0; hasDocIdOrder && i < _size; i++, position += 4) {
+			buffer.putInt(position, cursor.nextDoc());
+		}
+		for (int tier = 0; tier < getTierCount(); tier++, position += 4) {
+			buffer.putInt(position, getTierEnd(tier));
+		}
+	}
+
+	private void checkOnHeap() {
+		if (_buffer != null) {
+			throw new IllegalStateException("off-heap postings are read only");
+		}
+	}
+
+	/**
+	 * Sort the postings by decreasing weight, with ties ordered by the url of the document.
+	 * Postings that compare equal are kept only once, as a TreeSet would do.
+	 * The arrays are trimmed to their size afterwards.
+	 * @param documentVectors the documents, indexed by docId
+	 */
+	void sortByWeight(List<DocumentVector> documentVectors) {
+		int[] order = new int[_size];
+		for (int i = 0; i < _size; i++) {
+			order[i] = i;
+		}
+		mergeSort(order, new int[_size], 0, _size, documentVectors);
+
+		int[] docIds = new int[_size];
+		double[] weights = new double[_size];
+		int size = 0;
+		for (int i = 0; i < order.length; i++) {
+			int index = order[i];
+			if (size > 0 && compare(docIds[size - 1], weights[size - 1],
+					_docIds[index], _weights[index], documentVectors) == 0) {
+				continue;
+			}
+			docIds[size] = _docIds[index];
+			weights[size] = _weights[index];
+			size++;
+		}
+
+		_docIds = size == docIds.length ? docIds : Arrays.copyOf(docIds, size);
+		_weights = size == weights.length ? weights : Arrays.copyOf(weights, size);
+		_size = size;
+		buildDocIdOrder();
+		buildImpactTiers();
+	}
+
+	private void buildImpactTiers() {
+		int[] tierEnds = new int[INITIAL_CAPACITY];
+		int numberOfTiers = 0;
+		double tierMaxWeight = _size == 0 ? 0.0 : _weights[0];
+		for (int i = 1; i <= _size; i++) {
+			if (i == _size || _weights[i] < tierMaxWeight * IMPACT_TIER_RATIO) {
+				if (numberOfTiers == tierEnds.length) {
+					tierEnds = Arrays.copyOf(tierEnds, 2 * numberOfTiers);
+				}
+				tierEnds[numberOfTiers++] = i;
+				if (i < _size) {
+					tierMaxWeight = _weights[i];
+				}
+			}
+		}
+		_tierEnds = numberOfTiers == 0 ? NO_TIERS : Arrays.copyOf(tierEnds, numberOfTiers);
+	}
+
+	private void buildDocIdOrder() {
+		long[] keys = new long[_size];
+		for (int i = 0; i < _size; i++) {
+			keys[i] = ((long) _docIds[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		_docIdOrderedDocIds = new int[_size];
+		_docIdOrderedWeights = new double[_size];
+		for (int i = 0; i < _size; i++) {
+			int index = (int) keys[i];
+			_docIdOrderedDocIds[i] = _docIds[index];
+			_docIdOrderedWeights[i] = _weights[index];
+		}
+	}
+
+	private void mergeSort(int[] order, int[] buffer, int from, int to, List<DocumentVector> documentVectors) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(order, buffer, from, middle, documentVectors);
+		mergeSort(order, buffer, middle, to, documentVectors);
+
+		int left = from;
+		int right = middle;
+		int index = from;
+		while (left < middle && right < to) {
+			if (compare(_docIds[order[right]], _weights[order[right]],
+					_docIds[order[left]], _weights[order[left]], documentVectors) < 0) {
+				buffer[index++] = order[right++];
+			} else {
+				buffer[index++] = order[left++];
+			}
+		}
+		while (left < middle) {
+			buffer[index++] = order[left++];
+		}
+		while (right < to) {
+			buffer[index++] = order[right++];
+		}
+		System.arraycopy(buffer, from, order, from, to - from);
+	}
+
+	/**
+	 * the same ordering as Utilities.SorterOfDocumentsByWeightedTermFrequency
+	 */
+	static int compare(int docId1, double weight1, int docId2, double weight2,
+			List<DocumentVector> documentVectors) {
+		if (weight1 == weight2) {
+			return documentVectors.get(docId1).getUrl().compareTo(
+					documentVectors.get(docId2).getUrl());
+		} else if (weight1 < weight2) {
+			return 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Cursor over docId ordered arrays. advance gallops, so skipping far ahead
+	 * costs a logarithmic number of comparisons.
+	 */
+	static class ArrayPostingCursor implements PostingCursor {
+		private final int[] _docIds;
+		private final double[] _weights;
+		private final double _maxWeight;
+		private int _index = -1;
+
+		ArrayPostingCursor(int[] docIds, double[] weights, double maxWeight) {
+			_docIds = docIds;
+			_weights = weights;
+			_maxWeight = maxWeight;
+		}
+
+		@Override
+		public int docId() {
+			if (_index < 0) {
+				return -1;
+			} else if (_index >= _docIds.length) {
+				return NO_MORE_DOCS;
+			}
+			return _docIds[_index];
+		}
+
+		@Override
+		public double weight() {
+			return _weights[_index];
+		}
+
+		@Override
+		public int nextDoc() {
+			_index++;
+			return docId();
+		}
+
+		@Override
+		public int advance(int target) {
+			int low = _index + 1;
+			if (low >= _docIds.length || _docIds[low] >= target) {
+				_index = low;
+				return docId();
+			}
+
+			int step = 1;
+			int high = low + step;
+			while (high < _docIds.length && _docIds[high] < target) {
+				low = high;
+				step <<= 1;
+				high = low + step;
+			}
+			high = Math.min(high, _docIds.length);
+
+			// _docIds[low] < target, and _docIds[high] >= target if high is in range
+			while (high - low > 1) {
+				int mid = (low + high) >>> 1;
+				if (_docIds[mid] < target) {
+					low = mid;
+				} else {
+					high = mid;
+				}
+			}
+			_index = high;
+			return docId();
+		}
+
+		@Override
+		public double getMaxWeight() {
+			return _maxWeight;
+		}
+
+		@Override
+		public int size() {
+			return _docIds.length;
+		}
+	}
+
+	/**
+	 * ArrayPostingCursor over the docId order of an off-heap view
+	 */
+	static class BufferPostingCursor implements PostingCursor {
+		private final ByteBuffer _buffer;
+		private final int _docIdsOffset;
+		private final int _weightsOffset;
+		private final int _size;
+		private final double _maxWeight;
+		private int _index = -1;
+
+		BufferPostingCursor(ByteBuffer buffer, int docIdsOffset, int weightsOffset, int size, double maxWeight) {
+			_buffer = buffer;
+			_docIdsOffset = docIdsOffset;
+			_weightsOffset = weightsOffset;
+			_size = size;
+			_maxWeight = maxWeight;
+		}
+
+		private int getDocId(int index) {
+			return _buffer.getInt(_docIdsOffset + 4 * index);
+		}
+
+		@Override
+		public int docId() {
+			if (_index < 0) {
+				return -1;
+			} else if (_index >= _size) {
+				return NO_MORE_DOCS;
+			}
+			return getDocId(_index);
+		}
+
+		@Override
+		public double weight() {
+			return _buffer.getDouble(_weightsOffset + 8 * _index);
+		}
+
+		@Override
+		public int nextDoc() {
+			_index++;
+			return docId();
+		}
+
+		@Override
+		public int advance(int target) {
+			int low = _index + 1;
+			if (low >= _size || getDocId(low) >= target) {
+				_index = low;
+				return docId();
+			}
+
+			int step = 1;
+			int high = low + step;
+			while (high < _size && getDocId(high) < target) {
+				low = high;
+				step <<= 1;
+				high = low + step;
+			}
+			high = Math.min(high, _size);
+
+			while (high - low > 1) {
+				int mid = (low + high) >>> 1;
+				if (getDocId(mid) < target) {
+					low = mid;
+				} else {
+					high = mid;
+				}
+			}
+			_index = high;
+			return docId();
+		}
+
+		@Override
+		public double getMaxWeight() {
+			return _maxWeight;
+		}
+
+		@Override
+		public int size() {
+			return _size;
+		}
+	}
+}
@@ -0,0 +1,323 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of query results.
+ *
+ * Entries are keyed on the tokens of the query, after tokenization has lower cased them
+ * and dropped punctuation, together with k and the ranking used. They are evicted in
+ * least recently used order once the capacity is reached, where the capacity counts
+ * either entries or the number of cached documents.
+ *
+ * With frequency admission (TinyLFU) a new entry only replaces the least recently used
+ * one if its query was asked more often, as estimated by a small count-min sketch that
+ * also remembers queries that are not cached. One-off queries then cannot push the
+ * popular ones out.
+ *
+ * Every entry belongs to an index version. Looking up or adding a result of a newer
+ * IndexSnapshot drops everything cached for the older ones, so retraining or reloading
+ * the VectorSpace never serves stale results.
+ * @author Jun
+ *
+ */
+public class QueryCache {
+	private final long _capacity;
+	private final boolean _isWeighedByDocuments;
+	private final FrequencySketch _sketch;
+
+	/**
+	 * access ordered, the eldest entry is the least recently used one
+	 */
+	private final LinkedHashMap<String, DocumentWeightPair[]> _entries =
+			new LinkedHashMap<String, DocumentWeightPair[]>(16, 0.75f, true);
+	private long _weight = 0;
+	private long _version = -1;
+
+	private final LongAdder _hits = new LongAdder();
+	private final LongAdder _misses = new LongAdder();
+	private final LongAdder _evictions = new LongAdder();
+	private final LongAdder _rejections = new LongAdder();
+
+	/**
+	 * @param capacity the most entries, or cached documents, to keep
+	 * @param isWeighedByDocuments whether the capacity counts the documents of the results
+	 * 		   (an empty result still counts one) instead of the results
+	 * @param hasFrequencyAdmission whether new entries have to win against the one they evict
+	 */
+	public QueryCache(long capacity, boolean isWeighedByDocuments, boolean hasFrequencyAdmission) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		_capacity = capacity;
+		_isWeighedByDocuments = isWeighedByDocuments;
+		_sketch = hasFrequencyAdmission ? new FrequencySketch(capacity) : null;
+	}
+
+	/**
+	 * @param tokens the tokenized query
+	 * @param k
+	 * @param isExact whether the result comes from the WAND engine
+	 * @return the cache key of the query
+	 */
+	public static String createKey(List<String> tokens, int k, boolean isExact) {
+		return createKey(tokens, k, isExact, ScoringModel.RAW);
+	}
+
+	/**
+	 * @param tokens the tokenized query
+	 * @param k
+	 * @param isExact whether the result comes from the WAND engine
+	 * @param scoringModel
+	 * @return the cache key of the query under the scoring model
+	 */
+	public static String createKey(List<String> tokens, int k, boolean isExact, ScoringModel scoringModel) {
+		StringBuilder key = new StringBuilder();
+		key.append(isExact ? 'e' : 'a').append(k);
+		if (scoringModel != ScoringModel.RAW) {
+			key.append(' ').append(scoringModel.getName());
+		}
+		for (String token : tokens) {
+			key.append(' ').append(token);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @param version the version of the snapshot the query runs against
+	 * @param key
+	 * @return a copy of the cached result, or null if it has to be computed
+	 */
+	public ArrayList<DocumentWeightPair> get(long version, String key) {
+		DocumentWeightPair[] cached;
+		synchronized (this) {
+			invalidateOlderThan(version);
+			if (_sketch != null) {
+				_sketch.increment(key);
+			}
+			cached = version == _version ? _entries.get(key) : null;
+		}
+		if (cached == null) {
+			_misses.increment();
+			return null;
+		}
+		_hits.increment();
+		return copy(cached);
+	}
+
+	/**
+	 * cache the result of a query
+	 * @param version the version of the snapshot the result was computed on
+	 * @param key
+	 * @param ans
+	 */
+	public void put(long version, String key, List<DocumentWeightPair> ans) {
+		DocumentWeightPair[] entry = copy(ans).toArray(new DocumentWeightPair[ans.size()]);
+		long weight = weigh(entry);
+		if (weight > _capacity) {
+			_rejections.increment();
+			return;
+		}
+
+		synchronized (this) {
+			invalidateOlderThan(version);
+			if (version != _version) {
+				// computed on a snapshot that has been replaced since
+				return;
+			}
+			DocumentWeightPair[] previous = _entries.remove(key);
+			if (previous != null) {
+				_weight -= weigh(previous);
+			}
+			if (!makeRoom(key, weight)) {
+				_rejections.increment();
+				return;
+			}
+			_entries.put(key, entry);
+			_weight += weight;
+		}
+	}
+
+	/**
+	 * drop every entry
+	 */
+	public synchronized void clear() {
+		_entries.clear();
+		_weight = 0;
+	}
+
+	public synchronized int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * @return the part of the capacity in use
+	 */
+	public synchronized long getWeight() {
+		return _weight;
+	}
+
+	public long getCapacity() {
+		return _capacity;
+	}
+
+	public long getHits() {
+		return _hits.sum();
+	}
+
+	public long getMisses() {
+		return _misses.sum();
+	}
+
+	public double getHitRate() {
+		long hits = getHits();
+		long requests = hits + getMisses();
+		return requests == 0 ? 0.0 : (hits + 0.0) / (requests + 0.0);
+	}
+
+	public long getEvictions() {
+		return _evictions.sum();
+	}
+
+	/**
+	 * @return the number of results that were not cached because of their size or frequency
+	 */
+	public long getRejections() {
+		return _rejections.sum();
+	}
+
+	private void invalidateOlderThan(long version) {
+		if (version > _version) {
+			clear();
+			_version = version;
+		}
+	}
+
+	/**
+	 * evict least recently used entries until weight fits in
+	 * @return false if the admission filter keeps the evicted entries instead
+	 */
+	private boolean makeRoom(String key, long weight) {
+		if (_weight + weight <= _capacity) {
+			return true;
+		}
+		if (_sketch != null) {
+			// only admit the key if it is more popular than every entry it would evict
+			long freed = 0;
+			Iterator<Map.Entry<String, DocumentWeightPair[]>> victims = _entries.entrySet().iterator();
+			int frequency = _sketch.frequency(key);
+			while (_weight - freed + weight > _capacity) {
+				Map.Entry<String, DocumentWeightPair[]> victim = victims.next();
+				if (_sketch.frequency(victim.getKey()) >= frequency) {
+					return false;
+				}
+				freed += weigh(victim.getValue());
+			}
+		}
+
+		Iterator<Map.Entry<String, DocumentWeightPair[]>> eldest = _entries.entrySet().iterator();
+		while (_weight + weight > _capacity) {
+			_weight -= weigh(eldest.next().getValue());
+			eldest.remove();
+			_evictions.increment();
+		}
+		return true;
+	}
+
+	private long weigh(DocumentWeightPair[] entry) {
+		return _isWeighedByDocuments ? Math.max(1, entry.length) : 1;
+	}
+
+	/**
+	 * the pairs are mutable, so neither the cache nor its callers may share them
+	 */
+	private static ArrayList<DocumentWeightPair> copy(DocumentWeightPair[] pairs) {
+		ArrayList<DocumentWeightPair> ans = new ArrayList<DocumentWeightPair>(pairs.length);
+		for (DocumentWeightPair pair : pairs) {
+			ans.add(copy(pair));
+		}
+		return ans;
+	}
+
+	private static ArrayList<DocumentWeightPair> copy(List<DocumentWeightPair> pairs) {
+		ArrayList<DocumentWeightPair> ans = new ArrayList<DocumentWeightPair>(pairs.size());
+		for (DocumentWeightPair pair : pairs) {
+			ans.add(copy(pair));
+		}
+		return ans;
+	}
+
+	private static DocumentWeightPair copy(DocumentWeightPair pair) {
+		DocumentWeightPair copy = new DocumentWeightPair();
+		copy.documentVector = pair.documentVector;
+		copy.weight = pair.weight;
+		return copy;
+	}
+
+	/**
+	 * Count-min sketch of how often keys were looked up, with 4 bit counters.
+	 * Every counter is halved once 10 lookups per cached entry have been counted,
+	 * so the popularity of old queries fades.
+	 */
+	private static class FrequencySketch {
+		private static final int DEPTH = 4;
+		private static final int MAX_COUNT = 15;
+		private static final int[] SEEDS = { 0x97cb3127, 0x5d3b2a7f, 0x2f1e4c93, 0x7a3e9f15 };
+
+		private final byte[] _counters;
+		private final int _mask;
+		private final long _sampleSize;
+		private long _additions = 0;
+
+		FrequencySketch(long capacity) {
+			int width = Integer.highestOneBit((int) Math.min(1 << 24, Math.max(16, capacity)) - 1) << 1;
+			_counters = new byte[DEPTH * width];
+			_mask = width - 1;
+			_sampleSize = 10 * Math.max(16, capacity);
+		}
+
+		void increment(String key) {
+			int hash = key.hashCode();
+			for (int row = 0; row < DEPTH; row++) {
+				int index = indexOf(hash, row);
+				if (_counters[index] < MAX_COUNT) {
+					_counters[index]++;
+				}
+			}
+			if (++_additions == _sampleSize) {
+				for (int i = 0; i < _counters.length; i++) {
+					_counters[i] >>= 1;
+				}
+				_additions /= 2;
+			}
+		}
+
+		int frequency(String key) {
+			int hash = key.hashCode();
+			int frequency = MAX_COUNT;
+			for (int row = 0; row < DEPTH; row++) {
+				frequency = Math.min(frequency, _counters[indexOf(hash, row)]);
+			}
+			return frequency;
+		}
+
+		private int indexOf(int hash, int row) {
+			int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+			h ^= h >>> 16;
+			return row * (_mask + 1) + (h & _mask);
+		}
+	}
+}
@@ -0,0 +1,471 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP front end of a Searcher, IndexerMain or a ShardCoordinator.
+ *
+ * GET /search?q=...&k=...&exact=true answers with the top k documents as JSON:
+ * {"query":"...","k":5,"version":1,"results":[{"url":"...","document":"...","score":1.5}]}
+ * POST /search takes the query as the request body instead of q.
+ * exact=true uses the WAND engine, otherwise the same ranking as the command line.
+ * scoring=tfidf or scoring=bm25 ranks by that ScoringModel instead of the raw weights.
+ * stats=... ranks an exact query by the CollectionStatistics of a sharded collection, as
+ * GET /stats?q=... encodes them for one shard: {"query":"...","version":1,"stats":"..."}
+ * GET /metrics answers with Metrics.dump, for Prometheus to scrape.
+ *
+ * Every request runs on its own virtual thread when the JVM has them. Otherwise they run
+ * on a bounded pool of platform threads with a bounded queue in front of it, and a
+ * request that finds both full is answered right away with 503 Service Unavailable and
+ * a Retry-After header, on the thread that accepted it, instead of waiting. Queries only
+ * read the published IndexSnapshot, so requests never wait for each other.
+ * @author Jun
+ *
+ */
+public class QueryServer {
+	public static final int MAX_K = 1000;
+	public static final int MAX_REQUEST_URI_LENGTH = 8192;
+	public static final int MAX_QUERY_LENGTH = 2048;
+
+	private static final String CONTEXT_SEARCH = "/search";
+	private static final String CONTEXT_STATS = "/stats";
+	private static final String CONTEXT_METRICS = "/metrics";
+	private static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+	private static final String CONTENT_TYPE_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+	private static final int BACKLOG = 1024;
+	/**
+	 * the bounds of the platform thread pool, when there are no virtual threads
+	 */
+	public static final int DEFAULT_MAX_THREADS = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+	public static final int DEFAULT_MAX_QUEUED_REQUESTS = BACKLOG;
+	private static final String RETRY_AFTER_SECONDS = "1";
+
+	/**
+	 * set while a request the pool turned away runs on the accepting thread
+	 */
+	private static final ThreadLocal<Boolean> IS_REJECTED = new ThreadLocal<Boolean>();
+
+	private static final int STATUS_OK = 200;
+	private static final int STATUS_BAD_REQUEST = 400;
+	private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+	private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+	private static final int STATUS_URI_TOO_LONG = 414;
+	private static final int STATUS_BAD_GATEWAY = 502;
+	private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+
+	private final Searcher _indexer;
+	private final int _defaultK;
+	private final HttpServer _server;
+	private final ExecutorService _executor;
+
+	/**
+	 * @param indexer
+	 * @param port 0 picks a free port, see getPort
+	 * @param defaultK the k of requests that do not give one
+	 * @throws IOException if the port cannot be bound
+	 */
+	public QueryServer(Searcher indexer, int port, int defaultK) throws IOException {
+		this(indexer, port, defaultK, newRequestExecutor());
+	}
+
+	/**
+	 * serve on a bounded pool of platform threads even when there are virtual threads
+	 * @param indexer
+	 * @param port
+	 * @param defaultK
+	 * @param maxThreads
+	 * @param maxQueuedRequests the requests that wait for a thread before the next ones
+	 * 		  are answered with 503
+	 * @throws IOException if the port cannot be bound
+	 */
+	public QueryServer(Searcher indexer, int port, int defaultK, int maxThreads, int maxQueuedRequests)
+			throws IOException {
+		this(indexer, port, defaultK, newBoundedExecutor(maxThreads, maxQueuedRequests));
+	}
+
+	private QueryServer(Searcher indexer, int port, int defaultK, ExecutorService executor) throws IOException {
+		if (defaultK < 1 || defaultK > MAX_K) {
+			executor.shutdown();
+			throw new IllegalArgumentException("k must be between 1 and " + MAX_K + ": " + defaultK);
+		}
+		_indexer = indexer;
+		_defaultK = defaultK;
+		_executor = executor;
+		_server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		_server.createContext(CONTEXT_SEARCH, new SearchHandler());
+		_server.createContext(CONTEXT_STATS, new StatsHandler());
+		_server.createContext(CONTEXT_METRICS, new MetricsHandler());
+		_server.setExecutor(_executor);
+	}
+
+	public void start() {
+		_server.start();
+	}
+
+	/**
+	 * stop accepting requests and wait up to delaySeconds for the running ones
+	 * @param delaySeconds
+	 */
+	public void stop(int delaySeconds) {
+		_server.stop(delaySeconds);
+		_executor.shutdown();
+		try {
+			_executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getPort() {
+		return _server.getAddress().getPort();
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor only exists from Java 21 on,
+	 * so it is looked up at run time
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return newBoundedExecutor(DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED_REQUESTS);
+		}
+	}
+
+	/**
+	 * A request the full pool rejects runs on the thread of the HttpServer that accepted
+	 * it, where the handlers only answer it with 503, since the server gives the executor
+	 * no exchange to answer otherwise.
+	 */
+	private static ExecutorService newBoundedExecutor(int maxThreads, int maxQueuedRequests) {
+		if (maxThreads < 1 || maxQueuedRequests < 0) {
+			throw new IllegalArgumentException("bad bounds: " + maxThreads + " threads, " + maxQueuedRequests + " queued");
+		}
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+				maxQueuedRequests == 0 ? new SynchronousQueue<Runnable>()
+						: new ArrayBlockingQueue<Runnable>(maxQueuedRequests),
+				new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable request, ThreadPoolExecutor executor) {
+						if (executor.isShutdown()) {
+							throw new RejectedExecutionException("the server is stopping");
+						}
+						IS_REJECTED.set(Boolean.TRUE);
+						try {
+							request.run();
+						} finally {
+							IS_REJECTED.remove();
+						}
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * @return whether the request was turned away by the pool and answered with 503
+	 */
+	private static boolean rejectIfOverloaded(HttpExchange exchange) throws IOException {
+		if (IS_REJECTED.get() == null) {
+			return false;
+		}
+		exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+		sendError(exchange, STATUS_SERVICE_UNAVAILABLE, "too many requests, retry later");
+		return true;
+	}
+
+	private class SearchHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (rejectIfOverloaded(exchange)) {
+					return;
+				}
+				String method = exchange.getRequestMethod();
+				if (!method.equals("GET") && !method.equals("POST")) {
+					exchange.getResponseHeaders().set("Allow", "GET, POST");
+					sendError(exchange, STATUS_METHOD_NOT_ALLOWED, "only GET and POST are supported");
+					return;
+				}
+				if (exchange.getRequestURI().toString().length() > MAX_REQUEST_URI_LENGTH) {
+					sendError(exchange, STATUS_URI_TOO_LONG, "the request uri is longer than " + MAX_REQUEST_URI_LENGTH);
+					return;
+				}
+
+				HashMap<String, String> parameters = parseParameters(exchange.getRequestURI().getRawQuery());
+				String query = method.equals("POST") ? readBody(exchange.getRequestBody()) : parameters.get("q");
+				if (query == null && method.equals("GET")) {
+					sendError(exchange, STATUS_BAD_REQUEST, "missing query");
+					return;
+				}
+				if (query == null || query.length() > MAX_QUERY_LENGTH) {
+					sendError(exchange, STATUS_PAYLOAD_TOO_LARGE, "the query is longer than " + MAX_QUERY_LENGTH);
+					return;
+				}
+
+				int k = _defaultK;
+				if (parameters.containsKey("k")) {
+					try {
+						k = Integer.parseInt(parameters.get("k"));
+					} catch (NumberFormatException e) {
+						k = -1;
+					}
+					if (k < 1 || k > MAX_K) {
+						sendError(exchange, STATUS_BAD_REQUEST, "k must be between 1 and " + MAX_K);
+						return;
+					}
+				}
+
+				ScoringModel scoringModel = ScoringModel.RAW;
+				if (parameters.containsKey("scoring")) {
+					scoringModel = ScoringModel.forName(parameters.get("scoring"));
+					if (scoringModel == null) {
+						sendError(exchange, STATUS_BAD_REQUEST, "scoring must be raw, tfidf or bm25");
+						return;
+					}
+				}
+
+				CollectionStatistics statistics = null;
+				if (parameters.containsKey("stats")) {
+					try {
+						statistics = CollectionStatistics.decode(parameters.get("stats"),
+								Utilities.getObject().tokenizeString(query));
+					} catch (IllegalArgumentException e) {
+						sendError(exchange, STATUS_BAD_REQUEST, "stats do not match the query: " + e.getMessage());
+						return;
+					}
+				}
+
+				boolean isExact = "true".equals(parameters.get("exact"));
+				long version;
+				ArrayList<DocumentWeightPair> ans;
+				try {
+					version = _indexer.getIndexVersion();
+					if (statistics != null) {
+						ans = _indexer.retrieveExactTopKDocuments(query, k, scoringModel, statistics);
+					} else if (isExact) {
+						ans = _indexer.retrieveExactTopKDocuments(query, k, scoringModel);
+					} else {
+						ans = _indexer.retrieveTopKDocuments(query, k, scoringModel);
+					}
+				} catch (UncheckedIOException e) {
+					// a shard of a ShardCoordinator did not answer
+					sendError(exchange, STATUS_BAD_GATEWAY, e.getMessage());
+					return;
+				} catch (IllegalArgumentException e) {
+					sendError(exchange, STATUS_BAD_REQUEST, "malformed query: " + e.getMessage());
+					return;
+				}
+				send(exchange, STATUS_OK, toJson(query, k, version, ans));
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private class StatsHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (rejectIfOverloaded(exchange)) {
+					return;
+				}
+				if (!exchange.getRequestMethod().equals("GET")) {
+					exchange.getResponseHeaders().set("Allow", "GET");
+					sendError(exchange, STATUS_METHOD_NOT_ALLOWED, "only GET is supported");
+					return;
+				}
+				if (exchange.getRequestURI().toString().length() > MAX_REQUEST_URI_LENGTH) {
+					sendError(exchange, STATUS_URI_TOO_LONG, "the request uri is longer than " + MAX_REQUEST_URI_LENGTH);
+					return;
+				}
+				String query = parseParameters(exchange.getRequestURI().getRawQuery()).get("q");
+				if (query == null) {
+					sendError(exchange, STATUS_BAD_REQUEST, "missing query");
+					return;
+				}
+
+				long version;
+				CollectionStatistics statistics;
+				try {
+					version = _indexer.getIndexVersion();
+					statistics = _indexer.getCollectionStatistics(query);
+				} catch (UncheckedIOException e) {
+					sendError(exchange, STATUS_BAD_GATEWAY, e.getMessage());
+					return;
+				}
+				StringBuilder json = new StringBuilder("{\"query\":");
+				appendJsonString(json, query);
+				json.append(",\"version\":").append(version);
+				json.append(",\"stats\":");
+				appendJsonString(json, statistics.encode());
+				json.append('}');
+				send(exchange, STATUS_OK, json.toString());
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private class MetricsHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (rejectIfOverloaded(exchange)) {
+					return;
+				}
+				if (!exchange.getRequestMethod().equals("GET")) {
+					exchange.getResponseHeaders().set("Allow", "GET");
+					sendError(exchange, STATUS_METHOD_NOT_ALLOWED, "only GET is supported");
+					return;
+				}
+				send(exchange, STATUS_OK, CONTENT_TYPE_TEXT, Metrics.getObject().dump());
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * @param rawQuery the still encoded query string of the uri, may be null
+	 * @return the decoded parameters, the last value wins for a repeated name
+	 */
+	private static HashMap<String, String> parseParameters(String rawQuery) throws UnsupportedEncodingException {
+		HashMap<String, String> parameters = new HashMap<String, String>();
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return parameters;
+		}
+		for (String parameter : rawQuery.split("&")) {
+			int equals = parameter.indexOf('=');
+			String name = equals < 0 ? parameter : parameter.substring(0, equals);
+			String value = equals < 0 ? "" : parameter.substring(equals + 1);
+			try {
+				parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+			} catch (IllegalArgumentException e) {
+				// a malformed escape, the parameter is left out
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * @return the body as UTF-8 text, or null as soon as it has more bytes than
+	 * 		   MAX_QUERY_LENGTH characters can take, without reading the rest of it
+	 */
+	private static String readBody(InputStream in) throws IOException {
+		int maxBytes = MAX_QUERY_LENGTH * 4;
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int length; (length = in.read(buffer)) != -1;) {
+			body.write(buffer, 0, length);
+			if (body.size() > maxBytes) {
+				return null;
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	static String toJson(String query, int k, long version, ArrayList<DocumentWeightPair> ans) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"query\":");
+		appendJsonString(json, query);
+		json.append(",\"k\":").append(k);
+		json.append(",\"version\":").append(version);
+		json.append(",\"results\":[");
+		for (int i = 0; i < ans.size(); i++) {
+			DocumentWeightPair dwp = ans.get(i);
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("{\"url\":");
+			appendJsonString(json, dwp.documentVector.getUrl());
+			json.append(",\"document\":");
+			appendJsonString(json, dwp.documentVector.getDocumentName());
+			json.append(",\"score\":").append(dwp.weight);
+			json.append('}');
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	private static void appendJsonString(StringBuilder json, String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		StringBuilder json = new StringBuilder("{\"error\":");
+		appendJsonString(json, message);
+		json.append('}');
+		send(exchange, status, json.toString());
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		send(exchange, status, CONTENT_TYPE_JSON, json);
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How the query terms found in a document add up to its score.
+ *
+ * RAW sums the weights of the postings, wtf or ntf depending on the training.
+ * TF_IDF weighs the documents by wtf and the query terms by their count times
+ * calculateIdf, and divides by both vector lengths, so the score is the cosine between them.
+ * BM25 uses the Okapi BM25 formula with its own idf and the parameters k1 and b.
+ *
+ * The document lengths and norms are computed once when a DocumentVector is built, and the
+ * idf of every term once per query, so scoring a posting costs reading its frequency back
+ * from its weight and a few arithmetic operations. The idf, the number of documents and their average
+ * length come from CollectionStatistics, which a shard gets for the whole collection.
+ * @author Jun
+ *
+ */
+public abstract class ScoringModel {
+	public static final double DEFAULT_BM25_K1 = 1.2;
+	public static final double DEFAULT_BM25_B = 0.75;
+
+	public static final ScoringModel RAW = new RawScoringModel();
+	public static final ScoringModel TF_IDF = new TfIdfScoringModel();
+	public static final ScoringModel BM25 = new Bm25ScoringModel(DEFAULT_BM25_K1, DEFAULT_BM25_B);
+
+	/**
+	 * The contribution of one query term to the score of a document.
+	 */
+	interface TermScorer {
+		/**
+		 * @param documentVector a document that contains the term
+		 * @param weight the weight of its posting
+		 * @return
+		 */
+		double score(DocumentVector documentVector, double weight);
+
+		/**
+		 * @param maxWeight the highest weight of the term's postings
+		 * @return an upper bound of score for any document
+		 */
+		double getMaxScore(double maxWeight);
+	}
+
+	/**
+	 * @param k1 how fast the term frequency saturates, at least 0
+	 * @param b how much the document length normalizes, between 0 and 1
+	 * @return
+	 */
+	public static ScoringModel bm25(double k1, double b) {
+		if (k1 < 0 || b < 0 || b > 1) {
+			throw new IllegalArgumentException("BM25 needs k1 >= 0 and 0 <= b <= 1: " + k1 + ", " + b);
+		}
+		return new Bm25ScoringModel(k1, b);
+	}
+
+	/**
+	 * @param name raw, tfidf, bm25 or bm25(k1,b) as getName gives it, in any case
+	 * @return null for any other name
+	 */
+	public static ScoringModel forName(String name) {
+		String lowerCaseName = name.toLowerCase(Locale.ROOT);
+		if (lowerCaseName.equals(RAW.getName())) {
+			return RAW;
+		} else if (lowerCaseName.equals(TF_IDF.getName())) {
+			return TF_IDF;
+		} else if (lowerCaseName.equals("bm25")) {
+			return BM25;
+		} else if (lowerCaseName.startsWith("bm25(") && lowerCaseName.endsWith(")")) {
+			String[] parameters = lowerCaseName.substring("bm25(".length(), lowerCaseName.length() - 1).split(",");
+			try {
+				return parameters.length == 2
+						? bm25(Double.parseDouble(parameters[0]), Double.parseDouble(parameters[1])) : null;
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the name of the model with its parameters, which identifies its rankings
+	 */
+	public abstract String getName();
+
+	/**
+	 * @param snapshot the index the query runs against
+	 * @param terms the query terms, a repeated term once per occurrence
+	 * @return a scorer for every query term in the same order, null for a term without postings
+	 */
+	TermScorer[] getTermScorers(IndexSnapshot snapshot, List<String> terms) {
+		return getTermScorers(snapshot, terms, CollectionStatistics.of(snapshot, terms));
+	}
+
+	/**
+	 * @param snapshot the index the query runs against
+	 * @param terms the query terms, a repeated term once per occurrence
+	 * @param statistics of the collection the snapshot is a part of
+	 * @return a scorer for every query term in the same order, null for a term without postings
+	 */
+	abstract TermScorer[] getTermScorers(IndexSnapshot snapshot, List<String> terms, CollectionStatistics statistics);
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	/**
+	 * Reads the frequency of a term back from the weight of its posting, so that scoring
+	 * does not read the term frequencies of lazily loaded documents. A wtf weight is
+	 * 1 + ln tf, and an ntf weight goes up to 1 for the highest frequency of the live
+	 * documents, so the highest weight tells the two apart. Quantized weights are not
+	 * precise enough and the frequency is looked up in the document instead.
+	 */
+	private static final class FrequencyDecoder {
+		private final int _termId;
+		private final boolean _isExact;
+		private final boolean _isWtf;
+		private final int _maxTermFrequency;
+
+		FrequencyDecoder(IndexSnapshot snapshot, int termId) {
+			_termId = termId;
+			_isExact = snapshot.hasExactWeights(termId);
+			_isWtf = snapshot.getMaxLiveWeight(termId) > 1.0;
+			// a wtf term whose highest weight is 1 is only ever in a document once, as ntf reads it too
+			_maxTermFrequency = _isExact && !_isWtf ? snapshot.getMaxTermFrequency(termId) : 0;
+		}
+
+		/**
+		 * @param documentVector a document that contains the term
+		 * @param weight the weight of its posting
+		 * @return the frequency of the term in the document
+		 */
+		int getFrequency(DocumentVector documentVector, double weight) {
+			if (!_isExact) {
+				return documentVector.getFrequencyAt(documentVector.indexOf(_termId));
+			} else if (_isWtf) {
+				return (int) Math.round(Math.exp(weight - 1.0));
+			}
+			return (int) Math.round((weight - DocumentVector.ALPHA) / (1.0 - DocumentVector.ALPHA) * _maxTermFrequency);
+		}
+	}
+
+	private static class RawScoringModel extends ScoringModel {
+		private static final TermScorer WEIGHT_SCORER = new TermScorer() {
+			@Override
+			public double score(DocumentVector documentVector, double weight) {
+				return weight;
+			}
+
+			@Override
+			public double getMaxScore(double maxWeight) {
+				return maxWeight;
+			}
+		};
+
+		@Override
+		public String getName() {
+			return "raw";
+		}
+
+		/**
+		 * the weights do not depend on the collection, so the statistics are not needed
+		 */
+		@Override
+		TermScorer[] getTermScorers(IndexSnapshot snapshot, List<String> terms) {
+			return getTermScorers(snapshot, terms, null);
+		}
+
+		@Override
+		TermScorer[] getTermScorers(IndexSnapshot snapshot, List<String> terms, CollectionStatistics statistics) {
+			TermScorer[] scorers = new TermScorer[terms.size()];
+			for (int i = 0; i < scorers.length; i++) {
+				scorers[i] = WEIGHT_SCORER;
+			}
+			return scorers;
+		}
+	}
+
+	private static class TfIdfScoringModel extends ScoringModel {
+		@Override
+		public String getName() {
+			return "tfidf";
+		}
+
+		@Override
+		TermScorer[] getTermScorers(IndexSnapshot snapshot, List<String> terms, CollectionStatistics statistics) {
+			HashMap<String, Integer> queryFrequencies = new HashMap<String, Integer>();
+			for (String term : terms) {
+				Integer frequency = queryFrequencies.get(term);
+				queryFrequencies.put(term, frequency == null ? 1 : frequency.intValue() + 1);
+			}
+
+			HashMap<String, Double> idfs = new HashMap<String, Double>();
+			double squaredQueryNorm = 0.0;
+			for (String term : queryFrequencies.keySet()) {
+				double idf = statistics.getDocumentFrequency(term) == 0 ? 0.0 : Math.max(0.0, statistics.calculateIdf(term));
+				idfs.put(term, idf);
+				double queryWeight = queryFrequencies.get(term).intValue() * idf;
+				squaredQueryNorm += queryWeight * queryWeight;
+			}
+			double queryNorm = Math.sqrt(squaredQueryNorm);
+
+			TermScorer[] scorers = new TermScorer[terms.size()];
+			for (int i = 0; i < scorers.length; i++) {
+				int termId = snapshot.getTermId(terms.get(i));
+				double idf = idfs.get(terms.get(i)).doubleValue();
+				if (termId >= 0 && idf > 0.0) {
+					// every occurrence of a repeated term adds its share of the query weight
+					scorers[i] = new TfIdfTermScorer(new FrequencyDecoder(snapshot, termId), idf / queryNorm);
+				}
+			}
+			return scorers;
+		}
+	}
+
+	private static class TfIdfTermScorer implements TermScorer {
+		private final FrequencyDecoder _frequencyDecoder;
+		private final double _queryWeight;
+
+		TfIdfTermScorer(FrequencyDecoder frequencyDecoder, double queryWeight) {
+			_frequencyDecoder = frequencyDecoder;
+			_queryWeight = queryWeight;
+		}
+
+		@Override
+		public double score(DocumentVector documentVector, double weight) {
+			double wtf = 1.0 + Math.log(_frequencyDecoder.getFrequency(documentVector, weight));
+			return _queryWeight * wtf / documentVector.getNorm();
+		}
+
+		/**
+		 * the wtf of a term is at most the norm of its document
+		 */
+		@Override
+		public double getMaxScore(double maxWeight) {
+			return _queryWeight;
+		}
+	}
+
+	private static class Bm25ScoringModel extends ScoringModel {
+		private final double _k1;
+		private final double _b;
+
+		Bm25ScoringModel(double k1, double b) {
+			_k1 = k1;
+			_b = b;
+		}
+
+		@Override
+		public String getName() {
+			return "bm25(" + _k1 + "," + _b + ")";
+		}
+
+		@Override
+		TermScorer[] getTermScorers(IndexSnapshot snapshot, List<String> terms, CollectionStatistics statistics) {
+			int numberOfDocuments = statistics.getNumberOfDocuments();
+			double averageLength = statistics.getAverageDocumentLength();
+			TermScorer[] scorers = new TermScorer[terms.size()];
+			for (int i = 0; i < scorers.length; i++) {
+				int termId = snapshot.getTermId(terms.get(i));
+				int documentFrequency = statistics.getDocumentFrequency(terms.get(i));
+				if (termId < 0 || documentFrequency == 0) {
+					continue;
+				}
+				double idf = Math.log(1.0 + (numberOfDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+				scorers[i] = new Bm25TermScorer(new FrequencyDecoder(snapshot, termId), idf, _k1, _b, averageLength,
+						snapshot.getMaxTermFrequency(termId));
+			}
+			return scorers;
+		}
+	}
+
+	private static class Bm25TermScorer implements TermScorer {
+		private final FrequencyDecoder _frequencyDecoder;
+		private final double _idf;
+		private final double _k1;
+		private final double _b;
+		private final double _averageLength;
+		private final double _maxScore;
+
+		Bm25TermScorer(FrequencyDecoder frequencyDecoder, double idf, double k1, double b, double averageLength,
+				int maxTermFrequency) {
+			_frequencyDecoder = frequencyDecoder;
+			_idf = idf;
+			_k1 = k1;
+			_b = b;
+			_averageLength = averageLength;
+			// the shortest possible document has the smallest length normalization
+			_maxScore = idf * maxTermFrequency * (k1 + 1) / (maxTermFrequency + k1 * (1 - b));
+		}
+
+		@Override
+		public double score(DocumentVector documentVector, double weight) {
+			int tf = _frequencyDecoder.getFrequency(documentVector, weight);
+			double lengthNormalization = _k1 * (1 - _b + _b * documentVector.getLength() / _averageLength);
+			return _idf * tf * (_k1 + 1) / (tf + lengthNormalization);
+		}
+
+		@Override
+		public double getMaxScore(double maxWeight) {
+			return _maxScore;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+
+/**
+ * What the QueryServer answers queries with: a local index, IndexerMain, or a
+ * ShardCoordinator that asks the servers of the shards of an index.
+ * @author Jun
+ *
+ */
+public interface Searcher {
+	/**
+	 * @param query
+	 * @param k
+	 * @param scoringModel
+	 * @return the top k documents, only approximated for ScoringModel.RAW
+	 */
+	ArrayList<DocumentWeightPair> retrieveTopKDocuments(String query, int k, ScoringModel scoringModel);
+
+	/**
+	 * @param query
+	 * @param k
+	 * @param scoringModel
+	 * @return the exact top k documents by the score of the model
+	 */
+	ArrayList<DocumentWeightPair> retrieveExactTopKDocuments(String query, int k, ScoringModel scoringModel);
+
+	/**
+	 * @param query
+	 * @param k
+	 * @param scoringModel
+	 * @param statistics of a collection the index is a part of
+	 * @return the exact top k documents by the score of the model over that collection
+	 */
+	ArrayList<DocumentWeightPair> retrieveExactTopKDocuments(String query, int k, ScoringModel scoringModel,
+			CollectionStatistics statistics);
+
+	/**
+	 * @param query
+	 * @return the statistics of the index for the terms of the query
+	 */
+	CollectionStatistics getCollectionStatistics(String query);
+
+	/**
+	 * @return a number that grows every time the index changes
+	 */
+	long getIndexVersion();
+}
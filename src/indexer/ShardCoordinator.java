@@ -0,0 +1,307 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Answers queries over an index split into shards, each served by the QueryServer of
+ * its own process, by sending the query to every shard at once and merging their top k.
+ *
+ * A document lives in the shard getShardOf gives its url, see writeShardIndexes.
+ * The weights of RAW only depend on the document, so the shards rank RAW queries on
+ * their own. TF-IDF and BM25 depend on the whole collection: the coordinator first asks
+ * every shard for its CollectionStatistics of the query terms, merges them, and sends
+ * them along with the query, so every shard scores with the idf and average length of
+ * the whole collection, and the merged top k is the top k of a single index.
+ *
+ * A shard that fails or does not answer in time fails the query with an
+ * UncheckedIOException rather than returning a partial result.
+ * @author Jun
+ *
+ */
+public class ShardCoordinator implements Searcher, Closeable {
+	private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+	private static final int READ_TIMEOUT_MILLIS = 10000;
+
+	private final List<String> _shardUrls;
+	private final ExecutorService _executor;
+
+	/**
+	 * @param shardUrls the base urls of the QueryServers of the shards, like http://host:port
+	 */
+	public ShardCoordinator(List<String> shardUrls) {
+		if (shardUrls.isEmpty()) {
+			throw new IllegalArgumentException("no shards");
+		}
+		ArrayList<String> urls = new ArrayList<String>();
+		for (String url : shardUrls) {
+			urls.add(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+		}
+		_shardUrls = Collections.unmodifiableList(urls);
+		_executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "shard-request");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public List<String> getShardUrls() {
+		return _shardUrls;
+	}
+
+	/**
+	 * @param url of a document
+	 * @param numberOfShards
+	 * @return the shard the document belongs to
+	 */
+	public static int getShardOf(String url, int numberOfShards) {
+		return Math.floorMod(url.hashCode(), numberOfShards);
+	}
+
+	/**
+	 * @param filenamePrefix
+	 * @param shard
+	 * @return the name writeShardIndexes gives the index of the shard
+	 */
+	public static String getShardFilename(String filenamePrefix, int shard) {
+		return filenamePrefix + "-" + shard + ".txt";
+	}
+
+	/**
+	 * Split the documents by getShardOf and write a text index, trained by WTF, for every
+	 * shard. This trains the VectorSpace on every shard in turn, so it is meant for a
+	 * process that only splits the index.
+	 * @param files the documents of the whole collection
+	 * @param numberOfShards
+	 * @param filenamePrefix see getShardFilename
+	 */
+	public static void writeShardIndexes(File[] files, int numberOfShards, String filenamePrefix) {
+		ArrayList<ArrayList<File>> shards = new ArrayList<ArrayList<File>>();
+		for (int i = 0; i < numberOfShards; i++) {
+			shards.add(new ArrayList<File>());
+		}
+		for (File file : files) {
+			String url = VectorSpace.getUrl(file);
+			if (url != null) {
+				shards.get(getShardOf(url, numberOfShards)).add(file);
+			}
+		}
+
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		for (int i = 0; i < numberOfShards; i++) {
+			ArrayList<File> shard = shards.get(i);
+			vectorSpace.trainByWtf(shard.toArray(new File[shard.size()]));
+			vectorSpace.saveTermDocumentMap(getShardFilename(filenamePrefix, i));
+		}
+	}
+
+	/**
+	 * RAW is merged from the approximate top k of every shard, the other models from the
+	 * exact one
+	 */
+	@Override
+	public ArrayList<DocumentWeightPair> retrieveTopKDocuments(String query, int k, ScoringModel scoringModel) {
+		if (scoringModel != ScoringModel.RAW) {
+			return retrieveExactTopKDocuments(query, k, scoringModel);
+		}
+		return search(query, k, scoringModel, false, null);
+	}
+
+	@Override
+	public ArrayList<DocumentWeightPair> retrieveExactTopKDocuments(String query, int k, ScoringModel scoringModel) {
+		if (scoringModel == ScoringModel.RAW) {
+			return search(query, k, scoringModel, true, null);
+		}
+		return search(query, k, scoringModel, true, getCollectionStatistics(query));
+	}
+
+	@Override
+	public ArrayList<DocumentWeightPair> retrieveExactTopKDocuments(String query, int k, ScoringModel scoringModel,
+			CollectionStatistics statistics) {
+		return search(query, k, scoringModel, true, statistics);
+	}
+
+	/**
+	 * @return the statistics of all the shards together
+	 */
+	@Override
+	public CollectionStatistics getCollectionStatistics(String query) {
+		ArrayList<String> terms = Utilities.getObject().tokenizeString(query);
+		ArrayList<CollectionStatistics> shards = new ArrayList<CollectionStatistics>();
+		for (Map<String, Object> response : scatter("/stats?q=" + encode(query))) {
+			try {
+				shards.add(CollectionStatistics.decode((String) response.get("stats"), terms));
+			} catch (IllegalArgumentException | ClassCastException e) {
+				throw new UncheckedIOException(new IOException("malformed statistics from a shard: " + response, e));
+			}
+		}
+		return CollectionStatistics.merge(shards);
+	}
+
+	/**
+	 * @return the sum of the versions of the shards, which grows whenever one of them changes
+	 */
+	@Override
+	public long getIndexVersion() {
+		long version = 0;
+		for (Map<String, Object> response : scatter("/stats?q=")) {
+			version += getNumber(response, "version").longValue();
+		}
+		return version;
+	}
+
+	private ArrayList<DocumentWeightPair> search(String query, int k, ScoringModel scoringModel,
+			boolean isExact, CollectionStatistics statistics) {
+		StringBuilder request = new StringBuilder("/search?q=").append(encode(query));
+		request.append("&k=").append(k);
+		request.append("&scoring=").append(encode(scoringModel.getName()));
+		if (isExact) {
+			request.append("&exact=true");
+		}
+		if (statistics != null) {
+			request.append("&stats=").append(encode(statistics.encode()));
+		}
+
+		TopKCollector collector = new TopKCollector(k);
+		for (Map<String, Object> response : scatter(request.toString())) {
+			Object results = response.get("results");
+			if (!(results instanceof List)) {
+				throw new UncheckedIOException(new IOException("malformed results from a shard: " + response));
+			}
+			for (Object result : (List<?>) results) {
+				if (!(result instanceof Map)) {
+					throw new UncheckedIOException(new IOException("malformed results from a shard: " + response));
+				}
+				@SuppressWarnings("unchecked")
+				Map<String, Object> document = (Map<String, Object>) result;
+				// only the name and the url of a remote document are known
+				DocumentVector documentVector = new DocumentVector(String.valueOf(document.get("document")),
+						String.valueOf(document.get("url")), Collections.<TermFrequencyPerDocument>emptyList());
+				collector.collect(documentVector, getNumber(document, "score").doubleValue());
+			}
+		}
+		return collector.toList();
+	}
+
+	/**
+	 * send the request to every shard at once
+	 * @param request the path and query string
+	 * @return the responses in shard order
+	 */
+	private ArrayList<Map<String, Object>> scatter(final String request) {
+		ArrayList<Future<Map<String, Object>>> futures = new ArrayList<Future<Map<String, Object>>>();
+		for (final String shardUrl : _shardUrls) {
+			futures.add(_executor.submit(new Callable<Map<String, Object>>() {
+				@Override
+				public Map<String, Object> call() throws IOException {
+					return get(shardUrl + request);
+				}
+			}));
+		}
+
+		ArrayList<Map<String, Object>> responses = new ArrayList<Map<String, Object>>();
+		try {
+			for (Future<Map<String, Object>> future : futures) {
+				responses.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new IOException("interrupted while waiting for the shards", e));
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw new UncheckedIOException(cause instanceof IOException ? (IOException) cause
+					: new IOException(cause));
+		} finally {
+			for (Future<Map<String, Object>> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return responses;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> get(String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+		try {
+			int status = connection.getResponseCode();
+			InputStream in = status == HttpURLConnection.HTTP_OK ? connection.getInputStream() : connection.getErrorStream();
+			String body = in == null ? "" : readAll(in);
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException(url + " answered " + status + ": " + body);
+			}
+			Object response = JsonReader.read(body);
+			if (!(response instanceof Map)) {
+				throw new IOException(url + " answered with no object: " + body);
+			}
+			return (Map<String, Object>) response;
+		} catch (IllegalArgumentException e) {
+			throw new IOException(url + " answered with malformed JSON", e);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static String readAll(InputStream in) throws IOException {
+		try (InputStream input = in) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int length; (length = input.read(buffer)) != -1;) {
+				body.write(buffer, 0, length);
+			}
+			return new String(body.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static Number getNumber(Map<String, Object> response, String name) {
+		Object value = response.get(name);
+		if (!(value instanceof Number)) {
+			throw new UncheckedIOException(new IOException("a shard answered without " + name + ": " + response));
+		}
+		return (Number) value;
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		_executor.shutdownNow();
+	}
+}
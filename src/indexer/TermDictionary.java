@@ -0,0 +1,139 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Maps every term of an index to a dense int termId, 0 for the first term added,
+ * 1 for the next and so on.
+ *
+ * The dictionary keeps the only String of a term; document vectors and posting lists
+ * refer to terms by termId. Lookups go through an open addressing table of termIds,
+ * so finding a term costs one hash and usually a single String comparison.
+ *
+ * Terms are only added by the thread that trains or updates the index, but any number
+ * of threads may look terms up meanwhile: a term is stored before its slot is set,
+ * and a grown table is filled before it replaces the old one.
+ * @author Jun
+ *
+ */
+public final class TermDictionary {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private static final class Table {
+		final String[] terms;
+		final int[] hashes;
+		/**
+		 * termId + 1 of the term hashed to each slot, 0 for an empty slot
+		 */
+		final AtomicIntegerArray slots;
+
+		Table(int capacity) {
+			terms = new String[capacity];
+			hashes = new int[capacity];
+			slots = new AtomicIntegerArray(capacity * 2);
+		}
+	}
+
+	private volatile Table _table = new Table(INITIAL_CAPACITY);
+	private volatile int _size = 0;
+
+	/**
+	 * @param term
+	 * @return the termId of the term, or -1 if it is not in the dictionary
+	 */
+	public int getTermId(String term) {
+		Table table = _table;
+		int hash = term.hashCode();
+		int mask = table.slots.length() - 1;
+		for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+			int entry = table.slots.get(slot);
+			if (entry == 0) {
+				return -1;
+			}
+			int termId = entry - 1;
+			if (table.hashes[termId] == hash && table.terms[termId].equals(term)) {
+				return termId;
+			}
+		}
+	}
+
+	/**
+	 * @param termId between 0 and size() - 1
+	 * @return
+	 */
+	public String getTerm(int termId) {
+		int size = _size;
+		if (termId < 0 || termId >= size) {
+			throw new IndexOutOfBoundsException("termId " + termId + " of " + size);
+		}
+		return _table.terms[termId];
+	}
+
+	/**
+	 * @return the number of terms, which is also the next termId
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * @param term
+	 * @return the termId of the term, a new one if it was not in the dictionary yet
+	 */
+	int add(String term) {
+		int termId = getTermId(term);
+		if (termId >= 0) {
+			return termId;
+		}
+
+		termId = _size;
+		if (termId == _table.terms.length) {
+			grow();
+		}
+		Table table = _table;
+		table.terms[termId] = term;
+		table.hashes[termId] = term.hashCode();
+		insert(table, termId);
+		_size = termId + 1;
+		return termId;
+	}
+
+	private static void insert(Table table, int termId) {
+		int mask = table.slots.length() - 1;
+		int slot = spread(table.hashes[termId]) & mask;
+		while (table.slots.get(slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table.slots.set(slot, termId + 1);
+	}
+
+	/**
+	 * double the table, keeping it at most half full
+	 */
+	private void grow() {
+		Table old = _table;
+		Table table = new Table(old.terms.length * 2);
+		System.arraycopy(old.terms, 0, table.terms, 0, _size);
+		System.arraycopy(old.hashes, 0, table.hashes, 0, _size);
+		for (int termId = 0; termId < _size; termId++) {
+			insert(table, termId);
+		}
+		_table = table;
+	}
+
+	/**
+	 * String.hashCode of similar terms differ in the low bits only a little
+	 */
+	private static int spread(int hash) {
+		hash *= 0x9e3779b9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.List;
+
+/**
+ * Decides which segments of an incrementally updated index to merge.
+ *
+ * Segment sizes are counted in live documents, and every segment smaller than
+ * floorSegmentDocuments counts as that size. The index may have segmentsPerTier segments
+ * of the floor size, segmentsPerTier of maxMergeAtOnce times that, and so on; once there
+ * are more, the policy merges up to maxMergeAtOnce adjacent segments, preferring runs of
+ * segments of about the same size. So every document is merged a logarithmic number of
+ * times, and the number of segments a query walks stays logarithmic too.
+ *
+ * Only adjacent segments are merged, since the segments of a snapshot are in docId order.
+ * A segment with more than maxDeletedRatio of its documents deleted is merged on its own
+ * to drop them.
+ * @author Jun
+ *
+ */
+public class TieredMergePolicy {
+	public static final int DEFAULT_SEGMENTS_PER_TIER = 10;
+	public static final int DEFAULT_MAX_MERGE_AT_ONCE = 10;
+	public static final int DEFAULT_FLOOR_SEGMENT_DOCUMENTS = 1000;
+	public static final double DEFAULT_MAX_DELETED_RATIO = 0.2;
+
+	private final int _segmentsPerTier;
+	private final int _maxMergeAtOnce;
+	private final int _floorSegmentDocuments;
+	private final double _maxDeletedRatio;
+
+	public TieredMergePolicy() {
+		this(DEFAULT_SEGMENTS_PER_TIER, DEFAULT_MAX_MERGE_AT_ONCE, DEFAULT_FLOOR_SEGMENT_DOCUMENTS,
+				DEFAULT_MAX_DELETED_RATIO);
+	}
+
+	/**
+	 * @param segmentsPerTier how many segments of about the same size are allowed, at least 2
+	 * @param maxMergeAtOnce the most segments merged into one, at least 2
+	 * @param floorSegmentDocuments the size below which segments are all treated alike
+	 * @param maxDeletedRatio the part of a segment that may be deleted before it is merged
+	 */
+	public TieredMergePolicy(int segmentsPerTier, int maxMergeAtOnce, int floorSegmentDocuments,
+			double maxDeletedRatio) {
+		if (segmentsPerTier < 2 || maxMergeAtOnce < 2) {
+			throw new IllegalArgumentException("segmentsPerTier and maxMergeAtOnce must be at least 2");
+		} else if (floorSegmentDocuments < 1) {
+			throw new IllegalArgumentException("floorSegmentDocuments must be positive: " + floorSegmentDocuments);
+		}
+		_segmentsPerTier = segmentsPerTier;
+		_maxMergeAtOnce = maxMergeAtOnce;
+		_floorSegmentDocuments = floorSegmentDocuments;
+		_maxDeletedRatio = maxDeletedRatio;
+	}
+
+	/**
+	 * @param snapshot
+	 * @return the first and one past the last index of the segments to merge,
+	 * 		   or null if the snapshot is fine as it is
+	 */
+	int[] findMerge(IndexSnapshot snapshot) {
+		List<IndexSegment> segments = snapshot.getSegments();
+		long[] sizes = new long[segments.size()];
+		long totalSize = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = Math.max(_floorSegmentDocuments, snapshot.getNumberOfLiveDocuments(segments.get(i)));
+			totalSize += sizes[i];
+		}
+
+		if (segments.size() > getAllowedSegmentCount(totalSize)) {
+			return findBestMerge(sizes);
+		}
+
+		for (int i = 0; i < segments.size(); i++) {
+			IndexSegment segment = segments.get(i);
+			int deleted = segment.getNumberOfDocuments() - snapshot.getNumberOfLiveDocuments(segment);
+			if (deleted > 0 && deleted > _maxDeletedRatio * segment.getNumberOfDocuments()) {
+				return new int[] { i, i + 1 };
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * segmentsPerTier segments per tier, each tier maxMergeAtOnce times the size of the one below
+	 */
+	private long getAllowedSegmentCount(long totalSize) {
+		long allowed = 0;
+		double tierSize = _floorSegmentDocuments;
+		double remaining = totalSize;
+		while (true) {
+			double segmentsInTier = remaining / tierSize;
+			if (segmentsInTier < _segmentsPerTier) {
+				return allowed + (long) Math.ceil(segmentsInTier);
+			}
+			allowed += _segmentsPerTier;
+			remaining -= _segmentsPerTier * tierSize;
+			tierSize *= _maxMergeAtOnce;
+		}
+	}
+
+	/**
+	 * Score every run of 2 to maxMergeAtOnce adjacent segments by its skew, the part of
+	 * the merged size that the largest segment already has, times a small penalty for
+	 * the merged size. Low scores merge many segments of the same size.
+	 */
+	private int[] findBestMerge(long[] sizes) {
+		int[] best = null;
+		double bestScore = Double.POSITIVE_INFINITY;
+		for (int from = 0; from < sizes.length; from++) {
+			long totalSize = sizes[from];
+			long largest = sizes[from];
+			for (int to = from + 2; to <= Math.min(sizes.length, from + _maxMergeAtOnce); to++) {
+				totalSize += sizes[to - 1];
+				largest = Math.max(largest, sizes[to - 1]);
+				double score = (largest + 0.0) / (totalSize + 0.0) * Math.pow(totalSize, 0.05);
+				if (score < bestScore) {
+					bestScore = score;
+					best = new int[] { from, to };
+				}
+			}
+		}
+		return best;
+	}
+}
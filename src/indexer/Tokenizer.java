@@ -0,0 +1,153 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Single pass tokenizer producing the same tokens as the old regex based
+ * tokenizeFile: characters other than [A-Za-z0-9], spaces and line breaks are dropped,
+ * spaces and line breaks separate tokens, and letters are lower cased.
+ *
+ * It walks the characters once through a reusable buffer and only allocates the
+ * String of a token that is kept. Stop words are recognised directly from the
+ * buffer, so they are never turned into Strings.
+ *
+ * A tokenizer keeps state between calls, so each thread needs its own.
+ * @author Jun
+ *
+ */
+public class Tokenizer {
+	private static final int READ_BUFFER_SIZE = 8192;
+	private static final int INITIAL_TOKEN_SIZE = 32;
+
+	private final char[] _readBuffer = new char[READ_BUFFER_SIZE];
+	private char[] _token = new char[INITIAL_TOKEN_SIZE];
+	private int _tokenLength = 0;
+	private int _tokenHash = 0;
+
+	/**
+	 * open addressing table of the stop words, null if no word is filtered
+	 */
+	private final char[][] _stopWords;
+	private final int _stopWordsMask;
+
+	/**
+	 * @param stopWords the tokens to leave out, or null to keep every token
+	 */
+	public Tokenizer(Collection<String> stopWords) {
+		if (stopWords == null || stopWords.isEmpty()) {
+			_stopWords = null;
+			_stopWordsMask = 0;
+			return;
+		}
+
+		int capacity = Integer.highestOneBit(stopWords.size() * 4 - 1) << 1;
+		_stopWords = new char[capacity][];
+		_stopWordsMask = capacity - 1;
+		for (String stopWord : stopWords) {
+			char[] word = stopWord.toCharArray();
+			int slot = stopWord.hashCode() & _stopWordsMask;
+			while (_stopWords[slot] != null && !Arrays.equals(_stopWords[slot], word)) {
+				slot = (slot + 1) & _stopWordsMask;
+			}
+			_stopWords[slot] = word;
+		}
+	}
+
+	/**
+	 * read the reader to its end and add its tokens to the list
+	 * @param reader
+	 * @param tokens
+	 * @throws IOException
+	 */
+	public void tokenize(Reader reader, List<String> tokens) throws IOException {
+		resetToken();
+		for (int length; (length = reader.read(_readBuffer)) != -1;) {
+			for (int i = 0; i < length; i++) {
+				accept(_readBuffer[i], tokens);
+			}
+		}
+		emitToken(tokens);
+	}
+
+	/**
+	 * add the tokens of the text to the list
+	 * @param text
+	 * @param tokens
+	 */
+	public void tokenize(CharSequence text, List<String> tokens) {
+		resetToken();
+		for (int i = 0; i < text.length(); i++) {
+			accept(text.charAt(i), tokens);
+		}
+		emitToken(tokens);
+	}
+
+	private void accept(char c, List<String> tokens) {
+		if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+			append(c);
+		} else if (c >= 'A' && c <= 'Z') {
+			append((char) (c + ('a' - 'A')));
+		} else if (c == ' ' || c == '\n' || c == '\r') {
+			emitToken(tokens);
+		}
+		// any other character is dropped without ending the token
+	}
+
+	private void append(char c) {
+		if (_tokenLength == _token.length) {
+			char[] token = new char[_token.length * 2];
+			System.arraycopy(_token, 0, token, 0, _tokenLength);
+			_token = token;
+		}
+		_token[_tokenLength++] = c;
+		_tokenHash = 31 * _tokenHash + c;
+	}
+
+	private void emitToken(List<String> tokens) {
+		if (_tokenLength > 0 && !isStopWord()) {
+			tokens.add(new String(_token, 0, _tokenLength));
+		}
+		resetToken();
+	}
+
+	private void resetToken() {
+		_tokenLength = 0;
+		_tokenHash = 0;
+	}
+
+	/**
+	 * _tokenHash is String.hashCode of the token, so the slots match the ones the
+	 * stop words were inserted at
+	 */
+	private boolean isStopWord() {
+		if (_stopWords == null) {
+			return false;
+		}
+		for (int slot = _tokenHash & _stopWordsMask; _stopWords[slot] != null; slot = (slot + 1) & _stopWordsMask) {
+			char[] stopWord = _stopWords[slot];
+			if (stopWord.length != _tokenLength) {
+				continue;
+			}
+			int i = 0;
+			while (i < _tokenLength && stopWord[i] == _token[i]) {
+				i++;
+			}
+			if (i == _tokenLength) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
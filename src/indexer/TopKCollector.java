@@ -0,0 +1,189 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps the k best scored documents seen so far, in the order of
+ * SorterOfDocumentsByWeightedTermFrequency: the higher score first, and the smaller url
+ * first between equal scores.
+ *
+ * The candidates live in a binary min-heap over two parallel arrays, a double[] of
+ * scores and the DocumentVector of each, whose root is the worst of the current top k.
+ * A candidate worse than the root is turned away without allocating anything, and the
+ * urls are only compared between equal scores. Collecting n candidates costs O(n log k)
+ * instead of sorting all n.
+ *
+ * A collector is not thread safe, but it can be reused: toList empties it and reset
+ * starts the next query, keeping the arrays.
+ * @author Jun
+ *
+ */
+public final class TopKCollector {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int _k = 0;
+	private int _size = 0;
+	private double[] _scores = new double[INITIAL_CAPACITY];
+	private DocumentVector[] _documents = new DocumentVector[INITIAL_CAPACITY];
+
+	/**
+	 * @param k the number of documents to keep
+	 */
+	public TopKCollector(int k) {
+		reset(k);
+	}
+
+	/**
+	 * forget the collected documents and keep k of the next ones
+	 * @param k
+	 */
+	public void reset(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative: " + k);
+		}
+		for (int i = 0; i < _size; i++) {
+			_documents[i] = null;
+		}
+		_k = k;
+		_size = 0;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * @return whether a candidate has to beat the worst collected document to get in
+	 */
+	public boolean isFull() {
+		return _size >= _k;
+	}
+
+	/**
+	 * @return the score of the worst collected document once k are collected, negative
+	 * 		   infinity before. A candidate scoring less cannot get in, one scoring the
+	 * 		   same only with a smaller url
+	 */
+	public double getMinScore() {
+		return isFull() && _k > 0 ? _scores[0] : Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * @param documentVector
+	 * @param score
+	 * @return whether the document is among the top k so far
+	 */
+	public boolean collect(DocumentVector documentVector, double score) {
+		if (_size < _k) {
+			if (_size == _scores.length) {
+				grow();
+			}
+			_scores[_size] = score;
+			_documents[_size] = documentVector;
+			siftUp(_size++);
+			return true;
+		} else if (_k == 0 || !isWorse(_scores[0], _documents[0], score, documentVector)) {
+			return false;
+		}
+		_scores[0] = score;
+		_documents[0] = documentVector;
+		siftDown(0, _size);
+		return true;
+	}
+
+	/**
+	 * @return the collected documents, best first. The collector is empty afterwards
+	 */
+	public ArrayList<DocumentWeightPair> toList() {
+		// heap sort in place, every pass moves the worst remaining document to the back
+		for (int end = _size - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+
+		ArrayList<DocumentWeightPair> ans = new ArrayList<DocumentWeightPair>(_size);
+		for (int i = 0; i < _size; i++) {
+			DocumentWeightPair pair = new DocumentWeightPair();
+			pair.documentVector = _documents[i];
+			pair.weight = _scores[i];
+			ans.add(pair);
+			_documents[i] = null;
+		}
+		_size = 0;
+		return ans;
+	}
+
+	/**
+	 * @return whether the first document ranks after the second one
+	 */
+	private static boolean isWorse(double score, DocumentVector documentVector,
+			double otherScore, DocumentVector otherDocumentVector) {
+		if (score != otherScore) {
+			return score < otherScore;
+		}
+		return documentVector.getUrl().compareTo(otherDocumentVector.getUrl()) > 0;
+	}
+
+	private boolean isWorse(int i, int j) {
+		return isWorse(_scores[i], _documents[i], _scores[j], _documents[j]);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!isWorse(i, parent)) {
+				return;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int size) {
+		while (true) {
+			int worst = i;
+			int left = 2 * i + 1;
+			if (left < size && isWorse(left, worst)) {
+				worst = left;
+			}
+			if (left + 1 < size && isWorse(left + 1, worst)) {
+				worst = left + 1;
+			}
+			if (worst == i) {
+				return;
+			}
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double score = _scores[i];
+		_scores[i] = _scores[j];
+		_scores[j] = score;
+		DocumentVector documentVector = _documents[i];
+		_documents[i] = _documents[j];
+		_documents[j] = documentVector;
+	}
+
+	/**
+	 * the arrays grow with the documents collected rather than with k, which can be huge
+	 */
+	private void grow() {
+		int capacity = (int) Math.min(_k, 2L * _scores.length);
+		double[] scores = new double[capacity];
+		DocumentVector[] documents = new DocumentVector[capacity];
+		System.arraycopy(_scores, 0, scores, 0, _size);
+		System.arraycopy(_documents, 0, documents, 0, _size);
+		_scores = scores;
+		_documents = documents;
+	}
+}
@@ -8,7 +8,6 @@
 
 package indexer;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -16,11 +15,19 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A collection of utility methods for text processing. It is a singleton class
  */
 public class Utilities {
+	private static final LongAdder TOKENIZED_FILES = Metrics.getObject().getCounter("tokenize.files");
+	private static final LongAdder TOKENIZED_BYTES = Metrics.getObject().getCounter("tokenize.bytes");
+	private static final LongAdder TOKENS = Metrics.getObject().getCounter("tokenize.tokens");
+	private static final LatencyHistogram TOKENIZING = Metrics.getObject().getHistogram("tokenize.file");
+	static {
+		Metrics.getObject().addThroughput("tokenize.bytes.per.second", "tokenize.bytes", "tokenize.file");
+	}
 
 	/**
 	 * Comparator used to sort the return list of NGramFrequencyCounter
@@ -71,7 +78,24 @@ public class Utilities {
 	 */
 	private final static String FILE_STOPWORDS = "StopWords.txt";
 
-	private static Utilities _utilities = null;
+	private static volatile Utilities _utilities = null;
+
+	/**
+	 * Tokenizers reuse their buffers, so every thread gets its own
+	 */
+	private final ThreadLocal<Tokenizer> _tokenizer = new ThreadLocal<Tokenizer>() {
+		@Override
+		protected Tokenizer initialValue() {
+			return new Tokenizer(null);
+		}
+	};
+
+	private final ThreadLocal<Tokenizer> _tokenizerWithoutStopWords = new ThreadLocal<Tokenizer>() {
+		@Override
+		protected Tokenizer initialValue() {
+			return new Tokenizer(_stopWordsSet);
+		}
+	};
 
 	/**
 	 * implementing singleton
@@ -94,7 +118,11 @@ public class Utilities {
 
 	public static Utilities getObject() {
 		if (_utilities == null) {
-			_utilities = new Utilities();
+			synchronized (Utilities.class) {
+				if (_utilities == null) {
+					_utilities = new Utilities();
+				}
+			}
 		}
 		return _utilities;
 	}
@@ -135,27 +163,47 @@ public class Utilities {
 			return null;
 		}
 
+		long startNanos = System.nanoTime();
 		ArrayList<String> data = new ArrayList<String>();
-		try (BufferedReader br = new BufferedReader(new FileReader(input))) {
-			for (String line; (line = br.readLine()) != null;) {
-				line = line.replaceAll("[^A-Za-z0-9 ]", "");
-				line = line.toLowerCase();
-				String[] tokens = line.split(" ");
-				for (String token : tokens) {
-					token = token.trim();
-					if (token.isEmpty()) {
-						continue;
-					} else if (!hasStopWord && _stopWordsSet.contains(token)) {
-						continue;
-					}
-					data.add(token);
-				}
-			}
-			br.close();
+		Tokenizer tokenizer = hasStopWord ? _tokenizer.get() : _tokenizerWithoutStopWords.get();
+		try (FileReader reader = new FileReader(input)) {
+			tokenizer.tokenize(reader, data);
+			reader.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(-1);
 		}
+		TOKENIZING.recordSince(startNanos);
+		TOKENIZED_FILES.increment();
+		TOKENIZED_BYTES.add(input.length());
+		TOKENS.add(data.size());
+		return data;
+	}
+
+	/**
+	 * Splits a string, such as a query, into tokens the same way tokenizeFile splits
+	 * the lines of a file. Stop words are kept.
+	 * 
+	 * @param text
+	 * @return The list of tokens, ordered by occurrence.
+	 */
+	public ArrayList<String> tokenizeString(String text) {
+		ArrayList<String> data = new ArrayList<String>();
+		_tokenizer.get().tokenize(text, data);
+		return data;
+	}
+
+	/**
+	 * Splits a string like tokenizeString, but leaves out the stop words like the
+	 * indexed documents do, e.g. for a phrase whose words must be next to each other
+	 * in a document.
+	 * 
+	 * @param text
+	 * @return The list of tokens, ordered by occurrence.
+	 */
+	public ArrayList<String> tokenizeStringWithoutStopWords(String text) {
+		ArrayList<String> data = new ArrayList<String>();
+		_tokenizerWithoutStopWords.get().tokenize(text, data);
 		return data;
 	}
 
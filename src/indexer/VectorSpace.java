@@ -11,15 +11,23 @@ package indexer;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The Vector Space of the Vector Space Model
@@ -45,27 +53,179 @@ public class VectorSpace {
 	
 	/**
 	 * inverted index.
-	 * The key is the terms, and they are mapped to the documents that contain them.
+	 * The terms get their termIds from the dictionary, and _postingLists maps every termId
+	 * to the documents that contain the term.
+	 * 
+	 * These only hold the index while it is being trained; queries read the published snapshot.
+	 */
+	private TermDictionary _termDictionary = null;
+	private ArrayList <PostingList> _postingLists = null;
+	private ArrayList <DocumentVector> _documentVectors = null;
+	
+	/**
+	 * how many bits the weights of compressed postings keep, 0 to leave the postings uncompressed
+	 */
+	private int _postingWeightBits = 0;
+	
+	/**
+	 * whether the postings of the published segments are kept in OffHeapPostings
+	 */
+	private boolean _isOffHeap = false;
+	
+	/**
+	 * the last trained index. Replaced as a whole, never modified
+	 */
+	private volatile IndexSnapshot _snapshot = null;
+	
+	/**
+	 * What addDocuments and deleteDocuments need to know about the published index.
+	 * Each is set by the training that built the index, or worked out from the snapshot
+	 * the first time it is needed when the index was loaded from a file.
+	 * _maxTermFrequencies is shared by the document vectors of an ntf index, indexed by termId.
+	 */
+	private Boolean _isNormalized = null;
+	private int[] _maxTermFrequencies = null;
+	private HashMap <String, List <Integer>> _liveDocIdsByUrl = null;
+	
+	/**
+	 * merges the segments added by incremental updates in the background
 	 */
-	private HashMap <String, TreeSet<DocumentWeightPair>> _termDocumentMap = null;
-	private Vector <DocumentVector> _documentVectors = null;
+	private final MergeScheduler _mergeScheduler;
 	
 	/**
 	 * construct VectorSpace as a singleton object
 	 */
-	private static VectorSpace _vectorSpace = null;
+	private static volatile VectorSpace _vectorSpace = null;
+	
+	private static final LongAdder DOCUMENTS_INDEXED = Metrics.getObject().getCounter("index.documents");
+	private static final LatencyHistogram TRAINING = Metrics.getObject().getHistogram("index.train");
+	private static final LatencyHistogram LOADING_DOCUMENTS = Metrics.getObject().getHistogram("load.documents");
+	private static final LatencyHistogram LOADING_TERMS = Metrics.getObject().getHistogram("load.terms");
+	private static final LatencyHistogram PUBLISHING = Metrics.getObject().getHistogram("load.publish");
+	static {
+		Metrics.getObject().addThroughput("index.documents.per.second", "index.documents", "index.train");
+	}
 	
 	private VectorSpace() {
-		_documentVectors = new Vector <DocumentVector>();
-		_termDocumentMap = new HashMap <String, TreeSet<DocumentWeightPair>>();
+		_mergeScheduler = new MergeScheduler(this);
+		_mergeScheduler.setMergePolicy(new TieredMergePolicy(), 0);
+		clear();
+		_snapshot = IndexSnapshot.create(new ArrayList <DocumentVector>(), new TermDictionary(),
+				new ArrayList <PostingList>(), -1, 0);
+	}
+	
+	/**
+	 * drop whatever was trained before, so that every train method builds the index from scratch
+	 */
+	private void clear() {
+		_corpusSize = -1;
+		_documentVectors = new ArrayList <DocumentVector>();
+		_termDictionary = new TermDictionary();
+		_postingLists = new ArrayList <PostingList>();
+	}
+	
+	/**
+	 * make the index that was just trained visible to queries, and let go of it
+	 * @param isNormalized whether the weights are ntf, null if it is not known
+	 * @param maxTermFrequencies the ntf max term frequencies the documents share, null if unknown
+	 */
+	private void publish(Boolean isNormalized, int[] maxTermFrequencies) {
+		if (_postingWeightBits != 0) {
+			for (PostingList postings : _postingLists) {
+				// the views of a mapped binary index keep the docId order they were saved with
+				if (postings != null && !postings.isView()) {
+					postings.compress(_postingWeightBits);
+				}
+			}
+		}
+		_isNormalized = isNormalized;
+		_maxTermFrequencies = maxTermFrequencies;
+		_liveDocIdsByUrl = null;
+		IndexSnapshot snapshot = IndexSnapshot.create(_documentVectors, _termDictionary, _postingLists, _corpusSize,
+				_snapshot.getVersion() + 1);
+		_snapshot = _isOffHeap ? snapshot.toOffHeap() : snapshot;
+		clear();
 	}
 	
 	public static VectorSpace getObject() {
 		if (_vectorSpace == null) {
-			_vectorSpace = new VectorSpace();
+			synchronized (VectorSpace.class) {
+				if (_vectorSpace == null) {
+					_vectorSpace = new VectorSpace();
+				}
+			}
 		}
 		return _vectorSpace;
 	}
+	
+	/**
+	 * Compress the docId ordered postings of every index trained or loaded from now on,
+	 * see PostingCodec. Quantized weights change the scores of the exact top k queries
+	 * by at most half a quantization step per term.
+	 * @param weightBits 8 or 16 to quantize the weights, 64 to keep them exact,
+	 * 		  or 0 to keep the postings uncompressed
+	 */
+	public synchronized void setPostingCompression(int weightBits) {
+		if (weightBits != 0 && weightBits != PostingCodec.WEIGHTS_8_BITS
+				&& weightBits != PostingCodec.WEIGHTS_16_BITS && weightBits != PostingCodec.WEIGHTS_EXACT) {
+			throw new IllegalArgumentException("unsupported weight bits: " + weightBits);
+		}
+		_postingWeightBits = weightBits;
+	}
+	
+	/**
+	 * @return the weight bits set by setPostingCompression
+	 */
+	synchronized int getPostingCompression() {
+		return _postingWeightBits;
+	}
+	
+	/**
+	 * Keep the postings of every index trained or loaded from now on, and of the segments
+	 * that updates and merges add to it, in direct buffers outside of the heap, see
+	 * OffHeapPostings. The garbage collector then no longer traces arrays for every term,
+	 * which keeps its pauses short on a large index; the JVM needs -XX:MaxDirectMemorySize
+	 * at least as large as the postings.
+	 * @param isOffHeap
+	 */
+	public synchronized void setOffHeapPostings(boolean isOffHeap) {
+		_isOffHeap = isOffHeap;
+	}
+	
+	/**
+	 * @return what setOffHeapPostings set
+	 */
+	synchronized boolean isOffHeapPostings() {
+		return _isOffHeap;
+	}
+	
+	/**
+	 * Merge the segments that addDocuments and deleteDocuments create on a background thread.
+	 * Queries keep running on the published snapshot while a merge runs; by default segments
+	 * are merged by a default TieredMergePolicy at full speed.
+	 * @param mergePolicy null to leave the segments as they are
+	 * @param maxMergeBytesPerSecond how many bytes of postings a merge may copy per second,
+	 * 		  0 for no limit
+	 */
+	public void setMergePolicy(TieredMergePolicy mergePolicy, long maxMergeBytesPerSecond) {
+		_mergeScheduler.setMergePolicy(mergePolicy, maxMergeBytesPerSecond);
+		_mergeScheduler.maybeMerge();
+	}
+	
+	/**
+	 * block until the background merges are done
+	 * @throws InterruptedException
+	 */
+	public void waitForMerges() throws InterruptedException {
+		_mergeScheduler.waitForMerges();
+	}
+	
+	/**
+	 * @return the index as of the last training, safe to query from any thread
+	 */
+	public IndexSnapshot getSnapshot() {
+		return _snapshot;
+	}
 
 	
 	/**
@@ -73,35 +233,178 @@ public class VectorSpace {
 	 * @param indexingFiles
 	 * @return
 	 */
-	public void trainByWtf(File[] indexingFiles) {
+	public synchronized void trainByWtf(File[] indexingFiles) {
+		long startNanos = System.nanoTime();
+		clear();
 		_corpusSize = indexingFiles.length;
 		
 		for (File file : indexingFiles) {
-			String url = getUrl(file);
-			if (url == null) {
+			ParallelIndexer.ParsedDocument document = readDocument(file);
+			if (document == null) {
 				continue;
 			}
+			
+			DocumentVector documentVector = addDocumentVector(document);
+			setupTermDocumentMapByWTF(documentVector);
+		}
+		sortTermDocumentMap();
+		publish(false, null);
+		recordTraining(startNanos);
+	}
 
-			List <String> words = Utilities.getObject().tokenizeFileWithoutStopWords(file);
-			words.remove(0);
+	/**
+	 * Train by WeightedTermFrequency, tokenizing and counting the files on a pool of worker threads.
+	 * The result is identical to trainByWtf(indexingFiles).
+	 * @param indexingFiles
+	 * @param numberOfThreads
+	 */
+	public synchronized void trainByWtf(File[] indexingFiles, int numberOfThreads) {
+		long startNanos = System.nanoTime();
+		clear();
+		_corpusSize = indexingFiles.length;
+		
+		ParallelIndexer indexer = new ParallelIndexer(numberOfThreads);
+		try {
+			for (ParallelIndexer.ParsedDocument document : indexer.readDocuments(indexingFiles)) {
+				addDocumentVector(document);
+			}
 			
-			String documentName = file.getAbsolutePath();
-			List <TermFrequencyPerDocument> termFrequencies = WordFrequencyCounter.getObject().computeWordFrequencies(words);
+			List <PostingList[]> partialIndexes = indexer.buildPartialIndexes(_documentVectors,
+					_termDictionary.size(), new ParallelIndexer.TermWeight() {
+						@Override
+						public double getWeight(DocumentVector documentVector, int index) {
+							return documentVector.getWeightedTermFrequencyAt(index);
+						}
+					});
+			for (PostingList[] partialIndex : partialIndexes) {
+				mergeIntoTermDocumentMap(partialIndex);
+			}
+			indexer.sortByWeight(_postingLists, _documentVectors);
+			publish(false, null);
+			recordTraining(startNanos);
+		} finally {
+			indexer.shutdown();
+		}
+	}
+
+	/**
+	 * Trained by norminalized term frequency, tokenizing and counting the files on a pool of worker threads.
+	 * The result is identical to trainByNtf(indexingFiles).
+	 * @param indexingFiles
+	 * @param numberOfThreads
+	 */
+	public synchronized void trainByNtf(File[] indexingFiles, int numberOfThreads) {
+		long startNanos = System.nanoTime();
+		clear();
+		_corpusSize = indexingFiles.length;
+		
+		ParallelIndexer indexer = new ParallelIndexer(numberOfThreads);
+		try {
+			for (ParallelIndexer.ParsedDocument document : indexer.readDocuments(indexingFiles)) {
+				addDocumentVector(document);
+			}
 			
-			DocumentVector documentVector = new DocumentVector(documentName, url, termFrequencies);
-			documentVector.setDocId(_documentVectors.size());
-			_documentVectors.add(documentVector);
+			int[] maxTermFrequencyInCorpus = indexer.computeMaxTermFrequencies(_documentVectors, _termDictionary.size());
+			for (DocumentVector documentVector : _documentVectors) {
+				documentVector.setMaxTermFrequencies(maxTermFrequencyInCorpus);
+			}
 			
-			for (TermFrequencyPerDocument termFrequency : termFrequencies) {
-				setupTermDocumentMapByWTF(documentVector, termFrequency);
+			List <PostingList[]> partialIndexes = indexer.buildPartialIndexes(_documentVectors,
+					_termDictionary.size(), new ParallelIndexer.TermWeight() {
+						@Override
+						public double getWeight(DocumentVector documentVector, int index) {
+							return documentVector.getNormalizedTermFrequencyAt(index);
+						}
+					});
+			for (PostingList[] partialIndex : partialIndexes) {
+				mergeIntoTermDocumentMap(partialIndex);
+			}
+			indexer.sortByWeight(_postingLists, _documentVectors);
+			publish(true, maxTermFrequencyInCorpus);
+			recordTraining(startNanos);
+		} finally {
+			indexer.shutdown();
+		}
+	}
+
+	/**
+	 * read, tokenize and count a document to be indexed.
+	 * @param file
+	 * @return null if the file has no url
+	 */
+	static ParallelIndexer.ParsedDocument readDocument(File file) {
+		String url = getUrl(file);
+		if (url == null) {
+			return null;
+		}
+
+		List <String> words = readTerms(file);
+		
+		String documentName = file.getAbsolutePath();
+		List <TermFrequencyPerDocument> termFrequencies = WordFrequencyCounter.getObject().computeWordFrequencies(words);
+		return new ParallelIndexer.ParsedDocument(documentName, url, termFrequencies);
+	}
+
+	/**
+	 * @param file a document with its url on the first line
+	 * @return the indexed terms of the document in the order they occur in it, which
+	 * 		   is what their positions in a PositionalIndex count
+	 */
+	static List <String> readTerms(File file) {
+		List <String> words = Utilities.getObject().tokenizeFileWithoutStopWords(file);
+		words.remove(0);
+		return words;
+	}
+
+	/**
+	 * add the terms of the document to the dictionary and give it the next docId.
+	 * Documents must be added in order, so that termIds and docIds do not depend
+	 * on the number of threads that read them
+	 * @param document
+	 * @return
+	 */
+	private DocumentVector addDocumentVector(ParallelIndexer.ParsedDocument document) {
+		DocumentVector documentVector = new DocumentVector(document.documentName, document.url,
+				document.termFrequencies, _termDictionary);
+		documentVector.setDocId(_documentVectors.size());
+		_documentVectors.add(documentVector);
+		return documentVector;
+	}
+
+	/**
+	 * add a partial index built over documents that come after the ones already in the index
+	 * @param partialIndex
+	 */
+	private void mergeIntoTermDocumentMap(PostingList[] partialIndex) {
+		for (int termId = 0; termId < partialIndex.length; termId++) {
+			if (partialIndex[termId] == null) {
+				continue;
 			}
+			PostingList postings = getOrCreatePostingList(termId);
+			postings.addAll(partialIndex[termId]);
+		}
+	}
+
+	/**
+	 * @param termId
+	 * @return the postings of the term in the index being trained
+	 */
+	private PostingList getOrCreatePostingList(int termId) {
+		while (_postingLists.size() <= termId) {
+			_postingLists.add(null);
+		}
+		PostingList postings = _postingLists.get(termId);
+		if (postings == null) {
+			postings = new PostingList();
+			_postingLists.set(termId, postings);
 		}
+		return postings;
 	}
 
 	/**
 	 * @return
 	 */
-	private String getUrl(File file) {
+	static String getUrl(File file) {
 		String url = null;
 		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
 			for (String line; (line = br.readLine()) != null;) {
@@ -124,36 +427,422 @@ public class VectorSpace {
 	 * Trained by norminalized term frequency
 	 * @param indexingFiles
 	 */
-	public void trainByNtf(File[] indexingFiles) {
+	public synchronized void trainByNtf(File[] indexingFiles) {
+		long startNanos = System.nanoTime();
+		clear();
 		_corpusSize = indexingFiles.length;
-		List <DocumentVector> documentVectorSpace = new ArrayList <DocumentVector>();
-		TreeSet <String> corpusWords = new TreeSet <String>();
-		HashMap <String, Integer> maxTermFrequencyInCorpus = new HashMap <String, Integer>();
+		int[] maxTermFrequencyInCorpus = new int[0];
 		
 		for (File file : indexingFiles) {
-			String url = getUrl(file);
-			if (url == null) {
+			ParallelIndexer.ParsedDocument document = readDocument(file);
+			if (document == null) {
 				continue;
 			}
-
-			List <String> words = Utilities.getObject().tokenizeFileWithoutStopWords(file);
-			words.remove(0);
 			
-			String documentName = file.getAbsolutePath();
-			List <TermFrequencyPerDocument> termFrequencies = WordFrequencyCounter.getObject().computeWordFrequencies(words);
-			DocumentVector documentVector = new DocumentVector(documentName, url, termFrequencies);
-			documentVectorSpace.add(documentVector);
-			documentVector.setDocId(_documentVectors.size());
-			_documentVectors.add(documentVector);
-
-			for (TermFrequencyPerDocument termFrequency : termFrequencies) {
-				maxTermFrequencyInCorpus = setupMaxFrequency(maxTermFrequencyInCorpus, termFrequency);	
-				corpusWords.add(termFrequency.getText());
+			DocumentVector documentVector = addDocumentVector(document);
+			maxTermFrequencyInCorpus = setupMaxFrequency(maxTermFrequencyInCorpus, documentVector);
+		}
+		
+		setupNpWeightInTermDocumentMap(maxTermFrequencyInCorpus);
+		publish(true, maxTermFrequencyInCorpus);
+		recordTraining(startNanos);
+	}
+	
+	/**
+	 * the trained documents are in the published snapshot by now
+	 */
+	private void recordTraining(long startNanos) {
+		DOCUMENTS_INDEXED.add(_snapshot.getNumberOfDocuments());
+		TRAINING.recordSince(startNanos);
+	}
+	
+	/**
+	 * Add documents to the index without training it again. A document whose url is
+	 * already indexed replaces the old one. The documents are weighed like the index was
+	 * trained, by wtf or by ntf, and go into a new segment; with ntf the terms whose highest
+	 * frequency in the corpus changes have their postings weighed again in the older segments.
+	 * @param indexingFiles
+	 */
+	public synchronized void addDocuments(File[] indexingFiles) {
+		List <ParallelIndexer.ParsedDocument> documents = new ArrayList <ParallelIndexer.ParsedDocument>();
+		for (File file : indexingFiles) {
+			ParallelIndexer.ParsedDocument document = readDocument(file);
+			if (document != null) {
+				documents.add(document);
+			}
+		}
+		update(documents, Collections.<String>emptyList());
+	}
+	
+	/**
+	 * Delete the documents with the urls from the index without training it again.
+	 * They are only marked as deleted, and left out once the index is saved.
+	 * @param urls
+	 * @return the number of documents deleted
+	 */
+	public synchronized int deleteDocuments(Collection <String> urls) {
+		return update(new ArrayList <ParallelIndexer.ParsedDocument>(), urls);
+	}
+	
+	/**
+	 * delete the urls, add the documents and publish the result as a new snapshot
+	 * @param documents
+	 * @param urls
+	 * @return the number of documents of the published index that were deleted or replaced
+	 */
+	private int update(List <ParallelIndexer.ParsedDocument> documents, Collection <String> urls) {
+		IndexSnapshot snapshot = _snapshot;
+		TermDictionary termDictionary = snapshot.getTermDictionary();
+		HashMap <String, List <Integer>> liveDocIdsByUrl = getLiveDocIdsByUrl(snapshot);
+		// rebuilt on the next update if this one does not finish
+		_liveDocIdsByUrl = null;
+		BitSet liveDocs = snapshot.copyLiveDocs();
+		int baseDocId = snapshot.getEndDocId();
+		
+		List <DocumentVector> deletedDocuments = new ArrayList <DocumentVector>();
+		for (String url : urls) {
+			deleteUrl(url, snapshot, liveDocIdsByUrl, liveDocs, deletedDocuments);
+		}
+		List <DocumentVector> addedDocuments = new ArrayList <DocumentVector>();
+		for (ParallelIndexer.ParsedDocument document : documents) {
+			deleteUrl(document.url, snapshot, liveDocIdsByUrl, liveDocs, deletedDocuments);
+			
+			DocumentVector documentVector = new DocumentVector(document.documentName, document.url,
+					document.termFrequencies, termDictionary);
+			int docId = baseDocId + addedDocuments.size();
+			documentVector.setDocId(docId);
+			addedDocuments.add(documentVector);
+			liveDocs.set(docId);
+			List <Integer> docIds = new ArrayList <Integer>();
+			docIds.add(docId);
+			liveDocIdsByUrl.put(document.url, docIds);
+		}
+		if (addedDocuments.isEmpty() && deletedDocuments.isEmpty()) {
+			_liveDocIdsByUrl = liveDocIdsByUrl;
+			return 0;
+		}
+		
+		boolean isNormalized = isNormalized(snapshot);
+		List <IndexSegment> segments = new ArrayList <IndexSegment>(snapshot.getSegments());
+		List <Map <Integer, Integer>> deletedDocumentFrequencies = snapshot.withDeletedDocuments(deletedDocuments);
+		if (isNormalized) {
+			int[] changedTermIds = updateMaxTermFrequencies(snapshot, liveDocs, addedDocuments, deletedDocuments);
+			reweighNormalizedPostings(segments, changedTermIds);
+		}
+		
+		int numberOfAddedDocuments = 0;
+		TreeMap <Integer, PostingList> postingLists = new TreeMap <Integer, PostingList>();
+		for (DocumentVector documentVector : addedDocuments) {
+			if (!liveDocs.get(documentVector.getDocId())) {
+				// replaced by a later document of the same update
+				continue;
+			}
+			numberOfAddedDocuments++;
+			for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+				int termId = documentVector.getTermIdAt(i);
+				PostingList postings = postingLists.get(termId);
+				if (postings == null) {
+					postings = new PostingList();
+					postingLists.put(termId, postings);
+				}
+				postings.add(documentVector.getDocId(), isNormalized
+						? documentVector.getNormalizedTermFrequencyAt(i)
+						: documentVector.getWeightedTermFrequencyAt(i));
+			}
+		}
+		if (!addedDocuments.isEmpty()) {
+			IndexSegment segment = IndexSegment.create(baseDocId, addedDocuments, postingLists);
+			for (PostingList postings : postingLists.values()) {
+				postings.sortByWeight(segment.documentsByDocId());
+				if (_postingWeightBits != 0) {
+					postings.compress(_postingWeightBits);
+				}
+			}
+			segments.add(_isOffHeap ? segment.toOffHeap() : segment);
+			// the documents replaced within the update have no postings to leave out
+			deletedDocumentFrequencies.add(null);
+		}
+		
+		int corpusSize = Math.max(0, snapshot.getCorpusSize()) + numberOfAddedDocuments - deletedDocuments.size();
+		_snapshot = new IndexSnapshot(segments, liveDocs, termDictionary, termDictionary.size(), corpusSize,
+				snapshot.getVersion() + 1, deletedDocumentFrequencies);
+		_liveDocIdsByUrl = liveDocIdsByUrl;
+		_mergeScheduler.maybeMerge();
+		return deletedDocuments.size();
+	}
+	
+	/**
+	 * Replace segments of the published snapshot by the result of merging them. Documents
+	 * deleted while the merge ran stay deleted under their new docIds. The snapshot keeps its
+	 * version, since queries get the same results from it.
+	 * @param mergedSegments the segments the merge started from
+	 * @param merged
+	 * @param newDocIds the new docId of every docId from the first merged one on, -1 if left out
+	 * @return false if an update or a training replaced the segments meanwhile,
+	 * 		   and the merge is dropped
+	 */
+	synchronized boolean commitMerge(List <IndexSegment> mergedSegments, IndexSegment merged, int[] newDocIds) {
+		IndexSnapshot snapshot = _snapshot;
+		List <IndexSegment> segments = new ArrayList <IndexSegment>(snapshot.getSegments());
+		int from = segments.indexOf(mergedSegments.get(0));
+		if (from < 0 || from + mergedSegments.size() > segments.size()) {
+			return false;
+		}
+		for (int i = 0; i < mergedSegments.size(); i++) {
+			if (segments.get(from + i) != mergedSegments.get(i)) {
+				return false;
+			}
+		}
+		
+		int firstDocId = mergedSegments.get(0).getBaseDocId();
+		BitSet liveDocs = snapshot.copyLiveDocs();
+		liveDocs.clear(firstDocId, firstDocId + newDocIds.length);
+		// new docIds are never above the old ones, so ascending order never renames a docId twice
+		for (int i = 0; i < newDocIds.length; i++) {
+			int docId = firstDocId + i;
+			if (newDocIds[i] < 0 || !snapshot.isLive(docId)) {
+				continue;
+			}
+			liveDocs.set(newDocIds[i]);
+			List <Integer> docIds = _liveDocIdsByUrl == null ? null
+					: _liveDocIdsByUrl.get(snapshot.getDocumentVector(docId).getUrl());
+			if (docIds != null) {
+				docIds.set(docIds.indexOf(Integer.valueOf(docId)), newDocIds[i]);
+			}
+		}
+		if (_maxTermFrequencies != null) {
+			for (DocumentVector documentVector : merged.getDocumentVectors()) {
+				documentVector.setMaxTermFrequencies(_maxTermFrequencies);
+			}
+		}
+		
+		segments.subList(from, from + mergedSegments.size()).clear();
+		List <Map <Integer, Integer>> deletedDocumentFrequencies = new ArrayList <Map <Integer, Integer>>(
+				snapshot.getDeletedDocumentFrequencies());
+		deletedDocumentFrequencies.subList(from, from + mergedSegments.size()).clear();
+		if (merged.getNumberOfDocuments() > 0) {
+			segments.add(from, merged);
+			// only the documents deleted while the merge ran
+			deletedDocumentFrequencies.add(from, IndexSnapshot.countDeletedDocuments(merged, liveDocs));
+		}
+		_snapshot = new IndexSnapshot(segments, liveDocs, snapshot.getTermDictionary(), snapshot.getNumberOfTerms(),
+				snapshot.getCorpusSize(), snapshot.getVersion(), deletedDocumentFrequencies);
+		return true;
+	}
+	
+	/**
+	 * mark the documents with the url as deleted
+	 * @param url
+	 * @param snapshot the index being updated
+	 * @param liveDocIdsByUrl
+	 * @param liveDocs
+	 * @param deletedDocuments gets the deleted documents of the snapshot, but not the ones
+	 * 		  added by the update itself
+	 */
+	private void deleteUrl(String url, IndexSnapshot snapshot, Map <String, List <Integer>> liveDocIdsByUrl,
+			BitSet liveDocs, List <DocumentVector> deletedDocuments) {
+		List <Integer> docIds = liveDocIdsByUrl.remove(url);
+		if (docIds == null) {
+			return;
+		}
+		for (int docId : docIds) {
+			liveDocs.clear(docId);
+			if (docId < snapshot.getEndDocId()) {
+				deletedDocuments.add(snapshot.getDocumentVector(docId));
+			}
+		}
+	}
+	
+	/**
+	 * @param snapshot
+	 * @return the docIds of the live documents of every url in the snapshot
+	 */
+	private HashMap <String, List <Integer>> getLiveDocIdsByUrl(IndexSnapshot snapshot) {
+		if (_liveDocIdsByUrl == null) {
+			_liveDocIdsByUrl = new HashMap <String, List <Integer>>();
+			for (int docId = 0; docId < snapshot.getEndDocId(); docId++) {
+				if (!snapshot.isLive(docId)) {
+					continue;
+				}
+				String url = snapshot.getDocumentVector(docId).getUrl();
+				List <Integer> docIds = _liveDocIdsByUrl.get(url);
+				if (docIds == null) {
+					docIds = new ArrayList <Integer>();
+					_liveDocIdsByUrl.put(url, docIds);
+				}
+				docIds.add(docId);
+			}
+		}
+		return _liveDocIdsByUrl;
+	}
+	
+	/**
+	 * For a loaded index, wtf weights are at least 1 while ntf weights are at most 1.
+	 * @param snapshot
+	 * @return whether the postings of the snapshot are weighed by ntf
+	 */
+	private boolean isNormalized(IndexSnapshot snapshot) {
+		if (_isNormalized == null) {
+			_isNormalized = Boolean.FALSE;
+			for (IndexSegment segment : snapshot.getSegments()) {
+				for (int i = 0; i < segment.getNumberOfTerms(); i++) {
+					PostingList postings = segment.getPostingListAt(i);
+					if (postings.size() > 0 && postings.getWeight(postings.size() - 1) < 1.0) {
+						_isNormalized = Boolean.TRUE;
+						return true;
+					}
+				}
+			}
+		}
+		return _isNormalized.booleanValue();
+	}
+	
+	/**
+	 * @param snapshot
+	 * @return the highest frequency of every term in the live documents of the snapshot,
+	 * 		   shared by all its documents
+	 */
+	private int[] getMaxTermFrequencies(IndexSnapshot snapshot) {
+		if (_maxTermFrequencies == null) {
+			int[] maxTermFrequencies = new int[snapshot.getTermDictionary().size()];
+			for (int docId = 0; docId < snapshot.getEndDocId(); docId++) {
+				if (snapshot.isLive(docId)) {
+					maxTermFrequencies = setupMaxFrequency(maxTermFrequencies, snapshot.getDocumentVector(docId));
+				}
+			}
+			setMaxTermFrequencies(snapshot, maxTermFrequencies);
+		}
+		return _maxTermFrequencies;
+	}
+	
+	/**
+	 * share new max term frequencies between all the documents of the snapshot
+	 */
+	private void setMaxTermFrequencies(IndexSnapshot snapshot, int[] maxTermFrequencies) {
+		for (IndexSegment segment : snapshot.getSegments()) {
+			for (DocumentVector documentVector : segment.getDocumentVectors()) {
+				documentVector.setMaxTermFrequencies(maxTermFrequencies);
+			}
+		}
+		_maxTermFrequencies = maxTermFrequencies;
+	}
+	
+	/**
+	 * Bring the max term frequencies up to date with the added and deleted documents.
+	 * Deleting a document that had the highest frequency of a term means looking for
+	 * the next highest, which is the first live posting of each segment.
+	 * @param snapshot the index before the update
+	 * @param liveDocs after the update
+	 * @param addedDocuments
+	 * @param deletedDocuments
+	 * @return the termIds whose max term frequency changed, in increasing order
+	 */
+	private int[] updateMaxTermFrequencies(IndexSnapshot snapshot, BitSet liveDocs,
+			List <DocumentVector> addedDocuments, List <DocumentVector> deletedDocuments) {
+		int[] maxTermFrequencies = getMaxTermFrequencies(snapshot);
+		int numberOfTerms = snapshot.getTermDictionary().size();
+		if (maxTermFrequencies.length < numberOfTerms) {
+			maxTermFrequencies = Arrays.copyOf(maxTermFrequencies, Math.max(numberOfTerms, maxTermFrequencies.length * 2));
+			setMaxTermFrequencies(snapshot, maxTermFrequencies);
+		}
+		
+		TreeMap <Integer, Integer> updated = new TreeMap <Integer, Integer>();
+		for (DocumentVector documentVector : deletedDocuments) {
+			for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+				int termId = documentVector.getTermIdAt(i);
+				if (documentVector.getFrequencyAt(i) >= maxTermFrequencies[termId] && !updated.containsKey(termId)) {
+					updated.put(termId, getLiveMaxTermFrequency(snapshot, liveDocs, termId));
+				}
+			}
+		}
+		for (DocumentVector documentVector : addedDocuments) {
+			documentVector.setMaxTermFrequencies(maxTermFrequencies);
+			if (!liveDocs.get(documentVector.getDocId())) {
+				continue;
+			}
+			for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+				int termId = documentVector.getTermIdAt(i);
+				Integer maxTermFrequency = updated.get(termId);
+				int max = maxTermFrequency == null ? maxTermFrequencies[termId] : maxTermFrequency.intValue();
+				if (documentVector.getFrequencyAt(i) > max) {
+					updated.put(termId, documentVector.getFrequencyAt(i));
+				}
 			}
 		}
 		
-		setupNpWeightInTermDocumentMap(documentVectorSpace, corpusWords,
-				maxTermFrequencyInCorpus);
+		List <Integer> changedTermIds = new ArrayList <Integer>();
+		for (Map.Entry <Integer, Integer> maxTermFrequency : updated.entrySet()) {
+			int termId = maxTermFrequency.getKey().intValue();
+			if (maxTermFrequencies[termId] != maxTermFrequency.getValue().intValue()) {
+				maxTermFrequencies[termId] = maxTermFrequency.getValue().intValue();
+				changedTermIds.add(termId);
+			}
+		}
+		int[] termIds = new int[changedTermIds.size()];
+		for (int i = 0; i < termIds.length; i++) {
+			termIds[i] = changedTermIds.get(i).intValue();
+		}
+		return termIds;
+	}
+	
+	/**
+	 * @return the highest frequency of the term in the live documents of the snapshot
+	 */
+	private static int getLiveMaxTermFrequency(IndexSnapshot snapshot, BitSet liveDocs, int termId) {
+		int max = 0;
+		for (IndexSegment segment : snapshot.getSegments()) {
+			PostingList postings = segment.getPostingList(termId);
+			if (postings == null) {
+				continue;
+			}
+			// ntf grows with the frequency, so the first live posting has the highest one
+			for (int i = 0; i < postings.size(); i++) {
+				if (liveDocs.get(postings.getDocId(i))) {
+					DocumentVector documentVector = segment.getDocumentVector(postings.getDocId(i));
+					max = Math.max(max, documentVector.getFrequencyAt(documentVector.indexOf(termId)));
+					break;
+				}
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Weigh the postings of the terms again after their max term frequency changed.
+	 * Their order stays the same, since ntf grows with the frequency.
+	 * @param segments replaced by copies with the new postings
+	 * @param termIds
+	 */
+	private void reweighNormalizedPostings(List <IndexSegment> segments, int[] termIds) {
+		for (int s = 0; s < segments.size(); s++) {
+			IndexSegment segment = segments.get(s);
+			PostingList[] replacements = null;
+			for (int termId : termIds) {
+				int index = segment.indexOf(termId);
+				if (index < 0) {
+					continue;
+				}
+				PostingList postings = segment.getPostingListAt(index);
+				int[] docIds = new int[postings.size()];
+				double[] weights = new double[postings.size()];
+				for (int i = 0; i < postings.size(); i++) {
+					DocumentVector documentVector = segment.getDocumentVector(postings.getDocId(i));
+					docIds[i] = postings.getDocId(i);
+					weights[i] = documentVector.getNormalizedTermFrequencyAt(documentVector.indexOf(termId));
+				}
+				PostingList reweighed = new PostingList(docIds, weights);
+				if (_postingWeightBits != 0) {
+					reweighed.compress(_postingWeightBits);
+				}
+				if (replacements == null) {
+					replacements = new PostingList[segment.getNumberOfTerms()];
+				}
+				replacements[index] = reweighed;
+			}
+			if (replacements != null) {
+				segments.set(s, segment.withPostingLists(replacements));
+			}
+		}
 	}
 	
 	/**
@@ -162,13 +851,8 @@ public class VectorSpace {
 	 * @return
 	 */
 	public TreeSet <DocumentWeightPair> retrieveAllDocuments(String term) {
-		Comparator <DocumentWeightPair> comparator = new Utilities.SorterOfDocumentsByWeightedTermFrequency();
-		
-		TreeSet <DocumentWeightPair> termDocumentWeight = new TreeSet <DocumentWeightPair>(comparator);
-		for (DocumentWeightPair pair : _termDocumentMap.get(term)) {
-			termDocumentWeight.add(pair);
-		}
-		return termDocumentWeight;
+		IndexSnapshot snapshot = _snapshot;
+		return snapshot.retrieveTopKDocuments(term, snapshot.getDocumentFrequency(term));
 	}
 
 	/**
@@ -177,20 +861,24 @@ public class VectorSpace {
 	 * @return
 	 */
 	public TreeSet <DocumentWeightPair> retrieveTopKDocuments(String term, int k) {
-		Comparator <DocumentWeightPair> comparator = new Utilities.SorterOfDocumentsByWeightedTermFrequency();
+		return _snapshot.retrieveTopKDocuments(term, k);
+	}
 
-		TreeSet <DocumentWeightPair> termDocumentWeight = new TreeSet <DocumentWeightPair>(comparator);
-		if (!_termDocumentMap.containsKey(term)) {
-			return termDocumentWeight;
-		}
-		
-		for (DocumentWeightPair pair : _termDocumentMap.get(term)) {
-			termDocumentWeight.add(pair);
-			if (termDocumentWeight.size() >= k) {
-				break;
-			}
-		}
-		return termDocumentWeight;
+	/**
+	 * the postings of a term, highest weight first
+	 * @param term
+	 * @return null if no document contains the term
+	 */
+	public PostingList getPostingList(String term) {
+		return _snapshot.getPostingList(term);
+	}
+
+	/**
+	 * @param docId
+	 * @return
+	 */
+	public DocumentVector getDocumentVector(int docId) {
+		return _snapshot.getDocumentVector(docId);
 	}
 	
 	/**
@@ -199,29 +887,30 @@ public class VectorSpace {
 	 * @return
 	 */
 	public double calculateIdf(String term) {
-		if (_corpusSize == -1) {
-			return -1.0;
-		}
-		
-		double idf = (_corpusSize + 0.0) / (_termDocumentMap.get(term).size() + 0.0);
-		idf = Math.log(idf);
-		return idf;
+		return _snapshot.calculateIdf(term);
 	}
 	
 	public void printTermDocumentMap() {
-		for (Map.Entry<String, TreeSet<DocumentWeightPair> > termDocuments : _termDocumentMap.entrySet()) {
-		    String term = termDocuments.getKey();
-		    TreeSet <DocumentWeightPair> pairs = termDocuments.getValue();
+		IndexSnapshot snapshot = _snapshot;
+		TermDictionary termDictionary = snapshot.getTermDictionary();
+		for (int termId = 0; termId < snapshot.getNumberOfTerms(); termId++) {
+		    String term = termDictionary.getTerm(termId);
+		    PostingList postings = snapshot.getPostingList(termId);
+		    if (postings == null) {
+		    	continue;
+		    }
 		    
 		    System.out.print(term + ":");
-		    for (DocumentWeightPair pair : pairs) {
-		    	System.out.print(pair.documentVector.getUrl() + " " + pair.weight + ",");
+		    for (int i = 0; i < postings.size(); i++) {
+		    	System.out.print(snapshot.getDocumentVector(postings.getDocId(i)).getUrl() + " " + postings.getWeight(i) + ",");
 		    }
 		    System.out.println("");
 		}
 	}
 	
-	public void trainByIndexesFile(String filename) {
+	public synchronized void trainByIndexesFile(String filename) {
+		long startNanos = System.nanoTime();
+		clear();
 		boolean isDocumentVector = false;
 		boolean isTermDocument = false;
 		try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
@@ -236,33 +925,184 @@ public class VectorSpace {
 
 				} else if (line.equals(VectorSpace.STRING_TERM_DOCUMENT)) {
 					isTermDocument = true;
+					startNanos = recordPhase(LOADING_DOCUMENTS, startNanos);
 					continue;
 
 				}
 				
 				if (isDocumentVector) {
-					DocumentVector documentVector = DocumentVector.readDocumentVectorLine(line);
+					DocumentVector documentVector = DocumentVector.readDocumentVectorLine(line, _termDictionary);
 					_documentVectors.add(documentVector);
 				} else if (isTermDocument) {
 					addToTermDocumentMap(line);
 				}
 			}
 			br.close();
+			startNanos = recordPhase(LOADING_TERMS, startNanos);
+			_corpusSize = _documentVectors.size();
+			publish(null, null);
+			recordPhase(PUBLISHING, startNanos);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Load the text index like trainByIndexesFile(filename), parsing the term section on
+	 * several threads.
+	 *
+	 * The documents are read first and in order, since they add their terms to the
+	 * TermDictionary. The term section is then split into byte ranges at line breaks,
+	 * whose posting lines are parsed and sorted concurrently, and the posting lists are
+	 * set in file order, so the index is the same as the sequential loader builds.
+	 * @param filename
+	 * @param numberOfThreads
+	 */
+	public synchronized void trainByIndexesFile(String filename, int numberOfThreads) {
+		if (numberOfThreads <= 1) {
+			trainByIndexesFile(filename);
+			return;
+		}
+		loadIndexesFile(filename, numberOfThreads, false);
+	}
+
+	/**
+	 * Load the text index like trainByIndexesFile(filename, numberOfThreads), but leave the
+	 * term frequencies of the documents in the file, see DocumentStore. Only the urls and
+	 * names of the documents are kept, with where to find the rest, so the index takes
+	 * far less memory and loads faster. Queries by the raw weights never read the file;
+	 * the scoring models and incremental updates read the documents they need once.
+	 * @param filename
+	 * @param numberOfThreads
+	 */
+	public synchronized void trainByIndexesFileLazily(String filename, int numberOfThreads) {
+		loadIndexesFile(filename, numberOfThreads, true);
+	}
+
+	private void loadIndexesFile(String filename, int numberOfThreads, boolean isLazy) {
+		long startNanos = System.nanoTime();
+		clear();
+		ParallelIndexer indexer = new ParallelIndexer(numberOfThreads);
+		Charset charset = Charset.defaultCharset();
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			ParallelIndexer.LineReader reader = new ParallelIndexer.LineReader(channel, 0, channel.size(), charset);
+			DocumentStore documentStore = isLazy ? new DocumentStore(charset, _termDictionary) : null;
+			boolean isDocumentVector = false;
+			long offset = 0;
+			for (String line; (line = reader.readLine()) != null; offset = reader.position()) {
+				if (line.equals(VectorSpace.STRING_DOCUMENT_VECTOR)) {
+					isDocumentVector = true;
+				} else if (line.equals(VectorSpace.STRING_DOCUMENT_TERM_SEPARATOR)) {
+					isDocumentVector = false;
+				} else if (line.equals(VectorSpace.STRING_TERM_DOCUMENT)) {
+					break;
+				} else if (isDocumentVector && isLazy) {
+					_documentVectors.add(documentStore.readDocument(line, offset, (int) (reader.position() - offset)));
+				} else if (isDocumentVector) {
+					_documentVectors.add(DocumentVector.readDocumentVectorLine(line, _termDictionary));
+				}
+			}
+			if (isLazy) {
+				documentStore.map(channel);
+			}
+			startNanos = recordPhase(LOADING_DOCUMENTS, startNanos);
+
+			List <Map.Entry <String, PostingList>> termPostings = indexer.parseLines(channel, reader.position(),
+					channel.size(), charset, new ParallelIndexer.LineParser <Map.Entry <String, PostingList>>() {
+				@Override
+				public Map.Entry <String, PostingList> parse(String line) {
+					return readTermPostings(line);
+				}
+			});
+			for (Map.Entry <String, PostingList> entry : termPostings) {
+				setPostingList(entry.getKey(), entry.getValue());
+			}
+			startNanos = recordPhase(LOADING_TERMS, startNanos);
+			_corpusSize = _documentVectors.size();
+			publish(null, null);
+			recordPhase(PUBLISHING, startNanos);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		} finally {
+			indexer.shutdown();
+		}
+	}
+
+	/**
+	 * Load the binary index written by saveTermDocumentMapBinary.
+	 * The file is memory mapped and its postings are served from the mapping, so loading
+	 * only reads the names and urls of the documents and the terms; the term frequencies
+	 * of a document are read from the file the first time they are needed, as for
+	 * trainByIndexesFileLazily.
+	 * @param filename
+	 */
+	public synchronized void trainByBinaryIndexFile(String filename) {
+		long startNanos = System.nanoTime();
+		clear();
+		try {
+			BinaryIndexFile indexFile = BinaryIndexFile.open(filename);
+			_documentVectors.addAll(indexFile.readDocuments(_termDictionary));
+			_corpusSize = _documentVectors.size();
+			startNanos = recordPhase(LOADING_DOCUMENTS, startNanos);
+
+			for (int termIndex = 0; termIndex < indexFile.getTermCount(); termIndex++) {
+				setPostingList(indexFile.getTerm(termIndex), indexFile.getPostingList(termIndex));
+			}
+			startNanos = recordPhase(LOADING_TERMS, startNanos);
+			publish(null, null);
+			recordPhase(PUBLISHING, startNanos);
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(-1);
 		}
 	}
 
+	/**
+	 * @param phase the histogram of a phase of loading an index
+	 * @param startNanos when the phase started
+	 * @return when the next phase starts
+	 */
+	private static long recordPhase(LatencyHistogram phase, long startNanos) {
+		long endNanos = System.nanoTime();
+		phase.record(endNanos - startNanos);
+		return endNanos;
+	}
+
+	/**
+	 * Migrate an index saved by saveTermDocumentMap into the binary format.
+	 * It does not touch the indexes held by the singleton.
+	 * @param textFilename
+	 * @param binaryFilename
+	 */
+	public static void convertIndexesFile(String textFilename, String binaryFilename) {
+		VectorSpace vectorSpace = new VectorSpace();
+		vectorSpace.trainByIndexesFile(textFilename);
+		vectorSpace.saveTermDocumentMapBinary(binaryFilename);
+	}
+
 	/**
 	 * @param line
 	 */
 	private void addToTermDocumentMap(String line) {
+		Map.Entry <String, PostingList> termPostings = readTermPostings(line);
+		if (termPostings != null) {
+			setPostingList(termPostings.getKey(), termPostings.getValue());
+		}
+	}
+	
+	/**
+	 * parse a line of the term section, without touching the index, so that the lines
+	 * can be parsed on several threads once the documents are loaded
+	 * @param line
+	 * @return the term with its postings sorted by weight, or null for a term without postings
+	 */
+	private Map.Entry <String, PostingList> readTermPostings(String line) {
 		String[] tokens = line.split(STRING_TERM_SEPARATOR);
 		
 		String term = tokens[0];
-		Comparator <DocumentWeightPair> wtfComparator = new Utilities.SorterOfDocumentsByWeightedTermFrequency();
-		TreeSet<DocumentWeightPair> documentWeightPairs = new TreeSet<DocumentWeightPair>(wtfComparator);
+		PostingList postings = new PostingList();
 		if (tokens.length == 2) {
 			String[] documentWeights = tokens[1].split("[|]");
 
@@ -276,51 +1116,66 @@ public class VectorSpace {
 				String[] pair = documentWeight.split(" ");
 
 				int docId = Integer.parseInt(pair[0]);
-				DocumentVector documentVector = _documentVectors.get(docId);
 				double weight = Double.parseDouble(pair[1]);
-
-				DocumentWeightPair dwp = new DocumentWeightPair();
-				dwp.documentVector = documentVector;
-				dwp.weight = weight;
-				documentWeightPairs.add(dwp);
+				postings.add(docId, weight);
 			}
-			_termDocumentMap.put(term, documentWeightPairs);
+			postings.sortByWeight(_documentVectors);
+			return new AbstractMap.SimpleImmutableEntry <String, PostingList>(term, postings);
 
 		} 
 
-		
+		return null;
 	}
 	
+	/**
+	 * @param term
+	 * @param postings the postings of the term, replacing any it had
+	 */
+	private void setPostingList(String term, PostingList postings) {
+		int termId = _termDictionary.add(term);
+		getOrCreatePostingList(termId);
+		_postingLists.set(termId, postings);
+	}
+	
+	/**
+	 * Save the indexes as text. An index with deleted documents or incremental updates
+	 * is compacted into one segment first, which numbers the documents from 0 again.
+	 * @param filename
+	 */
 	public void saveTermDocumentMap(String filename) {
+		IndexSnapshot snapshot = _snapshot.compact();
+		TermDictionary termDictionary = snapshot.getTermDictionary();
 		System.out.print("number of documents: ");
-		System.out.println(_documentVectors.size());
+		System.out.println(snapshot.getNumberOfDocuments());
 		System.out.print("number of [unique] words (without stop words): ");
-		System.out.println(_termDocumentMap.size());
+		System.out.println(snapshot.getNumberOfTerms());
 		
-		writeToFile(filename, false, "");
-
-		try (FileWriter fw = new FileWriter(filename, true)) {
-			fw.write(VectorSpace.STRING_DOCUMENT_VECTOR + System.lineSeparator());
-			for (DocumentVector documentVector : _documentVectors) {
-				fw.write(documentVector.toString() + System.lineSeparator());
+		try (IndexFileWriter writer = new IndexFileWriter(filename)) {
+			writer.append(VectorSpace.STRING_DOCUMENT_VECTOR).newLine();
+			for (DocumentVector documentVector : snapshot.getDocumentVectors()) {
+				writer.append(documentVector.toString()).newLine();
 			}
 
-			fw.write(VectorSpace.STRING_DOCUMENT_TERM_SEPARATOR + System.lineSeparator());
-			fw.write(VectorSpace.STRING_TERM_DOCUMENT + System.lineSeparator());
-			for (Map.Entry<String, TreeSet<DocumentWeightPair> > termDocuments : _termDocumentMap.entrySet()) {
-			    String term = termDocuments.getKey();
-			    TreeSet <DocumentWeightPair> pairs = termDocuments.getValue();
+			writer.append(VectorSpace.STRING_DOCUMENT_TERM_SEPARATOR).newLine();
+			writer.append(VectorSpace.STRING_TERM_DOCUMENT).newLine();
+			for (int termId = 0; termId < snapshot.getNumberOfTerms(); termId++) {
+			    PostingList postings = snapshot.getPostingList(termId);
+			    if (postings == null) {
+			    	continue;
+			    }
 			    
-			    fw.write(term + VectorSpace.STRING_TERM_SEPARATOR + VectorSpace.STRING_DOCUMENT_WEIGHT_SEPARATOR);
-			    for (DocumentWeightPair pair : pairs) {
-			    	fw.write(pair.documentVector.getDocId() + " " +
-			    			 pair.weight + 
-			    			 VectorSpace.STRING_DOCUMENT_WEIGHT_SEPARATOR);
+			    writer.append(termDictionary.getTerm(termId))
+			    	  .append(VectorSpace.STRING_TERM_SEPARATOR)
+			    	  .append(VectorSpace.STRING_DOCUMENT_WEIGHT_SEPARATOR);
+			    for (int i = 0; i < postings.size(); i++) {
+			    	writer.append(postings.getDocId(i)).append(' ')
+			    		  .append(postings.getWeight(i))
+			    		  .append(VectorSpace.STRING_DOCUMENT_WEIGHT_SEPARATOR);
 			    }
 			    
-			    fw.write(System.lineSeparator());
+			    writer.newLine();
 			}
-			fw.close();
+			writer.commit();
 		} catch (IOException e) {
 			e.printStackTrace();
 			return;
@@ -329,72 +1184,54 @@ public class VectorSpace {
 	}
 	
 	/**
-	 * helper method to write content to file
-	 * 
+	 * Save the indexes in the binary format read by trainByBinaryIndexFile,
+	 * compacted like saveTermDocumentMap does
 	 * @param filename
-	 *            the file you want to write into
-	 * @param isAppend
-	 *            whether to overwrite the file
-	 * @param line
-	 *            the content that you want to write into
-	 * @return
 	 */
-	private boolean writeToFile(String filename, boolean isAppend,
-			String line) {
-		try (FileWriter fw = new FileWriter(filename, isAppend)) {
-			fw.write(line);
-			fw.close();
+	public void saveTermDocumentMapBinary(String filename) {
+		try {
+			IndexSnapshot snapshot = _snapshot.compact();
+			BinaryIndexFile.write(filename, snapshot.getDocumentVectors(), snapshot.getTermDictionary(),
+					snapshot.getPostingLists());
 		} catch (IOException e) {
 			e.printStackTrace();
-			return false;
+			return;
 		}
-
-		return true;
 	}
+	
 
 
 	/**
-	 * @param documentVectorSpace
-	 * @param corpusWords
-	 * @param maxTermFrequencyInCorpus
+	 * Build the ntf postings in one sweep over the terms of each document,
+	 * so the cost grows with the number of postings rather than vocabulary x documents.
+	 * @param maxTermFrequencyInCorpus indexed by termId
 	 */
-	private void setupNpWeightInTermDocumentMap(
-			List<DocumentVector> documentVectorSpace,
-			TreeSet<String> corpusWords,
-			HashMap<String, Integer> maxTermFrequencyInCorpus) {
-		for (DocumentVector documentVector : documentVectorSpace) {
-			documentVector.setMaxTermFrequencyInCorpus(maxTermFrequencyInCorpus);
-		}
-		
-		for (String word : corpusWords) {
-			Comparator <DocumentWeightPair> ntfComparator = new Utilities.SorterOfDocumentsByWeightedTermFrequency();
-			TreeSet <DocumentWeightPair> pairs = new TreeSet <DocumentWeightPair>(ntfComparator);
-			for (DocumentVector documentVector : documentVectorSpace) {
-				if (documentVector.hasTerm(word)) {
-					DocumentWeightPair pair = new DocumentWeightPair();
-					pair.documentVector = documentVector;
-					pair.weight = documentVector.getNormalizedTermFrequency(word);
-					pairs.add(pair);
-				}
+	private void setupNpWeightInTermDocumentMap(int[] maxTermFrequencyInCorpus) {
+		for (DocumentVector documentVector : _documentVectors) {
+			documentVector.setMaxTermFrequencies(maxTermFrequencyInCorpus);
+			
+			for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+				PostingList postings = getOrCreatePostingList(documentVector.getTermIdAt(i));
+				postings.add(documentVector.getDocId(), documentVector.getNormalizedTermFrequencyAt(i));
 			}
-			_termDocumentMap.put(word, pairs);
 		}
+		sortTermDocumentMap();
 	}
 
 
 	/**
 	 * We calculate max frequency map to count the ntf
-	 * @param termFrequency
-	 */
-	private HashMap <String, Integer> setupMaxFrequency(
-								   HashMap <String, Integer> maxTermFrequencyInCorpus,
-						           TermFrequencyPerDocument termFrequency) {
-		String term = termFrequency.getText();
-		int frequency = termFrequency.getFrequency();
-		if (!maxTermFrequencyInCorpus.containsKey(term)) {
-			maxTermFrequencyInCorpus.put(term, frequency);
-		} else if (frequency > maxTermFrequencyInCorpus.get(term).intValue()) {
-			maxTermFrequencyInCorpus.put(term, frequency);
+	 * @param maxTermFrequencyInCorpus indexed by termId, grown to the size of the dictionary
+	 * @param documentVector
+	 */
+	private int[] setupMaxFrequency(int[] maxTermFrequencyInCorpus, DocumentVector documentVector) {
+		if (maxTermFrequencyInCorpus.length < _termDictionary.size()) {
+			maxTermFrequencyInCorpus = Arrays.copyOf(maxTermFrequencyInCorpus,
+					Math.max(_termDictionary.size(), maxTermFrequencyInCorpus.length * 2));
+		}
+		for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+			int termId = documentVector.getTermIdAt(i);
+			maxTermFrequencyInCorpus[termId] = Math.max(maxTermFrequencyInCorpus[termId], documentVector.getFrequencyAt(i));
 		}
 		return maxTermFrequencyInCorpus;
 	}
@@ -402,21 +1239,22 @@ public class VectorSpace {
 
 	/**
 	 * @param documentVector
-	 * @param term
 	 */
-	private void setupTermDocumentMapByWTF(DocumentVector documentVector, TermFrequencyPerDocument termFrequency) {
-		String term = termFrequency.getText();
-
-		DocumentWeightPair pair = new DocumentWeightPair();
-		pair.documentVector = documentVector;
-		pair.weight = documentVector.getWeightedTermFrequency(term);
-		if (!_termDocumentMap.containsKey(term)) {
-			Comparator <DocumentWeightPair> wtfComparator = new Utilities.SorterOfDocumentsByWeightedTermFrequency();
-			TreeSet <DocumentWeightPair> pairs = new TreeSet <DocumentWeightPair>(wtfComparator);
-			pairs.add(pair);
-			_termDocumentMap.put(term, pairs);
-		} else {
-			_termDocumentMap.get(term).add(pair);
+	private void setupTermDocumentMapByWTF(DocumentVector documentVector) {
+		for (int i = 0; i < documentVector.getNumberOfTerms(); i++) {
+			PostingList postings = getOrCreatePostingList(documentVector.getTermIdAt(i));
+			postings.add(documentVector.getDocId(), documentVector.getWeightedTermFrequencyAt(i));
+		}
+	}
+
+	/**
+	 * order every posting list by weight once all the postings have been added
+	 */
+	private void sortTermDocumentMap() {
+		for (PostingList postings : _postingLists) {
+			if (postings != null) {
+				postings.sortByWeight(_documentVectors);
+			}
 		}
 	}
 }
@@ -0,0 +1,414 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package indexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exact top k retrieval for the summed term weights using the WAND algorithm.
+ *
+ * Each query term contributes a cursor over its postings in docId order, together with
+ * the highest weight of the term as an upper bound. A document is only scored when the
+ * upper bounds of the terms that can contain it add up to at least the score of the
+ * current k-th result; the other cursors skip over it. The result is the same as summing
+ * the weights of every posting, but only a fraction of the postings is scored.
+ *
+ * With a ScoringModel other than RAW each term adds the score of the model instead of
+ * its weight, and the model bounds those scores.
+ *
+ * RAW queries of one or two terms over a compact index skip WAND. One term is the prefix
+ * of its postings in weight order. Two terms read their postings in weight order an
+ * impact tier at a time, looking up the weight of each new document in the other list,
+ * and stop once the next weights of both lists add up to less than the k-th score, which
+ * no unread document can then beat.
+ * @author Jun
+ *
+ */
+public class WandQueryEngine {
+	/**
+	 * one collector per query thread, reused by its queries
+	 */
+	private static final ThreadLocal<TopKCollector> COLLECTORS = new ThreadLocal<TopKCollector>() {
+		@Override
+		protected TopKCollector initialValue() {
+			return new TopKCollector(0);
+		}
+	};
+	private static final LongAdder POSTINGS_SCANNED = Metrics.getObject().getCounter("query.postings");
+	private static final LongAdder CANDIDATES_MERGED = Metrics.getObject().getCounter("query.candidates");
+	/**
+	 * the most terms a query can have to be read in weight order rather than by WAND
+	 */
+	private static final int MAX_IMPACT_ORDERED_TERMS = 2;
+	/**
+	 * the documents already scored by the current impact ordered query of each thread
+	 */
+	private static final ThreadLocal<DocIdSet> SCORED_DOCUMENTS = new ThreadLocal<DocIdSet>() {
+		@Override
+		protected DocIdSet initialValue() {
+			return new DocIdSet();
+		}
+	};
+
+	private VectorSpace _vectorSpace = null;
+
+	public WandQueryEngine(VectorSpace vectorSpace) {
+		_vectorSpace = vectorSpace;
+	}
+
+	/**
+	 * @param terms the query terms. A repeated term counts once for every occurrence
+	 * @param k
+	 * @return the k documents with the highest sum of term weights,
+	 * 		   ordered by SorterOfDocumentsByWeightedTermFrequency
+	 */
+	public ArrayList<DocumentWeightPair> retrieveTopKDocuments(List<String> terms, int k) {
+		return retrieveTopKDocuments(_vectorSpace.getSnapshot(), terms, k);
+	}
+
+	/**
+	 * @param terms
+	 * @param k
+	 * @param scoringModel
+	 * @return the k documents with the highest score under the model
+	 */
+	public ArrayList<DocumentWeightPair> retrieveTopKDocuments(List<String> terms, int k, ScoringModel scoringModel) {
+		return retrieveTopKDocuments(_vectorSpace.getSnapshot(), terms, k, scoringModel);
+	}
+
+	/**
+	 * @param snapshot the index to search. The engine keeps no state between queries,
+	 * 		   so it can serve several threads at once
+	 * @param terms
+	 * @param k
+	 * @return
+	 */
+	public ArrayList<DocumentWeightPair> retrieveTopKDocuments(IndexSnapshot snapshot, List<String> terms, int k) {
+		return retrieveTopKDocuments(snapshot, terms, k, ScoringModel.RAW);
+	}
+
+	/**
+	 * @param snapshot
+	 * @param terms
+	 * @param k
+	 * @param scoringModel
+	 * @return the k documents with the highest score under the model
+	 */
+	public ArrayList<DocumentWeightPair> retrieveTopKDocuments(IndexSnapshot snapshot, List<String> terms, int k,
+			ScoringModel scoringModel) {
+		return retrieveTopKDocuments(snapshot, terms, k, scoringModel, null);
+	}
+
+	/**
+	 * @param snapshot
+	 * @param terms
+	 * @param k
+	 * @param scoringModel
+	 * @param statistics of the whole collection when the snapshot is one of its shards,
+	 * 		   null to take them from the snapshot
+	 * @return the k documents of the snapshot with the highest score under the model
+	 */
+	public ArrayList<DocumentWeightPair> retrieveTopKDocuments(IndexSnapshot snapshot, List<String> terms, int k,
+			ScoringModel scoringModel, CollectionStatistics statistics) {
+		ArrayList<DocumentWeightPair> ans = new ArrayList<DocumentWeightPair>();
+		if (k <= 0) {
+			return ans;
+		} else if (scoringModel == ScoringModel.RAW && !terms.isEmpty() && terms.size() <= MAX_IMPACT_ORDERED_TERMS
+				&& snapshot.isCompact()) {
+			ans = retrieveTopKDocumentsByImpact(snapshot, terms, k);
+			if (ans != null) {
+				return ans;
+			}
+			ans = new ArrayList<DocumentWeightPair>();
+		}
+
+		ScoringModel.TermScorer[] scorers = statistics == null
+				? scoringModel.getTermScorers(snapshot, terms)
+				: scoringModel.getTermScorers(snapshot, terms, statistics);
+		List<QueryTerm> queryTerms = new ArrayList<QueryTerm>();
+		for (int i = 0; i < terms.size(); i++) {
+			PostingCursor cursor = scorers[i] == null ? null : snapshot.cursor(terms.get(i));
+			if (cursor == null || cursor.nextDoc() == PostingCursor.NO_MORE_DOCS) {
+				continue;
+			}
+			queryTerms.add(new QueryTerm(cursor, scorers[i]));
+		}
+
+		TopKCollector topK = COLLECTORS.get();
+		topK.reset(k);
+
+		QueryTerm[] cursors = queryTerms.toArray(new QueryTerm[queryTerms.size()]);
+		long scoredPostings = 0;
+		long candidates = 0;
+		while (true) {
+			sortByDocId(cursors);
+			double threshold = topK.getMinScore();
+
+			int pivot = findPivot(cursors, threshold);
+			if (pivot < 0) {
+				break;
+			}
+			int pivotDocId = cursors[pivot].cursor.docId();
+			if (pivotDocId == PostingCursor.NO_MORE_DOCS) {
+				break;
+			}
+
+			if (cursors[0].cursor.docId() == pivotDocId) {
+				DocumentVector documentVector = snapshot.getDocumentVector(pivotDocId);
+				topK.collect(documentVector, score(queryTerms, documentVector, pivotDocId));
+				candidates++;
+
+				for (QueryTerm queryTerm : cursors) {
+					if (queryTerm.cursor.docId() == pivotDocId) {
+						queryTerm.cursor.nextDoc();
+						scoredPostings++;
+					}
+				}
+			} else {
+				// none of the documents before the pivot can make it into the top k
+				for (int i = 0; i < pivot; i++) {
+					if (cursors[i].cursor.docId() < pivotDocId) {
+						cursors[i].cursor.advance(pivotDocId);
+					}
+				}
+			}
+		}
+
+		POSTINGS_SCANNED.add(scoredPostings);
+		CANDIDATES_MERGED.add(candidates);
+		return topK.toList();
+	}
+
+	/**
+	 * Score only the given documents, like the ones that match the phrases of a query,
+	 * by the same sum as the WAND loop. Every cursor only moves forward, so each
+	 * posting list is read at most once.
+	 * @param snapshot
+	 * @param terms
+	 * @param k
+	 * @param scoringModel
+	 * @param statistics see retrieveTopKDocuments, null for the ones of the snapshot
+	 * @param docIds the candidates, live and in ascending order
+	 * @return the k candidates with the highest score under the model
+	 */
+	public ArrayList<DocumentWeightPair> retrieveTopKDocuments(IndexSnapshot snapshot, List<String> terms, int k,
+			ScoringModel scoringModel, CollectionStatistics statistics, int[] docIds) {
+		if (k <= 0) {
+			return new ArrayList<DocumentWeightPair>();
+		}
+
+		ScoringModel.TermScorer[] scorers = statistics == null
+				? scoringModel.getTermScorers(snapshot, terms)
+				: scoringModel.getTermScorers(snapshot, terms, statistics);
+		List<QueryTerm> queryTerms = new ArrayList<QueryTerm>();
+		for (int i = 0; i < terms.size(); i++) {
+			PostingCursor cursor = scorers[i] == null ? null : snapshot.cursor(terms.get(i));
+			if (cursor == null || cursor.nextDoc() == PostingCursor.NO_MORE_DOCS) {
+				continue;
+			}
+			queryTerms.add(new QueryTerm(cursor, scorers[i]));
+		}
+
+		TopKCollector topK = COLLECTORS.get();
+		topK.reset(k);
+		long scoredPostings = 0;
+		for (int docId : docIds) {
+			for (QueryTerm queryTerm : queryTerms) {
+				if (queryTerm.cursor.docId() < docId) {
+					queryTerm.cursor.advance(docId);
+				}
+				if (queryTerm.cursor.docId() == docId) {
+					scoredPostings++;
+				}
+			}
+			DocumentVector documentVector = snapshot.getDocumentVector(docId);
+			topK.collect(documentVector, score(queryTerms, documentVector, docId));
+		}
+
+		POSTINGS_SCANNED.add(scoredPostings);
+		CANDIDATES_MERGED.add(docIds.length);
+		return topK.toList();
+	}
+
+	/**
+	 * @param snapshot a compact one
+	 * @param terms
+	 * @param k
+	 * @return null if the postings are compressed, so that the weights of a document
+	 * 		   cannot be looked up
+	 */
+	private ArrayList<DocumentWeightPair> retrieveTopKDocumentsByImpact(IndexSnapshot snapshot, List<String> terms,
+			int k) {
+		if (terms.size() == 1) {
+			ArrayList<DocumentWeightPair> ans = snapshot.getTopKDocuments(terms.get(0), k);
+			POSTINGS_SCANNED.add(ans.size());
+			CANDIDATES_MERGED.add(ans.size());
+			return ans;
+		}
+
+		PostingList[] postings = new PostingList[terms.size()];
+		for (int i = 0; i < postings.length; i++) {
+			postings[i] = snapshot.getPostingList(terms.get(i));
+			if (postings[i] != null && postings[i].isCompressed()) {
+				return null;
+			}
+		}
+
+		TopKCollector topK = COLLECTORS.get();
+		topK.reset(k);
+		DocIdSet scoredDocuments = SCORED_DOCUMENTS.get();
+		scoredDocuments.clear(snapshot.getEndDocId());
+		int[] positions = new int[postings.length];
+		int[] tiers = new int[postings.length];
+		long scoredPostings = 0;
+		long candidates = 0;
+		while (true) {
+			// the most an unread document can score
+			double threshold = 0.0;
+			boolean isExhausted = true;
+			for (int i = 0; i < postings.length; i++) {
+				if (postings[i] != null && positions[i] < postings[i].size()) {
+					threshold += postings[i].getWeight(positions[i]);
+					isExhausted = false;
+				}
+			}
+			// a document scoring exactly the k-th score may still win on its url
+			if (isExhausted || threshold < topK.getMinScore()) {
+				break;
+			}
+
+			for (int i = 0; i < postings.length; i++) {
+				if (postings[i] == null || positions[i] == postings[i].size()) {
+					continue;
+				}
+				int end = postings[i].getTierEnd(tiers[i]++);
+				for (int position = positions[i]; position < end; position++) {
+					int docId = postings[i].getDocId(position);
+					scoredPostings++;
+					if (!scoredDocuments.add(docId)) {
+						continue;
+					}
+					// summed in query order, like the WAND loop
+					double score = 0.0;
+					for (int j = 0; j < postings.length; j++) {
+						double weight = j == i ? postings[i].getWeight(position)
+								: postings[j] == null ? Double.NaN : postings[j].getWeightOf(docId);
+						if (!Double.isNaN(weight)) {
+							score += weight;
+						}
+					}
+					topK.collect(snapshot.getDocumentVector(docId), score);
+					candidates++;
+				}
+				positions[i] = end;
+			}
+		}
+
+		POSTINGS_SCANNED.add(scoredPostings);
+		CANDIDATES_MERGED.add(candidates);
+		return topK.toList();
+	}
+
+	/**
+	 * @return the first cursor, in docId order, at which the accumulated upper bounds reach
+	 * 		   the threshold, or -1 if no remaining document can reach it
+	 */
+	private int findPivot(QueryTerm[] cursors, double threshold) {
+		double upperBound = 0.0;
+		for (int i = 0; i < cursors.length; i++) {
+			if (cursors[i].cursor.docId() == PostingCursor.NO_MORE_DOCS) {
+				return -1;
+			}
+			upperBound += cursors[i].maxScore;
+			// a document scoring exactly the threshold may still win on its url
+			if (upperBound >= threshold) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Sum the term scores in query order, so that the score does not depend on the order
+	 * in which the cursors reached the document.
+	 */
+	private double score(List<QueryTerm> queryTerms, DocumentVector documentVector, int docId) {
+		double score = 0.0;
+		for (QueryTerm queryTerm : queryTerms) {
+			if (queryTerm.cursor.docId() == docId) {
+				score += queryTerm.scorer.score(documentVector, queryTerm.cursor.weight());
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * insertion sort, the cursors are nearly sorted after each step
+	 */
+	private void sortByDocId(QueryTerm[] cursors) {
+		for (int i = 1; i < cursors.length; i++) {
+			QueryTerm queryTerm = cursors[i];
+			int j = i - 1;
+			while (j >= 0 && cursors[j].cursor.docId() > queryTerm.cursor.docId()) {
+				cursors[j + 1] = cursors[j];
+				j--;
+			}
+			cursors[j + 1] = queryTerm;
+		}
+	}
+
+	/**
+	 * the cursor of a query term with its scorer and the bound of its scores
+	 */
+	private static class QueryTerm {
+		final PostingCursor cursor;
+		final ScoringModel.TermScorer scorer;
+		final double maxScore;
+
+		QueryTerm(PostingCursor cursor, ScoringModel.TermScorer scorer) {
+			this.cursor = cursor;
+			this.scorer = scorer;
+			this.maxScore = scorer.getMaxScore(cursor.getMaxWeight());
+		}
+	}
+
+	/**
+	 * A set of docIds that is cleared in constant time: a docId is in the set if its
+	 * stamp is the current generation.
+	 */
+	private static final class DocIdSet {
+		private int[] _stamps = new int[0];
+		private int _generation = 0;
+
+		void clear(int endDocId) {
+			if (_stamps.length < endDocId) {
+				_stamps = new int[endDocId];
+				_generation = 0;
+			} else if (_generation == Integer.MAX_VALUE) {
+				Arrays.fill(_stamps, 0);
+				_generation = 0;
+			}
+			_generation++;
+		}
+
+		/**
+		 * @return whether the docId was not in the set yet
+		 */
+		boolean add(int docId) {
+			if (_stamps[docId] == _generation) {
+				return false;
+			}
+			_stamps[docId] = _generation;
+			return true;
+		}
+	}
+}
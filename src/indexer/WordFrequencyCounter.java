@@ -22,7 +22,7 @@ public final class WordFrequencyCounter {
 	/**
 	 * the object used for implementing singleton
 	 */
-	private static WordFrequencyCounter _counter = null;
+	private static volatile WordFrequencyCounter _counter = null;
 	
 	
 	
@@ -35,7 +35,11 @@ public final class WordFrequencyCounter {
 	
 	public static WordFrequencyCounter getObject() {
 		if (_counter == null) {
-			_counter = new WordFrequencyCounter();
+			synchronized (WordFrequencyCounter.class) {
+				if (_counter == null) {
+					_counter = new WordFrequencyCounter();
+				}
+			}
 		}
 		return _counter;
 	}
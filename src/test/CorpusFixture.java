@@ -0,0 +1,152 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A temporary directory for the documents and index files of a test, made in its
+ * setUp and removed by cleanUp in its tearDown. The standard output that the indexer
+ * prints to is captured in between. Each test class writes its own corpus with
+ * writeDocument, or a seeded random one with writeRandomCorpus.
+ * @author Jun
+ *
+ */
+public class CorpusFixture {
+	/**
+	 * the words of the random corpora
+	 */
+	private static final String[] WORDS = {
+		"apple", "banana", "cherry", "durian", "elderberry", "fig", "grape", "honeydew",
+		"kiwi", "lemon", "mango", "nectarine", "orange", "papaya", "quince", "raspberry"
+	};
+
+	private final PrintStream _originalOut = System.out;
+	private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+	private final File _directory;
+
+	/**
+	 * @param prefix of the name of the temporary directory
+	 * @throws IOException
+	 */
+	public CorpusFixture(String prefix) throws IOException {
+		_directory = Files.createTempDirectory(prefix).toFile();
+		System.setOut(new PrintStream(_out));
+	}
+
+	public File getDirectory() {
+		return _directory;
+	}
+
+	/**
+	 * @param filename relative to the directory
+	 * @return
+	 */
+	public File getFile(String filename) {
+		return new File(_directory, filename);
+	}
+
+	/**
+	 * write a document in the format the indexer trains on: its url, then its content
+	 * @param filename relative to the directory, in a subdirectory that is made if need be
+	 * @param url
+	 * @param content
+	 * @return the file
+	 * @throws IOException
+	 */
+	public File writeDocument(String filename, String url, String content) throws IOException {
+		File file = getFile(filename);
+		file.getParentFile().mkdirs();
+		String text = url + System.lineSeparator() + content + System.lineSeparator();
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	/**
+	 * @param size at most 16
+	 * @return the first words of the random corpora
+	 */
+	public static String[] getVocabulary(int size) {
+		return Arrays.copyOf(WORDS, size);
+	}
+
+	/**
+	 * @param random
+	 * @param vocabulary
+	 * @param maxLength
+	 * @param skew the higher, the more often the first words of the vocabulary come up, so
+	 * 		  that weights and document frequencies differ between terms
+	 * @return between 1 and maxLength words of the vocabulary
+	 */
+	public static String getRandomContent(Random random, String[] vocabulary, int maxLength, int skew) {
+		StringBuilder content = new StringBuilder();
+		int length = 1 + random.nextInt(maxLength);
+		for (int j = 0; j < length; j++) {
+			int word = (int) (vocabulary.length * Math.pow(random.nextDouble(), skew));
+			content.append(vocabulary[word]).append(' ');
+		}
+		return content.toString();
+	}
+
+	/**
+	 * write the documents doc000.txt, doc001.txt... with the urls http://www.site0.com,
+	 * http://www.site1.com... and random content, see getRandomContent
+	 * @param subdirectory of the documents, "" for the directory itself
+	 * @param numberOfDocuments
+	 * @param vocabulary
+	 * @param maxLength
+	 * @param skew
+	 * @param seed
+	 * @return the documents in the order they were written
+	 * @throws IOException
+	 */
+	public File[] writeRandomCorpus(String subdirectory, int numberOfDocuments, String[] vocabulary, int maxLength,
+			int skew, long seed) throws IOException {
+		Random random = new Random(seed);
+		File[] documents = new File[numberOfDocuments];
+		for (int i = 0; i < numberOfDocuments; i++) {
+			String filename = String.format("doc%03d.txt", i);
+			documents[i] = writeDocument(subdirectory.isEmpty() ? filename : subdirectory + File.separator + filename,
+					"http://www.site" + i + ".com", getRandomContent(random, vocabulary, maxLength, skew));
+		}
+		return documents;
+	}
+
+	/**
+	 * @return what was printed to the standard output so far
+	 */
+	public String getOutput() {
+		return _out.toString();
+	}
+
+	/**
+	 * restore the standard output and remove the directory with everything in it
+	 */
+	public void cleanUp() {
+		System.setOut(_originalOut);
+		deleteRecursively(_directory);
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentWeightPair;
+import indexer.IndexerMain;
+import indexer.ScoringModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBooleanQuery {
+	private CorpusFixture _corpus = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("boolean");
+	}
+
+	@After
+	public void cleanUp() {
+		_corpus.cleanUp();
+	}
+
+	private IndexerMain createIndexer() throws IOException {
+		_corpus.writeDocument("doc0.txt", "http://www.a.com", "green tea cake shop cake");
+		_corpus.writeDocument("doc1.txt", "http://www.b.com", "tea garden green market");
+		_corpus.writeDocument("doc2.txt", "http://www.c.com", "cake river street fresh cake river");
+		_corpus.writeDocument("doc3.txt", "http://www.d.com", "the green tea lights");
+		IndexerMain indexer = new IndexerMain(null);
+		indexer.trainIndexerByWtf(_corpus.getDirectory());
+		return indexer;
+	}
+
+	private static Set<String> getUrls(List<DocumentWeightPair> ans) {
+		Set<String> urls = new HashSet<String>();
+		for (DocumentWeightPair dwp : ans) {
+			urls.add(dwp.documentVector.getUrl());
+		}
+		return urls;
+	}
+
+	private static Set<String> setOf(String... urls) {
+		Set<String> set = new HashSet<String>();
+		for (String url : urls) {
+			set.add("http://www." + url + ".com");
+		}
+		return set;
+	}
+
+	@Test
+	public void testOperators() throws IOException {
+		IndexerMain indexer = createIndexer();
+		Set<String> urls = getUrls(indexer.retrieveTopKDocuments("green AND tea", 10));
+		assertTrue(urls.toString(), urls.equals(setOf("a", "b", "d")));
+
+		urls = getUrls(indexer.retrieveTopKDocuments("tea AND cake", 10));
+		assertTrue(urls.toString(), urls.equals(setOf("a")));
+
+		urls = getUrls(indexer.retrieveTopKDocuments("garden OR river", 10));
+		assertTrue(urls.toString(), urls.equals(setOf("b", "c")));
+
+		urls = getUrls(indexer.retrieveExactTopKDocuments("green AND NOT cake", 10, ScoringModel.BM25));
+		assertTrue(urls.toString(), urls.equals(setOf("b", "d")));
+
+		urls = getUrls(indexer.retrieveTopKDocuments("NOT green", 10));
+		assertTrue(urls.toString(), urls.equals(setOf("c")));
+
+		urls = getUrls(indexer.retrieveTopKDocuments("missing AND green", 10));
+		assertTrue(urls.toString(), urls.isEmpty());
+	}
+
+	@Test
+	public void testGroupingAndPrecedence() throws IOException {
+		IndexerMain indexer = createIndexer();
+		// AND binds tighter than OR
+		Set<String> urls = getUrls(indexer.retrieveTopKDocuments("river OR green AND lights", 10));
+		assertTrue(urls.toString(), urls.equals(setOf("c", "d")));
+
+		urls = getUrls(indexer.retrieveTopKDocuments("(river OR green) AND lights", 10));
+		assertTrue(urls.toString(), urls.equals(setOf("d")));
+
+		// words without an operator must all match, and a stop word is left out
+		urls = getUrls(indexer.retrieveTopKDocuments("(the green tea) NOT (market OR cake)", 10));
+		assertTrue(urls.toString(), urls.equals(setOf("d")));
+
+		// a phrase matches like its words joined by AND without a positional index
+		urls = getUrls(indexer.retrieveTopKDocuments("\"cake tea\" OR garden", 10));
+		assertTrue(urls.toString(), urls.equals(setOf("a", "b")));
+	}
+
+	@Test
+	public void testRankingByScoredTerms() throws IOException {
+		IndexerMain indexer = createIndexer();
+		List<DocumentWeightPair> ans = indexer.retrieveTopKDocuments("cake AND NOT green", 10);
+		assertTrue("one match", ans.size() == 1);
+		List<DocumentWeightPair> plain = indexer.retrieveExactTopKDocuments("cake", 10);
+		double weight = 0;
+		for (DocumentWeightPair dwp : plain) {
+			if (dwp.documentVector.getUrl().equals("http://www.c.com")) {
+				weight = dwp.weight;
+			}
+		}
+		assertTrue("ranked by the posting weight of cake", Math.abs(ans.get(0).weight - weight) < 1e-9);
+
+		ans = indexer.retrieveTopKDocuments("green AND tea", 1);
+		assertTrue("top k", ans.size() == 1);
+	}
+
+	@Test
+	public void testMalformedQueriesArePlainText() throws IOException {
+		IndexerMain indexer = createIndexer();
+		String[] queries = { "green AND", "OR green", "(green AND tea", "green )", "green AND OR tea", "tea :)" };
+		for (String query : queries) {
+			Set<String> expected = getUrls(indexer.retrieveTopKDocuments(query.replaceAll("[()]|AND|OR", " "), 10));
+			Set<String> urls = getUrls(indexer.retrieveTopKDocuments(query, 10));
+			assertTrue(query + " like its words", !urls.isEmpty() && urls.equals(expected));
+			urls = getUrls(indexer.retrieveExactTopKDocuments(query, 10, ScoringModel.BM25));
+			assertTrue(query + " exact", !urls.isEmpty());
+		}
+		// a lone operator is a word like any other, and a stop word
+		assertTrue("lone NOT", indexer.retrieveTopKDocuments("NOT", 10).isEmpty());
+		assertTrue("lone (", indexer.retrieveExactTopKDocuments("(", 10, ScoringModel.RAW).isEmpty());
+		// lower case words are not operators
+		assertTrue("plain query", indexer.retrieveTopKDocuments("green and tea", 10).size() == 3);
+	}
+
+	@Test
+	public void testIntersectionOverManyDocuments() throws IOException {
+		String[] words = { "green", "tea", "cake", "shop", "garden", "market", "river", "street" };
+		List<Set<String>> contents = new ArrayList<Set<String>>();
+		Random random = new Random(7);
+		for (int i = 0; i < 300; i++) {
+			Set<String> content = new HashSet<String>();
+			StringBuilder text = new StringBuilder();
+			for (String word : words) {
+				// rare and common words, so that the lists are skipped over by very different steps
+				if (random.nextInt(words.length) <= word.length() - 3) {
+					content.add(word);
+					text.append(word).append(' ');
+				}
+			}
+			contents.add(content);
+			_corpus.writeDocument("doc" + i + ".txt", "http://www.doc" + i + ".com", text.toString());
+		}
+		IndexerMain indexer = new IndexerMain(null);
+		indexer.trainIndexerByWtf(_corpus.getDirectory());
+
+		for (int i = 0; i < words.length; i++) {
+			for (int j = 0; j < words.length; j++) {
+				String query = words[i] + " AND " + words[j] + " AND NOT " + words[(i + j + 1) % words.length];
+				Set<String> expected = new HashSet<String>();
+				for (int doc = 0; doc < contents.size(); doc++) {
+					Set<String> content = contents.get(doc);
+					if (content.contains(words[i]) && content.contains(words[j])
+							&& !content.contains(words[(i + j + 1) % words.length])) {
+						expected.add("http://www.doc" + doc + ".com");
+					}
+				}
+				Set<String> urls = getUrls(indexer.retrieveExactTopKDocuments(query, contents.size(), ScoringModel.RAW));
+				assertTrue(query, urls.equals(expected));
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentWeightPair;
+import indexer.IndexSnapshot;
+import indexer.TieredMergePolicy;
+import indexer.VectorSpace;
+import indexer.WandQueryEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestIncrementalIndexing {
+	private static final String[] VOCABULARY = CorpusFixture.getVocabulary(8);
+	private static final int NUMBER_OF_DOCUMENTS = 40;
+
+	private CorpusFixture _corpus = null;
+	private File[] _documents = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("incremental");
+		_documents = _corpus.writeRandomCorpus("", NUMBER_OF_DOCUMENTS, VOCABULARY, 30, 2, 7);
+	}
+
+	@After
+	public void cleanUp() {
+		VectorSpace.getObject().setPostingCompression(0);
+		VectorSpace.getObject().setOffHeapPostings(false);
+		VectorSpace.getObject().setMergePolicy(new TieredMergePolicy(), 0);
+		_corpus.cleanUp();
+	}
+
+	/**
+	 * everything a query can see: the postings of every term with their weights, the idf,
+	 * the live document frequency and the exact top 10 of the whole vocabulary
+	 */
+	private List<String> describeIndex(VectorSpace vectorSpace) {
+		List<String> description = new ArrayList<String>();
+		for (String term : VOCABULARY) {
+			description.add(term + " idf " + vectorSpace.calculateIdf(term));
+			description.add(term + " df " + vectorSpace.getSnapshot().getDocumentFrequency(term));
+			for (DocumentWeightPair pair : vectorSpace.retrieveAllDocuments(term)) {
+				description.add(term + " " + pair.documentVector.getUrl() + " " + pair.weight);
+			}
+		}
+		for (DocumentWeightPair pair : new WandQueryEngine(vectorSpace).retrieveTopKDocuments(vectorSpace.getSnapshot(),
+				Arrays.asList(VOCABULARY), 10)) {
+			description.add("top " + pair.documentVector.getUrl() + " " + pair.weight);
+		}
+		return description;
+	}
+
+	private List<String> describeTraining(File[] files, boolean isNormalized) {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		if (isNormalized) {
+			vectorSpace.trainByNtf(files);
+		} else {
+			vectorSpace.trainByWtf(files);
+		}
+		return describeIndex(vectorSpace);
+	}
+
+	private void assertSameAsTraining(String message, File[] files, boolean isNormalized, List<String> actual) {
+		List<String> expected = describeTraining(files, isNormalized);
+		assertTrue(message + ": " + expected + " but " + actual, expected.equals(actual));
+	}
+
+	private void checkAddReplaceDelete(boolean isNormalized) throws IOException {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		File[] firstHalf = Arrays.copyOfRange(_documents, 0, NUMBER_OF_DOCUMENTS / 2);
+		File[] secondHalf = Arrays.copyOfRange(_documents, NUMBER_OF_DOCUMENTS / 2, NUMBER_OF_DOCUMENTS);
+
+		describeTraining(firstHalf, isNormalized);
+		vectorSpace.addDocuments(Arrays.copyOfRange(secondHalf, 0, 5));
+		vectorSpace.addDocuments(Arrays.copyOfRange(secondHalf, 5, secondHalf.length));
+		assertTrue("all documents", vectorSpace.getSnapshot().getNumberOfDocuments() == NUMBER_OF_DOCUMENTS);
+		assertSameAsTraining("added", _documents, isNormalized, describeIndex(vectorSpace));
+
+		// replace the document of site3 by another one, then delete two documents
+		File replacement = _corpus.writeDocument("replacement.txt", "http://www.site3.com",
+				CorpusFixture.getRandomContent(new Random(99), VOCABULARY, 30, 2));
+		File[] updated = _documents.clone();
+		updated[3] = replacement;
+		describeTraining(_documents, isNormalized);
+		vectorSpace.addDocuments(new File[] { replacement });
+		assertTrue("replaced", vectorSpace.getSnapshot().getNumberOfDocuments() == NUMBER_OF_DOCUMENTS);
+		assertSameAsTraining("replaced", updated, isNormalized, describeIndex(vectorSpace));
+
+		describeTraining(updated, isNormalized);
+		vectorSpace.addDocuments(new File[] { replacement });
+		int deleted = vectorSpace.deleteDocuments(Arrays.asList("http://www.site0.com", "http://www.site25.com",
+				"http://www.unknown.com"));
+		assertTrue("deleted", deleted == 2);
+		List<File> remaining = new ArrayList<File>(Arrays.asList(updated));
+		remaining.remove(_documents[25]);
+		remaining.remove(_documents[0]);
+		assertSameAsTraining("deleted", remaining.toArray(new File[remaining.size()]), isNormalized,
+				describeIndex(vectorSpace));
+	}
+
+	@Test
+	public void testIncrementalWtf() throws IOException {
+		checkAddReplaceDelete(false);
+	}
+
+	@Test
+	public void testIncrementalNtf() throws IOException {
+		checkAddReplaceDelete(true);
+	}
+
+	@Test
+	public void testIncrementalCompressedNtf() throws IOException {
+		VectorSpace.getObject().setPostingCompression(64);
+		checkAddReplaceDelete(true);
+	}
+
+	/**
+	 * the exact top 5 of two terms, which are read in impact order
+	 */
+	private String describeShortQuery(VectorSpace vectorSpace) {
+		List<String> description = new ArrayList<String>();
+		for (DocumentWeightPair pair : new WandQueryEngine(vectorSpace).retrieveTopKDocuments(
+				Arrays.asList(VOCABULARY[0], VOCABULARY[1]), 5)) {
+			description.add(pair.documentVector.getUrl() + " " + pair.weight);
+		}
+		return description.toString();
+	}
+
+	@Test
+	public void testIncrementalOffHeap() throws IOException {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		for (int weightBits : new int[] { 0, 64 }) {
+			vectorSpace.setPostingCompression(weightBits);
+			vectorSpace.setOffHeapPostings(false);
+			List<String> onHeap = describeTraining(_documents, true);
+			onHeap.add(describeShortQuery(vectorSpace));
+
+			vectorSpace.setOffHeapPostings(true);
+			List<String> offHeap = describeTraining(_documents, true);
+			offHeap.add(describeShortQuery(vectorSpace));
+			assertTrue("postings off the heap", vectorSpace.getSnapshot().getOffHeapSizeInBytes() > 0);
+			assertTrue(weightBits + " bits: " + onHeap + " but " + offHeap, onHeap.equals(offHeap));
+			checkAddReplaceDelete(true);
+		}
+	}
+
+	@Test
+	public void testSaveAfterDeletions() throws IOException {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByNtf(Arrays.copyOfRange(_documents, 0, 30));
+		vectorSpace.addDocuments(Arrays.copyOfRange(_documents, 30, NUMBER_OF_DOCUMENTS));
+		vectorSpace.deleteDocuments(Arrays.asList("http://www.site1.com", "http://www.site35.com"));
+		List<String> expected = describeIndex(vectorSpace);
+
+		File textFile = _corpus.getFile("index.txt");
+		File binaryFile = _corpus.getFile("index.bin");
+		vectorSpace.saveTermDocumentMap(textFile.getAbsolutePath());
+		vectorSpace.saveTermDocumentMapBinary(binaryFile.getAbsolutePath());
+
+		vectorSpace.trainByIndexesFile(textFile.getAbsolutePath());
+		assertTrue("text index", expected.equals(describeIndex(vectorSpace)));
+		vectorSpace.trainByBinaryIndexFile(binaryFile.getAbsolutePath());
+		assertTrue("binary index", expected.equals(describeIndex(vectorSpace)));
+		assertTrue("compacted", vectorSpace.getSnapshot().getEndDocId() == NUMBER_OF_DOCUMENTS - 2);
+
+		// a loaded ntf index keeps being updated by ntf
+		vectorSpace.addDocuments(new File[] { _documents[1] });
+		List<File> files = new ArrayList<File>(Arrays.asList(_documents));
+		files.remove(_documents[35]);
+		assertSameAsTraining("loaded", files.toArray(new File[files.size()]), true, describeIndex(vectorSpace));
+	}
+
+	@Test
+	public void testOldSnapshotKeepsItsTerms() throws IOException {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByWtf(Arrays.copyOfRange(_documents, 0, 10));
+		IndexSnapshot old = vectorSpace.getSnapshot();
+		int numberOfTerms = old.getNumberOfTerms();
+
+		File added = _corpus.writeDocument("added.txt", "http://www.added.com", "kiwi apple");
+		vectorSpace.addDocuments(new File[] { added });
+
+		IndexSnapshot snapshot = vectorSpace.getSnapshot();
+		assertTrue("shared dictionary", snapshot.getTermDictionary() == old.getTermDictionary());
+		assertTrue("new term", snapshot.getTermId("kiwi") >= numberOfTerms && snapshot.getPostingList("kiwi").size() == 1);
+		assertTrue("same number of terms", old.getNumberOfTerms() == numberOfTerms);
+		assertTrue("unknown to the old snapshot", old.getTermId("kiwi") == -1 && old.getDocumentFrequency("kiwi") == 0);
+		assertTrue("old term", old.getTermId("apple") == snapshot.getTermId("apple"));
+	}
+
+	@Test
+	public void testBackgroundMerges() throws IOException, InterruptedException {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.setMergePolicy(new TieredMergePolicy(2, 2, 1, 0.2), 1 << 20);
+		vectorSpace.trainByNtf(Arrays.copyOfRange(_documents, 0, 5));
+		for (int i = 5; i < NUMBER_OF_DOCUMENTS; i++) {
+			vectorSpace.addDocuments(new File[] { _documents[i] });
+			if (i % 7 == 0) {
+				vectorSpace.deleteDocuments(Arrays.asList("http://www.site" + (i - 4) + ".com"));
+			}
+		}
+		vectorSpace.waitForMerges();
+
+		int segments = vectorSpace.getSnapshot().getNumberOfSegments();
+		assertTrue("merged into " + segments + " segments", segments <= 12);
+		List<File> files = new ArrayList<File>(Arrays.asList(_documents));
+		for (int i = 7; i < NUMBER_OF_DOCUMENTS; i += 7) {
+			files.remove(_documents[i - 4]);
+		}
+		assertSameAsTraining("merged", files.toArray(new File[files.size()]), true, describeIndex(vectorSpace));
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.IndexerMain;
+import indexer.LatencyHistogram;
+import indexer.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMetrics {
+	private CorpusFixture _corpus = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("metrics");
+		_corpus.writeDocument("doc0.txt", "http://www.a.com", "apple banana apple cherry");
+		_corpus.writeDocument("doc1.txt", "http://www.b.com", "banana banana banana durian");
+		_corpus.writeDocument("doc2.txt", "http://www.c.com", "apple cherry cherry elderberry");
+	}
+
+	@After
+	public void cleanUp() {
+		_corpus.cleanUp();
+	}
+
+	@Test
+	public void testPercentilesAreWithinOnePercent() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertTrue("count", histogram.getCount() == 100000);
+		assertTrue("max", histogram.getMaxNanos() == 100000L * 1000);
+		double[] percentiles = { 50.0, 90.0, 99.0, 99.9 };
+		for (double percentile : percentiles) {
+			double expected = percentile * 1000 * 1000;
+			double actual = histogram.getPercentileNanos(percentile);
+			assertTrue(percentile + ": " + actual, Math.abs(actual - expected) <= 0.01 * expected);
+		}
+		assertTrue("the 100th percentile is the max", histogram.getPercentileNanos(100.0) == histogram.getMaxNanos());
+
+		histogram.reset();
+		assertTrue("reset", histogram.getCount() == 0 && histogram.getPercentileNanos(50.0) == 0);
+	}
+
+	@Test
+	public void testIndexingAndQueryingAreCounted() {
+		Metrics metrics = Metrics.getObject();
+		long documents = metrics.getCounter("index.documents").sum();
+		long files = metrics.getCounter("tokenize.files").sum();
+		long queries = metrics.getHistogram("query.latency").getCount();
+		long postings = metrics.getCounter("query.postings").sum();
+
+		IndexerMain indexer = new IndexerMain(null);
+		indexer.trainIndexerByWtf(_corpus.getDirectory());
+		indexer.retrieveTopKDocuments("apple cherry", 2);
+		indexer.retrieveExactTopKDocuments("banana", 2);
+
+		assertTrue("documents", metrics.getCounter("index.documents").sum() == documents + 3);
+		assertTrue("files", metrics.getCounter("tokenize.files").sum() >= files + 3);
+		assertTrue("queries", metrics.getHistogram("query.latency").getCount() == queries + 2);
+		// apple and cherry are in two documents each, banana in two
+		assertTrue("postings", metrics.getCounter("query.postings").sum() == postings + 6);
+		assertTrue("throughput", metrics.getThroughput("index.documents.per.second") > 0.0);
+
+		String dump = metrics.dump();
+		assertTrue(dump, dump.contains("indexer_index_documents_total "));
+		assertTrue(dump, dump.contains("indexer_query_latency_seconds{quantile=\"0.99\"} "));
+		assertTrue(dump, dump.contains("indexer_query_latency_seconds_count "));
+	}
+
+	@Test
+	public void testSavingIsMeasuredNotPrinted() {
+		Metrics metrics = Metrics.getObject();
+		long bytes = metrics.getCounter("save.bytes").sum();
+		long saves = metrics.getHistogram("save.file").getCount();
+		IndexerMain indexer = new IndexerMain(null);
+		indexer.trainIndexerByWtf(_corpus.getDirectory());
+
+		String printed = _corpus.getOutput();
+		File file = _corpus.getFile("indexes.bin");
+		indexer.saveIndexesBinary(file.getPath());
+		assertTrue("nothing printed: " + _corpus.getOutput(), _corpus.getOutput().equals(printed));
+		assertTrue("bytes", metrics.getCounter("save.bytes").sum() == bytes + file.length());
+		assertTrue("saves", metrics.getHistogram("save.file").getCount() == saves + 1);
+		assertTrue("throughput", metrics.getThroughput("save.bytes.per.second") > 0.0);
+	}
+
+	@Test
+	public void testMetricsAreRegisteredWithJmx() throws Exception {
+		Metrics.getObject().getCounter("test.jmx").increment();
+		ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+		assertTrue("registered", ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		Object counters = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Counters");
+		assertTrue("counters", counters != null);
+		Map<String, Long> local = Metrics.getObject().getCounters();
+		assertTrue("jmx counter", local.get("test.jmx").longValue() >= 1);
+	}
+}
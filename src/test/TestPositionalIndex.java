@@ -0,0 +1,170 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentWeightPair;
+import indexer.IndexerMain;
+import indexer.QueryCache;
+import indexer.ScoringModel;
+import indexer.TieredMergePolicy;
+import indexer.VectorSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPositionalIndex {
+	private CorpusFixture _corpus = null;
+	private IndexerMain _indexer = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("positions");
+		_corpus.writeDocument("doc0.txt", "http://www.a.com", "green tea cake shop cake");
+		_corpus.writeDocument("doc1.txt", "http://www.b.com", "tea garden green cake market");
+		_corpus.writeDocument("doc2.txt", "http://www.c.com", "cake river green street fresh cake river tea");
+		_corpus.writeDocument("doc3.txt", "http://www.d.com", "the green tea lights");
+
+		_indexer = new IndexerMain(null);
+		_indexer.trainIndexerByWtf(_corpus.getDirectory());
+		_indexer.buildPositionalIndex();
+	}
+
+	@After
+	public void cleanUp() {
+		VectorSpace.getObject().setMergePolicy(new TieredMergePolicy(), 0);
+		_corpus.cleanUp();
+	}
+
+	private static List<String> getUrls(List<DocumentWeightPair> ans) {
+		List<String> urls = new ArrayList<String>();
+		for (DocumentWeightPair dwp : ans) {
+			urls.add(dwp.documentVector.getUrl());
+		}
+		return urls;
+	}
+
+	@Test
+	public void testPhraseMatchesWordsInOrder() {
+		List<String> urls = getUrls(_indexer.retrieveTopKDocuments("\"green tea\"", 10));
+		assertTrue(urls.toString(), urls.size() == 2 && urls.contains("http://www.a.com") && urls.contains("http://www.d.com"));
+
+		urls = getUrls(_indexer.retrieveExactTopKDocuments("\"tea cake\" green", 10, ScoringModel.BM25));
+		assertTrue(urls.toString(), urls.size() == 1 && urls.contains("http://www.a.com"));
+
+		urls = getUrls(_indexer.retrieveTopKDocuments("\"cake tea\"", 10));
+		assertTrue(urls.toString(), urls.isEmpty());
+	}
+
+	@Test
+	public void testProximityMatchesWordsInAnyOrder() {
+		List<String> urls = getUrls(_indexer.retrieveTopKDocuments("\"cake tea\"~2", 10));
+		assertTrue(urls.toString(), urls.size() == 2 && urls.contains("http://www.a.com") && urls.contains("http://www.c.com"));
+
+		urls = getUrls(_indexer.retrieveTopKDocuments("\"cake tea\"~3", 10));
+		assertTrue(urls.toString(), urls.size() == 3 && !urls.contains("http://www.d.com"));
+	}
+
+	@Test
+	public void testPhraseRanksLikeItsWords() {
+		List<DocumentWeightPair> phrase = _indexer.retrieveExactTopKDocuments("\"green tea\" cake", 10, ScoringModel.RAW);
+		List<DocumentWeightPair> words = _indexer.retrieveExactTopKDocuments("green tea cake", 10, ScoringModel.RAW);
+		assertTrue("a filter of the words", phrase.size() == 2 && words.size() == 4);
+		for (DocumentWeightPair dwp : phrase) {
+			boolean isFound = false;
+			for (DocumentWeightPair word : words) {
+				isFound |= word.documentVector.getUrl().equals(dwp.documentVector.getUrl()) && word.weight == dwp.weight;
+			}
+			assertTrue(dwp.documentVector.getUrl(), isFound);
+		}
+	}
+
+	@Test
+	public void testSavedIndexMatchesTheSame() throws IOException {
+		File file = _corpus.getFile("positions.bin");
+		_indexer.savePositionalIndex(file.getPath());
+		List<String> before = getUrls(_indexer.retrieveTopKDocuments("\"green tea\" \"cake tea\"~3", 10));
+		_indexer.loadPositionalIndex(file.getPath());
+		List<String> after = getUrls(_indexer.retrieveTopKDocuments("\"green tea\" \"cake tea\"~3", 10));
+		assertTrue(after.toString(), after.equals(before) && after.size() == 1 && after.contains("http://www.a.com"));
+		assertTrue("terms", _indexer.getPositionalIndex().getNumberOfTerms() > 0);
+	}
+
+	@Test
+	public void testDeletedDocumentsDoNotMatch() throws InterruptedException {
+		List<String> deleted = new ArrayList<String>();
+		deleted.add("http://www.d.com");
+		VectorSpace.getObject().deleteDocuments(deleted);
+		VectorSpace.getObject().waitForMerges();
+		List<String> urls = getUrls(_indexer.retrieveTopKDocuments("\"green tea\"", 10));
+		assertTrue(urls.toString(), urls.size() == 1 && urls.contains("http://www.a.com"));
+	}
+
+	@Test
+	public void testMergedDocumentsKeepTheirPositions() throws InterruptedException {
+		String[][] phrases = {
+			{ "http://www.a.com", "\"cake shop\"" },
+			{ "http://www.b.com", "\"tea garden\"" },
+			{ "http://www.c.com", "\"river green\"" },
+			{ "http://www.d.com", "\"tea lights\"" }
+		};
+		// no merge until the phrases have been matched against the index with the deletion
+		VectorSpace.getObject().setMergePolicy(new TieredMergePolicy(10, 10, 1000, 1.0), 0);
+		String first = VectorSpace.getObject().getSnapshot().getDocumentVector(0).getUrl();
+		List<String> deleted = new ArrayList<String>();
+		deleted.add(first);
+		VectorSpace.getObject().deleteDocuments(deleted);
+		for (String[] phrase : phrases) {
+			List<String> urls = getUrls(_indexer.retrieveTopKDocuments(phrase[1], 10));
+			assertTrue("before the merge " + phrase[1] + " " + urls,
+					phrase[0].equals(first) ? urls.isEmpty() : urls.size() == 1 && urls.contains(phrase[0]));
+		}
+
+		// the merge numbers the documents from 0 again without a new version
+		VectorSpace.getObject().setMergePolicy(new TieredMergePolicy(2, 2, 1, 0.0), 0);
+		VectorSpace.getObject().waitForMerges();
+		assertTrue("merged", VectorSpace.getObject().getSnapshot().getEndDocId() == 3);
+		for (String[] phrase : phrases) {
+			List<String> urls = getUrls(_indexer.retrieveTopKDocuments(phrase[1], 10));
+			assertTrue("after the merge " + phrase[1] + " " + urls,
+					phrase[0].equals(first) ? urls.isEmpty() : urls.size() == 1 && urls.contains(phrase[0]));
+		}
+	}
+
+	@Test
+	public void testRebuiltIndexIsNotAnsweredFromTheCache() throws IOException {
+		IndexerMain indexer = new IndexerMain(new QueryCache(100, false, false));
+		indexer.buildPositionalIndex();
+		File added = _corpus.writeDocument("added/doc4.txt", "http://www.e.com", "fresh green tea market");
+		VectorSpace.getObject().addDocuments(new File[] { added });
+		// the document is in the index but not yet in its positions
+		List<String> urls = getUrls(indexer.retrieveTopKDocuments("\"green tea\"", 10));
+		assertTrue("old positions " + urls, urls.size() == 2 && !urls.contains("http://www.e.com"));
+		urls = getUrls(indexer.retrieveTopKDocuments("green AND \"tea market\"", 10));
+		assertTrue("old positions " + urls, urls.isEmpty());
+
+		indexer.buildPositionalIndex();
+		urls = getUrls(indexer.retrieveTopKDocuments("\"green tea\"", 10));
+		assertTrue("new positions " + urls, urls.size() == 3 && urls.contains("http://www.e.com"));
+		urls = getUrls(indexer.retrieveTopKDocuments("green AND \"tea market\"", 10));
+		assertTrue("new positions " + urls, urls.size() == 1 && urls.contains("http://www.e.com"));
+
+		File file = _corpus.getFile("positions.bin");
+		_indexer.savePositionalIndex(file.getPath());
+		indexer.loadPositionalIndex(file.getPath());
+		urls = getUrls(indexer.retrieveTopKDocuments("\"green tea\"", 10));
+		assertTrue("loaded positions " + urls, urls.size() == 2 && !urls.contains("http://www.e.com"));
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentWeightPair;
+import indexer.IndexSnapshot;
+import indexer.PostingCursor;
+import indexer.PostingList;
+import indexer.VectorSpace;
+import indexer.WandQueryEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPostingCodec {
+	private static final String[] VOCABULARY = CorpusFixture.getVocabulary(10);
+	private static final int NUMBER_OF_DOCUMENTS = 700;
+
+	private CorpusFixture _corpus = null;
+	private File[] _documents = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("postingcodec");
+		// common terms span several blocks, rare ones leave long gaps
+		_documents = _corpus.writeRandomCorpus("", NUMBER_OF_DOCUMENTS, VOCABULARY, 20, 3, 7);
+	}
+
+	@After
+	public void cleanUp() {
+		VectorSpace.getObject().setPostingCompression(0);
+		_corpus.cleanUp();
+	}
+
+	private IndexSnapshot train(int weightBits) {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.setPostingCompression(weightBits);
+		vectorSpace.trainByWtf(_documents);
+		return vectorSpace.getSnapshot();
+	}
+
+	@Test
+	public void testExactWeightsMatchUncompressed() {
+		IndexSnapshot uncompressed = train(0);
+		IndexSnapshot compressed = train(64);
+		assertTrue("a term spans several blocks", compressed.getPostingList("apple").size() > 3 * 128);
+
+		Random random = new Random(11);
+		for (String term : VOCABULARY) {
+			PostingList expected = uncompressed.getPostingList(term);
+			PostingList actual = compressed.getPostingList(term);
+			if (expected == null) {
+				continue;
+			}
+			assertTrue("max weight of " + term, expected.cursor().getMaxWeight() == actual.cursor().getMaxWeight());
+
+			PostingCursor expectedCursor = expected.cursor();
+			PostingCursor actualCursor = actual.cursor();
+			while (expectedCursor.nextDoc() != PostingCursor.NO_MORE_DOCS) {
+				assertTrue("next docId of " + term, actualCursor.nextDoc() == expectedCursor.docId());
+				assertTrue("weight of " + term, actualCursor.weight() == expectedCursor.weight());
+			}
+			assertTrue("end of " + term, actualCursor.nextDoc() == PostingCursor.NO_MORE_DOCS);
+
+			for (int run = 0; run < 20; run++) {
+				expectedCursor = expected.cursor();
+				actualCursor = actual.cursor();
+				int target = 0;
+				while (expectedCursor.docId() != PostingCursor.NO_MORE_DOCS) {
+					target = Math.max(target, expectedCursor.docId()) + 1 + random.nextInt(1 + random.nextInt(300));
+					if (random.nextInt(4) == 0) {
+						expectedCursor.nextDoc();
+						actualCursor.nextDoc();
+					} else {
+						expectedCursor.advance(target);
+						actualCursor.advance(target);
+					}
+					assertTrue("advance of " + term + " to " + target, actualCursor.docId() == expectedCursor.docId());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testExactWeightsKeepWandResults() {
+		IndexSnapshot uncompressed = train(0);
+		IndexSnapshot compressed = train(64);
+		WandQueryEngine engine = new WandQueryEngine(VectorSpace.getObject());
+		List<String> query = Arrays.asList("apple", "fig", "lemon");
+		assertTrue("same top k", describe(engine.retrieveTopKDocuments(uncompressed, query, 10))
+				.equals(describe(engine.retrieveTopKDocuments(compressed, query, 10))));
+	}
+
+	@Test
+	public void testQuantizedWeights() {
+		IndexSnapshot uncompressed = train(0);
+		for (int weightBits : new int[] {8, 16}) {
+			IndexSnapshot compressed = train(weightBits);
+			for (String term : VOCABULARY) {
+				PostingList expected = uncompressed.getPostingList(term);
+				if (expected == null) {
+					continue;
+				}
+				double minWeight = expected.getWeight(expected.size() - 1);
+				double step = (expected.getMaxWeight() - minWeight) / ((1 << weightBits) - 1);
+
+				PostingCursor expectedCursor = expected.cursor();
+				PostingCursor actualCursor = compressed.getPostingList(term).cursor();
+				while (expectedCursor.nextDoc() != PostingCursor.NO_MORE_DOCS) {
+					actualCursor.nextDoc();
+					assertTrue("docId of " + term, actualCursor.docId() == expectedCursor.docId());
+					assertTrue(weightBits + " bit weight of " + term,
+							Math.abs(actualCursor.weight() - expectedCursor.weight()) <= step / 2 + 1e-12);
+					assertTrue("bounded by the max weight", actualCursor.weight() <= actualCursor.getMaxWeight());
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsUnsupportedBits() {
+		VectorSpace.getObject().setPostingCompression(12);
+	}
+
+	private String describe(List<DocumentWeightPair> pairs) {
+		StringBuilder description = new StringBuilder();
+		for (DocumentWeightPair pair : pairs) {
+			description.append(pair.documentVector.getUrl()).append(' ').append(pair.weight).append(',');
+		}
+		return description.toString();
+	}
+}
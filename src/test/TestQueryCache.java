@@ -0,0 +1,150 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentWeightPair;
+import indexer.IndexerMain;
+import indexer.QueryCache;
+import indexer.VectorSpace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestQueryCache {
+	private CorpusFixture _corpus = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("querycache");
+		_corpus.writeDocument("doc0.txt", "http://www.a.com", "apple banana apple cherry");
+		_corpus.writeDocument("doc1.txt", "http://www.b.com", "banana banana banana durian");
+		_corpus.writeDocument("doc2.txt", "http://www.c.com", "apple cherry cherry elderberry");
+	}
+
+	@After
+	public void cleanUp() {
+		_corpus.cleanUp();
+	}
+
+	private ArrayList<String> describe(List<DocumentWeightPair> pairs) {
+		ArrayList<String> description = new ArrayList<String>();
+		for (DocumentWeightPair pair : pairs) {
+			description.add(pair.documentVector.getUrl() + " " + pair.weight);
+		}
+		return description;
+	}
+
+	private List<DocumentWeightPair> results(int n) {
+		List<DocumentWeightPair> pairs = new ArrayList<DocumentWeightPair>();
+		for (int i = 0; i < n; i++) {
+			pairs.add(new DocumentWeightPair());
+		}
+		return pairs;
+	}
+
+	@Test
+	public void testHitsAndMisses() throws IOException {
+		IndexerMain indexer = new IndexerMain(new QueryCache(100, false, false));
+		IndexerMain uncached = new IndexerMain(null);
+		indexer.trainIndexerByWtf(_corpus.getDirectory());
+
+		ArrayList<String> expected = describe(uncached.retrieveTopKDocuments("apple cherry", 2));
+		assertTrue("miss", describe(indexer.retrieveTopKDocuments("apple cherry", 2)).equals(expected));
+		ArrayList<DocumentWeightPair> cached = indexer.retrieveTopKDocuments("Apple, CHERRY!", 2);
+		assertTrue("hit on the same tokens", describe(cached).equals(expected));
+		cached.get(0).weight = -1.0;
+		assertTrue("callers get copies", describe(indexer.retrieveTopKDocuments("apple cherry", 2)).equals(expected));
+		indexer.retrieveTopKDocuments("apple cherry", 1);
+		indexer.retrieveExactTopKDocuments("apple cherry", 2);
+
+		QueryCache cache = indexer.getQueryCache();
+		assertTrue("hits " + cache.getHits(), cache.getHits() == 2);
+		assertTrue("misses " + cache.getMisses(), cache.getMisses() == 3);
+		assertTrue("k and the ranking are part of the key", cache.size() == 3);
+	}
+
+	@Test
+	public void testRetrainingInvalidates() throws IOException {
+		IndexerMain indexer = new IndexerMain(new QueryCache(100, false, false));
+		indexer.trainIndexerByWtf(_corpus.getDirectory());
+		ArrayList<String> before = describe(indexer.retrieveTopKDocuments("durian", 3));
+		assertTrue("one document has durian", before.size() == 1);
+
+		_corpus.writeDocument("doc3.txt", "http://www.d.com", "durian durian");
+		indexer.trainIndexerByWtf(_corpus.getDirectory());
+		ArrayList<String> after = describe(indexer.retrieveTopKDocuments("durian", 3));
+		assertTrue("retrained index is searched " + after, after.size() == 2);
+		assertTrue("no hit across versions", indexer.getQueryCache().getHits() == 0);
+		assertTrue("old entries dropped", indexer.getQueryCache().size() == 1);
+	}
+
+	@Test
+	public void testStaleResultIsNotCached() {
+		QueryCache cache = new QueryCache(10, false, false);
+		cache.get(2, "new");
+		cache.put(1, "old", results(1));
+		assertTrue("result of a replaced snapshot", cache.get(2, "old") == null && cache.size() == 0);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		QueryCache cache = new QueryCache(2, false, false);
+		cache.put(0, "a", results(1));
+		cache.put(0, "b", results(1));
+		cache.get(0, "a");
+		cache.put(0, "c", results(1));
+		assertTrue("a was used last", cache.get(0, "a") != null);
+		assertTrue("b was evicted", cache.get(0, "b") == null);
+		assertTrue("c was added", cache.get(0, "c") != null);
+		assertTrue("evictions", cache.getEvictions() == 1);
+	}
+
+	@Test
+	public void testWeighedByDocuments() {
+		QueryCache cache = new QueryCache(5, true, false);
+		cache.put(0, "a", results(2));
+		cache.put(0, "b", results(0));
+		cache.put(0, "c", results(2));
+		assertTrue("all fit", cache.size() == 3 && cache.getWeight() == 5);
+		cache.put(0, "d", results(3));
+		assertTrue("a and b evicted for d", cache.size() == 2 && cache.getWeight() == 5);
+		assertTrue("d cached", cache.get(0, "d") != null && cache.get(0, "a") == null);
+		cache.put(0, "e", results(6));
+		assertTrue("larger than the cache", cache.get(0, "e") == null && cache.getRejections() == 1);
+	}
+
+	@Test
+	public void testFrequencyAdmission() {
+		QueryCache cache = new QueryCache(2, false, true);
+		for (String key : Arrays.asList("a", "b")) {
+			for (int i = 0; i < 3; i++) {
+				cache.get(0, key);
+			}
+			cache.put(0, key, Collections.<DocumentWeightPair>emptyList());
+		}
+		cache.get(0, "once");
+		cache.put(0, "once", results(1));
+		assertTrue("a one-off query does not evict popular ones", cache.get(0, "once") == null);
+		assertTrue("popular entries stay", cache.get(0, "a") != null && cache.get(0, "b") != null);
+
+		for (int i = 0; i < 10; i++) {
+			cache.get(0, "popular");
+		}
+		cache.put(0, "popular", results(1));
+		assertTrue("a more popular query is admitted", cache.get(0, "popular") != null);
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.CollectionStatistics;
+import indexer.DocumentWeightPair;
+import indexer.IndexerMain;
+import indexer.QueryServer;
+import indexer.ScoringModel;
+import indexer.Searcher;
+import indexer.VectorSpace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestQueryServer {
+	private CorpusFixture _corpus = null;
+	private IndexerMain _indexer = null;
+	private QueryServer _server = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("queryserver");
+		_corpus.writeDocument("doc0.txt", "http://www.a.com", "apple banana apple cherry");
+		_corpus.writeDocument("doc1.txt", "http://www.b.com", "banana banana banana durian");
+		_corpus.writeDocument("doc2.txt", "http://www.c.com/\"quoted\"", "apple cherry cherry elderberry");
+
+		_indexer = new IndexerMain();
+		_indexer.trainIndexerByWtf(_corpus.getDirectory());
+		_server = new QueryServer(_indexer, 0, 2);
+		_server.start();
+	}
+
+	@After
+	public void cleanUp() {
+		_server.stop(0);
+		_corpus.cleanUp();
+	}
+
+	private HttpURLConnection open(String pathAndQuery) throws IOException {
+		URL url = new URL("http://localhost:" + _server.getPort() + pathAndQuery);
+		return (HttpURLConnection) url.openConnection();
+	}
+
+	private String read(HttpURLConnection connection) throws IOException {
+		InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+		try {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testSearch() throws IOException {
+		HttpURLConnection connection = open("/search?q=" + URLEncoder.encode("Apple cherry!", "UTF-8"));
+		assertTrue("status", connection.getResponseCode() == 200);
+		assertTrue("content type", connection.getContentType().startsWith("application/json"));
+		String json = read(connection);
+		assertTrue("json " + json, json.startsWith("{\"query\":\"Apple cherry!\",\"k\":2,\"version\":"));
+		assertTrue("escaped url " + json, json.contains("\"url\":\"http://www.c.com/\\\"quoted\\\"\""));
+		assertTrue("second result " + json, json.contains("\"url\":\"http://www.a.com\""));
+		assertFalse("only k results " + json, json.contains("http://www.b.com"));
+	}
+
+	@Test
+	public void testExactSearchWithK() throws IOException {
+		HttpURLConnection connection = open("/search?q=banana&k=1&exact=true");
+		String json = read(connection);
+		assertTrue("status", connection.getResponseCode() == 200);
+		assertTrue("k " + json, json.contains("\"k\":1,"));
+		assertTrue("top document " + json, json.contains("\"url\":\"http://www.b.com\""));
+		assertFalse("only one result " + json, json.contains("http://www.a.com"));
+	}
+
+	@Test
+	public void testPostQuery() throws IOException {
+		HttpURLConnection connection = open("/search");
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write("durian".getBytes(StandardCharsets.UTF_8));
+		}
+		String json = read(connection);
+		assertTrue("status", connection.getResponseCode() == 200);
+		assertTrue("result " + json, json.contains("\"url\":\"http://www.b.com\""));
+	}
+
+	@Test
+	public void testRejectsBadRequests() throws IOException {
+		assertTrue("missing query", open("/search").getResponseCode() == 400);
+		assertTrue("k out of range", open("/search?q=apple&k=0").getResponseCode() == 400);
+		assertTrue("k not a number", open("/search?q=apple&k=ten").getResponseCode() == 400);
+		assertTrue("k too large", open("/search?q=apple&k=" + (QueryServer.MAX_K + 1)).getResponseCode() == 400);
+
+		StringBuilder query = new StringBuilder();
+		while (query.length() <= QueryServer.MAX_QUERY_LENGTH) {
+			query.append("apple ");
+		}
+		assertTrue("query too long", open("/search?q=" + URLEncoder.encode(query.toString(), "UTF-8")).getResponseCode() == 413);
+
+		HttpURLConnection connection = open("/search?q=apple");
+		connection.setRequestMethod("DELETE");
+		assertTrue("method", connection.getResponseCode() == 405);
+	}
+
+	@Test
+	public void testRejectsRequestsWhenFull() throws Exception {
+		final CountDownLatch isSearching = new CountDownLatch(1);
+		final CountDownLatch canFinish = new CountDownLatch(1);
+		Searcher blocking = new Searcher() {
+			@Override
+			public ArrayList<DocumentWeightPair> retrieveTopKDocuments(String query, int k, ScoringModel scoringModel) {
+				isSearching.countDown();
+				try {
+					canFinish.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return _indexer.retrieveTopKDocuments(query, k, scoringModel);
+			}
+
+			@Override
+			public ArrayList<DocumentWeightPair> retrieveExactTopKDocuments(String query, int k, ScoringModel scoringModel) {
+				return _indexer.retrieveExactTopKDocuments(query, k, scoringModel);
+			}
+
+			@Override
+			public ArrayList<DocumentWeightPair> retrieveExactTopKDocuments(String query, int k,
+					ScoringModel scoringModel, CollectionStatistics statistics) {
+				return _indexer.retrieveExactTopKDocuments(query, k, scoringModel, statistics);
+			}
+
+			@Override
+			public CollectionStatistics getCollectionStatistics(String query) {
+				return _indexer.getCollectionStatistics(query);
+			}
+
+			@Override
+			public long getIndexVersion() {
+				return _indexer.getIndexVersion();
+			}
+		};
+		// one thread and no queue, so a second request finds the pool full
+		final QueryServer server = new QueryServer(blocking, 0, 2, 1, 0);
+		server.start();
+		try {
+			final int[] status = new int[1];
+			Thread first = new Thread() {
+				@Override
+				public void run() {
+					try {
+						URL url = new URL("http://localhost:" + server.getPort() + "/search?q=apple");
+						status[0] = ((HttpURLConnection) url.openConnection()).getResponseCode();
+					} catch (IOException e) {
+						status[0] = -1;
+					}
+				}
+			};
+			first.start();
+			isSearching.await();
+
+			URL url = new URL("http://localhost:" + server.getPort() + "/search?q=banana");
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			assertTrue("service unavailable", connection.getResponseCode() == 503);
+			assertTrue("retry after", connection.getHeaderField("Retry-After") != null);
+
+			canFinish.countDown();
+			first.join();
+			assertTrue("first request served", status[0] == 200);
+			url = new URL("http://localhost:" + server.getPort() + "/search?q=banana");
+			assertTrue("served again", ((HttpURLConnection) url.openConnection()).getResponseCode() == 200);
+		} finally {
+			canFinish.countDown();
+			server.stop(0);
+		}
+	}
+}
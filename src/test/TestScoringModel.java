@@ -0,0 +1,190 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentVector;
+import indexer.DocumentWeightPair;
+import indexer.PostingList;
+import indexer.ScoringModel;
+import indexer.VectorSpace;
+import indexer.WandQueryEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestScoringModel {
+	private static final String[] VOCABULARY = CorpusFixture.getVocabulary(8);
+	private static final int NUMBER_OF_DOCUMENTS = 60;
+	private static final double EPSILON = 1e-9;
+
+	private CorpusFixture _corpus = null;
+	private File[] _documents = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("scoring");
+		_documents = _corpus.writeRandomCorpus("", NUMBER_OF_DOCUMENTS, VOCABULARY, 40, 2, 7);
+		VectorSpace.getObject().trainByWtf(_documents);
+	}
+
+	@After
+	public void cleanUp() {
+		VectorSpace.getObject().setPostingCompression(0);
+		_corpus.cleanUp();
+	}
+
+	/**
+	 * the term frequency back from its wtf
+	 */
+	private static int getFrequency(DocumentVector documentVector, String term) {
+		double wtf = documentVector.getWeightedTermFrequency(term);
+		return wtf == 0.0 ? 0 : (int) Math.round(Math.exp(wtf - 1.0));
+	}
+
+	/**
+	 * score every document that contains a query term, by the textbook formulas
+	 */
+	private Map<String, Double> bruteForce(VectorSpace vectorSpace, List<String> terms, boolean isBm25) {
+		Map<String, DocumentVector> documents = new HashMap<String, DocumentVector>();
+		double totalLength = 0.0;
+		for (int docId = 0; docId < NUMBER_OF_DOCUMENTS; docId++) {
+			totalLength += vectorSpace.getDocumentVector(docId).getLength();
+		}
+		double averageLength = totalLength / NUMBER_OF_DOCUMENTS;
+
+		Map<String, Integer> queryFrequencies = new HashMap<String, Integer>();
+		for (String term : terms) {
+			PostingList postings = vectorSpace.getPostingList(term);
+			if (postings == null) {
+				continue;
+			}
+			Integer frequency = queryFrequencies.get(term);
+			queryFrequencies.put(term, frequency == null ? 1 : frequency.intValue() + 1);
+			for (int i = 0; i < postings.size(); i++) {
+				DocumentVector documentVector = vectorSpace.getDocumentVector(postings.getDocId(i));
+				documents.put(documentVector.getUrl(), documentVector);
+			}
+		}
+
+		double queryNorm = 0.0;
+		for (String term : queryFrequencies.keySet()) {
+			double queryWeight = queryFrequencies.get(term) * Math.max(0.0, vectorSpace.calculateIdf(term));
+			queryNorm += queryWeight * queryWeight;
+		}
+		queryNorm = Math.sqrt(queryNorm);
+
+		Map<String, Double> scores = new HashMap<String, Double>();
+		for (DocumentVector documentVector : documents.values()) {
+			double score = 0.0;
+			double documentNorm = 0.0;
+			for (String term : VOCABULARY) {
+				documentNorm += Math.pow(documentVector.getWeightedTermFrequency(term), 2);
+			}
+			documentNorm = Math.sqrt(documentNorm);
+			for (String term : queryFrequencies.keySet()) {
+				int tf = getFrequency(documentVector, term);
+				if (tf == 0) {
+					continue;
+				}
+				int qtf = queryFrequencies.get(term);
+				if (isBm25) {
+					int df = vectorSpace.getPostingList(term).size();
+					double idf = Math.log(1.0 + (NUMBER_OF_DOCUMENTS - df + 0.5) / (df + 0.5));
+					double k1 = ScoringModel.DEFAULT_BM25_K1;
+					double b = ScoringModel.DEFAULT_BM25_B;
+					score += qtf * idf * tf * (k1 + 1)
+							/ (tf + k1 * (1 - b + b * documentVector.getLength() / averageLength));
+				} else {
+					double idf = Math.max(0.0, vectorSpace.calculateIdf(term));
+					score += qtf * idf * (1.0 + Math.log(tf)) / (queryNorm * documentNorm);
+				}
+			}
+			scores.put(documentVector.getUrl(), score);
+		}
+		return scores;
+	}
+
+	private void verifyQueries(ScoringModel scoringModel, boolean isBm25) {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		WandQueryEngine engine = new WandQueryEngine(vectorSpace);
+		List<List<String>> queries = new ArrayList<List<String>>();
+		queries.add(Arrays.asList("apple"));
+		queries.add(Arrays.asList("apple", "honeydew"));
+		queries.add(Arrays.asList("fig", "fig", "unknown", "durian"));
+		queries.add(Arrays.asList(VOCABULARY));
+
+		for (List<String> query : queries) {
+			Map<String, Double> scores = bruteForce(vectorSpace, query, isBm25);
+			List<Double> expected = new ArrayList<Double>(scores.values());
+			Collections.sort(expected, Collections.reverseOrder());
+			for (int k : new int[] {1, 5, 1000}) {
+				ArrayList<DocumentWeightPair> ans = engine.retrieveTopKDocuments(query, k, scoringModel);
+				assertTrue("size of top " + k + " for " + query, ans.size() == Math.min(k, expected.size()));
+				for (int i = 0; i < ans.size(); i++) {
+					DocumentWeightPair pair = ans.get(i);
+					assertTrue("score of " + pair.documentVector.getUrl(),
+							Math.abs(scores.get(pair.documentVector.getUrl()) - pair.weight) < EPSILON);
+					assertTrue("rank " + i + " of top " + k + " for " + query,
+							Math.abs(expected.get(i) - pair.weight) < EPSILON);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTfIdf() {
+		verifyQueries(ScoringModel.TF_IDF, false);
+	}
+
+	@Test
+	public void testBm25() {
+		verifyQueries(ScoringModel.BM25, true);
+	}
+
+	@Test
+	public void testFrequenciesFromNtfWeights() {
+		VectorSpace.getObject().trainByNtf(_documents);
+		verifyQueries(ScoringModel.TF_IDF, false);
+		verifyQueries(ScoringModel.BM25, true);
+	}
+
+	@Test
+	public void testFrequenciesOfQuantizedWeights() {
+		VectorSpace.getObject().setPostingCompression(8);
+		VectorSpace.getObject().trainByWtf(_documents);
+		verifyQueries(ScoringModel.TF_IDF, false);
+		verifyQueries(ScoringModel.BM25, true);
+	}
+
+	@Test
+	public void testRawIsUnchanged() {
+		WandQueryEngine engine = new WandQueryEngine(VectorSpace.getObject());
+		List<String> query = Arrays.asList("banana", "cherry", "grape");
+		ArrayList<DocumentWeightPair> expected = engine.retrieveTopKDocuments(query, 10);
+		ArrayList<DocumentWeightPair> actual = engine.retrieveTopKDocuments(query, 10, ScoringModel.RAW);
+		assertTrue("raw is the default", expected.size() == actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertTrue("raw rank " + i, expected.get(i).documentVector.getUrl().equals(actual.get(i).documentVector.getUrl())
+					&& expected.get(i).weight == actual.get(i).weight);
+		}
+		assertTrue("model names", ScoringModel.forName("BM25") == ScoringModel.BM25
+				&& ScoringModel.forName("tfidf") == ScoringModel.TF_IDF && ScoringModel.forName("okapi") == null);
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentWeightPair;
+import indexer.IndexerMain;
+import indexer.ScoringModel;
+import indexer.ShardCoordinator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs every shard in a JVM of its own and checks that the coordinator ranks like a
+ * single index over all the documents.
+ */
+public class TestShardCoordinator {
+	private static final String[] VOCABULARY = CorpusFixture.getVocabulary(16);
+	private static final int NUMBER_OF_DOCUMENTS = 60;
+	private static final int NUMBER_OF_SHARDS = 2;
+	private static final String[] QUERIES = { "apple", "banana cherry", "fig grape grape quince", "raspberry kiwi lemon" };
+
+	private CorpusFixture _corpus = null;
+	private final List<Process> _shards = new ArrayList<Process>();
+	private ShardCoordinator _coordinator = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("shards");
+		_corpus.writeRandomCorpus("data", NUMBER_OF_DOCUMENTS, VOCABULARY, 30, 2, 11);
+		File corpus = _corpus.getFile("data");
+
+		String prefix = _corpus.getFile("indexes").getAbsolutePath();
+		ShardCoordinator.writeShardIndexes(corpus.listFiles(), NUMBER_OF_SHARDS, prefix);
+		List<String> shardUrls = new ArrayList<String>();
+		for (int i = 0; i < NUMBER_OF_SHARDS; i++) {
+			shardUrls.add("http://localhost:" + startShard(ShardCoordinator.getShardFilename(prefix, i)));
+		}
+		_coordinator = new ShardCoordinator(shardUrls);
+
+		new IndexerMain().trainIndexerByWtf(corpus);
+	}
+
+	@After
+	public void cleanUp() {
+		if (_coordinator != null) {
+			_coordinator.close();
+		}
+		for (Process shard : _shards) {
+			shard.destroyForcibly();
+		}
+		_corpus.cleanUp();
+	}
+
+	/**
+	 * @return the port the QueryServer of the shard listens on
+	 */
+	private int startShard(String indexFilename) throws IOException {
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				"indexer.IndexerMain", "-index", indexFilename, "-port", "0");
+		builder.redirectErrorStream(true);
+		Process shard = builder.start();
+		_shards.add(shard);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(shard.getInputStream(), StandardCharsets.UTF_8));
+		String prefix = "serving queries on port ";
+		for (String line; (line = reader.readLine()) != null;) {
+			if (line.startsWith(prefix)) {
+				return Integer.parseInt(line.substring(prefix.length()).trim());
+			}
+		}
+		throw new IOException("the shard exited before serving " + indexFilename);
+	}
+
+	private void assertSameRanking(String message, List<DocumentWeightPair> expected, List<DocumentWeightPair> actual) {
+		assertTrue(message + ": " + actual.size() + " results instead of " + expected.size(), expected.size() == actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertTrue(message + " at " + i, expected.get(i).documentVector.getUrl().equals(actual.get(i).documentVector.getUrl()));
+			assertTrue(message + " score at " + i, Math.abs(expected.get(i).weight - actual.get(i).weight) < 1e-9);
+		}
+	}
+
+	@Test
+	public void testShardsRankLikeOneIndex() {
+		IndexerMain indexer = new IndexerMain(null);
+		assertTrue("results from the shards", !_coordinator.retrieveExactTopKDocuments("apple", 7, ScoringModel.BM25).isEmpty());
+		for (String query : QUERIES) {
+			for (ScoringModel model : new ScoringModel[] { ScoringModel.RAW, ScoringModel.TF_IDF, ScoringModel.BM25 }) {
+				assertSameRanking(model + " " + query, indexer.retrieveExactTopKDocuments(query, 7, model),
+						_coordinator.retrieveExactTopKDocuments(query, 7, model));
+			}
+		}
+	}
+
+	@Test
+	public void testStatisticsAreOfTheWholeCollection() {
+		IndexerMain indexer = new IndexerMain(null);
+		for (String query : QUERIES) {
+			assertTrue(query, indexer.getCollectionStatistics(query).encode()
+					.equals(_coordinator.getCollectionStatistics(query).encode()));
+		}
+		assertTrue("the documents of all the shards", _coordinator.getCollectionStatistics("apple").getNumberOfDocuments() == NUMBER_OF_DOCUMENTS);
+	}
+
+	@Test
+	public void testShardOfUrlIsStable() {
+		for (int i = 0; i < NUMBER_OF_DOCUMENTS; i++) {
+			String url = "http://www.site" + i + ".com";
+			int shard = ShardCoordinator.getShardOf(url, NUMBER_OF_SHARDS);
+			assertTrue(url, shard >= 0 && shard < NUMBER_OF_SHARDS && shard == ShardCoordinator.getShardOf(url, NUMBER_OF_SHARDS));
+		}
+	}
+}
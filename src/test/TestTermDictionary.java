@@ -0,0 +1,67 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentVector;
+import indexer.IndexSnapshot;
+import indexer.TermDictionary;
+import indexer.TermFrequencyPerDocument;
+import indexer.VectorSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestTermDictionary {
+
+	@Test
+	public void testDenseTermIds() {
+		List<TermFrequencyPerDocument> termFrequencies = new ArrayList<TermFrequencyPerDocument>();
+		for (int i = 0; i < 5000; i++) {
+			termFrequencies.add(new TermFrequencyPerDocument("term" + i, i % 7 + 1));
+		}
+		DocumentVector documentVector = new DocumentVector("test", "www.test.com", termFrequencies);
+		for (int i = 0; i < 5000; i++) {
+			assertTrue("has term" + i, documentVector.hasTerm("term" + i));
+			assertTrue("wtf of term" + i, documentVector.getWeightedTermFrequency("term" + i) == 1.0 + Math.log(i % 7 + 1));
+		}
+		assertFalse("missing term", documentVector.hasTerm("term5000"));
+	}
+
+	@Test
+	public void testIndexSharesOneDictionary() throws IOException {
+		CorpusFixture corpus = new CorpusFixture("termdictionary");
+		try {
+			String[] contents = { "apple banana apple", "banana cherry", "cherry apple durian" };
+			File[] files = new File[contents.length];
+			for (int i = 0; i < contents.length; i++) {
+				files[i] = corpus.writeDocument("doc" + i + ".txt", "http://www." + i + ".com", contents[i]);
+			}
+
+			VectorSpace.getObject().trainByWtf(files);
+			IndexSnapshot snapshot = VectorSpace.getObject().getSnapshot();
+			TermDictionary termDictionary = snapshot.getTermDictionary();
+			assertTrue("one id per term", termDictionary.size() == 4);
+			for (int termId = 0; termId < termDictionary.size(); termId++) {
+				String term = termDictionary.getTerm(termId);
+				assertTrue("id of " + term, termDictionary.getTermId(term) == termId);
+				assertTrue("postings by id and by term", snapshot.getPostingList(termId) == snapshot.getPostingList(term));
+			}
+			assertTrue("unknown term", termDictionary.getTermId("elderberry") == -1);
+			assertTrue("no postings", snapshot.getPostingList("elderberry") == null);
+			assertTrue("apple", snapshot.getPostingList("apple").size() == 2);
+		} finally {
+			corpus.cleanUp();
+		}
+	}
+}
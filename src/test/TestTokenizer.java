@@ -0,0 +1,86 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.Tokenizer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestTokenizer {
+	private static final String[] TEXTS = {
+		"An input string, this is! (or is it?)",
+		"  leading and   trailing spaces  ",
+		"tabs\tare\tdropped, not split",
+		"don't split contractions; e-mail joins too",
+		"Windows\r\nline\r\nendings\rand old mac ones\n",
+		"UPPER lower MiXeD 123 abc123",
+		"na\u00efve caf\u00e9 \ud83d\ude00 emoji",
+		"",
+		"\n\n\n",
+		"a the of and in"
+	};
+
+	/**
+	 * the tokenizer that Utilities.tokenizeFile used before
+	 */
+	private List<String> regexTokenize(String text, Set<String> stopWords) {
+		List<String> tokens = new ArrayList<String>();
+		for (String line : text.split("\r\n|\r|\n")) {
+			line = line.replaceAll("[^A-Za-z0-9 ]", "");
+			line = line.toLowerCase();
+			for (String token : line.split(" ")) {
+				token = token.trim();
+				if (token.isEmpty() || stopWords != null && stopWords.contains(token)) {
+					continue;
+				}
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	@Test
+	public void testSameTokensAsRegex() throws IOException {
+		Set<String> stopWords = new HashSet<String>(Arrays.asList("a", "the", "of", "and", "in", "is", "it", "or"));
+		Tokenizer tokenizer = new Tokenizer(null);
+		Tokenizer tokenizerWithoutStopWords = new Tokenizer(stopWords);
+
+		for (String text : TEXTS) {
+			List<String> tokens = new ArrayList<String>();
+			tokenizer.tokenize(text, tokens);
+			assertTrue("tokens of \"" + text + "\"", regexTokenize(text, null).equals(tokens));
+
+			tokens.clear();
+			tokenizerWithoutStopWords.tokenize(new StringReader(text), tokens);
+			assertTrue("tokens without stop words of \"" + text + "\"", regexTokenize(text, stopWords).equals(tokens));
+		}
+	}
+
+	@Test
+	public void testLongTokens() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			text.append((char) ('a' + i % 26));
+		}
+		text.append(" next");
+		List<String> tokens = new ArrayList<String>();
+		new Tokenizer(null).tokenize(new StringReader(text.toString()), tokens);
+		assertTrue("a token longer than the buffers", tokens.size() == 2 && tokens.get(0).length() == 10000);
+		assertTrue("the token after it", tokens.get(1).equals("next"));
+	}
+}
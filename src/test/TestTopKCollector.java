@@ -0,0 +1,77 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentVector;
+import indexer.DocumentWeightPair;
+import indexer.TermFrequencyPerDocument;
+import indexer.TopKCollector;
+import indexer.Utilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestTopKCollector {
+
+	private static String describe(List<DocumentWeightPair> pairs) {
+		StringBuilder description = new StringBuilder();
+		for (DocumentWeightPair pair : pairs) {
+			description.append(pair.documentVector.getUrl()).append(' ').append(pair.weight).append('\n');
+		}
+		return description.toString();
+	}
+
+	@Test
+	public void testSameOrderAsSorting() {
+		Random random = new Random(3);
+		List<DocumentWeightPair> candidates = new ArrayList<DocumentWeightPair>();
+		for (int i = 0; i < 500; i++) {
+			DocumentWeightPair pair = new DocumentWeightPair();
+			pair.documentVector = new DocumentVector("doc" + i, "http://www.site" + random.nextInt(1000) + "-" + i + ".com",
+					new ArrayList<TermFrequencyPerDocument>());
+			// few distinct scores, so that most of the order comes from the urls
+			pair.weight = random.nextInt(8) / 4.0;
+			candidates.add(pair);
+		}
+		List<DocumentWeightPair> sorted = new ArrayList<DocumentWeightPair>(candidates);
+		Collections.sort(sorted, new Utilities.SorterOfDocumentsByWeightedTermFrequency());
+
+		TopKCollector topK = new TopKCollector(0);
+		for (int k : new int[] {0, 1, 7, 100, 500, 2000}) {
+			topK.reset(k);
+			for (DocumentWeightPair pair : candidates) {
+				topK.collect(pair.documentVector, pair.weight);
+			}
+			assertTrue("full at " + k, topK.isFull() == (k <= candidates.size()));
+			List<DocumentWeightPair> expected = sorted.subList(0, Math.min(k, sorted.size()));
+			assertTrue("top " + k, describe(expected).equals(describe(topK.toList())));
+			assertTrue("empty after toList", topK.size() == 0);
+		}
+	}
+
+	@Test
+	public void testMinScore() {
+		TopKCollector topK = new TopKCollector(2);
+		DocumentVector a = new DocumentVector("a", "a", new ArrayList<TermFrequencyPerDocument>());
+		DocumentVector b = new DocumentVector("b", "b", new ArrayList<TermFrequencyPerDocument>());
+		DocumentVector c = new DocumentVector("c", "c", new ArrayList<TermFrequencyPerDocument>());
+		assertTrue("not full", topK.getMinScore() == Double.NEGATIVE_INFINITY);
+		topK.collect(b, 1.0);
+		topK.collect(c, 2.0);
+		assertTrue("worst score", topK.getMinScore() == 1.0);
+		assertTrue("a smaller url wins the tie", topK.collect(a, 1.0));
+		assertTrue("a larger url loses it", !topK.collect(b, 1.0));
+		assertTrue("lower score", !topK.collect(a, 0.5));
+	}
+}
@@ -0,0 +1,336 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.BinaryIndexFile;
+import indexer.DocumentVector;
+import indexer.ConcurrentQueryExecutor;
+import indexer.DocumentWeightPair;
+import indexer.Metrics;
+import indexer.IndexerMain;
+import indexer.PostingList;
+import indexer.ScoringModel;
+import indexer.VectorSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestVectorSpace {
+	private CorpusFixture _corpus = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("vectorspace");
+		_corpus.writeDocument("doc0.txt", "http://www.a.com", "apple banana apple cherry");
+		_corpus.writeDocument("doc1.txt", "http://www.b.com", "banana banana banana durian");
+		_corpus.writeDocument("doc2.txt", "http://www.c.com", "apple cherry cherry elderberry");
+		_corpus.writeDocument("doc3.txt", "http://www.d.com", "durian elderberry elderberry elderberry apple");
+	}
+
+	@After
+	public void cleanUp() {
+		_corpus.cleanUp();
+	}
+
+	private File[] getCorpus() {
+		return new File[] {
+			_corpus.getFile("doc0.txt"),
+			_corpus.getFile("doc1.txt"),
+			_corpus.getFile("doc2.txt"),
+			_corpus.getFile("doc3.txt")
+		};
+	}
+
+	private ArrayList<String> describe(TreeSet<DocumentWeightPair> pairs) {
+		ArrayList<String> description = new ArrayList<String>();
+		for (DocumentWeightPair pair : pairs) {
+			description.add(pair.documentVector.getUrl() + " " + pair.weight);
+		}
+		return description;
+	}
+
+	private ArrayList<ArrayList<String>> describeTerms(VectorSpace vectorSpace, String[] terms) {
+		ArrayList<ArrayList<String>> description = new ArrayList<ArrayList<String>>();
+		for (String term : terms) {
+			description.add(describe(vectorSpace.retrieveAllDocuments(term)));
+		}
+		return description;
+	}
+
+	@Test
+	public void testBinaryIndexRoundTrip() throws IOException {
+		String[] terms = {"apple", "banana", "cherry", "durian", "elderberry"};
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByWtf(getCorpus());
+		ArrayList<ArrayList<String>> expected = describeTerms(vectorSpace, terms);
+
+		File binaryFile = _corpus.getFile("indexes.bin");
+		vectorSpace.saveTermDocumentMapBinary(binaryFile.getPath());
+
+		BinaryIndexFile indexFile = BinaryIndexFile.open(binaryFile.getPath());
+		assertTrue("number of documents", indexFile.getDocumentCount() == 4);
+		assertTrue("number of terms", indexFile.getTermCount() == terms.length);
+		assertTrue("terms are sorted", indexFile.findTerm("cherry") == 2);
+		assertTrue("missing term", indexFile.findTerm("fig") == -1);
+
+		vectorSpace.trainByBinaryIndexFile(binaryFile.getPath());
+		assertTrue("postings survive the binary format", expected.equals(describeTerms(vectorSpace, terms)));
+		assertTrue("idf is computed from the loaded index",
+				vectorSpace.calculateIdf("banana") == Math.log(4.0 / 2.0));
+	}
+
+	@Test
+	public void testBinaryIndexServedFromMapping() throws IOException {
+		String[] terms = {"apple", "banana", "cherry", "durian", "elderberry"};
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		IndexerMain indexer = new IndexerMain();
+		File binaryFile = _corpus.getFile("indexes.bin");
+		File savedAgain = _corpus.getFile("again.bin");
+		vectorSpace.setPostingCompression(8);
+		try {
+			vectorSpace.trainByWtf(getCorpus());
+			ArrayList<ArrayList<String>> expected = describeTerms(vectorSpace, terms);
+			ArrayList<String> expectedBm25 = describe(indexer.retrieveTopKDocuments("apple durian", 3, ScoringModel.BM25));
+			double norm = vectorSpace.getDocumentVector(3).getNorm();
+			vectorSpace.saveTermDocumentMapBinary(binaryFile.getPath());
+
+			// compressed postings are saved with their docId order, which the views keep
+			vectorSpace.trainByBinaryIndexFile(binaryFile.getPath());
+			assertTrue("postings of the mapping", expected.equals(describeTerms(vectorSpace, terms)));
+			assertTrue("lengths without the terms", vectorSpace.getDocumentVector(3).getLength() == 5);
+			assertTrue("norms without the terms", vectorSpace.getDocumentVector(3).getNorm() == norm);
+			assertTrue("bm25 reads the terms back",
+					expectedBm25.equals(describe(indexer.retrieveTopKDocuments("apple durian", 3, ScoringModel.BM25))));
+			assertTrue("terms of a document",
+					vectorSpace.getDocumentVector(1).getWeightedTermFrequency("banana") == 1.0 + Math.log(3.0));
+
+			vectorSpace.saveTermDocumentMapBinary(savedAgain.getPath());
+			assertTrue("the saved mapped index is the same",
+					Arrays.equals(Files.readAllBytes(binaryFile.toPath()), Files.readAllBytes(savedAgain.toPath())));
+		} finally {
+			vectorSpace.setPostingCompression(0);
+		}
+	}
+
+	@Test
+	public void testConvertTextIndex() throws IOException {
+		String[] terms = {"apple", "banana", "cherry", "durian", "elderberry"};
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByNtf(getCorpus());
+
+		File textFile = _corpus.getFile("indexes.txt");
+		File binaryFile = _corpus.getFile("indexes.bin");
+		vectorSpace.saveTermDocumentMap(textFile.getPath());
+		VectorSpace.convertIndexesFile(textFile.getPath(), binaryFile.getPath());
+
+		vectorSpace.trainByIndexesFile(textFile.getPath());
+		ArrayList<ArrayList<String>> expected = describeTerms(vectorSpace, terms);
+		vectorSpace.trainByBinaryIndexFile(binaryFile.getPath());
+		assertTrue("converted index matches the text index", expected.equals(describeTerms(vectorSpace, terms)));
+	}
+
+	@Test
+	public void testSaveReplacesIndexAtomically() throws IOException {
+		String[] terms = {"apple", "banana", "cherry", "durian", "elderberry"};
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		File textFile = _corpus.getFile("indexes.txt");
+		File binaryFile = _corpus.getFile("indexes.bin");
+		long saves = Metrics.getObject().getHistogram("save.file").getCount();
+		vectorSpace.trainByWtf(getCorpus());
+		vectorSpace.saveTermDocumentMap(textFile.getPath());
+		vectorSpace.saveTermDocumentMapBinary(binaryFile.getPath());
+
+		// saving a loaded binary index over its own file must not touch the mapped file
+		vectorSpace.trainByNtf(getCorpus());
+		ArrayList<ArrayList<String>> expected = describeTerms(vectorSpace, terms);
+		vectorSpace.saveTermDocumentMap(textFile.getPath());
+		vectorSpace.trainByBinaryIndexFile(binaryFile.getPath());
+		vectorSpace.saveTermDocumentMapBinary(binaryFile.getPath());
+
+		vectorSpace.trainByIndexesFile(textFile.getPath());
+		assertTrue("the text index is replaced", expected.equals(describeTerms(vectorSpace, terms)));
+		for (File file : _corpus.getDirectory().listFiles()) {
+			assertTrue("no temporary file is left: " + file.getName(), !file.getName().endsWith(".tmp"));
+		}
+		assertTrue("throughput is reported", Metrics.getObject().getHistogram("save.file").getCount() == saves + 4
+				&& !_corpus.getOutput().contains("MB/s"));
+	}
+
+	@Test
+	public void testParallelIndexLoad() throws IOException {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		File textFile = _corpus.getFile("indexes.txt");
+		File sequentialFile = _corpus.getFile("sequential.txt");
+		File parallelFile = _corpus.getFile("parallel.txt");
+		vectorSpace.trainByNtf(getCorpus());
+		vectorSpace.saveTermDocumentMap(textFile.getPath());
+
+		vectorSpace.trainByIndexesFile(textFile.getPath());
+		vectorSpace.saveTermDocumentMap(sequentialFile.getPath());
+		byte[] expected = Files.readAllBytes(sequentialFile.toPath());
+		for (int numberOfThreads : new int[] {2, 3, 16}) {
+			vectorSpace.trainByIndexesFile(textFile.getPath(), numberOfThreads);
+			vectorSpace.saveTermDocumentMap(parallelFile.getPath());
+			assertTrue("same index with " + numberOfThreads + " threads",
+					Arrays.equals(expected, Files.readAllBytes(parallelFile.toPath())));
+		}
+	}
+
+	@Test
+	public void testLazyIndexLoad() throws IOException {
+		String[] terms = {"apple", "banana", "cherry", "durian", "elderberry"};
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		IndexerMain indexer = new IndexerMain();
+		File textFile = _corpus.getFile("indexes.txt");
+		File lazyFile = _corpus.getFile("lazy.txt");
+		vectorSpace.trainByWtf(getCorpus());
+		vectorSpace.saveTermDocumentMap(textFile.getPath());
+		ArrayList<ArrayList<String>> expected = describeTerms(vectorSpace, terms);
+		ArrayList<String> expectedBm25 = describe(indexer.retrieveTopKDocuments("apple durian", 3, ScoringModel.BM25));
+
+		vectorSpace.trainByIndexesFileLazily(textFile.getPath(), 2);
+		assertTrue("postings of the lazy index", expected.equals(describeTerms(vectorSpace, terms)));
+		assertTrue("urls without the terms", vectorSpace.getDocumentVector(1).getUrl().equals("http://www.b.com"));
+		assertTrue("lengths without the terms", vectorSpace.getDocumentVector(3).getLength() == 5);
+		assertTrue("bm25 reads the terms back",
+				expectedBm25.equals(describe(indexer.retrieveTopKDocuments("apple durian", 3, ScoringModel.BM25))));
+
+		vectorSpace.saveTermDocumentMap(lazyFile.getPath());
+		assertTrue("the saved lazy index is the same",
+				Arrays.equals(Files.readAllBytes(textFile.toPath()), Files.readAllBytes(lazyFile.toPath())));
+	}
+
+	@Test
+	public void testPostingListOrder() {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByWtf(getCorpus());
+
+		PostingList postings = vectorSpace.getPostingList("apple");
+		assertTrue("apple is in three documents", postings.size() == 3);
+		assertTrue("highest weight first", postings.getWeight(0) == 1.0 + Math.log(2.0));
+		assertTrue("ties are ordered by url", vectorSpace.getDocumentVector(postings.getDocId(1)).getUrl().equals("http://www.c.com"));
+		assertTrue("ties are ordered by url", vectorSpace.getDocumentVector(postings.getDocId(2)).getUrl().equals("http://www.d.com"));
+		assertTrue("unknown term", vectorSpace.getPostingList("fig") == null);
+		assertTrue("unknown term", vectorSpace.retrieveAllDocuments("fig").isEmpty());
+
+		ArrayList<String> topTwo = describe(vectorSpace.retrieveTopKDocuments("apple", 2));
+		assertTrue("top k is a prefix of the postings", topTwo.size() == 2
+				&& topTwo.get(0).equals("http://www.a.com " + postings.getWeight(0)));
+	}
+
+	@Test
+	public void testNtfWeights() {
+		String[] terms = {"apple", "banana", "cherry", "durian", "elderberry"};
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByNtf(getCorpus());
+
+		int numberOfPostings = 0;
+		for (String term : terms) {
+			PostingList postings = vectorSpace.getPostingList(term);
+			for (int i = 0; i < postings.size(); i++) {
+				DocumentVector documentVector = vectorSpace.getDocumentVector(postings.getDocId(i));
+				assertTrue("posting of a document containing the term", documentVector.hasTerm(term));
+				assertTrue("ntf weight of " + term, postings.getWeight(i) == documentVector.getNormalizedTermFrequency(term));
+				numberOfPostings++;
+			}
+		}
+		assertTrue("one posting per distinct term of each document", numberOfPostings == 3 + 2 + 2 + 2 + 2);
+		assertTrue("the most frequent elderberry has ntf 1", vectorSpace.getPostingList("elderberry").getWeight(0) == 1.0);
+	}
+
+	@Test
+	public void testParallelTrainingMatchesSequential() throws IOException {
+		for (int i = 4; i < 40; i++) {
+			_corpus.writeDocument("doc" + i + ".txt", "http://www.site" + i + ".com",
+					"apple banana cherry ".substring(0, 6 + i % 14) + " fig" + (i % 7) + " grape" + (i % 3));
+		}
+		Files.write(_corpus.getFile("empty.txt").toPath(), new byte[0]);
+		File[] files = _corpus.getDirectory().listFiles();
+		Arrays.sort(files);
+		VectorSpace vectorSpace = VectorSpace.getObject();
+
+		File sequentialFile = _corpus.getFile("sequential.idx");
+		File parallelFile = _corpus.getFile("parallel.idx");
+
+		vectorSpace.trainByWtf(files);
+		vectorSpace.saveTermDocumentMap(sequentialFile.getPath());
+		vectorSpace.trainByWtf(files, 3);
+		vectorSpace.saveTermDocumentMap(parallelFile.getPath());
+		assertTrue("parallel wtf index is identical", Arrays.equals(Files.readAllBytes(sequentialFile.toPath()),
+				Files.readAllBytes(parallelFile.toPath())));
+
+		vectorSpace.trainByNtf(files);
+		vectorSpace.saveTermDocumentMap(sequentialFile.getPath());
+		vectorSpace.trainByNtf(files, 5);
+		vectorSpace.saveTermDocumentMap(parallelFile.getPath());
+		assertTrue("parallel ntf index is identical", Arrays.equals(Files.readAllBytes(sequentialFile.toPath()),
+				Files.readAllBytes(parallelFile.toPath())));
+	}
+
+	private ArrayList<String> describe(List<DocumentWeightPair> pairs) {
+		ArrayList<String> description = new ArrayList<String>();
+		for (DocumentWeightPair pair : pairs) {
+			description.add(pair.documentVector.getUrl() + " " + pair.weight);
+		}
+		return description;
+	}
+
+	@Test
+	public void testConcurrentQueriesWhileRetraining() throws InterruptedException {
+		final VectorSpace vectorSpace = VectorSpace.getObject();
+		final File[] files = getCorpus();
+		vectorSpace.trainByWtf(files);
+		IndexerMain indexer = new IndexerMain();
+
+		List<String> queries = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			queries.add(i % 2 == 0 ? "apple cherry" : "banana durian elderberry");
+		}
+		ArrayList<String> expectedEven = describe(indexer.retrieveTopKDocuments(queries.get(0), 3));
+		ArrayList<String> expectedOdd = describe(indexer.retrieveTopKDocuments(queries.get(1), 3));
+
+		// retraining on the same corpus publishes an equal snapshot, so every query
+		// must see the same answer whichever snapshot it ran against
+		Thread trainer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 20; i++) {
+					vectorSpace.trainByWtf(files);
+				}
+			}
+		});
+		ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(indexer, 4);
+		trainer.start();
+		List<ArrayList<DocumentWeightPair>> results = executor.retrieveTopKDocuments(queries, 3);
+		trainer.join();
+		executor.shutdown();
+
+		for (int i = 0; i < results.size(); i++) {
+			assertTrue("result of query " + i, describe(results.get(i)).equals(i % 2 == 0 ? expectedEven : expectedOdd));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsTextIndex() throws IOException {
+		VectorSpace.getObject().trainByWtf(getCorpus());
+		File textFile = _corpus.getFile("indexes.txt");
+		VectorSpace.getObject().saveTermDocumentMap(textFile.getPath());
+		BinaryIndexFile.open(textFile.getPath());
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * @author
+ * Amy Yeung
+ * Chan Jun Wei
+ * Laureen Ma
+ * Matt Levin
+ */
+
+package test;
+
+import static org.junit.Assert.*;
+import indexer.DocumentWeightPair;
+import indexer.Metrics;
+import indexer.PostingList;
+import indexer.Utilities;
+import indexer.VectorSpace;
+import indexer.WandQueryEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWandQueryEngine {
+	private static final String[] VOCABULARY = CorpusFixture.getVocabulary(8);
+	private static final int NUMBER_OF_DOCUMENTS = 80;
+
+	private CorpusFixture _corpus = null;
+	private File[] _documents = null;
+
+	@Before
+	public void setUp() throws IOException {
+		_corpus = new CorpusFixture("wand");
+		_documents = _corpus.writeRandomCorpus("", NUMBER_OF_DOCUMENTS, VOCABULARY, 30, 2, 42);
+	}
+
+	@After
+	public void cleanUp() {
+		_corpus.cleanUp();
+	}
+
+	/**
+	 * score every posting of every term
+	 */
+	private List<String> bruteForce(VectorSpace vectorSpace, List<String> terms, int k) {
+		Map<Integer, DocumentWeightPair> scores = new HashMap<Integer, DocumentWeightPair>();
+		for (String term : terms) {
+			PostingList postings = vectorSpace.getPostingList(term);
+			if (postings == null) {
+				continue;
+			}
+			for (int i = 0; i < postings.size(); i++) {
+				if (!scores.containsKey(postings.getDocId(i))) {
+					DocumentWeightPair pair = new DocumentWeightPair();
+					pair.documentVector = vectorSpace.getDocumentVector(postings.getDocId(i));
+					scores.put(postings.getDocId(i), pair);
+				}
+			}
+		}
+		// add up in query order so that the sums are rounded like the engine's
+		for (DocumentWeightPair pair : scores.values()) {
+			pair.weight = 0.0;
+			for (String term : terms) {
+				PostingList postings = vectorSpace.getPostingList(term);
+				for (int i = 0; postings != null && i < postings.size(); i++) {
+					if (postings.getDocId(i) == pair.documentVector.getDocId()) {
+						pair.weight += postings.getWeight(i);
+					}
+				}
+			}
+		}
+		ArrayList<DocumentWeightPair> all = new ArrayList<DocumentWeightPair>(scores.values());
+		Collections.sort(all, new Utilities.SorterOfDocumentsByWeightedTermFrequency());
+		return describe(all.subList(0, Math.min(k, all.size())));
+	}
+
+	private List<String> describe(List<DocumentWeightPair> pairs) {
+		List<String> description = new ArrayList<String>();
+		for (DocumentWeightPair pair : pairs) {
+			description.add(pair.documentVector.getUrl() + " " + pair.weight);
+		}
+		return description;
+	}
+
+	@Test
+	public void testExactTopKByWtf() {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByWtf(_documents);
+		verifyQueries(vectorSpace);
+	}
+
+	@Test
+	public void testExactTopKByNtf() {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByNtf(_documents);
+		verifyQueries(vectorSpace);
+	}
+
+	private void verifyQueries(VectorSpace vectorSpace) {
+		WandQueryEngine engine = new WandQueryEngine(vectorSpace);
+		List<List<String>> queries = new ArrayList<List<String>>();
+		queries.add(Arrays.asList("apple"));
+		queries.add(Arrays.asList("apple", "honeydew"));
+		queries.add(Arrays.asList("banana", "cherry", "grape"));
+		queries.add(Arrays.asList("fig", "fig", "unknown", "durian"));
+		queries.add(Arrays.asList(VOCABULARY));
+
+		for (List<String> query : queries) {
+			for (int k : new int[] {1, 5, 20, 1000}) {
+				List<String> expected = bruteForce(vectorSpace, query, k);
+				List<String> actual = describe(engine.retrieveTopKDocuments(query, k));
+				assertTrue("exact top " + k + " for " + query, expected.equals(actual));
+			}
+		}
+	}
+
+	@Test
+	public void testPruning() {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByWtf(_documents);
+		WandQueryEngine engine = new WandQueryEngine(vectorSpace);
+
+		List<String> query = Arrays.asList("apple", "honeydew");
+		int totalPostings = vectorSpace.getPostingList("apple").size() + vectorSpace.getPostingList("honeydew").size();
+		LongAdder scoredPostings = Metrics.getObject().getCounter("query.postings");
+		long before = scoredPostings.sum();
+		engine.retrieveTopKDocuments(query, 1);
+		assertTrue("not every posting is scored", scoredPostings.sum() - before < totalPostings);
+		assertTrue("empty query", engine.retrieveTopKDocuments(new ArrayList<String>(), 5).isEmpty());
+	}
+
+	@Test
+	public void testImpactTiers() {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByWtf(_documents);
+		for (String term : VOCABULARY) {
+			PostingList postings = vectorSpace.getPostingList(term);
+			int start = 0;
+			for (int tier = 0; tier < postings.getTierCount(); tier++) {
+				int end = postings.getTierEnd(tier);
+				double maxWeight = postings.getTierMaxWeight(tier);
+				assertTrue("tiers are not empty", end > start && maxWeight == postings.getWeight(start));
+				for (int i = start; i < end; i++) {
+					assertTrue("weights of a tier are close", postings.getWeight(i) >= maxWeight * 0.5);
+				}
+				assertTrue("a tier ends at a lower impact", end == postings.size() || postings.getWeight(end) < maxWeight * 0.5);
+				start = end;
+			}
+			assertTrue("tiers cover the postings of " + term, start == postings.size());
+		}
+	}
+
+	@Test
+	public void testShortQueriesByImpact() {
+		VectorSpace vectorSpace = VectorSpace.getObject();
+		vectorSpace.trainByNtf(_documents);
+		WandQueryEngine engine = new WandQueryEngine(vectorSpace);
+		for (String term : VOCABULARY) {
+			for (String other : VOCABULARY) {
+				List<String> query = Arrays.asList(term, other);
+				for (int k : new int[] {1, 3, 10, 100}) {
+					List<String> expected = bruteForce(vectorSpace, query, k);
+					List<String> actual = describe(engine.retrieveTopKDocuments(query, k));
+					assertTrue("exact top " + k + " for " + query, expected.equals(actual));
+				}
+			}
+		}
+	}
+}